@@ -0,0 +1,32 @@
+package com.kirat.solutions.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line and, unless
+ * told otherwise, publishes the results as JSON to target/jmh-result.json so
+ * the build can archive and compare them between runs.
+ */
+public class BenchmarkRunner {
+
+	public static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+		if (!cmdOptions.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!cmdOptions.getResult().hasValue()) {
+			new File(DEFAULT_RESULT_FILE).getParentFile().mkdirs();
+			builder.result(DEFAULT_RESULT_FILE);
+		}
+		new Runner(builder.build()).run();
+	}
+}
@@ -0,0 +1,51 @@
+package com.kirat.solutions.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.processor.BookTreeProcessor;
+import com.kirat.solutions.util.JsonCodec;
+
+/**
+ * /getBookTreeDetail: catalog lookup followed by the binder XML to JSON
+ * conversion, written to a discarding stream as the response body would be.
+ * The catalog and the binder both hold {@code entries} items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookTreeBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	int entries;
+
+	String bookName;
+
+	@Setup
+	public void setup() {
+		SyntheticData.populate(entries, entries);
+		bookName = SyntheticData.bookName(entries - 1);
+	}
+
+	@Benchmark
+	public BookTree processBookXmltoDoc() throws Exception {
+		BookTree oBookTree = new BookTreeProcessor().processBookXmltoDoc(bookName);
+		JsonCodec.writeBookTree(oBookTree, NullOutputStream.INSTANCE);
+		return oBookTree;
+	}
+}
@@ -0,0 +1,72 @@
+package com.kirat.solutions.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.domain.BinderList;
+import com.kirat.solutions.processor.DeleteBookProcessor;
+import com.kirat.solutions.processor.LookupBookProcessor;
+import com.kirat.solutions.processor.UpdateMasterJson;
+
+/**
+ * Master catalog (test.JSON) lookup and mutation. Mutating benchmarks restore
+ * the catalog before every invocation so each call sees {@code books} entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	int books;
+
+	LocalCloudStorageConfig storage;
+	byte[] catalog;
+	String lastBook;
+	BinderList newBinder;
+
+	@Setup
+	public void setup() {
+		storage = SyntheticData.populate(books, 1);
+		catalog = SyntheticData.catalogJson(books);
+		lastBook = SyntheticData.bookName(books - 1);
+		newBinder = new BinderList();
+		newBinder.setName("benchNewBook");
+		newBinder.setClassification("Engineering");
+	}
+
+	@Setup(Level.Invocation)
+	public void resetCatalog() {
+		storage.put(SyntheticData.BUCKET, SyntheticData.MASTER_JSON, catalog);
+	}
+
+	@Benchmark
+	public Object lookupBookbyName() throws Exception {
+		return LookupBookProcessor.lookupBookbyName(lastBook);
+	}
+
+	@Benchmark
+	public String prepareMasterJson() throws Exception {
+		return new UpdateMasterJson().prepareMasterJson(newBinder);
+	}
+
+	@Benchmark
+	public Object deleteBookProcessor() throws Exception {
+		return new DeleteBookProcessor().deleteBookProcessor(lastBook);
+	}
+}
@@ -0,0 +1,107 @@
+package com.kirat.solutions.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.util.CatalogQuery;
+import com.kirat.solutions.util.CatalogSnapshot;
+import com.kirat.solutions.util.JsonCodec;
+
+/**
+ * Cost of bringing a node's catalog up to date (parsing test.JSON, encoding and
+ * mapping the snapshot) against a lookup in the mapped snapshot, and of
+ * /getMasterJson written whole against one page of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogSnapshotBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	int books;
+
+	byte[] catalog;
+	BookCatalog parsed;
+	File file;
+	CatalogSnapshot mapped;
+	String lastBook;
+
+	@Setup
+	public void setup() throws Exception {
+		catalog = SyntheticData.catalogJson(books);
+		parsed = JsonCodec.readCatalog(new ByteArrayInputStream(catalog));
+		file = File.createTempFile("catalog", ".snapshot");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(CatalogSnapshot.encode(parsed, 1));
+		} finally {
+			out.close();
+		}
+		mapped = CatalogSnapshot.map(file);
+		lastBook = SyntheticData.bookName(books - 1);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public BookCatalog parseJson() throws Exception {
+		return JsonCodec.readCatalog(new ByteArrayInputStream(catalog));
+	}
+
+	@Benchmark
+	public byte[] encodeSnapshot() {
+		return CatalogSnapshot.encode(parsed, 1);
+	}
+
+	@Benchmark
+	public CatalogSnapshot mapSnapshot() throws IOException {
+		return CatalogSnapshot.map(file);
+	}
+
+	@Benchmark
+	public CatalogEntry lookupMapped() {
+		return mapped.find(lastBook);
+	}
+
+	@Benchmark
+	public void writeWholeCatalog() throws IOException {
+		JsonCodec.writeCatalog(mapped.entries(), NullOutputStream.INSTANCE);
+	}
+
+	@Benchmark
+	public void writePageByName() throws Exception {
+		JsonCodec.writeCatalogPage(CatalogQuery.open(mapped, CatalogQuery.SORT_NAME, null, null, null, 100),
+				NullOutputStream.INSTANCE);
+	}
+
+	@Benchmark
+	public void writePageOfClassification() throws Exception {
+		JsonCodec.writeCatalogPage(
+				CatalogQuery.open(mapped, CatalogQuery.SORT_CLASSIFICATION, "class7", null, null, 100),
+				NullOutputStream.INSTANCE);
+	}
+}
@@ -0,0 +1,112 @@
+package com.kirat.solutions.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.processor.ContentProcessor;
+import com.kirat.solutions.util.FileItException;
+import com.kirat.solutions.util.PageRasterizer;
+
+/**
+ * /imageConvert: whole-document ingest of a new document, of one already
+ * stored and of a new version with one page edited, plus the conversion of
+ * one page to its image: the banded rasterizer ingest uses, and PDFBox's
+ * convertToImage() followed by ImageIO's GIF writer, stage by stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ContentBenchmark {
+
+	@Param({ "1", "10" })
+	int pages;
+
+	LocalCloudStorageConfig storage;
+	byte[] pdf;
+	byte[][] revisions;
+	int revision;
+	PDDocument document;
+	PDPage firstPage;
+	BufferedImage renderedPage;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() throws IOException {
+		storage = LocalCloudStorageConfig.install();
+		pdf = SyntheticData.pdf(pages);
+		revisions = new byte[][] { SyntheticData.pdf(pages, 1, 1), SyntheticData.pdf(pages, 1, 2) };
+		document = PDDocument.load(new ByteArrayInputStream(pdf));
+		firstPage = ((List<PDPage>) document.getDocumentCatalog().getAllPages()).get(0);
+		renderedPage = firstPage.convertToImage();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		document.close();
+	}
+
+	@Benchmark
+	public Object processContentImage() throws FileItException {
+		// forget the stored content so every ingest converts the document
+		storage.clear();
+		return ContentProcessor.getInstance().processContentImage("benchBook", new ByteArrayInputStream(pdf),
+				"benchBook/Images/", "application/pdf");
+	}
+
+	@Benchmark
+	public Object processKnownContentImage() throws FileItException {
+		return ContentProcessor.getInstance().processContentImage("benchBook", new ByteArrayInputStream(pdf),
+				"benchBook/Images/", "application/pdf");
+	}
+
+	@Benchmark
+	public Object processRevisedContentImage() throws FileItException {
+		// each call replaces the other revision, so only the edited page is rendered
+		revision = 1 - revision;
+		return ContentProcessor.getInstance().processContentImage("revisedBook",
+				new ByteArrayInputStream(revisions[revision]), "revisedBook/Images/", "application/pdf");
+	}
+
+	@Benchmark
+	public byte[] rasterizePage() throws IOException, FileItException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		PageRasterizer.newJob().render(firstPage, 1, os);
+		return os.toByteArray();
+	}
+
+	@Benchmark
+	public BufferedImage renderPage() throws IOException {
+		return firstPage.convertToImage();
+	}
+
+	@Benchmark
+	public byte[] encodePage() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ImageIO.write(renderedPage, "gif", os);
+		return os.toByteArray();
+	}
+}
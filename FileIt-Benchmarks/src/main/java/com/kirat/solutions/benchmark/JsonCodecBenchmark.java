@@ -0,0 +1,122 @@
+package com.kirat.solutions.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.json.XML;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.util.JsonCodec;
+
+/**
+ * Streaming codec against the json-simple/org.json code it replaced, without
+ * any storage access. Run with "-prof gc" to compare the bytes allocated per
+ * operation (gc.alloc.rate.norm), e.g.
+ * {@code java -jar benchmarks.jar JsonCodecBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	int entries;
+
+	byte[] catalog;
+	byte[] binderXml;
+	String lastBook;
+
+	@Setup
+	public void setup() {
+		catalog = SyntheticData.catalogJson(entries);
+		lastBook = SyntheticData.bookName(entries - 1);
+		binderXml = SyntheticData.binderXml(lastBook, entries);
+	}
+
+	/**
+	 * Catalog read, one book removed and the catalog serialized for upload, as
+	 * DeleteBookProcessor used to do it.
+	 */
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public byte[] catalogRewriteLegacy() throws Exception {
+		JSONObject array = (JSONObject) new JSONParser()
+				.parse(new InputStreamReader(new ByteArrayInputStream(catalog)));
+		JSONArray jsonArray = (JSONArray) array.get("BookList");
+		for (Iterator<Object> iterator = jsonArray.iterator(); iterator.hasNext();) {
+			if (((JSONObject) iterator.next()).containsKey(lastBook)) {
+				iterator.remove();
+				break;
+			}
+		}
+		JSONObject parentObj = new JSONObject();
+		parentObj.put("BookList", jsonArray);
+		return parentObj.toJSONString().getBytes();
+	}
+
+	@Benchmark
+	public byte[] catalogRewriteCodec() throws Exception {
+		BookCatalog oBookCatalog = JsonCodec.readCatalog(new ByteArrayInputStream(catalog));
+		oBookCatalog.remove(lastBook);
+		return JsonCodec.catalogBytes(oBookCatalog);
+	}
+
+	@Benchmark
+	public Object catalogLookupLegacy() throws Exception {
+		JSONObject array = (JSONObject) new JSONParser()
+				.parse(new InputStreamReader(new ByteArrayInputStream(catalog)));
+		for (Object obj : (JSONArray) array.get("BookList")) {
+			JSONObject book = (JSONObject) obj;
+			if (book.containsKey(lastBook)) {
+				return book;
+			}
+		}
+		return null;
+	}
+
+	@Benchmark
+	public CatalogEntry catalogLookupCodec() throws Exception {
+		return JsonCodec.findCatalogEntry(new ByteArrayInputStream(catalog), lastBook);
+	}
+
+	/**
+	 * Binder XML to response body through org.json, json-simple and the JAX-RS
+	 * Jackson provider, as /getBookTreeDetail used to do it.
+	 */
+	@Benchmark
+	public Object bookTreeLegacy() throws Exception {
+		org.json.JSONObject jsondata = XML.toJSONObject(new String(binderXml));
+		Object json = new JSONParser().parse(jsondata.toString());
+		new ObjectMapper().writeValue(NullOutputStream.INSTANCE, json);
+		return json;
+	}
+
+	@Benchmark
+	public BookTree bookTreeCodec() throws Exception {
+		BookTree oBookTree = JsonCodec.readBookTree(new ByteArrayInputStream(binderXml));
+		JsonCodec.writeBookTree(oBookTree, NullOutputStream.INSTANCE);
+		return oBookTree;
+	}
+}
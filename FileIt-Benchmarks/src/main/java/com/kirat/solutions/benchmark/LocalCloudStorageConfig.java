@@ -0,0 +1,208 @@
+package com.kirat.solutions.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.storage.model.StorageObject;
+import com.kirat.solutions.util.CloudStorageConfig;
+import com.kirat.solutions.util.FileItException;
+
+/**
+ * In-memory stand-in for the storage bucket. Objects are kept as byte arrays
+ * keyed by bucket and object name so the processors can be measured without any
+ * network round trip.
+ */
+public class LocalCloudStorageConfig extends CloudStorageConfig {
+
+	private final Map<String, byte[]> objects = new ConcurrentSkipListMap<String, byte[]>();
+	private final Map<String, Long> generations = new ConcurrentHashMap<String, Long>();
+	private final Map<String, Long> updated = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong nextGeneration = new AtomicLong(1);
+
+	private static String key(String bucketName, String filePath) {
+		return bucketName + '/' + filePath;
+	}
+
+	public synchronized long put(String bucketName, String filePath, byte[] content) {
+		long generation = nextGeneration.getAndIncrement();
+		objects.put(key(bucketName, filePath), content);
+		generations.put(key(bucketName, filePath), generation);
+		updated.put(key(bucketName, filePath), System.currentTimeMillis());
+		return generation;
+	}
+
+	public byte[] get(String bucketName, String filePath) {
+		return objects.get(key(bucketName, filePath));
+	}
+
+	public void clear() {
+		objects.clear();
+		generations.clear();
+		updated.clear();
+	}
+
+	@Override
+	public Long uploadFile(String bucketName, String filePath, InputStream oInputStream, String contentType,
+			Long ifGenerationMatch) throws Exception {
+		try {
+			byte[] content = readFully(oInputStream);
+			if (ifGenerationMatch == null) {
+				return put(bucketName, filePath, content);
+			}
+			synchronized (this) {
+				Long generation = generations.get(key(bucketName, filePath));
+				if (ifGenerationMatch.longValue() != (generation == null ? 0L : generation.longValue())) {
+					return null;
+				}
+				return put(bucketName, filePath, content);
+			}
+		} finally {
+			oInputStream.close();
+		}
+	}
+
+	@Override
+	public Long uploadFile(String bucketName, String filePath, File file, String contentType) throws Exception {
+		return uploadFile(bucketName, filePath, new FileInputStream(file), contentType, null);
+	}
+
+	@Override
+	public void copyFile(String bucketName, String sourcePath, String destinationPath) throws FileItException {
+		byte[] content = get(bucketName, sourcePath);
+		if (content == null) {
+			throw new FileItException("No such object: " + sourcePath);
+		}
+		put(bucketName, destinationPath, content);
+	}
+
+	@Override
+	public InputStream getFile(String bucketName, String filePath) throws Exception {
+		byte[] content = get(bucketName, filePath);
+		if (content == null) {
+			// HttpURLConnection reports a missing object the same way
+			throw new FileNotFoundException(filePath);
+		}
+		return new ByteArrayInputStream(content);
+	}
+
+	@Override
+	public InputStream getFile(String bucketName, String filePath, Long generation) throws Exception {
+		return getFile(bucketName, filePath);
+	}
+
+	@Override
+	public Long getGeneration(String bucketName, String filePath) throws FileItException {
+		return generations.get(key(bucketName, filePath));
+	}
+
+	@Override
+	public StorageObject getMetadata(String bucketName, String filePath) throws FileItException {
+		String key = key(bucketName, filePath);
+		byte[] content = objects.get(key);
+		Long generation = generations.get(key);
+		Long modified = updated.get(key);
+		if (content == null || generation == null || modified == null) {
+			return null;
+		}
+		return new StorageObject().setName(filePath).setGeneration(generation)
+				.setSize(BigInteger.valueOf(content.length)).setUpdated(new DateTime(modified.longValue()));
+	}
+
+	@Override
+	public String getSignedString(String bucketName, String filePath) throws Exception {
+		return "http://localhost/" + bucketName + '/' + filePath + "?Signature=local";
+	}
+
+	@Override
+	public List<String> getSignedStrings(String bucketName, List<String> filePaths) throws Exception {
+		List<String> urls = new ArrayList<String>(filePaths.size());
+		for (String filePath : filePaths) {
+			urls.add(getSignedString(bucketName, filePath));
+		}
+		return urls;
+	}
+
+	@Override
+	public void deleteFile(String bucketName, String fileName) throws FileItException {
+		objects.remove(key(bucketName, fileName));
+		generations.remove(key(bucketName, fileName));
+		updated.remove(key(bucketName, fileName));
+	}
+
+	@Override
+	public List<String> listBucket(String bucketName) throws FileItException {
+		List<String> list = new ArrayList<String>();
+		String prefix = bucketName + '/';
+		for (String name : objects.keySet()) {
+			if (name.startsWith(prefix)) {
+				list.add(name.substring(prefix.length()));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public Map<String, StorageObject> listObjects(String bucketName, String prefix) throws FileItException {
+		Map<String, StorageObject> listed = new LinkedHashMap<String, StorageObject>();
+		for (String name : listBucket(bucketName)) {
+			if (name.startsWith(prefix)) {
+				StorageObject o = getMetadata(bucketName, name);
+				if (o != null) {
+					listed.put(name, o);
+				}
+			}
+		}
+		return listed;
+	}
+
+	@Override
+	public synchronized boolean deleteIfExists(String bucketName, String fileName, Long ifGenerationMatch)
+			throws FileItException {
+		Long generation = generations.get(key(bucketName, fileName));
+		if (generation == null || ifGenerationMatch != null && !ifGenerationMatch.equals(generation)) {
+			return false;
+		}
+		generations.remove(key(bucketName, fileName));
+		updated.remove(key(bucketName, fileName));
+		return objects.remove(key(bucketName, fileName)) != null;
+	}
+
+	@Override
+	public void downloadFile(String bucketName, String fileName, String destinationDirectory)
+			throws FileItException {
+		throw new FileItException("downloadFile is not supported by the local stand-in");
+	}
+
+	/**
+	 * Installs a fresh stand-in as the shared storage client.
+	 */
+	public static LocalCloudStorageConfig install() {
+		LocalCloudStorageConfig storage = new LocalCloudStorageConfig();
+		CloudStorageConfig.setInstance(storage);
+		return storage;
+	}
+
+	static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			baos.write(buffer, 0, read);
+		}
+		return baos.toByteArray();
+	}
+}
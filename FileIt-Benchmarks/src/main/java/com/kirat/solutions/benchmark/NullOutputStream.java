@@ -0,0 +1,22 @@
+package com.kirat.solutions.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * Discards everything written to it, standing in for a response body.
+ */
+final class NullOutputStream extends OutputStream {
+
+	static final NullOutputStream INSTANCE = new NullOutputStream();
+
+	private NullOutputStream() {
+	}
+
+	@Override
+	public void write(int b) {
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+	}
+}
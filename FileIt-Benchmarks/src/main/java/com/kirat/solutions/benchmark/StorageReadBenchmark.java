@@ -0,0 +1,139 @@
+package com.kirat.solutions.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.util.StorageReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Latency distribution of a signed-URL read against a bucket that misbehaves:
+ * a local HTTP server answers most GETs after a few milliseconds, stalls
+ * slowPercent of them for {@link #STALL_MILLIS} and fails errorPercent with a
+ * 503. The bare connection getFile used to open waits out every stall and
+ * fails on every 503; {@link StorageReader} hedges the stalls and retries the
+ * errors. Compare the p0.99 and p0.999 lines of the two; a failed bare read
+ * is counted at the time it took to fail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class StorageReadBenchmark {
+
+	static final long BASE_MILLIS = 2;
+	static final long STALL_MILLIS = 300;
+	static final int BODY_BYTES = 4096;
+
+	@Param({ "3" })
+	int slowPercent;
+
+	@Param({ "1" })
+	int errorPercent;
+
+	HttpServer server;
+	ExecutorService executor;
+	StorageReader reader;
+	String url;
+
+	@Setup
+	public void setup() throws IOException {
+		final byte[] body = new byte[BODY_BYTES];
+		final Random random = new Random(42);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 512);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int roll;
+				synchronized (random) {
+					roll = random.nextInt(100);
+				}
+				try {
+					Thread.sleep(roll < slowPercent ? STALL_MILLIS : BASE_MILLIS);
+					if (roll >= slowPercent && roll < slowPercent + errorPercent) {
+						exchange.sendResponseHeaders(503, -1);
+					} else {
+						exchange.sendResponseHeaders(200, body.length);
+						OutputStream out = exchange.getResponseBody();
+						out.write(body);
+						out.close();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		executor = Executors.newFixedThreadPool(32);
+		server.setExecutor(executor);
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/1dvaultdata/test.JSON";
+		reader = new StorageReader(2000, 30000, 3, true, 0, 10000);
+	}
+
+	@TearDown
+	public void tearDown() {
+		reader.shutdown();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * What sendGet did before: no timeouts, no retries.
+	 */
+	@Benchmark
+	public int bareConnection() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+		con.setRequestMethod("GET");
+		try {
+			return drain(con.getInputStream());
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	@Benchmark
+	public int storageReader() throws IOException {
+		return drain(reader.get("getFile", "1dvaultdata", url, null).getInputStream());
+	}
+
+	private static int drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[8192];
+		int total = 0;
+		int read;
+		try {
+			while ((read = in.read(buffer)) != -1) {
+				total += read;
+			}
+		} finally {
+			in.close();
+		}
+		return total;
+	}
+}
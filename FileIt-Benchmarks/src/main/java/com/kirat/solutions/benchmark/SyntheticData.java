@@ -0,0 +1,127 @@
+package com.kirat.solutions.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Generates the binders, catalogs and documents the benchmarks run against. The
+ * shapes match what the UI sends and what the processors write to the bucket.
+ */
+public final class SyntheticData {
+
+	public static final String BUCKET = "1dvaultdata";
+	public static final String MASTER_JSON = "test.JSON";
+
+	private SyntheticData() {
+	}
+
+	public static String bookName(int i) {
+		return "book" + i;
+	}
+
+	/**
+	 * Binder definition as posted to /binder/create in htmlContent.
+	 */
+	public static String binderJson(String name, int children) {
+		StringBuilder sb = new StringBuilder(128 + children * 128);
+		sb.append("{\"id\": 1,\"name\": \"").append(name).append("\",\"classification\": \"Engineering\",\"children\": [");
+		for (int i = 0; i < children; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"id\": ").append(i + 2).append(",\"name\": \"child").append(i)
+					.append("\",\"path\": \"E:/docs/child").append(i)
+					.append(".pdf\",\"type\": \"application/pdf\",\"version\": \"1.0\",\"note\":\"note ").append(i)
+					.append("\"}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	/**
+	 * Master catalog (test.JSON) holding the given number of books.
+	 */
+	public static byte[] catalogJson(int books) {
+		StringBuilder sb = new StringBuilder(32 + books * 128);
+		sb.append("{\"BookList\":[");
+		for (int i = 0; i < books; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			String name = bookName(i);
+			sb.append("{\"").append(name).append("\":{\"Name\":\"").append(name)
+					.append("\",\"Classification\":\"Class").append(i % 16).append("\",\"Path\":\"files/").append(name)
+					.append(".xml\"}}");
+		}
+		sb.append("]}");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Binder XML in the layout written by TransformationProcessor.
+	 */
+	public static byte[] binderXml(String name, int children) {
+		StringBuilder sb = new StringBuilder(256 + children * 160);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><map id=\"")
+				.append("0b6c6a1e-3d2f-4c55-9b7e-4f1f0c2a9d10").append("\"><title/><body><topicref classification=\"Engineering\" id=\"topicref\" navtitle=\"")
+				.append(name).append("\" type=\"Binder\">");
+		for (int i = 0; i < children; i++) {
+			sb.append("<topic id=\"").append(i + 2).append("\" name=\"child").append(i).append("\" path=\"Images/")
+					.append(name).append("/child").append(i).append("\" type=\"application/pdf\" version=\"1.0\"/>");
+		}
+		sb.append("</topicref></body></map>");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Small text-only PDF with the given number of pages.
+	 */
+	public static byte[] pdf(int pages) throws IOException {
+		return pdf(pages, 0, 0);
+	}
+
+	/**
+	 * Revision of {@link #pdf(int)} where one page has been edited.
+	 */
+	public static byte[] pdf(int pages, int editedPage, int revision) throws IOException {
+		PDDocument document = new PDDocument();
+		try {
+			for (int i = 1; i <= pages; i++) {
+				PDPage page = new PDPage();
+				document.addPage(page);
+				PDPageContentStream contentStream = new PDPageContentStream(document, page);
+				contentStream.beginText();
+				contentStream.setFont(PDType1Font.HELVETICA, 12);
+				contentStream.moveTextPositionByAmount(72, 700);
+				contentStream.drawString("Synthetic benchmark page " + i + (i == editedPage ? " rev " + revision : ""));
+				contentStream.endText();
+				contentStream.close();
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			document.save(baos);
+			return baos.toByteArray();
+		} catch (org.apache.pdfbox.exceptions.COSVisitorException e) {
+			throw new IOException(e);
+		} finally {
+			document.close();
+		}
+	}
+
+	/**
+	 * Stand-in populated with a catalog of the given size and one binder XML per
+	 * catalog entry for the book that is looked up.
+	 */
+	public static LocalCloudStorageConfig populate(int books, int children) {
+		LocalCloudStorageConfig storage = LocalCloudStorageConfig.install();
+		storage.put(BUCKET, MASTER_JSON, catalogJson(books));
+		String lastBook = bookName(books - 1);
+		storage.put(BUCKET, "files/" + lastBook + ".xml", binderXml(lastBook, children));
+		return storage;
+	}
+}
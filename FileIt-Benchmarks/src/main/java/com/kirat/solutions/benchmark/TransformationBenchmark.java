@@ -0,0 +1,55 @@
+package com.kirat.solutions.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.domain.BinderList;
+import com.kirat.solutions.processor.TransformationProcessor;
+import com.kirat.solutions.util.FileItException;
+
+/**
+ * Binder creation: parsing the posted binder definition and writing the binder
+ * XML to storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformationBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	int children;
+
+	String htmlContent;
+	BinderList binderList;
+
+	@Setup
+	public void setup() throws FileItException {
+		LocalCloudStorageConfig.install();
+		htmlContent = SyntheticData.binderJson("benchBinder", children);
+		binderList = new TransformationProcessor().createBinderList(htmlContent);
+	}
+
+	@Benchmark
+	public BinderList createBinderList() throws FileItException {
+		return new TransformationProcessor().createBinderList(htmlContent);
+	}
+
+	@Benchmark
+	public void prepareBinderXML() throws FileItException {
+		new TransformationProcessor().prepareBinderXML(binderList);
+	}
+}
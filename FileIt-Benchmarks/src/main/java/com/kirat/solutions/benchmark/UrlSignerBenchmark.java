@@ -0,0 +1,109 @@
+package com.kirat.solutions.benchmark;
+
+import java.net.URLEncoder;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kirat.solutions.util.UrlSigner;
+
+/**
+ * Signed URLs per second: {@link UrlSigner} against the per-call key parsing
+ * and Signature lookup getSignedString used to do, and a /getImage sized
+ * batch signed on signerThreads threads. Single-threaded results are
+ * signatures per second per core; compare signBatch across signerThreads to
+ * see how a batch scales with the cores of the machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlSignerBenchmark {
+
+	static final int BATCH = 200;
+	static final String API_URL = "https://storage.googleapis.com";
+	static final String BUCKET = "1dvaultdata";
+	static final String ACCOUNT = "fileit@example.iam.gserviceaccount.com";
+
+	@Param({ "1", "4" })
+	int signerThreads;
+
+	String pkcs8;
+	UrlSigner signer;
+	List<String> paths;
+	long expires;
+	int next;
+
+	@Setup
+	public void setup() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		PrivateKey privateKey = generator.generateKeyPair().getPrivate();
+		pkcs8 = Base64.getEncoder().encodeToString(privateKey.getEncoded());
+		signer = new UrlSigner(privateKey, API_URL, BUCKET, ACCOUNT, signerThreads);
+		paths = new ArrayList<String>(BATCH);
+		for (int i = 1; i <= BATCH; i++) {
+			paths.add("pages/3f5a0c9e7d2b4a61/r1/" + i + ".gif");
+		}
+		expires = System.currentTimeMillis() / 1000 + 20000;
+	}
+
+	@TearDown
+	public void tearDown() {
+		signer.shutdown();
+	}
+
+	@Benchmark
+	public String sign() throws Exception {
+		next = (next + 1) % BATCH;
+		return signer.sign(paths.get(next), expires);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<String> signBatch() throws Exception {
+		return signer.signAll(paths, expires);
+	}
+
+	/**
+	 * getSignedString before the signer: the key parsed and a Signature looked
+	 * up for every URL.
+	 */
+	@Benchmark
+	public String signLegacy() throws Exception {
+		next = (next + 1) % BATCH;
+		String path = paths.get(next);
+		String expiry = Long.toString(expires);
+		String stringToSign = "GET" + "\n" + "" + "\n" + "" + "\n" + expiry + "\n" + '/' + BUCKET + '/' + path;
+		PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(Base64.getDecoder().decode(pkcs8));
+		PrivateKey privateKey = KeyFactory.getInstance("RSA").generatePrivate(spec);
+		Signature signature = Signature.getInstance("SHA256withRSA");
+		signature.initSign(privateKey);
+		signature.update(stringToSign.getBytes("UTF-8"));
+		String signed = URLEncoder.encode(Base64.getEncoder().encodeToString(signature.sign()), "UTF-8");
+		return API_URL + '/' + BUCKET + '/' + path + "?GoogleAccessId=" + ACCOUNT + "&Expires=" + expiry
+				+ "&Signature=" + signed;
+	}
+}
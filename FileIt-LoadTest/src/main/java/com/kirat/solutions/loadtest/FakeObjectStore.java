@@ -0,0 +1,451 @@
+package com.kirat.solutions.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP fake of the storage bucket. It answers the three protocols
+ * CloudStorageConfig speaks: the OAuth token exchange, the JSON API (list,
+ * metadata, copy, compose, and delete and resumable insert with
+ * ifGenerationMatch) and the signed-URL GET, with its ETag and If-None-Match.
+ * Every request can be delayed to model the latency of the real bucket.
+ */
+public class FakeObjectStore implements HttpHandler {
+
+	private static final String JSON_API = "/storage/v1/b/";
+	private static final String UPLOAD_API = "/upload/storage/v1/b/";
+	public static final String TOKEN_PATH = "/token";
+
+	static class StoredObject {
+		final byte[] content;
+		final String contentType;
+		final long generation;
+		final long updated;
+
+		StoredObject(byte[] content, String contentType, long generation) {
+			this.content = content;
+			this.contentType = contentType;
+			this.generation = generation;
+			this.updated = System.currentTimeMillis();
+		}
+	}
+
+	static class UploadSession {
+		final String bucket;
+		final String name;
+		final String contentType;
+		final Long ifGenerationMatch;
+		final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+		UploadSession(String bucket, String name, String contentType, Long ifGenerationMatch) {
+			this.bucket = bucket;
+			this.name = name;
+			this.contentType = contentType;
+			this.ifGenerationMatch = ifGenerationMatch;
+		}
+	}
+
+	private final Map<String, StoredObject> objects = new ConcurrentSkipListMap<String, StoredObject>();
+	private final Map<String, UploadSession> sessions = new ConcurrentHashMap<String, UploadSession>();
+	private final AtomicLong generations = new AtomicLong(1);
+	private final AtomicLong requests = new AtomicLong();
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final Random random = new Random();
+	private final long latencyMillis;
+	private final long jitterMillis;
+	private volatile int failChunkEvery;
+	private final AtomicLong chunks = new AtomicLong();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param latencyMillis
+	 *            fixed delay added to every request
+	 * @param jitterMillis
+	 *            upper bound of a uniformly distributed extra delay
+	 */
+	public FakeObjectStore(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+	}
+
+	public void start(int port, int threads) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 512);
+		server.createContext("/", this);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	public String getBaseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Makes every nth upload chunk fail with a 503 after half of it has been
+	 * committed, 0 to stop.
+	 */
+	public void setFailChunkEvery(int n) {
+		failChunkEvery = n;
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public int getObjectCount() {
+		return objects.size();
+	}
+
+	public void put(String bucket, String name, byte[] content, String contentType) {
+		store(bucket, name, content, contentType, null);
+	}
+
+	public byte[] get(String bucket, String name) {
+		StoredObject object = objects.get(bucket + '/' + name);
+		return object == null ? null : object.content;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			injectLatency();
+			String path = exchange.getRequestURI().getRawPath();
+			String method = exchange.getRequestMethod();
+			if (path.equals(TOKEN_PATH)) {
+				drain(exchange);
+				Map<String, Object> token = new LinkedHashMap<String, Object>();
+				token.put("access_token", "fake-token");
+				token.put("token_type", "Bearer");
+				token.put("expires_in", 3600);
+				sendJson(exchange, 200, token);
+			} else if (path.startsWith(UPLOAD_API)) {
+				handleUpload(exchange, method, path.substring(UPLOAD_API.length()));
+			} else if (path.startsWith(JSON_API)) {
+				handleJsonApi(exchange, method, path.substring(JSON_API.length()));
+			} else if (method.equals("GET")) {
+				// signed URL: /<bucket>/<object>?GoogleAccessId=..&Expires=..&Signature=..
+				String objectPath = URLDecoder.decode(path.substring(1), "UTF-8");
+				StoredObject object = objects.get(objectPath);
+				if (object == null) {
+					send(exchange, 404, "text/plain", "No such object".getBytes("UTF-8"));
+				} else {
+					// the XML API validators the object cache revalidates with
+					String etag = '"' + Long.toHexString(object.generation) + '"';
+					exchange.getResponseHeaders().set("ETag", etag);
+					exchange.getResponseHeaders().set("x-goog-generation", String.valueOf(object.generation));
+					if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+						send(exchange, 304, null, null);
+					} else {
+						send(exchange, 200, object.contentType, object.content);
+					}
+				}
+			} else {
+				send(exchange, 405, "text/plain", new byte[0]);
+			}
+		} catch (Exception e) {
+			send(exchange, 500, "text/plain", String.valueOf(e).getBytes("UTF-8"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handleJsonApi(HttpExchange exchange, String method, String rest) throws IOException {
+		Map<String, String> query = query(exchange);
+		int slash = rest.indexOf("/o");
+		String bucket = URLDecoder.decode(rest.substring(0, slash), "UTF-8");
+		String objectPart = rest.substring(slash + 2);
+		if (objectPart.isEmpty() || objectPart.equals("/")) {
+			// objects.list
+			String prefix = query.containsKey("prefix") ? query.get("prefix") : "";
+			List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+			String bucketPrefix = bucket + '/' + prefix;
+			for (Map.Entry<String, StoredObject> entry : objects.entrySet()) {
+				if (entry.getKey().startsWith(bucketPrefix)) {
+					items.add(metadata(bucket, entry.getKey().substring(bucket.length() + 1), entry.getValue()));
+				}
+			}
+			Map<String, Object> list = new LinkedHashMap<String, Object>();
+			list.put("kind", "storage#objects");
+			list.put("items", items);
+			sendJson(exchange, 200, list);
+			return;
+		}
+		if (method.equals("POST") && objectPart.endsWith("/compose")) {
+			// objects.compose: /<destination>/compose with the source names in the body
+			Map<String, Object> request = objectMapper.readValue(drain(exchange), Map.class);
+			String name = URLDecoder.decode(objectPart.substring(1, objectPart.length() - "/compose".length()),
+					"UTF-8");
+			ByteArrayOutputStream composed = new ByteArrayOutputStream();
+			for (Map<String, Object> source : (List<Map<String, Object>>) request.get("sourceObjects")) {
+				StoredObject part = objects.get(bucket + '/' + source.get("name"));
+				if (part == null) {
+					sendJson(exchange, 404, error(404, "No such object: " + source.get("name")));
+					return;
+				}
+				composed.write(part.content);
+			}
+			Map<String, Object> destination = (Map<String, Object>) request.get("destination");
+			StoredObject object = store(bucket, name, composed.toByteArray(),
+					destination == null ? null : (String) destination.get("contentType"), null);
+			sendJson(exchange, 200, metadata(bucket, name, object));
+			return;
+		}
+		int copyTo = objectPart.indexOf("/copyTo/b/");
+		if (method.equals("POST") && copyTo > 0) {
+			// objects.copy: /<source>/copyTo/b/<bucket>/o/<destination>
+			drain(exchange);
+			String source = URLDecoder.decode(objectPart.substring(1, copyTo), "UTF-8");
+			String target = objectPart.substring(copyTo + "/copyTo/b/".length());
+			String targetBucket = URLDecoder.decode(target.substring(0, target.indexOf("/o/")), "UTF-8");
+			String targetName = URLDecoder.decode(target.substring(target.indexOf("/o/") + 3), "UTF-8");
+			StoredObject object = objects.get(bucket + '/' + source);
+			if (object == null) {
+				sendJson(exchange, 404, error(404, "No such object: " + source));
+				return;
+			}
+			StoredObject copy = store(targetBucket, targetName, object.content, object.contentType, null);
+			sendJson(exchange, 200, metadata(targetBucket, targetName, copy));
+			return;
+		}
+		String name = URLDecoder.decode(objectPart.substring(1), "UTF-8");
+		String key = bucket + '/' + name;
+		if (method.equals("DELETE")) {
+			send(exchange, remove(key, query.get("ifGenerationMatch")), "text/plain", null);
+		} else if (method.equals("GET")) {
+			StoredObject object = objects.get(key);
+			if (object == null) {
+				sendJson(exchange, 404, error(404, "No such object: " + key));
+			} else if ("media".equals(query.get("alt"))) {
+				send(exchange, 200, object.contentType, object.content);
+			} else {
+				sendJson(exchange, 200, metadata(bucket, name, object));
+			}
+		} else {
+			send(exchange, 405, "text/plain", new byte[0]);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handleUpload(HttpExchange exchange, String method, String rest) throws IOException {
+		Map<String, String> query = query(exchange);
+		String uploadId = query.get("upload_id");
+		if (method.equals("POST") && uploadId == null) {
+			// start of a resumable session; name comes either as query or metadata
+			String bucket = URLDecoder.decode(rest.substring(0, rest.indexOf("/o")), "UTF-8");
+			byte[] body = drain(exchange);
+			String name = query.get("name");
+			String contentType = exchange.getRequestHeaders().getFirst("X-Upload-Content-Type");
+			if (body.length > 0) {
+				Map<String, Object> metadata = objectMapper.readValue(body, Map.class);
+				if (name == null) {
+					name = (String) metadata.get("name");
+				}
+				if (metadata.get("contentType") != null) {
+					contentType = (String) metadata.get("contentType");
+				}
+			}
+			String id = UUID.randomUUID().toString();
+			String ifGenerationMatch = query.get("ifGenerationMatch");
+			sessions.put(id, new UploadSession(bucket, name, contentType,
+					ifGenerationMatch == null ? null : Long.valueOf(ifGenerationMatch)));
+			exchange.getResponseHeaders().set("Location",
+					getBaseUrl() + UPLOAD_API + rest + "?uploadType=resumable&upload_id=" + id);
+			send(exchange, 200, "text/plain", new byte[0]);
+			return;
+		}
+		UploadSession session = uploadId == null ? null : sessions.get(uploadId);
+		if (session == null) {
+			sendJson(exchange, 404, error(404, "Unknown upload session"));
+			return;
+		}
+		byte[] chunk = drain(exchange);
+		String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+		long total = -1;
+		if (contentRange != null) {
+			String totalPart = contentRange.substring(contentRange.indexOf('/') + 1).trim();
+			if (!totalPart.equals("*")) {
+				total = Long.parseLong(totalPart);
+			}
+		}
+		synchronized (session) {
+			int failEvery = failChunkEvery;
+			if (failEvery > 0 && chunk.length > 1 && chunks.incrementAndGet() % failEvery == 0) {
+				session.received.write(chunk, 0, chunk.length / 2);
+				send(exchange, 503, "text/plain", "Injected failure".getBytes("UTF-8"));
+				return;
+			}
+			session.received.write(chunk);
+			if (total < 0 || session.received.size() < total) {
+				if (session.received.size() > 0) {
+					exchange.getResponseHeaders().set("Range", "bytes=0-" + (session.received.size() - 1));
+				}
+				send(exchange, 308, "text/plain", new byte[0]);
+				return;
+			}
+		}
+		sessions.remove(uploadId);
+		StoredObject object = store(session.bucket, session.name, session.received.toByteArray(), session.contentType,
+				session.ifGenerationMatch);
+		if (object == null) {
+			sendJson(exchange, 412, error(412, "Precondition Failed"));
+			return;
+		}
+		sendJson(exchange, 200, metadata(session.bucket, session.name, object));
+	}
+
+	/**
+	 * @return the status of the delete: 404 when missing, 412 when
+	 *         ifGenerationMatch did not match
+	 */
+	private synchronized int remove(String key, String ifGenerationMatch) {
+		StoredObject current = objects.get(key);
+		if (current == null) {
+			return 404;
+		}
+		if (ifGenerationMatch != null && Long.parseLong(ifGenerationMatch) != current.generation) {
+			return 412;
+		}
+		objects.remove(key);
+		return 204;
+	}
+
+	/**
+	 * @return the object stored, or null when ifGenerationMatch did not match
+	 */
+	private synchronized StoredObject store(String bucket, String name, byte[] content, String contentType,
+			Long ifGenerationMatch) {
+		String key = bucket + '/' + name;
+		if (ifGenerationMatch != null) {
+			StoredObject current = objects.get(key);
+			if (ifGenerationMatch.longValue() != (current == null ? 0L : current.generation)) {
+				return null;
+			}
+		}
+		StoredObject object = new StoredObject(content, contentType, generations.getAndIncrement());
+		objects.put(key, object);
+		return object;
+	}
+
+	private Map<String, Object> metadata(String bucket, String name, StoredObject object) {
+		Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+		metadata.put("kind", "storage#object");
+		metadata.put("bucket", bucket);
+		metadata.put("name", name);
+		metadata.put("contentType", object.contentType);
+		metadata.put("size", String.valueOf(object.content.length));
+		metadata.put("generation", String.valueOf(object.generation));
+		metadata.put("etag", Long.toHexString(object.generation));
+		metadata.put("updated", Instant.ofEpochMilli(object.updated).toString());
+		return metadata;
+	}
+
+	private static Map<String, Object> error(int code, String message) {
+		Map<String, Object> error = new LinkedHashMap<String, Object>();
+		error.put("code", code);
+		error.put("message", message);
+		Map<String, Object> body = new HashMap<String, Object>();
+		body.put("error", error);
+		return body;
+	}
+
+	private void injectLatency() throws InterruptedException {
+		long delay = latencyMillis;
+		if (jitterMillis > 0) {
+			synchronized (random) {
+				delay += (long) (random.nextDouble() * jitterMillis);
+			}
+		}
+		if (delay > 0) {
+			Thread.sleep(delay);
+		}
+	}
+
+	private static Map<String, String> query(HttpExchange exchange) throws IOException {
+		Map<String, String> params = new HashMap<String, String>();
+		String rawQuery = exchange.getRequestURI().getRawQuery();
+		if (rawQuery != null) {
+			for (String pair : rawQuery.split("&")) {
+				int eq = pair.indexOf('=');
+				if (eq > 0) {
+					params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+							URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+				}
+			}
+		}
+		return params;
+	}
+
+	private static byte[] drain(HttpExchange exchange) throws IOException {
+		// read the raw body to the end first, or HttpServer drops the keep-alive connection
+		byte[] body = readFully(exchange.getRequestBody());
+		if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			// the Google HTTP client compresses metadata and media bodies
+			body = readFully(new GZIPInputStream(new ByteArrayInputStream(body)));
+		}
+		return body;
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			baos.write(buffer, 0, read);
+		}
+		return baos.toByteArray();
+	}
+
+	private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+		send(exchange, status, "application/json; charset=UTF-8", objectMapper.writeValueAsBytes(body));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		if (contentType != null) {
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+		}
+		if (body == null || body.length == 0) {
+			// writing to an empty response makes HttpServer drop the keep-alive connection
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+}
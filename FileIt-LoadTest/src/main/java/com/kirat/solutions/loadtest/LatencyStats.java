@@ -0,0 +1,71 @@
+package com.kirat.solutions.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latencies of one operation recorded by one client thread. Instances are
+ * merged once the run is over, so recording needs no synchronization.
+ */
+public class LatencyStats {
+
+	private long[] nanos = new long[1024];
+	private int count;
+	private int errors;
+
+	public void record(long elapsedNanos, boolean success) {
+		if (count == nanos.length) {
+			nanos = Arrays.copyOf(nanos, count * 2);
+		}
+		nanos[count++] = elapsedNanos;
+		if (!success) {
+			errors++;
+		}
+	}
+
+	public void merge(LatencyStats other) {
+		for (int i = 0; i < other.count; i++) {
+			record(other.nanos[i], true);
+		}
+		errors += other.errors;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Summary with throughput and latency percentiles in milliseconds.
+	 */
+	public Map<String, Object> summarize(double seconds) {
+		long[] sorted = Arrays.copyOf(nanos, count);
+		Arrays.sort(sorted);
+		Map<String, Object> summary = new LinkedHashMap<String, Object>();
+		summary.put("count", count);
+		summary.put("errors", errors);
+		summary.put("throughputPerSec", round(count / seconds));
+		summary.put("p50Ms", percentile(sorted, 0.50));
+		summary.put("p90Ms", percentile(sorted, 0.90));
+		summary.put("p99Ms", percentile(sorted, 0.99));
+		summary.put("p999Ms", percentile(sorted, 0.999));
+		summary.put("maxMs", count == 0 ? 0.0 : round(sorted[count - 1] / 1e6));
+		return summary;
+	}
+
+	private static double percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return 0.0;
+		}
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return round(sorted[Math.max(0, index)] / 1e6);
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 100) / 100.0;
+	}
+}
@@ -0,0 +1,205 @@
+package com.kirat.solutions.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Issues one request per call against the booted endpoints, the way the UI
+ * does. A call succeeds on a 2xx answer that does not carry a
+ * BusinessErrorData body (the exception mapper answers errors with 200).
+ * A 429 counts as a failure, and the client that got it waits out the
+ * Retry-After in {@link #backOff(long)} before its next request. Each client
+ * accepts gzip and revalidates the catalog with the last entity tag it saw,
+ * so a 304 counts as a success.
+ */
+public class LoadClient {
+
+	private static final AtomicInteger CREATED = new AtomicInteger();
+	private static final ThreadLocal<long[]> RETRY_AFTER = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+	private static final ThreadLocal<String[]> MASTER_JSON_TAG = new ThreadLocal<String[]>() {
+		@Override
+		protected String[] initialValue() {
+			return new String[1];
+		}
+	};
+
+	private final String baseUrl;
+	private final int books;
+	private final byte[] uploadPdf;
+
+	public LoadClient(String baseUrl, int books, byte[] uploadPdf) {
+		this.baseUrl = baseUrl;
+		this.books = books;
+		this.uploadPdf = uploadPdf;
+	}
+
+	public boolean execute(Operation operation) throws IOException {
+		String book = Seeder.bookName(ThreadLocalRandom.current().nextInt(books));
+		switch (operation) {
+		case CREATE:
+			String name = "loadBook" + CREATED.incrementAndGet();
+			String htmlContent = Seeder.binderJson(name, 5).replace("\"", "\\\"");
+			return post("/binder/create", "application/json", json("htmlContent", htmlContent));
+		case GET_IMAGE:
+			return post("/binder/getImage", "application/json", json("bookName", book));
+		case GET_BOOK_TREE_DETAIL:
+			return post("/binder/getBookTreeDetail", "text/plain", book.getBytes(StandardCharsets.UTF_8));
+		case SEARCH_BOOK:
+			return post("/binder/searchBook", "application/json", json("bookName", book));
+		case IMAGE_CONVERT:
+			return imageConvert(book);
+		case GET_MASTER_JSON:
+			return pollMasterJson();
+		default:
+			throw new IllegalArgumentException(operation.getName());
+		}
+	}
+
+	private boolean pollMasterJson() throws IOException {
+		HttpURLConnection connection = open("/helloworld/getMasterJson", "GET", null);
+		String[] tag = MASTER_JSON_TAG.get();
+		if (tag[0] != null) {
+			connection.setRequestProperty("If-None-Match", tag[0]);
+		}
+		boolean succeeded = send(connection, null);
+		if (succeeded && connection.getHeaderField("ETag") != null) {
+			tag[0] = connection.getHeaderField("ETag");
+		}
+		return succeeded;
+	}
+
+	private boolean imageConvert(String book) throws IOException {
+		String boundary = "----fileit" + UUID.randomUUID().toString().replace("-", "");
+		ByteArrayOutputStream body = new ByteArrayOutputStream(uploadPdf.length + 1024);
+		part(body, boundary, "bookName", null, book.getBytes(StandardCharsets.UTF_8));
+		part(body, boundary, "path", null, (book + "/Images/").getBytes(StandardCharsets.UTF_8));
+		part(body, boundary, "type", null, "application/pdf".getBytes(StandardCharsets.UTF_8));
+		part(body, boundary, "file", "upload.pdf", uploadPdf);
+		body.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		return post("/binder/imageConvert", "multipart/form-data; boundary=" + boundary, body.toByteArray());
+	}
+
+	private static void part(ByteArrayOutputStream body, String boundary, String name, String fileName,
+			byte[] content) throws IOException {
+		StringBuilder header = new StringBuilder();
+		header.append("--").append(boundary).append("\r\n");
+		header.append("Content-Disposition: form-data; name=\"").append(name).append('"');
+		if (fileName != null) {
+			header.append("; filename=\"").append(fileName).append('"');
+		}
+		header.append("\r\n");
+		header.append("Content-Type: ").append(fileName != null ? "application/pdf" : "text/plain").append("\r\n\r\n");
+		body.write(header.toString().getBytes(StandardCharsets.UTF_8));
+		body.write(content);
+		body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Polls /health/ready the way a load balancer would before sending traffic.
+	 */
+	public void awaitReady(long timeoutMillis) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			HttpURLConnection connection = open("/health/ready", "GET", null);
+			int status = connection.getResponseCode();
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			String response = in == null ? "" : new String(readFully(in), StandardCharsets.UTF_8);
+			if (status == 200) {
+				System.out.println("Server ready: " + response);
+				return;
+			}
+			if (System.currentTimeMillis() > deadline) {
+				throw new IOException("Server not ready after " + timeoutMillis + " ms: " + response);
+			}
+			Thread.sleep(200);
+		}
+	}
+
+	private static byte[] json(String field, String value) {
+		return ("{\"" + field + "\":\"" + value + "\"}").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private boolean post(String path, String contentType, byte[] body) throws IOException {
+		return send(open(path, "POST", contentType), body);
+	}
+
+	private HttpURLConnection open(String path, String method, String contentType) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(10000);
+		connection.setReadTimeout(120000);
+		connection.setRequestProperty("Accept", "application/json");
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (contentType != null) {
+			connection.setRequestProperty("Content-Type", contentType);
+			connection.setDoOutput(true);
+		}
+		return connection;
+	}
+
+	/**
+	 * Sleeps out the Retry-After of this thread's last rejected request, but
+	 * not past stopAt (System.nanoTime()).
+	 */
+	public void backOff(long stopAt) throws InterruptedException {
+		long[] retryAfter = RETRY_AFTER.get();
+		long millis = Math.min(retryAfter[0], TimeUnit.NANOSECONDS.toMillis(stopAt - System.nanoTime()));
+		retryAfter[0] = 0;
+		if (millis > 0) {
+			Thread.sleep(millis);
+		}
+	}
+
+	private static boolean send(HttpURLConnection connection, byte[] body) throws IOException {
+		if (body != null) {
+			connection.setFixedLengthStreamingMode(body.length);
+			OutputStream out = connection.getOutputStream();
+			out.write(body);
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		if (status == 429) {
+			String retryAfter = connection.getHeaderField("Retry-After");
+			RETRY_AFTER.get()[0] = TimeUnit.SECONDS.toMillis(retryAfter == null ? 1 : Long.parseLong(retryAfter.trim()));
+		}
+		if (status == 304) {
+			readFully(connection.getInputStream());
+			return true;
+		}
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (in != null && "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+			in = new GZIPInputStream(in);
+		}
+		String response = in == null ? "" : new String(readFully(in), StandardCharsets.UTF_8);
+		return status >= 200 && status < 300 && !response.contains("\"errorId\"");
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				baos.write(buffer, 0, read);
+			}
+			return baos.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
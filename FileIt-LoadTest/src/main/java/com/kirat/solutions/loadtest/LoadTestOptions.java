@@ -0,0 +1,100 @@
+package com.kirat.solutions.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Command line options of the load test. Every option has the form
+ * {@code --name=value}; see {@link #usage()}.
+ */
+public class LoadTestOptions {
+
+	int port = 0;
+	int serverThreads = 200;
+	int storageThreads = 64;
+	int clients = 16;
+	int warmupSeconds = 10;
+	int durationSeconds = 60;
+	int books = 1000;
+	int pagesPerBook = 20;
+	int uploadPages = 5;
+	long storageLatencyMillis = 0;
+	long storageJitterMillis = 0;
+	String bucket = "1dvaultdata";
+	String webContent = "../FileIt-Services/WebContent";
+	String reportFile = "target/loadtest-report.json";
+	Map<Operation, Integer> mix = parseMix("getImage=30,getBookTreeDetail=30,searchBook=25,getMasterJson=10,create=3,imageConvert=2");
+
+	public static LoadTestOptions parse(String[] args) {
+		LoadTestOptions options = new LoadTestOptions();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+				throw new IllegalArgumentException("Unrecognised argument " + arg + "\n" + usage());
+			}
+			String name = arg.substring(2, arg.indexOf('='));
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (name.equals("port")) {
+				options.port = Integer.parseInt(value);
+			} else if (name.equals("server-threads")) {
+				options.serverThreads = Integer.parseInt(value);
+			} else if (name.equals("storage-threads")) {
+				options.storageThreads = Integer.parseInt(value);
+			} else if (name.equals("clients")) {
+				options.clients = Integer.parseInt(value);
+			} else if (name.equals("warmup")) {
+				options.warmupSeconds = Integer.parseInt(value);
+			} else if (name.equals("duration")) {
+				options.durationSeconds = Integer.parseInt(value);
+			} else if (name.equals("books")) {
+				options.books = Integer.parseInt(value);
+			} else if (name.equals("pages")) {
+				options.pagesPerBook = Integer.parseInt(value);
+			} else if (name.equals("upload-pages")) {
+				options.uploadPages = Integer.parseInt(value);
+			} else if (name.equals("storage-latency")) {
+				options.storageLatencyMillis = Long.parseLong(value);
+			} else if (name.equals("storage-jitter")) {
+				options.storageJitterMillis = Long.parseLong(value);
+			} else if (name.equals("bucket")) {
+				options.bucket = value;
+			} else if (name.equals("webcontent")) {
+				options.webContent = value;
+			} else if (name.equals("report")) {
+				options.reportFile = value;
+			} else if (name.equals("mix")) {
+				options.mix = parseMix(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option --" + name + "\n" + usage());
+			}
+		}
+		return options;
+	}
+
+	static Map<Operation, Integer> parseMix(String value) {
+		Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+		for (String part : value.split(",")) {
+			String[] weight = part.trim().split("=");
+			mix.put(Operation.fromName(weight[0].trim()), Integer.parseInt(weight[1].trim()));
+		}
+		return mix;
+	}
+
+	public static String usage() {
+		return "Options:\n"
+				+ "  --clients=N            concurrent virtual users (16)\n"
+				+ "  --warmup=S             seconds of unrecorded warm-up (10)\n"
+				+ "  --duration=S           seconds of recorded load (60)\n"
+				+ "  --mix=op=w,...         weighted operation mix; operations: create, getImage,\n"
+				+ "                         getBookTreeDetail, searchBook, imageConvert, getMasterJson\n"
+				+ "  --books=N              books seeded into the fake bucket (1000)\n"
+				+ "  --pages=N              page images seeded per book (20)\n"
+				+ "  --upload-pages=N       pages of the PDF sent to imageConvert (5)\n"
+				+ "  --storage-latency=MS   fixed delay of every storage request (0)\n"
+				+ "  --storage-jitter=MS    extra uniformly distributed delay (0)\n"
+				+ "  --server-threads=N     Jetty request threads (200)\n"
+				+ "  --storage-threads=N    fake object store threads (64)\n"
+				+ "  --port=N               service port, 0 picks a free one (0)\n"
+				+ "  --webcontent=DIR       WebContent folder of FileIt-Services (../FileIt-Services/WebContent)\n"
+				+ "  --report=FILE          JSON report (target/loadtest-report.json)\n";
+	}
+}
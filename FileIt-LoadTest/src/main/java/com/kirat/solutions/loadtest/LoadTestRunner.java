@@ -0,0 +1,142 @@
+package com.kirat.solutions.loadtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Drives a weighted mix of operations against an in-process FileIt node and
+ * reports throughput and latency percentiles per operation.
+ * 
+ * <pre>
+ * java -jar target/loadtest.jar --clients=32 --duration=120 --storage-latency=40 --storage-jitter=60
+ * </pre>
+ */
+public class LoadTestRunner {
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		LoadTestOptions options = LoadTestOptions.parse(args);
+		LoadTestServer server = new LoadTestServer(options);
+		server.start();
+		try {
+			Seeder.seed(server.getObjectStore(), options.bucket, options.books, options.pagesPerBook);
+			Map<String, Object> report = run(server, options);
+			print(report);
+			File reportFile = new File(options.reportFile);
+			if (reportFile.getParentFile() != null) {
+				reportFile.getParentFile().mkdirs();
+			}
+			new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+			System.out.println("Report written to " + reportFile.getAbsolutePath());
+		} finally {
+			server.stop();
+		}
+	}
+
+	static Map<String, Object> run(LoadTestServer server, final LoadTestOptions options) throws Exception {
+		final LoadClient client = new LoadClient(server.getBaseUrl(), options.books, Seeder.pdf(options.uploadPages));
+		client.awaitReady(TimeUnit.MINUTES.toMillis(2));
+		final Operation[] operations = options.mix.keySet().toArray(new Operation[0]);
+		final int[] cumulative = new int[operations.length];
+		int total = 0;
+		for (int i = 0; i < operations.length; i++) {
+			total += options.mix.get(operations[i]);
+			cumulative[i] = total;
+		}
+		final int totalWeight = total;
+		long start = System.nanoTime();
+		final long recordFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+		final long stopAt = recordFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+		ExecutorService clients = Executors.newFixedThreadPool(options.clients);
+		List<Future<Map<Operation, LatencyStats>>> results = new ArrayList<Future<Map<Operation, LatencyStats>>>();
+		for (int c = 0; c < options.clients; c++) {
+			results.add(clients.submit(() -> {
+				Map<Operation, LatencyStats> stats = new EnumMap<Operation, LatencyStats>(Operation.class);
+				for (Operation operation : operations) {
+					stats.put(operation, new LatencyStats());
+				}
+				long now;
+				while ((now = System.nanoTime()) < stopAt) {
+					int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+					int index = 0;
+					while (cumulative[index] <= pick) {
+						index++;
+					}
+					Operation operation = operations[index];
+					boolean success;
+					try {
+						success = client.execute(operation);
+					} catch (Exception e) {
+						success = false;
+					}
+					long elapsed = System.nanoTime() - now;
+					if (now >= recordFrom) {
+						stats.get(operation).record(elapsed, success);
+					}
+					client.backOff(stopAt);
+				}
+				return stats;
+			}));
+		}
+		Map<Operation, LatencyStats> merged = new EnumMap<Operation, LatencyStats>(Operation.class);
+		for (Operation operation : operations) {
+			merged.put(operation, new LatencyStats());
+		}
+		for (Future<Map<Operation, LatencyStats>> result : results) {
+			for (Map.Entry<Operation, LatencyStats> entry : result.get().entrySet()) {
+				merged.get(entry.getKey()).merge(entry.getValue());
+			}
+		}
+		clients.shutdown();
+
+		double seconds = options.durationSeconds;
+		LatencyStats all = new LatencyStats();
+		Map<String, Object> perOperation = new LinkedHashMap<String, Object>();
+		for (Map.Entry<Operation, LatencyStats> entry : merged.entrySet()) {
+			perOperation.put(entry.getKey().getName(), entry.getValue().summarize(seconds));
+			all.merge(entry.getValue());
+		}
+		Map<String, Object> settings = new LinkedHashMap<String, Object>();
+		settings.put("clients", options.clients);
+		settings.put("warmupSeconds", options.warmupSeconds);
+		settings.put("durationSeconds", options.durationSeconds);
+		settings.put("books", options.books);
+		settings.put("pagesPerBook", options.pagesPerBook);
+		settings.put("storageLatencyMs", options.storageLatencyMillis);
+		settings.put("storageJitterMs", options.storageJitterMillis);
+		settings.put("serverThreads", options.serverThreads);
+
+		Map<String, Object> report = new LinkedHashMap<String, Object>();
+		report.put("settings", settings);
+		report.put("total", all.summarize(seconds));
+		report.put("operations", perOperation);
+		report.put("storageRequests", server.getObjectStore().getRequestCount());
+		return report;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void print(Map<String, Object> report) {
+		System.out.println(String.format("%-20s %8s %7s %10s %9s %9s %9s %9s %9s", "operation", "count", "errors",
+				"ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+		Map<String, Object> rows = new LinkedHashMap<String, Object>((Map<String, Object>) report.get("operations"));
+		rows.put("TOTAL", report.get("total"));
+		for (Map.Entry<String, Object> row : rows.entrySet()) {
+			Map<String, Object> s = (Map<String, Object>) row.getValue();
+			System.out.println(String.format("%-20s %8d %7d %10.2f %9.2f %9.2f %9.2f %9.2f %9.2f", row.getKey(),
+					s.get("count"), s.get("errors"), s.get("throughputPerSec"), s.get("p50Ms"), s.get("p90Ms"),
+					s.get("p99Ms"), s.get("p999Ms"), s.get("maxMs")));
+		}
+	}
+}
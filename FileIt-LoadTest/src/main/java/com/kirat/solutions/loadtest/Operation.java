@@ -0,0 +1,28 @@
+package com.kirat.solutions.loadtest;
+
+/**
+ * Operations the load test can drive, named as on the command line.
+ */
+public enum Operation {
+	CREATE("create"), GET_IMAGE("getImage"), GET_BOOK_TREE_DETAIL("getBookTreeDetail"), SEARCH_BOOK(
+			"searchBook"), IMAGE_CONVERT("imageConvert"), GET_MASTER_JSON("getMasterJson");
+
+	private final String name;
+
+	Operation(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public static Operation fromName(String name) {
+		for (Operation operation : values()) {
+			if (operation.name.equalsIgnoreCase(name)) {
+				return operation;
+			}
+		}
+		throw new IllegalArgumentException("Unknown operation " + name);
+	}
+}
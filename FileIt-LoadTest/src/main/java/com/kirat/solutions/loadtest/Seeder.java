@@ -0,0 +1,98 @@
+package com.kirat.solutions.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Fills the fake bucket with a catalog, one binder XML per book and a set of
+ * page images per book, in the layout the processors write.
+ */
+public final class Seeder {
+
+	private Seeder() {
+	}
+
+	public static String bookName(int i) {
+		return "book" + i;
+	}
+
+	public static void seed(FakeObjectStore store, String bucket, int books, int pagesPerBook) {
+		StringBuilder catalog = new StringBuilder(32 + books * 128);
+		catalog.append("{\"BookList\":[");
+		byte[] pageImage = new byte[16 * 1024];
+		for (int i = 0; i < books; i++) {
+			String name = bookName(i);
+			if (i > 0) {
+				catalog.append(',');
+			}
+			catalog.append("{\"").append(name).append("\":{\"Name\":\"").append(name)
+					.append("\",\"Classification\":\"Class").append(i % 16).append("\",\"Path\":\"files/").append(name)
+					.append(".xml\"}}");
+			store.put(bucket, "files/" + name + ".xml", binderXml(name, 10), "application/xml");
+			for (int page = 1; page <= pagesPerBook; page++) {
+				store.put(bucket, name + "/Images/" + page + ".jpeg", pageImage, "image/jpeg");
+			}
+		}
+		catalog.append("]}");
+		store.put(bucket, "test.JSON", catalog.toString().getBytes(StandardCharsets.UTF_8), "application/json");
+	}
+
+	public static String binderJson(String name, int children) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"id\": 1,\"name\": \"").append(name).append("\",\"classification\": \"Engineering\",\"children\": [");
+		for (int i = 0; i < children; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"id\": ").append(i + 2).append(",\"name\": \"child").append(i)
+					.append("\",\"path\": \"E:/docs/child").append(i)
+					.append(".pdf\",\"type\": \"application/pdf\",\"version\": \"1.0\",\"note\":\"note\"}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	static byte[] binderXml(String name, int children) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><map id=\"")
+				.append("5d0c2f8e-8a59-4b1c-a3a4-2e0f6b7c9d31").append("\"><title/><body><topicref classification=\"Engineering\" id=\"topicref\" navtitle=\"")
+				.append(name).append("\" type=\"Binder\">");
+		for (int i = 0; i < children; i++) {
+			sb.append("<topic id=\"").append(i + 2).append("\" name=\"child").append(i).append("\" path=\"Images/")
+					.append(name).append("/child").append(i).append("\" type=\"application/pdf\" version=\"1.0\"/>");
+		}
+		sb.append("</topicref></body></map>");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	public static byte[] pdf(int pages) throws IOException {
+		PDDocument document = new PDDocument();
+		try {
+			for (int i = 1; i <= pages; i++) {
+				PDPage page = new PDPage();
+				document.addPage(page);
+				PDPageContentStream contentStream = new PDPageContentStream(document, page);
+				contentStream.beginText();
+				contentStream.setFont(PDType1Font.HELVETICA, 12);
+				contentStream.moveTextPositionByAmount(72, 700);
+				contentStream.drawString("Load test page " + i);
+				contentStream.endText();
+				contentStream.close();
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			document.save(baos);
+			return baos.toByteArray();
+		} catch (COSVisitorException e) {
+			throw new IOException(e);
+		} finally {
+			document.close();
+		}
+	}
+}
@@ -15,6 +15,19 @@ import com.kirat.solutions.util.FileItException;
 
 public class GetOrValidateUser {
 
+	private static JAXBContext usersContext;
+
+	/**
+	 * JAXB context for the user profile, created once; building it is far more
+	 * expensive than the unmarshalling done per login.
+	 */
+	public static synchronized JAXBContext getUsersContext() throws JAXBException {
+		if (null == usersContext) {
+			usersContext = JAXBContext.newInstance(Users.class);
+		}
+		return usersContext;
+	}
+
 	public static String validateUser(String userName) throws FileItException{
 		boolean isUser = false;
 		String passWord = null;
@@ -22,8 +35,7 @@ public class GetOrValidateUser {
 		Unmarshaller un;
 		Users userList;
 		try {
-			JAXBContext context = JAXBContext.newInstance(Users.class);
-			un = context.createUnmarshaller();
+			un = getUsersContext().createUnmarshaller();
 			userList = (Users) un.unmarshal(new File(xmlPath));
 		} catch (JAXBException e) {
 			// TODO Auto-generated catch block
@@ -9,8 +9,12 @@ public class BinderConstants {
 	public static final String TYPE = "type";
 	public static final String ID = "id";
 	public static final String VERSION = "version";
+	public static final String NOTE = "note";
 	public static final String BASEPATH = "D:\files";
 	public static final String EXTENSION = ".xml";
 	public static final String IMG_EXTENSION = ".jpeg";
+	public static final String RENDITION_FULL = "full";
+	public static final String RENDITION_THUMBNAIL = "thumbnail";
+	public static final String RENDITION_TILES = "tiles";
 	public static final String CONTXT_PATH_NAMES = "CONTXT_PATH_NAMES";
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.kirat.solutions.domain;
+
+/**
+ * A binder matching a metadata search.
+ */
+public class BinderHit {
+	private String name;
+	private String classification;
+	private String path;
+	private float score;
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getClassification() {
+		return classification;
+	}
+
+	public void setClassification(String classification) {
+		this.classification = classification;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public float getScore() {
+		return score;
+	}
+
+	public void setScore(float score) {
+		this.score = score;
+	}
+}
@@ -0,0 +1,48 @@
+package com.kirat.solutions.domain;
+
+public class BinderSearchRequest {
+
+	String query;
+	String classification;
+	String type;
+	int limit;
+
+	public String getQuery() {
+		return query;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	/**
+	 * Only binders of this classification, when set.
+	 */
+	public String getClassification() {
+		return classification;
+	}
+
+	public void setClassification(String classification) {
+		this.classification = classification;
+	}
+
+	/**
+	 * Only binders holding a topic of this type, when set.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+}
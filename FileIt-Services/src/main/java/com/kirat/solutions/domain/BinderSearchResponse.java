@@ -0,0 +1,53 @@
+package com.kirat.solutions.domain;
+
+import java.util.List;
+import java.util.Map;
+
+public class BinderSearchResponse {
+
+	List<BinderHit> hits;
+	int total;
+	Map<String, Integer> classifications;
+	Map<String, Integer> types;
+
+	/**
+	 * Best matching binders first.
+	 */
+	public List<BinderHit> getHits() {
+		return hits;
+	}
+
+	public void setHits(List<BinderHit> hits) {
+		this.hits = hits;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	/**
+	 * Matching binders per classification, whatever the classification asked.
+	 */
+	public Map<String, Integer> getClassifications() {
+		return classifications;
+	}
+
+	public void setClassifications(Map<String, Integer> classifications) {
+		this.classifications = classifications;
+	}
+
+	/**
+	 * Matching binders per topic type, whatever the type asked.
+	 */
+	public Map<String, Integer> getTypes() {
+		return types;
+	}
+
+	public void setTypes(Map<String, Integer> types) {
+		this.types = types;
+	}
+}
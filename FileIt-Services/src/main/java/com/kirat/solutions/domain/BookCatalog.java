@@ -0,0 +1,39 @@
+package com.kirat.solutions.domain;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Master catalog (test.JSON) in BookList order.
+ */
+public class BookCatalog {
+	private List<CatalogEntry> books = new ArrayList<CatalogEntry>();
+
+	public List<CatalogEntry> getBooks() {
+		return books;
+	}
+
+	public void setBooks(List<CatalogEntry> books) {
+		this.books = books;
+	}
+
+	public CatalogEntry find(String bookName) {
+		for (CatalogEntry oCatalogEntry : books) {
+			if (oCatalogEntry.getName().equals(bookName)) {
+				return oCatalogEntry;
+			}
+		}
+		return null;
+	}
+
+	public boolean remove(String bookName) {
+		for (Iterator<CatalogEntry> iterator = books.iterator(); iterator.hasNext();) {
+			if (iterator.next().getName().equals(bookName)) {
+				iterator.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,59 @@
+package com.kirat.solutions.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A document of a book: the upload path it was sent for, the content it
+ * resolved to and that content's page keys in reading order.
+ */
+public class BookDocument {
+	private String path;
+	private String hash;
+	private String type;
+	private List<String> pages = new ArrayList<String>();
+	private Thumbnails thumbnails;
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public List<String> getPages() {
+		return pages;
+	}
+
+	public void setPages(List<String> pages) {
+		this.pages = pages;
+	}
+
+	/**
+	 * Those of the content, so a navigation strip needs only this manifest.
+	 */
+	public Thumbnails getThumbnails() {
+		return thumbnails;
+	}
+
+	public void setThumbnails(Thumbnails thumbnails) {
+		this.thumbnails = thumbnails;
+	}
+}
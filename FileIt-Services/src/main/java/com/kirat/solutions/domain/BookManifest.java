@@ -0,0 +1,48 @@
+package com.kirat.solutions.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Documents of a book in upload order, kept at &lt;book&gt;/manifest.json.
+ */
+public class BookManifest {
+	private String book;
+	private List<BookDocument> documents = new ArrayList<BookDocument>();
+
+	public String getBook() {
+		return book;
+	}
+
+	public void setBook(String book) {
+		this.book = book;
+	}
+
+	public List<BookDocument> getDocuments() {
+		return documents;
+	}
+
+	public void setDocuments(List<BookDocument> documents) {
+		this.documents = documents;
+	}
+
+	public BookDocument find(String path) {
+		for (BookDocument oBookDocument : documents) {
+			if (oBookDocument.getPath().equals(path)) {
+				return oBookDocument;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Every page of the book, document after document.
+	 */
+	public List<String> pageKeys() {
+		List<String> pages = new ArrayList<String>();
+		for (BookDocument oBookDocument : documents) {
+			pages.addAll(oBookDocument.getPages());
+		}
+		return pages;
+	}
+}
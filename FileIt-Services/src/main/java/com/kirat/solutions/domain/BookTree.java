@@ -0,0 +1,74 @@
+package com.kirat.solutions.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binder XML written by TransformationProcessor: the map id, its title and the
+ * single topicref holding one topic per child document.
+ */
+public class BookTree {
+	private String id;
+	private String title;
+	private String topicrefId;
+	private String navtitle;
+	private String classification;
+	private String type;
+	private List<Children> topics = new ArrayList<Children>();
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public String getTopicrefId() {
+		return topicrefId;
+	}
+
+	public void setTopicrefId(String topicrefId) {
+		this.topicrefId = topicrefId;
+	}
+
+	public String getNavtitle() {
+		return navtitle;
+	}
+
+	public void setNavtitle(String navtitle) {
+		this.navtitle = navtitle;
+	}
+
+	public String getClassification() {
+		return classification;
+	}
+
+	public void setClassification(String classification) {
+		this.classification = classification;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public List<Children> getTopics() {
+		return topics;
+	}
+
+	public void setTopics(List<Children> topics) {
+		this.topics = topics;
+	}
+}
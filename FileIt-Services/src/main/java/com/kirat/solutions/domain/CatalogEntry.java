@@ -0,0 +1,49 @@
+package com.kirat.solutions.domain;
+
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * One book of the master catalog (test.JSON), keyed by its name in the
+ * BookList.
+ */
+public class CatalogEntry {
+	private String name;
+	private String classification;
+	private String path;
+
+	public CatalogEntry() {
+	}
+
+	public CatalogEntry(String name, String classification, String path) {
+		this.name = name;
+		this.classification = classification;
+		this.path = path;
+	}
+
+	@JsonProperty("Name")
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@JsonProperty("Classification")
+	public String getClassification() {
+		return classification;
+	}
+
+	public void setClassification(String classification) {
+		this.classification = classification;
+	}
+
+	@JsonProperty("Path")
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+}
@@ -0,0 +1,71 @@
+package com.kirat.solutions.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rendered pages of one uploaded document, stored once under the SHA-256 of
+ * its bytes whichever books reference it.
+ */
+public class ContentManifest {
+	private String hash;
+	private String type;
+	private long size;
+	private List<String> pages = new ArrayList<String>();
+	private List<String> fingerprints = new ArrayList<String>();
+	private Thumbnails thumbnails;
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	public List<String> getPages() {
+		return pages;
+	}
+
+	public void setPages(List<String> pages) {
+		this.pages = pages;
+	}
+
+	/**
+	 * Fingerprint of every page, in the order of {@link #getPages()}.
+	 */
+	public List<String> getFingerprints() {
+		return fingerprints;
+	}
+
+	public void setFingerprints(List<String> fingerprints) {
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * Null for content stored before thumbnails were made.
+	 */
+	public Thumbnails getThumbnails() {
+		return thumbnails;
+	}
+
+	public void setThumbnails(Thumbnails thumbnails) {
+		this.thumbnails = thumbnails;
+	}
+}
@@ -1,22 +1,153 @@
 package com.kirat.solutions.domain;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Values scoped to the request being served. Each thread sees its own map; the
+ * CXF bus clears it when a request starts and when its response has been sent
+ * (see FileItContextInterceptor). Work handed to another thread must be
+ * wrapped with {@link #wrap(Runnable)}/{@link #wrap(Callable)} or submitted
+ * through {@link #propagating(ExecutorService)} to see the submitter's values.
+ */
 public class FileItContext {
 
-	private static Map<String, Object> fileitContainer = new HashMap<String, Object>();
+	private static final ThreadLocal<Map<String, Object>> fileitContainer = new ThreadLocal<Map<String, Object>>();
+
+	private static Map<String, Object> container() {
+		Map<String, Object> container = fileitContainer.get();
+		if (container == null) {
+			container = new HashMap<String, Object>();
+			fileitContainer.set(container);
+		}
+		return container;
+	}
 
 	public static void add(String key, Object value) {
-		fileitContainer.put(key, value);
+		container().put(key, value);
 	}
 
 	public static void remove(String key) {
-		fileitContainer.remove(key);
+		Map<String, Object> container = fileitContainer.get();
+		if (container != null) {
+			container.remove(key);
+		}
 	}
 
 	public static Object get(String key) {
-		return fileitContainer.get(key);
+		Map<String, Object> container = fileitContainer.get();
+		return container == null ? null : container.get(key);
+	}
+
+	/**
+	 * Drops every value of the current thread's context.
+	 */
+	public static void clear() {
+		fileitContainer.remove();
+	}
+
+	/**
+	 * Copy of the current context to hand over to another thread, or null when
+	 * it is empty.
+	 */
+	public static Map<String, Object> capture() {
+		Map<String, Object> container = fileitContainer.get();
+		return container == null || container.isEmpty() ? null : new HashMap<String, Object>(container);
+	}
+
+	/**
+	 * Runs the task with a copy of the submitting thread's context and restores
+	 * the worker's own context afterwards. Values added by the task stay with
+	 * the task.
+	 */
+	public static Runnable wrap(final Runnable task) {
+		final Map<String, Object> captured = capture();
+		return new Runnable() {
+			@Override
+			public void run() {
+				Map<String, Object> previous = attach(captured);
+				try {
+					task.run();
+				} finally {
+					attach(previous);
+				}
+			}
+		};
+	}
+
+	public static <T> Callable<T> wrap(final Callable<T> task) {
+		final Map<String, Object> captured = capture();
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				Map<String, Object> previous = attach(captured);
+				try {
+					return task.call();
+				} finally {
+					attach(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Executor that propagates the context of whoever submits a task.
+	 */
+	public static ExecutorService propagating(ExecutorService delegate) {
+		return new PropagatingExecutorService(delegate);
+	}
+
+	private static Map<String, Object> attach(Map<String, Object> container) {
+		Map<String, Object> previous = fileitContainer.get();
+		if (container == null) {
+			fileitContainer.remove();
+		} else {
+			fileitContainer.set(new HashMap<String, Object>(container));
+		}
+		return previous;
 	}
 
-}
\ No newline at end of file
+	private static final class PropagatingExecutorService extends AbstractExecutorService {
+		private final ExecutorService delegate;
+
+		PropagatingExecutorService(ExecutorService delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			// submit() and invokeAll() funnel through here as well
+			delegate.execute(wrap(command));
+		}
+
+		@Override
+		public void shutdown() {
+			delegate.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return delegate.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return delegate.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return delegate.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return delegate.awaitTermination(timeout, unit);
+		}
+	}
+}
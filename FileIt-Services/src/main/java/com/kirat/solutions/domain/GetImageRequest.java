@@ -1,7 +1,17 @@
 package com.kirat.solutions.domain;
 
+/**
+ * Pages of a book to sign. getImage reads only bookName and returns every
+ * page as a plain list of URLs; getImageRange reads the other fields too and
+ * returns a {@link GetImageResponse} covering a range of pages.
+ */
 public class GetImageRequest {
 	private String bookName;
+	private Integer from;
+	private Integer count;
+	private Integer around;
+	private String cursor;
+	private String rendition;
 
 	public String getBookName() {
 		return bookName;
@@ -11,4 +21,62 @@ public class GetImageRequest {
 		this.bookName = bookName;
 	}
 
+	/**
+	 * First page of the range, counting from 1.
+	 */
+	public Integer getFrom() {
+		return from;
+	}
+
+	public void setFrom(Integer from) {
+		this.from = from;
+	}
+
+	/**
+	 * Pages in the range.
+	 */
+	public Integer getCount() {
+		return count;
+	}
+
+	public void setCount(Integer count) {
+		this.count = count;
+	}
+
+	/**
+	 * Page to center the range on, in place of from.
+	 */
+	public Integer getAround() {
+		return around;
+	}
+
+	public void setAround(Integer around) {
+		this.around = around;
+	}
+
+	/**
+	 * nextCursor or previousCursor of an earlier response, in place of from
+	 * and around.
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	/**
+	 * "full" (the default) for page images, "thumbnail" for sprite sheets and
+	 * placeholders of up to 1000 pages at once, "tiles" for the Deep Zoom
+	 * descriptors of the pages.
+	 */
+	public String getRendition() {
+		return rendition;
+	}
+
+	public void setRendition(String rendition) {
+		this.rendition = rendition;
+	}
+
 }
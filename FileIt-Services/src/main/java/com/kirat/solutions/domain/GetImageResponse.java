@@ -0,0 +1,100 @@
+package com.kirat.solutions.domain;
+
+import java.util.List;
+
+public class GetImageResponse {
+
+	String bookName;
+	String rendition;
+	int total;
+	int first;
+	List<String> images;
+	List<ThumbnailOffset> thumbnails;
+	String nextCursor;
+	String previousCursor;
+
+	public String getBookName() {
+		return bookName;
+	}
+
+	public void setBookName(String bookName) {
+		this.bookName = bookName;
+	}
+
+	public String getRendition() {
+		return rendition;
+	}
+
+	public void setRendition(String rendition) {
+		this.rendition = rendition;
+	}
+
+	/**
+	 * Pages in the whole book.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	/**
+	 * Page number of the first image, counting from 1.
+	 */
+	public int getFirst() {
+		return first;
+	}
+
+	public void setFirst(int first) {
+		this.first = first;
+	}
+
+	/**
+	 * Signed URLs of the pages in the range, in page order; for the thumbnail
+	 * rendition those of the sprite sheets the range uses. For the tiles
+	 * rendition the descriptor URL of each page, relative to the binder
+	 * service.
+	 */
+	public List<String> getImages() {
+		return images;
+	}
+
+	public void setImages(List<String> images) {
+		this.images = images;
+	}
+
+	/**
+	 * For the thumbnail rendition, the thumbnail of every page in the range.
+	 */
+	public List<ThumbnailOffset> getThumbnails() {
+		return thumbnails;
+	}
+
+	public void setThumbnails(List<ThumbnailOffset> thumbnails) {
+		this.thumbnails = thumbnails;
+	}
+
+	/**
+	 * Cursor of the range after this one, null at the end of the book.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Cursor of the range before this one, null at the start of the book.
+	 */
+	public String getPreviousCursor() {
+		return previousCursor;
+	}
+
+	public void setPreviousCursor(String previousCursor) {
+		this.previousCursor = previousCursor;
+	}
+}
@@ -0,0 +1,53 @@
+package com.kirat.solutions.domain;
+
+/**
+ * A page matching a text search: the document of the book at path, its page
+ * number within that document and some text around the match.
+ */
+public class PageHit {
+	private String book;
+	private String path;
+	private int page;
+	private float score;
+	private String snippet;
+
+	public String getBook() {
+		return book;
+	}
+
+	public void setBook(String book) {
+		this.book = book;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public void setPage(int page) {
+		this.page = page;
+	}
+
+	public float getScore() {
+		return score;
+	}
+
+	public void setScore(float score) {
+		this.score = score;
+	}
+
+	public String getSnippet() {
+		return snippet;
+	}
+
+	public void setSnippet(String snippet) {
+		this.snippet = snippet;
+	}
+}
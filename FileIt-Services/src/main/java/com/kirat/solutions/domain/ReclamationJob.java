@@ -0,0 +1,143 @@
+package com.kirat.solutions.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Storage to give back after a book was deleted or a document was replaced,
+ * as checkpointed in the reclamation journal.
+ */
+public class ReclamationJob {
+	public static final String BOOK = "BOOK";
+	public static final String CONTENT = "CONTENT";
+
+	private String id;
+	private String kind;
+	private String book;
+	private String binderPath;
+	private String hash;
+	private boolean listed;
+	private Map<String, Long> remaining = new LinkedHashMap<String, Long>();
+	private Map<String, Long> generations = new LinkedHashMap<String, Long>();
+	private long deletedObjects;
+	private long reclaimedBytes;
+	private int attempts;
+	private long created;
+	private String lastError;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getKind() {
+		return kind;
+	}
+
+	public void setKind(String kind) {
+		this.kind = kind;
+	}
+
+	public String getBook() {
+		return book;
+	}
+
+	public void setBook(String book) {
+		this.book = book;
+	}
+
+	public String getBinderPath() {
+		return binderPath;
+	}
+
+	public void setBinderPath(String binderPath) {
+		this.binderPath = binderPath;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	/**
+	 * Whether the objects to delete have been collected into
+	 * {@link #getRemaining()}.
+	 */
+	public boolean isListed() {
+		return listed;
+	}
+
+	public void setListed(boolean listed) {
+		this.listed = listed;
+	}
+
+	/**
+	 * Objects still to delete, with their size in bytes.
+	 */
+	public Map<String, Long> getRemaining() {
+		return remaining;
+	}
+
+	public void setRemaining(Map<String, Long> remaining) {
+		this.remaining = remaining;
+	}
+
+	/**
+	 * Generation each object was listed at; it is only deleted while still at
+	 * it. Objects without one (not found when listed, or journaled before
+	 * generations were recorded) are deleted whatever their generation.
+	 */
+	public Map<String, Long> getGenerations() {
+		return generations;
+	}
+
+	public void setGenerations(Map<String, Long> generations) {
+		this.generations = generations;
+	}
+
+	public long getDeletedObjects() {
+		return deletedObjects;
+	}
+
+	public void setDeletedObjects(long deletedObjects) {
+		this.deletedObjects = deletedObjects;
+	}
+
+	public long getReclaimedBytes() {
+		return reclaimedBytes;
+	}
+
+	public void setReclaimedBytes(long reclaimedBytes) {
+		this.reclaimedBytes = reclaimedBytes;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public void setCreated(long created) {
+		this.created = created;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+}
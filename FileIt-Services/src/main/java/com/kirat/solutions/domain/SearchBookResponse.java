@@ -1,16 +1,16 @@
 package com.kirat.solutions.domain;
 
-import org.json.simple.JSONObject;
+import java.util.Map;
 
 public class SearchBookResponse {
 
-	JSONObject jsonObject;
+	Map<String, CatalogEntry> jsonObject;
 
-	public JSONObject getJsonObject() {
+	public Map<String, CatalogEntry> getJsonObject() {
 		return jsonObject;
 	}
 
-	public void setJsonObject(JSONObject jsonObject) {
+	public void setJsonObject(Map<String, CatalogEntry> jsonObject) {
 		this.jsonObject = jsonObject;
 	}
 }
@@ -0,0 +1,24 @@
+package com.kirat.solutions.domain;
+
+public class SearchTextRequest {
+
+	String query;
+	int limit;
+
+	public String getQuery() {
+		return query;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.kirat.solutions.domain;
+
+import java.util.List;
+import java.util.Map;
+
+public class SearchTextResponse {
+
+	List<PageHit> hits;
+	Map<String, Integer> books;
+
+	/**
+	 * Matching pages, best first.
+	 */
+	public List<PageHit> getHits() {
+		return hits;
+	}
+
+	public void setHits(List<PageHit> hits) {
+		this.hits = hits;
+	}
+
+	/**
+	 * Books with matching pages and how many, in the order of their best page.
+	 */
+	public Map<String, Integer> getBooks() {
+		return books;
+	}
+
+	public void setBooks(Map<String, Integer> books) {
+		this.books = books;
+	}
+}
@@ -0,0 +1,69 @@
+package com.kirat.solutions.domain;
+
+/**
+ * Where the thumbnail of one page is: a rectangle of one of the sprite sheets
+ * in {@link GetImageResponse#getImages()}.
+ */
+public class ThumbnailOffset {
+	private int sheet;
+	private int x;
+	private int y;
+	private int width;
+	private int height;
+	private String placeholder;
+
+	/**
+	 * Index of the sheet in the images of the response, -1 for a page stored
+	 * before thumbnails were made; show its full image instead.
+	 */
+	public int getSheet() {
+		return sheet;
+	}
+
+	public void setSheet(int sheet) {
+		this.sheet = sheet;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public void setX(int x) {
+		this.x = x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public void setY(int y) {
+		this.y = y;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public void setWidth(int width) {
+		this.width = width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public void setHeight(int height) {
+		this.height = height;
+	}
+
+	/**
+	 * Data URI of a blurred image of the page, to show until the sheet loads.
+	 */
+	public String getPlaceholder() {
+		return placeholder;
+	}
+
+	public void setPlaceholder(String placeholder) {
+		this.placeholder = placeholder;
+	}
+}
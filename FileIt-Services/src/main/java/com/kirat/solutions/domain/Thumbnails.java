@@ -0,0 +1,73 @@
+package com.kirat.solutions.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small images of the pages of one document, for a navigation strip. Page i
+ * (from 0) is cell i % pagesPerSheet of sheet i / pagesPerSheet, the cells
+ * laid out columns to a row. Every page also has a blurred placeholder of a
+ * few hundred bytes, as a data URI.
+ */
+public class Thumbnails {
+	private int cellWidth;
+	private int cellHeight;
+	private int columns;
+	private int pagesPerSheet;
+	private List<String> sheets = new ArrayList<String>();
+	private List<String> placeholders = new ArrayList<String>();
+
+	public int getCellWidth() {
+		return cellWidth;
+	}
+
+	public void setCellWidth(int cellWidth) {
+		this.cellWidth = cellWidth;
+	}
+
+	public int getCellHeight() {
+		return cellHeight;
+	}
+
+	public void setCellHeight(int cellHeight) {
+		this.cellHeight = cellHeight;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public void setColumns(int columns) {
+		this.columns = columns;
+	}
+
+	public int getPagesPerSheet() {
+		return pagesPerSheet;
+	}
+
+	public void setPagesPerSheet(int pagesPerSheet) {
+		this.pagesPerSheet = pagesPerSheet;
+	}
+
+	/**
+	 * Object keys of the sprite sheets, JPEG images.
+	 */
+	public List<String> getSheets() {
+		return sheets;
+	}
+
+	public void setSheets(List<String> sheets) {
+		this.sheets = sheets;
+	}
+
+	/**
+	 * Placeholder of every page, in page order.
+	 */
+	public List<String> getPlaceholders() {
+		return placeholders;
+	}
+
+	public void setPlaceholders(List<String> placeholders) {
+		this.placeholders = placeholders;
+	}
+}
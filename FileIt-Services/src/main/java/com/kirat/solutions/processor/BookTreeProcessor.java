@@ -1,64 +1,41 @@
 package com.kirat.solutions.processor;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.json.XML;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
+import com.kirat.solutions.Constants.ErrorCodeConstants;
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.util.CatalogSnapshotManager;
 import com.kirat.solutions.util.CloudStorageConfig;
+import com.kirat.solutions.util.ErrorMessageReader;
 import com.kirat.solutions.util.FileItException;
+import com.kirat.solutions.util.JsonCodec;
 
 public class BookTreeProcessor {
 
-	public JSONObject processBookXmltoDoc(String bookName) throws Exception {
+	public BookTree processBookXmltoDoc(String bookName) throws Exception {
+		return readBookTree(lookup(bookName));
+	}
 
-		String line = "", str = "";
-		DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder documentBuilder = null;
-		JSONObject json;
-		try {
-			documentBuilder = documentFactory.newDocumentBuilder();
-			CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig(); 
-			InputStream oInputStream = oCloudStorageConfig.getFile("1dvaultdata", "test.JSON");
-			String requiredXmlPath = "";
-			JSONParser parser = new JSONParser();
-			JSONObject array = null;
-			array = (JSONObject) parser.parse(new InputStreamReader(oInputStream));
-			oInputStream.close();
-			JSONArray jsonArray = (JSONArray) array.get("BookList");
-			for (Object obj : jsonArray) {
-				JSONObject book = (JSONObject) obj;
-				if (book.containsKey(bookName)) {
-					JSONObject jsonObject = (JSONObject) book.get(bookName);
-					requiredXmlPath = (String) jsonObject.get("Path");
-				}
-			}
-			BufferedReader br = null;
-			InputStream xmlInputStream = oCloudStorageConfig.getFile("1dvaultdata", requiredXmlPath);
-			br = new BufferedReader(new InputStreamReader(xmlInputStream));
+	public CatalogEntry lookup(String bookName) throws FileItException {
+		CatalogEntry oCatalogEntry = CatalogSnapshotManager.getInstance().lookup(bookName);
+		if (oCatalogEntry == null) {
+			throw new FileItException(ErrorCodeConstants.ERR_CODE_0003,
+					ErrorMessageReader.getInstance().getString(ErrorCodeConstants.ERR_CODE_0003));
+		}
+		return oCatalogEntry;
+	}
 
-			while ((line = br.readLine()) != null) {
-				str += line;
-			}
-			br.close();
-			org.json.JSONObject jsondata = XML.toJSONObject(str);
+	public BookTree readBookTree(CatalogEntry oCatalogEntry) throws Exception {
+		return readBookTree(oCatalogEntry, null);
+	}
 
-			json = (JSONObject) parser.parse(jsondata.toString());
-		} catch (ParserConfigurationException | ParseException | IOException e) {
-			// TODO Auto-generated catch block
-			throw new FileItException(e.getMessage());
-		}
-		return json;
+	/**
+	 * @param generation
+	 *            generation of the binder XML just read from its metadata, or
+	 *            null
+	 */
+	public BookTree readBookTree(CatalogEntry oCatalogEntry, Long generation) throws Exception {
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+		return JsonCodec.readBookTree(oCloudStorageConfig.getFile("1dvaultdata", oCatalogEntry.getPath(), generation));
 	}
 
-}
\ No newline at end of file
+}
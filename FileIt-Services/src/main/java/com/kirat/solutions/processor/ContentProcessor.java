@@ -1,36 +1,63 @@
 package com.kirat.solutions.processor;
 
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import javax.imageio.ImageIO;
-
+import org.apache.pdfbox.io.RandomAccessFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.util.PDFTextStripper;
 import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.xwpf.converter.pdf.PdfConverter;
 import org.apache.poi.xwpf.converter.pdf.PdfOptions;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.json.simple.JSONObject;
 
-import com.kirat.solutions.Constants.BinderConstants;
+import com.kirat.solutions.domain.BookDocument;
+import com.kirat.solutions.domain.BookManifest;
+import com.kirat.solutions.domain.ContentManifest;
 import com.kirat.solutions.domain.FileItContext;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+import com.kirat.solutions.util.AdmissionController;
 import com.kirat.solutions.util.CloudStorageConfig;
 import com.kirat.solutions.util.FileInfoPropertyReader;
 import com.kirat.solutions.util.FileItException;
+import com.kirat.solutions.util.ManifestStore;
+import com.kirat.solutions.util.PageFingerprinter;
+import com.kirat.solutions.util.PageRasterizer;
+import com.kirat.solutions.util.PageTextIndex;
+import com.kirat.solutions.util.PageThumbnails;
+import com.kirat.solutions.util.PageTiles;
+import com.kirat.solutions.util.ReclamationService;
+import com.kirat.solutions.util.UploadSpool;
 
 public class ContentProcessor {
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(ContentProcessor.class);
 	FileItContext fileItContext;
 	List<String> paths = new ArrayList<String>();
 	private static ContentProcessor INSTANCE;
+	// pages being tiled on demand, by descriptor key
+	private final ConcurrentMap<String, Object> tiling = new ConcurrentHashMap<String, Object>();
+	private static final String DOCX_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+	private static final int MAX_MANIFEST_ATTEMPTS = 10;
+	// one US letter page as it is rasterized: 144 dpi, 2 bytes a pixel
+	private static final long PAGE_RASTER_BYTES = 1224L * 1584 * 2;
+	// a US letter page at 300 dpi, the usual width of a tile pyramid
+	private static final int PAGE_TILE_WIDTH = 2550;
 
 	public static synchronized ContentProcessor getInstance() {
 		if (null == INSTANCE) {
@@ -39,58 +66,435 @@ public class ContentProcessor {
 		return INSTANCE;
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Stores the pages of a document for a book, spooling it first.
+	 * 
+	 * @see #processContentImage(String, UploadSpool.Upload, String, String)
+	 */
 	public JSONObject processContentImage(String bookName, InputStream inputFile, String path, String type)
 			throws FileItException {
+		UploadSpool.Upload oUpload = UploadSpool.getInstance().spool(inputFile);
+		try {
+			return processContentImage(bookName, oUpload, path, type);
+		} finally {
+			oUpload.release();
+		}
+	}
+
+	/**
+	 * Stores the pages of a spooled document for a book. A document whose hash
+	 * has been converted before is not rendered again, the book only gets a
+	 * reference to the stored pages. A new version of a document already in
+	 * the book (same path) only has its changed pages rendered, the unchanged
+	 * ones are copied from the previous version. Uploads go through
+	 * {@link AdmissionController}; one turned away throws
+	 * {@link com.kirat.solutions.util.AdmissionRejectedException}. The spooled
+	 * file is parsed in place with a scratch file, so only the page being
+	 * rendered is held in memory. The text of every page goes to the
+	 * {@link PageTextIndex}. The upload itself is stored next to its pages.
+	 * The caller releases the upload.
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONObject processContentImage(String bookName, UploadSpool.Upload oUpload, String path, String type)
+			throws FileItException {
+		if (bookName == null || path == null || type == null) {
+			throw new FileItException("bookName, path and type are required");
+		}
 		JSONObject oJsonObject = new JSONObject();
-		CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig();
-		PDDocument document = null;
+		AdmissionController.Permit oPermit = AdmissionController.getInstance().admit();
+		try {
+			CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+			File upload = oUpload.getFile();
+			long size = oUpload.getSize();
+			String hash = oUpload.getHash();
+			ContentManifest oContentManifest = ManifestStore.readContent(hash);
+			boolean deduplicated = false;
+			if (oContentManifest != null) {
+				ManifestStore.addRef(hash, bookName, path);
+				// still there once referenced, or it was released meanwhile and is rendered again; read at
+				// that generation, as a cached copy may list the pages of a rendering released since
+				oContentManifest = ManifestStore.readContent(hash, ManifestStore.contentGeneration(hash));
+				deduplicated = oContentManifest != null;
+			}
+			int rendered = 0;
+			String sourceKey = ManifestStore.sourceKey(hash);
+			if (!deduplicated || oCloudStorageConfig.getGeneration("1dvaultdata", sourceKey) == null) {
+				// kept for export; large documents upload in resumable chunks
+				oCloudStorageConfig.uploadFile("1dvaultdata", sourceKey, upload, type);
+			}
+			if (!deduplicated) {
+				PageRasterizer oPageRasterizer = PageRasterizer.newJob();
+				// the parsed document, its decoded images and one band at a time, never above the job cap
+				oPermit.reserve(Math.min(oPageRasterizer.getMaxJobBytes(),
+						2L * size + PAGE_RASTER_BYTES + PageThumbnails.SHEET_BYTES
+								+ (PageTiles.isAtIngest() ? PageTiles.bytes(PAGE_TILE_WIDTH) : 0)));
+				oContentManifest = new ContentManifest();
+				oContentManifest.setHash(hash);
+				oContentManifest.setType(type);
+				oContentManifest.setSize(size);
+				rendered = renderPages(oContentManifest, upload, previousVersion(bookName, path, hash),
+						oPageRasterizer);
+				ManifestStore.addRef(hash, bookName, path);
+			} else if (!PageTextIndex.getInstance().contains(hash)) {
+				// rendered before its text was indexed
+				indexText(hash, type, upload);
+			}
+			addToBook(bookName, path, oContentManifest);
+			oJsonObject.put("Success", "File Uploaded Successfully");
+			oJsonObject.put("Hash", hash);
+			oJsonObject.put("Pages", oContentManifest.getPages().size());
+			oJsonObject.put("Rendered", rendered);
+			oJsonObject.put("Deduplicated", deduplicated);
+		} catch (FileItException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FileItException(e.getMessage());
+		} finally {
+			oPermit.release();
+		}
+		return oJsonObject;
+	}
+
+	/**
+	 * Parses the spooled upload with a scratch file and renders it.
+	 * 
+	 * @return the number of pages rendered
+	 */
+	private int renderPages(ContentManifest oContentManifest, File upload, ContentManifest previous,
+			PageRasterizer oPageRasterizer) throws Exception {
+		File scratch = scratchFile("parse");
+		RandomAccessFile oScratch = new RandomAccessFile(scratch, "rw");
+		try {
+			return renderPages(oContentManifest, load(upload, oContentManifest.getType(), oScratch), previous,
+					oPageRasterizer);
+		} finally {
+			oScratch.close();
+			scratch.delete();
+		}
+	}
+
+	/**
+	 * Indexes the page text of a document without rendering it.
+	 */
+	private static void indexText(String hash, String type, File upload) throws IOException {
+		File scratch = scratchFile("parse");
+		RandomAccessFile oScratch = new RandomAccessFile(scratch, "rw");
+		List<String> texts = new ArrayList<String>();
 		try {
-			if (type.equalsIgnoreCase("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
-				XWPFDocument document1 = new XWPFDocument(OPCPackage.open(inputFile));
-				PdfOptions options = PdfOptions.create();
-				OutputStream out = new FileOutputStream(new File("./test.pdf"));
-				PdfConverter.getInstance().convert(document1, out, options);
-				BufferedImage bufferedImage = null;
-				int pagecounter = 0;
-				File newFIle = new File("./test.pdf");
-				document = PDDocument.load(newFIle);
-				newFIle.delete();
-				List<PDPage> pages = document.getDocumentCatalog().getAllPages();
-				for (PDPage page : pages) {
-					pagecounter++;
-					bufferedImage = page.convertToImage();
-					ByteArrayOutputStream os = new ByteArrayOutputStream();
-					ImageIO.write(bufferedImage, "gif", os);
-					InputStream is = new ByteArrayInputStream(os.toByteArray());
-					oCloudStorageConfig.uploadFile("1dvaultdata", path + pagecounter + BinderConstants.IMG_EXTENSION,
-							is, "image/jpeg");
-					is.close();
+			PDDocument document = load(upload, type, oScratch);
+			try {
+				PDFTextStripper oStripper = new PDFTextStripper();
+				for (int i = 1; i <= document.getNumberOfPages(); i++) {
+					texts.add(pageText(oStripper, document, i));
 				}
-				oJsonObject.put("Success", "File Uploaded Successfully");
-			} else {
-				BufferedImage bufferedImage = null;
-				int pagecounter = 0;
-				document = PDDocument.load(inputFile);
-				List<PDPage> pages = document.getDocumentCatalog().getAllPages();
-				for (PDPage page : pages) {
-					pagecounter++;
-					bufferedImage = page.convertToImage();
-					ByteArrayOutputStream os = new ByteArrayOutputStream();
-					ImageIO.write(bufferedImage, "gif", os);
-					InputStream is = new ByteArrayInputStream(os.toByteArray());
-					oCloudStorageConfig.uploadFile("1dvaultdata", path + pagecounter + BinderConstants.IMG_EXTENSION,
-							is, "image/jpeg");
-					is.close();
+			} finally {
+				document.close();
+			}
+		} catch (Exception e) {
+			logger.warn("Page text of " + hash + " not indexed: " + e.getMessage());
+			return;
+		} finally {
+			oScratch.close();
+			scratch.delete();
+		}
+		index(hash, texts);
+	}
+
+	/**
+	 * Parses the spooled upload, converting a DOCX to PDF first. Both are read
+	 * in place by seeking through the file: the PDF from its cross reference
+	 * table, the DOCX through its zip directory. Stream data of the parsed
+	 * document is kept in the scratch file rather than the heap.
+	 */
+	private static PDDocument load(File upload, String type, RandomAccessFile oScratch) throws Exception {
+		if (!type.equalsIgnoreCase(DOCX_TYPE)) {
+			return loadPdf(upload, oScratch);
+		}
+		File converted = scratchFile("docx");
+		try {
+			OPCPackage oPackage = OPCPackage.open(upload.getPath(), PackageAccess.READ);
+			try {
+				XWPFDocument document1 = new XWPFDocument(oPackage);
+				OutputStream out = new FileOutputStream(converted);
+				try {
+					PdfConverter.getInstance().convert(document1, out, PdfOptions.create());
+				} finally {
+					out.close();
 				}
-				oJsonObject.put("Success", "File Uploaded Successfully");
+			} finally {
+				// closes the file without writing the package back
+				oPackage.revert();
 			}
+			return loadPdf(converted, oScratch);
+		} finally {
+			converted.delete();
+		}
+	}
+
+	private static PDDocument loadPdf(File file, RandomAccessFile oScratch) throws IOException {
+		try {
+			return PDDocument.loadNonSeq(file, oScratch);
 		} catch (IOException e) {
-			throw new FileItException(e.getMessage());
+			// the sequential parser copes with a damaged cross reference table
+			logger.warn("Reading " + file.getName() + " from start to end: " + e.getMessage());
+			return PDDocument.load(file, oScratch);
+		}
+	}
+
+	/**
+	 * Renders the pages of a document into its manifest, which is stored once
+	 * every page is. Pages whose fingerprint matches a page of the previous
+	 * version are copied instead of rendered, their thumbnails too. The
+	 * thumbnails of the pages are put together into sprite sheets on the way,
+	 * and with render.tiles.at.ingest every page is cut into its tiles.
+	 */
+	@SuppressWarnings("unchecked")
+	private int renderPages(ContentManifest oContentManifest, PDDocument document, ContentManifest previous,
+			PageRasterizer oPageRasterizer) throws Exception {
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+		Map<String, Integer> previousPages = new HashMap<String, Integer>();
+		if (previous != null && previous.getFingerprints().size() == previous.getPages().size()) {
+			for (int i = 0; i < previous.getPages().size(); i++) {
+				previousPages.put(previous.getFingerprints().get(i), Integer.valueOf(i));
+			}
+		}
+		String hash = oContentManifest.getHash();
+		String renderId = ManifestStore.newRenderId();
+		PageThumbnails oPageThumbnails = new PageThumbnails(hash, renderId);
+		PageFingerprinter oPageFingerprinter = new PageFingerprinter();
+		PDFTextStripper oStripper = new PDFTextStripper();
+		List<String> texts = new ArrayList<String>();
+		int rendered = 0;
+		// reused for every page, it only grows to the largest page image
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			List<PDPage> pages = document.getDocumentCatalog().getAllPages();
+			int pagecounter = 0;
+			for (PDPage page : pages) {
+				pagecounter++;
+				String fingerprint = oPageFingerprinter.fingerprint(page);
+				String pageKey = ManifestStore.pageKey(hash, renderId, pagecounter);
+				Integer previousPage = previousPages.get(fingerprint);
+				if (previousPage != null && copyPage(previous.getPages().get(previousPage.intValue()), pageKey)) {
+					if (!oPageThumbnails.copy(previous.getThumbnails(), previousPage.intValue())) {
+						oPageRasterizer.thumbnail(page, oPageThumbnails);
+					}
+				} else {
+					os.reset();
+					oPageRasterizer.render(page, pagecounter, os, oPageThumbnails);
+					oCloudStorageConfig.uploadFile("1dvaultdata", pageKey, new ByteArrayInputStream(os.toByteArray()),
+							"image/jpeg");
+					rendered++;
+				}
+				if (PageTiles.isAtIngest()) {
+					oPageRasterizer.tiles(page, pagecounter, new PageTiles(hash, pagecounter));
+				}
+				oContentManifest.getPages().add(pageKey);
+				oContentManifest.getFingerprints().add(fingerprint);
+				texts.add(pageText(oStripper, document, pagecounter));
+			}
+			oContentManifest.setThumbnails(oPageThumbnails.finish());
+		} finally {
+			document.close();
+		}
+		index(hash, texts);
+		// written last: a manifest is only visible once every page is stored
+		ManifestStore.writeContent(oContentManifest);
+		return rendered;
+	}
+
+	/**
+	 * Deep Zoom descriptor of a page of stored content. A page not tiled yet is
+	 * tiled from the stored source first, unless render.tiles.on.demand is
+	 * off; tiling goes through {@link AdmissionController} like an upload, and
+	 * a page is tiled once however many ask for it at the same time.
+	 *
+	 * @param page
+	 *            page of the document, from 1
+	 */
+	public String tileDescriptor(String hash, int page) throws FileItException {
+		String descriptor = PageTiles.readDescriptor(hash, page);
+		if (descriptor != null) {
+			return descriptor;
+		}
+		ContentManifest oContentManifest = ManifestStore.readContent(hash);
+		if (oContentManifest == null || page < 1 || page > oContentManifest.getPages().size()) {
+			throw new FileItException("No page " + page + " in " + hash);
+		}
+		if (!PageTiles.isOnDemand()) {
+			throw new FileItException("Page " + page + " of " + hash + " has no tiles");
+		}
+		String key = PageTiles.descriptorKey(hash, page);
+		Object lock = new Object();
+		Object running = tiling.putIfAbsent(key, lock);
+		if (running != null) {
+			lock = running;
+		}
+		try {
+			synchronized (lock) {
+				descriptor = PageTiles.readDescriptor(hash, page);
+				if (descriptor == null) {
+					tilePage(oContentManifest, page);
+					descriptor = PageTiles.readDescriptor(hash, page);
+				}
+			}
+		} finally {
+			tiling.remove(key, lock);
+		}
+		if (descriptor == null) {
+			throw new FileItException("Tiles of page " + page + " of " + hash + " were not stored");
+		}
+		return descriptor;
+	}
+
+	private void tilePage(ContentManifest oContentManifest, int page) throws FileItException {
+		String hash = oContentManifest.getHash();
+		AdmissionController.Permit oPermit = AdmissionController.getInstance().admit();
+		try {
+			PageRasterizer oPageRasterizer = PageRasterizer.newJob();
+			oPermit.reserve(Math.min(oPageRasterizer.getMaxJobBytes(), 2L * oContentManifest.getSize()
+					+ PageTiles.bytes(PAGE_TILE_WIDTH) + PAGE_RASTER_BYTES));
+			InputStream in;
+			try {
+				in = CloudStorageConfig.getInstance().getFile("1dvaultdata", ManifestStore.sourceKey(hash));
+			} catch (FileNotFoundException e) {
+				throw new FileItException(
+						"No source stored for " + hash + ", upload the document again to tile its pages");
+			}
+			UploadSpool.Upload oUpload;
+			try {
+				oUpload = UploadSpool.getInstance().spool(in);
+			} finally {
+				in.close();
+			}
+			try {
+				File scratch = scratchFile("parse");
+				RandomAccessFile oScratch = new RandomAccessFile(scratch, "rw");
+				try {
+					PDDocument document = load(oUpload.getFile(), oContentManifest.getType(), oScratch);
+					try {
+						PDPage oPage = (PDPage) document.getDocumentCatalog().getAllPages().get(page - 1);
+						oPageRasterizer.tiles(oPage, page, new PageTiles(hash, page));
+					} finally {
+						document.close();
+					}
+				} finally {
+					oScratch.close();
+					scratch.delete();
+				}
+			} finally {
+				oUpload.release();
+			}
+		} catch (FileItException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new FileItException(e.getMessage());
+		} finally {
+			oPermit.release();
 		}
-		return oJsonObject;
+	}
+
+	private static String pageText(PDFTextStripper oStripper, PDDocument document, int page) {
+		try {
+			oStripper.setStartPage(page);
+			oStripper.setEndPage(page);
+			return oStripper.getText(document);
+		} catch (IOException e) {
+			logger.warn("No text from page " + page + ": " + e.getMessage());
+			return "";
+		}
+	}
+
+	/**
+	 * Search is not worth failing an upload for; a document left out is
+	 * indexed when it is uploaded again.
+	 */
+	private static void index(String hash, List<String> texts) {
+		try {
+			PageTextIndex.getInstance().index(hash, texts);
+		} catch (FileItException e) {
+			logger.warn(e.getMessage());
+		}
+	}
+
+	private static boolean copyPage(String previousKey, String pageKey) {
+		try {
+			CloudStorageConfig.getInstance().copyFile("1dvaultdata", previousKey, pageKey);
+			return true;
+		} catch (FileItException e) {
+			// the previous version is being released; render the page instead
+			return false;
+		}
+	}
+
+	/**
+	 * Content the book currently shows at the path, if it is another version.
+	 */
+	private static ContentManifest previousVersion(String bookName, String path, String hash)
+			throws FileItException {
+		BookManifest oBookManifest = ManifestStore.readBook(bookName);
+		BookDocument oBookDocument = oBookManifest == null ? null : oBookManifest.find(path);
+		if (oBookDocument == null || hash.equals(oBookDocument.getHash())) {
+			return null;
+		}
+		return ManifestStore.readContent(oBookDocument.getHash());
+	}
+
+	/**
+	 * Points the book's document at the content. The book manifest is replaced
+	 * only if nobody changed it since it was read, otherwise the update is
+	 * applied again to the newer manifest. The content the document showed
+	 * before is queued for reclamation once its reference is gone.
+	 */
+	private void addToBook(String bookName, String path, ContentManifest oContentManifest) throws FileItException {
+		String hash = oContentManifest.getHash();
+		String previousHash = null;
+		for (int attempt = 1;; attempt++) {
+			Long generation = ManifestStore.bookGeneration(bookName);
+			BookManifest oBookManifest = ManifestStore.readBook(bookName, generation);
+			if (oBookManifest == null) {
+				oBookManifest = new BookManifest();
+				oBookManifest.setBook(bookName);
+			}
+			BookDocument oBookDocument = oBookManifest.find(path);
+			if (oBookDocument == null) {
+				oBookDocument = new BookDocument();
+				oBookDocument.setPath(path);
+				oBookManifest.getDocuments().add(oBookDocument);
+			}
+			previousHash = oBookDocument.getHash();
+			oBookDocument.setHash(hash);
+			oBookDocument.setType(oContentManifest.getType());
+			oBookDocument.setPages(new ArrayList<String>(oContentManifest.getPages()));
+			oBookDocument.setThumbnails(oContentManifest.getThumbnails());
+			if (ManifestStore.writeBook(oBookManifest, generation)) {
+				break;
+			}
+			if (attempt == MAX_MANIFEST_ATTEMPTS) {
+				throw new FileItException("Manifest of " + bookName + " kept changing, upload again");
+			}
+		}
+		PageTextIndex oPageTextIndex = PageTextIndex.getInstance();
+		oPageTextIndex.addRef(hash, bookName, path);
+		if (previousHash != null && !previousHash.equals(hash)) {
+			oPageTextIndex.removeRef(previousHash, bookName, path);
+			ManifestStore.removeRef(previousHash, bookName, path);
+			ReclamationService.getInstance().enqueueContent(previousHash);
+		}
+	}
+
+	/**
+	 * New file in render.scratch.dir, by default a folder in java.io.tmpdir.
+	 */
+	private static File scratchFile(String prefix) throws IOException {
+		String dir = FileInfoPropertyReader.getInstance().getString("render.scratch.dir");
+		File directory = dir == null || dir.trim().isEmpty()
+				? new File(System.getProperty("java.io.tmpdir"), "fileit-render")
+				: new File(dir.trim());
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		return File.createTempFile(prefix, ".tmp", directory);
 	}
 
 	public static String createDyanmicImagePath(int i, String bookName, String extension) {
@@ -1,57 +1,38 @@
 package com.kirat.solutions.processor;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Iterator;
-
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
-import com.kirat.solutions.util.CloudStorageConfig;
-import com.kirat.solutions.util.FileItException;
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.util.CatalogSnapshotManager;
+import com.kirat.solutions.util.MetadataIndex;
+import com.kirat.solutions.util.PageTextIndex;
+import com.kirat.solutions.util.ReclamationService;
 
 public class DeleteBookProcessor {
 
 	@SuppressWarnings("unchecked")
-	public JSONObject deleteBookProcessor(String deleteBookRequest) throws Exception {
-		JSONObject parentObj = new JSONObject();
+	public JSONObject deleteBookProcessor(final String deleteBookRequest) throws Exception {
 		JSONObject deleteMsg = new JSONObject();
-		CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig(); 
-		InputStream oInputStream = oCloudStorageConfig.getFile("1dvaultdata", "test.JSON");
-		JSONParser parser = new JSONParser();
-		JSONObject array;
-		try {
-			array = (JSONObject) parser.parse(new InputStreamReader(oInputStream));
-			oInputStream.close();
-		} catch (IOException | ParseException e) {
-			// TODO Auto-generated catch block
-			// e.printStackTrace();
-			throw new FileItException(e.getMessage());
-		}
-		JSONArray jsonArray = (JSONArray) array.get("BookList");
-		for (Iterator<Object> iterator = jsonArray.iterator(); iterator.hasNext();) {
-			JSONObject book = (JSONObject) iterator.next();
-			if (book.containsKey(deleteBookRequest)) {
-				iterator.remove();
-				deleteMsg.put("Success", "Deleted Successfully");
-				break;
+		// the entry removed from the catalog as written
+		final CatalogEntry[] removed = new CatalogEntry[1];
+		CatalogSnapshotManager.getInstance().modify(new CatalogSnapshotManager.Change() {
+			@Override
+			public boolean apply(BookCatalog oBookCatalog) {
+				removed[0] = oBookCatalog.find(deleteBookRequest);
+				return oBookCatalog.remove(deleteBookRequest);
 			}
+		});
+		if (removed[0] != null) {
+			deleteMsg.put("Success", "Deleted Successfully");
 		}
-		parentObj.put("BookList", jsonArray);
-		try {
-			InputStream is = new ByteArrayInputStream(parentObj.toJSONString().getBytes());
-			oCloudStorageConfig.uploadFile("1dvaultdata", "test.JSON", is, "application/json");
-			is.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			// e.printStackTrace();
-			throw new FileItException(e.getMessage());
+		MetadataIndex.getInstance().remove(deleteBookRequest);
+		PageTextIndex.getInstance().removeBook(deleteBookRequest);
+		if (removed[0] != null) {
+			// binder XML, manifest and pages go in the background
+			ReclamationService.getInstance().enqueueBook(deleteBookRequest, removed[0].getPath());
 		}
 		return deleteMsg;
 	}
 
-}
\ No newline at end of file
+}
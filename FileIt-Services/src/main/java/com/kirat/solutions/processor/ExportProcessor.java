@@ -0,0 +1,522 @@
+package com.kirat.solutions.processor;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+import com.kirat.solutions.domain.BookDocument;
+import com.kirat.solutions.domain.BookManifest;
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.domain.Children;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+import com.kirat.solutions.util.AdmissionRejectedException;
+import com.kirat.solutions.util.CloudStorageConfig;
+import com.kirat.solutions.util.FileInfoPropertyReader;
+import com.kirat.solutions.util.FileItException;
+import com.kirat.solutions.util.ManifestStore;
+import com.kirat.solutions.util.PdfPageWriter;
+
+/**
+ * Exports a whole binder as one download, written to the response while it is
+ * read from storage: a ZIP of its documents as they were uploaded, or one PDF
+ * of its rendered pages. The binder's topics give the order and the names; a
+ * topic is matched to the uploaded document of the same path or name. Storage
+ * reads run export.prefetch ahead of the writer on a small pool, and the
+ * writer only moves on as fast as the client takes the bytes, so an export
+ * holds a few pages in memory whatever the size of the binder. At most
+ * export.max.concurrent exports run at once; another one is turned away with
+ * {@link AdmissionRejectedException}.
+ */
+public class ExportProcessor {
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(ExportProcessor.class);
+	public static final String FORMAT_ZIP = "zip";
+	public static final String FORMAT_PDF = "pdf";
+	private static final String DOCX_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+	private static final int BUFFER_BYTES = 64 * 1024;
+	private static final int RETRY_AFTER_SECONDS = 10;
+	// a document is read ahead while the one before it is copied, no further
+	private static final int SOURCES_AHEAD = 2;
+	private static ExportProcessor INSTANCE;
+
+	private final Semaphore exports;
+	private final int prefetch;
+	private final ExecutorService fetcher;
+
+	/**
+	 * One document of the export, under the name it gets in the ZIP.
+	 */
+	static final class Item {
+		final String name;
+		final BookDocument document;
+
+		Item(String name, BookDocument document) {
+			this.name = name;
+			this.document = document;
+		}
+	}
+
+	/**
+	 * An export that is ready to be written. It takes its slot only while it
+	 * is written, so a response that fails before its entity is written holds
+	 * none.
+	 */
+	public final class Export {
+
+		private final String bookName;
+		private final String format;
+		private final List<Item> items;
+
+		Export(String bookName, String format, List<Item> items) {
+			this.bookName = bookName;
+			this.format = format;
+			this.items = items;
+		}
+
+		public String getContentType() {
+			return FORMAT_PDF.equals(format) ? "application/pdf" : "application/zip";
+		}
+
+		public String getFileName() {
+			return fileName(bookName, "export") + "." + format;
+		}
+
+		/**
+		 * @throws IOException
+		 *             when exports that passed {@link #prepare} meanwhile still
+		 *             hold every slot after {@link #RETRY_AFTER_SECONDS}
+		 */
+		public void write(OutputStream out) throws IOException {
+			try {
+				if (!exports.tryAcquire(RETRY_AFTER_SECONDS, TimeUnit.SECONDS)) {
+					throw new IOException("Too many binder exports running, export of " + bookName + " abandoned");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting to export " + bookName);
+			}
+			try {
+				if (FORMAT_PDF.equals(format)) {
+					writePdf(items, out);
+				} else {
+					writeZip(items, out);
+				}
+			} finally {
+				exports.release();
+			}
+		}
+	}
+
+	public static synchronized ExportProcessor getInstance() {
+		if (null == INSTANCE) {
+			FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+			INSTANCE = new ExportProcessor(oReader.getInt("export.max.concurrent", 2),
+					oReader.getInt("export.prefetch", 4));
+		}
+		return INSTANCE;
+	}
+
+	ExportProcessor(int maxConcurrent, int prefetch) {
+		this.exports = new Semaphore(Math.max(1, maxConcurrent));
+		this.prefetch = Math.max(1, prefetch);
+		this.fetcher = Executors.newFixedThreadPool(Math.max(1, maxConcurrent) * this.prefetch, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "export-fetch-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Looks the binder up and checks that an export slot is free, so
+	 * everything that can be answered with an error is known before the
+	 * response starts.
+	 *
+	 * @param format
+	 *            {@link #FORMAT_ZIP} or {@link #FORMAT_PDF}
+	 */
+	public Export prepare(String bookName, String format) throws Exception {
+		if (bookName == null) {
+			throw new FileItException("bookName is required");
+		}
+		String oFormat = format == null ? FORMAT_ZIP : format.trim().toLowerCase();
+		if (!FORMAT_ZIP.equals(oFormat) && !FORMAT_PDF.equals(oFormat)) {
+			throw new FileItException("format must be " + FORMAT_ZIP + " or " + FORMAT_PDF + ", not " + format);
+		}
+		BookTreeProcessor oBookTreeProcessor = new BookTreeProcessor();
+		BookTree oBookTree = oBookTreeProcessor.readBookTree(oBookTreeProcessor.lookup(bookName));
+		BookManifest oBookManifest = ManifestStore.readBook(bookName);
+		if (oBookManifest == null || oBookManifest.getDocuments().isEmpty()) {
+			throw new FileItException("Binder " + bookName + " has no documents to export");
+		}
+		List<Item> items = items(oBookTree.getTopics(), oBookManifest.getDocuments());
+		if (exports.availablePermits() == 0) {
+			throw new AdmissionRejectedException("Too many binder exports running, try again later",
+					RETRY_AFTER_SECONDS);
+		}
+		return new Export(bookName, oFormat, items);
+	}
+
+	/**
+	 * Documents in topic order. A topic whose path or name leads to no
+	 * document is left out; when no topic does, as for binders whose uploads
+	 * were given other paths, every document is exported in upload order.
+	 */
+	static List<Item> items(List<Children> topics, List<BookDocument> documents) {
+		List<Item> items = new ArrayList<Item>();
+		Set<String> names = new HashSet<String>();
+		List<BookDocument> unused = new ArrayList<BookDocument>(documents);
+		for (Children oChildren : topics) {
+			BookDocument oBookDocument = match(oChildren, unused);
+			if (oBookDocument == null) {
+				logger.warn("Topic " + oChildren.getName() + " (" + oChildren.getPath() + ") has no document to export");
+				continue;
+			}
+			unused.remove(oBookDocument);
+			items.add(new Item(entryName(oChildren.getName(), oBookDocument.getType(), names), oBookDocument));
+		}
+		if (items.isEmpty()) {
+			for (BookDocument oBookDocument : documents) {
+				String path = trimSlashes(oBookDocument.getPath());
+				items.add(new Item(entryName(path.substring(path.lastIndexOf('/') + 1), oBookDocument.getType(), names),
+						oBookDocument));
+			}
+		}
+		return items;
+	}
+
+	private static BookDocument match(Children oChildren, List<BookDocument> documents) {
+		for (BookDocument oBookDocument : documents) {
+			if (oBookDocument.getPath().equals(oChildren.getPath())) {
+				return oBookDocument;
+			}
+		}
+		if (oChildren.getName() == null) {
+			return null;
+		}
+		for (BookDocument oBookDocument : documents) {
+			String path = trimSlashes(oBookDocument.getPath());
+			if (path.equals(oChildren.getName()) || path.endsWith("/" + oChildren.getName())) {
+				return oBookDocument;
+			}
+		}
+		return null;
+	}
+
+	private static String trimSlashes(String path) {
+		int end = path.length();
+		while (end > 0 && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return path.substring(0, end);
+	}
+
+	private static String entryName(String name, String type, Set<String> names) {
+		String extension = "application/pdf".equalsIgnoreCase(type) ? ".pdf"
+				: DOCX_TYPE.equalsIgnoreCase(type) ? ".docx" : "";
+		String base = fileName(name, "document");
+		if (!extension.isEmpty() && base.toLowerCase().endsWith(extension)) {
+			base = base.substring(0, base.length() - extension.length());
+		}
+		String entry = base + extension;
+		for (int n = 2; !names.add(entry.toLowerCase()); n++) {
+			entry = base + " (" + n + ")" + extension;
+		}
+		return entry;
+	}
+
+	private static String fileName(String name, String fallback) {
+		StringBuilder safe = new StringBuilder();
+		if (name != null) {
+			for (int i = 0; i < name.length(); i++) {
+				char c = name.charAt(i);
+				safe.append(c < 0x20 || c > 0x7e || "\\/:*?\"<>|".indexOf(c) >= 0 ? '_' : c);
+			}
+		}
+		String trimmed = safe.toString().trim();
+		return trimmed.isEmpty() ? fallback : trimmed;
+	}
+
+	/**
+	 * Each document as it was uploaded. One uploaded before sources were
+	 * kept is exported as its page images instead, in a folder of its name.
+	 */
+	void writeZip(List<Item> items, OutputStream out) throws IOException {
+		ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_BYTES));
+		// the documents are compressed already
+		zip.setLevel(Deflater.BEST_SPEED);
+		List<Callable<InputStream>> sources = new ArrayList<Callable<InputStream>>();
+		for (Item oItem : items) {
+			sources.add(source(oItem.document.getHash()));
+		}
+		ReadAhead<InputStream> oReadAhead = new ReadAhead<InputStream>(sources, SOURCES_AHEAD);
+		try {
+			byte[] buffer = new byte[BUFFER_BYTES];
+			for (Item oItem : items) {
+				InputStream in;
+				try {
+					in = oReadAhead.next();
+				} catch (FileNotFoundException e) {
+					writePages(oItem, zip);
+					continue;
+				}
+				zip.putNextEntry(new ZipEntry(oItem.name));
+				try {
+					copy(in, zip, buffer, oItem);
+				} finally {
+					in.close();
+				}
+				zip.closeEntry();
+			}
+			zip.finish();
+			zip.flush();
+		} finally {
+			oReadAhead.close();
+		}
+	}
+
+	/**
+	 * Copies a document into its entry. A stream opened ahead that failed
+	 * before giving anything, having waited on an idle connection, is opened
+	 * once more.
+	 */
+	private void copy(InputStream in, OutputStream out, byte[] buffer, Item oItem) throws IOException {
+		InputStream source = in;
+		boolean reopened = false;
+		long copied = 0;
+		while (true) {
+			int read;
+			try {
+				read = source.read(buffer);
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				if (copied > 0 || reopened) {
+					throw e;
+				}
+				reopened = true;
+				source = open(oItem.document.getHash());
+				in.close();
+				continue;
+			}
+			if (read == -1) {
+				break;
+			}
+			out.write(buffer, 0, read);
+			copied += read;
+		}
+		if (source != in) {
+			source.close();
+		}
+	}
+
+	private void writePages(Item oItem, ZipOutputStream zip) throws IOException {
+		logger.warn("No source stored for " + oItem.name + ", exporting its pages");
+		String folder = oItem.name.lastIndexOf('.') > 0 ? oItem.name.substring(0, oItem.name.lastIndexOf('.'))
+				: oItem.name;
+		List<Callable<byte[]>> pages = new ArrayList<Callable<byte[]>>();
+		for (String key : oItem.document.getPages()) {
+			pages.add(page(key));
+		}
+		ReadAhead<byte[]> oReadAhead = new ReadAhead<byte[]>(pages, prefetch);
+		try {
+			for (int n = 1; n <= pages.size(); n++) {
+				byte[] image = oReadAhead.next();
+				zip.putNextEntry(new ZipEntry(folder + "/" + n + extension(image)));
+				zip.write(image);
+				zip.closeEntry();
+			}
+		} finally {
+			oReadAhead.close();
+		}
+	}
+
+	/**
+	 * Every page of every document, decoded ahead of the writer on the fetch
+	 * pool and written into the PDF one by one.
+	 */
+	void writePdf(List<Item> items, OutputStream out) throws IOException {
+		BufferedOutputStream buffered = new BufferedOutputStream(out, BUFFER_BYTES);
+		List<Callable<BufferedImage>> pages = new ArrayList<Callable<BufferedImage>>();
+		for (Item oItem : items) {
+			for (String key : oItem.document.getPages()) {
+				pages.add(decoded(key));
+			}
+		}
+		ReadAhead<BufferedImage> oReadAhead = new ReadAhead<BufferedImage>(pages, prefetch);
+		try {
+			PdfPageWriter oPdfPageWriter = new PdfPageWriter(buffered);
+			for (int i = 0; i < pages.size(); i++) {
+				oPdfPageWriter.addPage(oReadAhead.next());
+			}
+			oPdfPageWriter.finish();
+		} finally {
+			oReadAhead.close();
+		}
+	}
+
+	private static InputStream open(String hash) throws IOException {
+		try {
+			return CloudStorageConfig.getInstance().getFile("1dvaultdata", ManifestStore.sourceKey(hash));
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private static Callable<InputStream> source(final String hash) {
+		return new Callable<InputStream>() {
+			@Override
+			public InputStream call() throws IOException {
+				return open(hash);
+			}
+		};
+	}
+
+	private static Callable<byte[]> page(final String key) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return read(key);
+			}
+		};
+	}
+
+	private static Callable<BufferedImage> decoded(final String key) {
+		return new Callable<BufferedImage>() {
+			@Override
+			public BufferedImage call() throws IOException {
+				BufferedImage image = ImageIO.read(new ByteArrayInputStream(read(key)));
+				if (image == null) {
+					throw new IOException("Page " + key + " is not an image");
+				}
+				return image;
+			}
+		};
+	}
+
+	private static byte[] read(String key) throws IOException {
+		InputStream in;
+		try {
+			in = CloudStorageConfig.getInstance().getFile("1dvaultdata", key);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	// page keys end in .jpeg whatever the image is
+	private static String extension(byte[] image) {
+		if (image.length >= 3 && image[0] == 'G' && image[1] == 'I' && image[2] == 'F') {
+			return ".gif";
+		}
+		if (image.length >= 4 && image[1] == 'P' && image[2] == 'N' && image[3] == 'G') {
+			return ".png";
+		}
+		return ".jpeg";
+	}
+
+	/**
+	 * Runs the reads of an export in order, at most window of them ahead of
+	 * the one being written. Closing it cancels the rest and closes what was
+	 * read but not taken.
+	 */
+	final class ReadAhead<T> implements Closeable {
+
+		private final Iterator<Callable<T>> reads;
+		private final int window;
+		private final ArrayDeque<Future<T>> running = new ArrayDeque<Future<T>>();
+
+		ReadAhead(List<Callable<T>> reads, int window) {
+			this.reads = reads.iterator();
+			this.window = Math.max(1, window);
+			fill();
+		}
+
+		T next() throws IOException {
+			Future<T> head = running.poll();
+			if (head == null) {
+				throw new IOException("Nothing more to read");
+			}
+			fill();
+			try {
+				return head.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading an export");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+		}
+
+		private void fill() {
+			while (running.size() < window && reads.hasNext()) {
+				running.add(fetcher.submit(reads.next()));
+			}
+		}
+
+		@Override
+		public void close() {
+			for (Future<T> oFuture : running) {
+				if (!oFuture.cancel(true)) {
+					try {
+						T read = oFuture.get();
+						if (read instanceof Closeable) {
+							((Closeable) read).close();
+						}
+					} catch (Exception e) {
+						// nothing was taken from it
+					}
+				}
+			}
+			running.clear();
+		}
+	}
+}
@@ -40,7 +40,7 @@ public class TransformationProcessor {
 	}
 
 	public void prepareBinderXML(BinderList binderlist) throws FileItException {
-		CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig();
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
 		String bucketName = "1dvaultdata";
 		try {
 			DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
@@ -81,6 +81,9 @@ public class TransformationProcessor {
 				topic.setAttribute(BinderConstants.TYPE, child.getType());
 				topic.setAttribute(BinderConstants.VERSION, child.getVersion());
 				topic.setAttribute(BinderConstants.ID, (String.valueOf(child.getId())));
+				if (child.getNote() != null) {
+					topic.setAttribute(BinderConstants.NOTE, child.getNote());
+				}
 				topicref.appendChild(topic);
 				pathNamesList.add(child.getPath());
 			}
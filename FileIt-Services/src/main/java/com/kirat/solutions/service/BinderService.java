@@ -4,41 +4,85 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 
-import org.apache.cxf.jaxrs.ext.multipart.Attachment;
-import org.apache.cxf.jaxrs.ext.multipart.MultipartBody;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
+import com.google.api.services.storage.model.StorageObject;
+import com.kirat.solutions.Constants.BinderConstants;
+
 import com.kirat.solutions.domain.BinderList;
+import com.kirat.solutions.domain.BinderSearchRequest;
+import com.kirat.solutions.domain.BinderSearchResponse;
+import com.kirat.solutions.domain.BookDocument;
+import com.kirat.solutions.domain.BookManifest;
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.domain.CatalogEntry;
 import com.kirat.solutions.domain.CreateBinderRequest;
 import com.kirat.solutions.domain.CreateBinderResponse;
 import com.kirat.solutions.domain.DeleteBookRequest;
 import com.kirat.solutions.domain.GetImageRequest;
+import com.kirat.solutions.domain.GetImageResponse;
+import com.kirat.solutions.domain.PageHit;
 import com.kirat.solutions.domain.SearchBookRequest;
 import com.kirat.solutions.domain.SearchBookResponse;
+import com.kirat.solutions.domain.SearchTextRequest;
+import com.kirat.solutions.domain.SearchTextResponse;
+import com.kirat.solutions.domain.ThumbnailOffset;
+import com.kirat.solutions.domain.Thumbnails;
 import com.kirat.solutions.processor.BookTreeProcessor;
 import com.kirat.solutions.processor.ContentProcessor;
 import com.kirat.solutions.processor.DeleteBookProcessor;
+import com.kirat.solutions.processor.ExportProcessor;
 import com.kirat.solutions.processor.LookupBookProcessor;
 import com.kirat.solutions.processor.TransformationProcessor;
 import com.kirat.solutions.processor.UpdateMasterJson;
+import com.kirat.solutions.util.AdmissionRejectedException;
 import com.kirat.solutions.util.CloudStorageConfig;
 import com.kirat.solutions.util.FileItException;
 import com.kirat.solutions.util.FileUtil;
+import com.kirat.solutions.util.HttpCaching;
+import com.kirat.solutions.util.JsonCodec;
+import com.kirat.solutions.util.ManifestStore;
+import com.kirat.solutions.util.MetadataIndex;
+import com.kirat.solutions.util.PageTextIndex;
+import com.kirat.solutions.util.PageTiles;
+import com.kirat.solutions.util.ReclamationService;
+import com.kirat.solutions.util.UploadSpool;
+import com.kirat.solutions.util.UploadTooLargeException;
 
 public class BinderService {
 
+	private static final int DEFAULT_IMAGE_RANGE = 20;
+	private static final int MAX_IMAGE_RANGE = 200;
+	private static final int MAX_THUMBNAIL_RANGE = 1000;
+	private static final int TILE_MAX_AGE_SECONDS = 86400;
+	private static final int TILE_REDIRECT_MAX_AGE_SECONDS = 3600;
+
 	@POST
 	@Path("create")
 	public CreateBinderResponse createBinder(CreateBinderRequest createBinderRequest) throws Exception {
@@ -61,19 +105,182 @@ public class BinderService {
 	@Produces(MediaType.APPLICATION_JSON)
 	@Consumes(MediaType.APPLICATION_JSON)
 	public List<String> getFile(GetImageRequest oGetImageRequest) throws Exception {
-		
-		CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig();
-		List<String> oImages = new ArrayList<>();
-		List<String> oList = oCloudStorageConfig.listBucket("1dvaultdata");
-		int count = 0;
-		for (int i = 0; i < oList.size(); i++) {
-			if (oList.get(i).contains(oGetImageRequest.getBookName() + "/Images/")) {
-				count++;
-				String path = oGetImageRequest.getBookName() + "/Images/" + count + ".jpeg";
-				oImages.add(oCloudStorageConfig.getSignedString("1dvaultdata", path));
+		return sign(pageKeys(oGetImageRequest.getBookName()));
+	}
+
+	/**
+	 * Signs only the pages of the requested range, so the cost of a response
+	 * does not grow with the length of the book. Cursors are the page number
+	 * the next or previous range starts at. The thumbnail rendition covers up
+	 * to {@link #MAX_THUMBNAIL_RANGE} pages by default, as the few sprite
+	 * sheets they are on.
+	 */
+	@POST
+	@Path("getImageRange")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes(MediaType.APPLICATION_JSON)
+	public GetImageResponse getImageRange(GetImageRequest oGetImageRequest) throws Exception {
+		List<String> oPageKeys = pageKeys(oGetImageRequest.getBookName());
+		String rendition = oGetImageRequest.getRendition() == null ? BinderConstants.RENDITION_FULL
+				: oGetImageRequest.getRendition().trim().toLowerCase();
+		boolean thumbnails = rendition.equals(BinderConstants.RENDITION_THUMBNAIL);
+		boolean tiles = rendition.equals(BinderConstants.RENDITION_TILES);
+		if (!thumbnails && !tiles && !rendition.equals(BinderConstants.RENDITION_FULL)) {
+			throw new FileItException("Unknown rendition " + oGetImageRequest.getRendition());
+		}
+		Integer requested = oGetImageRequest.getCount();
+		if (requested != null && requested.intValue() <= 0) {
+			throw new FileItException("count must be positive");
+		}
+		int maxCount = thumbnails ? MAX_THUMBNAIL_RANGE : MAX_IMAGE_RANGE;
+		int count = requested == null ? (thumbnails ? maxCount : DEFAULT_IMAGE_RANGE)
+				: Math.min(requested.intValue(), maxCount);
+		int total = oPageKeys.size();
+		int first;
+		if (oGetImageRequest.getCursor() != null) {
+			try {
+				first = Integer.parseInt(oGetImageRequest.getCursor().trim());
+			} catch (NumberFormatException e) {
+				throw new FileItException("Invalid cursor");
 			}
+		} else if (oGetImageRequest.getAround() != null) {
+			first = oGetImageRequest.getAround().intValue() - (count - 1) / 2;
+			first = Math.min(first, total - count + 1);
+		} else {
+			first = oGetImageRequest.getFrom() == null ? 1 : oGetImageRequest.getFrom().intValue();
 		}
-		return oImages;
+		first = Math.max(1, first);
+		int end = Math.min(total, first - 1 + count);
+		GetImageResponse oGetImageResponse = new GetImageResponse();
+		oGetImageResponse.setBookName(oGetImageRequest.getBookName());
+		oGetImageResponse.setRendition(rendition);
+		oGetImageResponse.setTotal(total);
+		oGetImageResponse.setFirst(first);
+		if (thumbnails) {
+			thumbnailRange(oGetImageResponse, first, end);
+		} else if (tiles) {
+			oGetImageResponse.setImages(tileRange(oGetImageResponse.getBookName(), first, end));
+		} else {
+			oGetImageResponse.setImages(first > end ? new ArrayList<String>() : sign(oPageKeys.subList(first - 1, end)));
+		}
+		if (end < total) {
+			oGetImageResponse.setNextCursor(Integer.toString(end + 1));
+		}
+		if (first > 1) {
+			oGetImageResponse.setPreviousCursor(Integer.toString(Math.max(1, Math.min(first, total + 1) - count)));
+		}
+		return oGetImageResponse;
+	}
+
+	/**
+	 * Where the thumbnails of pages first to end are, and the signed URLs of
+	 * the sprite sheets they are on.
+	 */
+	private static void thumbnailRange(GetImageResponse oGetImageResponse, int first, int end) throws Exception {
+		BookManifest oBookManifest = ManifestStore.readBook(oGetImageResponse.getBookName());
+		List<String> oSheetKeys = new ArrayList<String>();
+		Map<String, Integer> sheetIndex = new LinkedHashMap<String, Integer>();
+		List<ThumbnailOffset> oOffsets = new ArrayList<ThumbnailOffset>();
+		int page = 0;
+		for (BookDocument oBookDocument : oBookManifest == null ? new ArrayList<BookDocument>()
+				: oBookManifest.getDocuments()) {
+			Thumbnails oThumbnails = oBookDocument.getThumbnails();
+			for (int i = 0; i < oBookDocument.getPages().size(); i++) {
+				page++;
+				if (page < first || page > end) {
+					continue;
+				}
+				ThumbnailOffset oOffset = new ThumbnailOffset();
+				oOffset.setSheet(-1);
+				if (oThumbnails != null && i < oThumbnails.getPlaceholders().size()) {
+					String sheet = oThumbnails.getSheets().get(i / oThumbnails.getPagesPerSheet());
+					Integer index = sheetIndex.get(sheet);
+					if (index == null) {
+						index = Integer.valueOf(oSheetKeys.size());
+						sheetIndex.put(sheet, index);
+						oSheetKeys.add(sheet);
+					}
+					int cell = i % oThumbnails.getPagesPerSheet();
+					oOffset.setSheet(index.intValue());
+					oOffset.setX(cell % oThumbnails.getColumns() * oThumbnails.getCellWidth());
+					oOffset.setY(cell / oThumbnails.getColumns() * oThumbnails.getCellHeight());
+					oOffset.setWidth(oThumbnails.getCellWidth());
+					oOffset.setHeight(oThumbnails.getCellHeight());
+					oOffset.setPlaceholder(oThumbnails.getPlaceholders().get(i));
+				}
+				oOffsets.add(oOffset);
+			}
+		}
+		// pages of a book stored before manifests have no thumbnails
+		while (oOffsets.size() < end - first + 1) {
+			ThumbnailOffset oOffset = new ThumbnailOffset();
+			oOffset.setSheet(-1);
+			oOffsets.add(oOffset);
+		}
+		oGetImageResponse.setImages(oSheetKeys.isEmpty() ? new ArrayList<String>() : sign(oSheetKeys));
+		oGetImageResponse.setThumbnails(oOffsets);
+	}
+
+	/**
+	 * Descriptor paths of pages first to end. They name the content rather
+	 * than the book, so a viewer keeps getting the tiles of the version it
+	 * opened.
+	 */
+	private static List<String> tileRange(String bookName, int first, int end) throws Exception {
+		BookManifest oBookManifest = ManifestStore.readBook(bookName);
+		if (oBookManifest == null) {
+			throw new FileItException("Pages of " + bookName + " were stored before tiles existed, upload them again");
+		}
+		List<String> oDescriptors = new ArrayList<String>();
+		int page = 0;
+		for (BookDocument oBookDocument : oBookManifest.getDocuments()) {
+			for (int i = 1; i <= oBookDocument.getPages().size(); i++) {
+				page++;
+				if (page >= first && page <= end) {
+					oDescriptors.add("tiles/" + oBookDocument.getHash() + "/" + i + ".dzi");
+				}
+			}
+		}
+		return oDescriptors;
+	}
+
+	private static List<String> sign(List<String> oPageKeys) throws Exception {
+		return CloudStorageConfig.getInstance().getSignedStrings("1dvaultdata", oPageKeys);
+	}
+
+	/**
+	 * Deep Zoom descriptor of page n of stored content, tiled on the first
+	 * request when it was not at upload. The content never changes, so
+	 * neither does the descriptor.
+	 */
+	@GET
+	@Path("tiles/{hash: [0-9a-f]{64}}/{page: [0-9]+}.dzi")
+	@Produces("application/xml")
+	public Response getTileDescriptor(@PathParam("hash") String hash, @PathParam("page") int page)
+			throws FileItException {
+		try {
+			return Response.ok(ContentProcessor.getInstance().tileDescriptor(hash, page))
+					.header("Cache-Control", "public, max-age=" + TILE_MAX_AGE_SECONDS).build();
+		} catch (AdmissionRejectedException ex) {
+			return Response.status(429).header("Retry-After", ex.getRetryAfterSeconds()).entity(ex.getMessage())
+					.build();
+		}
+	}
+
+	/**
+	 * A tile, where the viewer looks for it next to the descriptor: redirected
+	 * to a signed URL of the stored tile.
+	 */
+	@GET
+	@Path("tiles/{hash: [0-9a-f]{64}}/{page: [0-9]+}_files/{level: [0-9]+}/{column: [0-9]+}_{row: [0-9]+}.jpeg")
+	public Response getTile(@PathParam("hash") String hash, @PathParam("page") int page,
+			@PathParam("level") int level, @PathParam("column") int column, @PathParam("row") int row)
+			throws Exception {
+		String url = CloudStorageConfig.getInstance().getSignedString("1dvaultdata",
+				PageTiles.tileKey(hash, page, level, column, row));
+		// well before the signature expires
+		return Response.temporaryRedirect(URI.create(url))
+				.header("Cache-Control", "private, max-age=" + TILE_REDIRECT_MAX_AGE_SECONDS).build();
 	}
 
 	@POST
@@ -81,14 +288,7 @@ public class BinderService {
 	@Produces(MediaType.APPLICATION_JSON)
 	@Consumes(MediaType.APPLICATION_JSON)
 	public JSONObject getFileCount(GetImageRequest oGetImageRequest) throws FileItException {
-		CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig();
-		List<String> oList = oCloudStorageConfig.listBucket("1dvaultdata");
-		int count = 0;
-		for (int i = 0; i < oList.size(); i++) {
-			if (oList.get(i).contains(oGetImageRequest.getBookName() + "/Images/")) {
-				count++;
-			}
-		}
+		int count = pageKeys(oGetImageRequest.getBookName()).size();
 		JSONObject oJsonObject = new JSONObject();
 		oJsonObject.put("Count", count);
 		return oJsonObject;
@@ -98,25 +298,43 @@ public class BinderService {
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Produces(MediaType.APPLICATION_JSON)
 	@Path("imageConvert")
-	public Response submit(MultipartBody multipart) {
+	public Response submit(@HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType,
+			@HeaderParam(HttpHeaders.CONTENT_LENGTH) String contentLength, InputStream body) {
 		JSONObject oJsonObject;
+		UploadSpool.Upload oUpload = null;
 		try {
-			Attachment file = multipart.getAttachment("file");
-			Attachment file1 = multipart.getAttachment("bookName");
-			Attachment file2 = multipart.getAttachment("path");
-			Attachment file3 = multipart.getAttachment("type");
-			String bookName = file1.getObject(String.class);
-			String path = file2.getObject(String.class);
-			String type = file3.getObject(String.class);
-			InputStream fileStream = file.getObject(InputStream.class);
+			// parsed here rather than by CXF so the document goes to disk as it arrives
+			oUpload = UploadSpool.getInstance().receive(body, contentType,
+					contentLength == null || contentLength.trim().isEmpty() ? -1 : Long.parseLong(contentLength.trim()));
 			ContentProcessor contentProcessor = ContentProcessor.getInstance();
-			oJsonObject = contentProcessor.processContentImage(bookName, fileStream, path, type);
+			oJsonObject = contentProcessor.processContentImage(oUpload.getField("bookName"), oUpload,
+					oUpload.getField("path"), oUpload.getField("type"));
+		} catch (UploadTooLargeException ex) {
+			return Response.status(413).entity(ex.getMessage()).build();
+		} catch (AdmissionRejectedException ex) {
+			return Response.status(429).header("Retry-After", ex.getRetryAfterSeconds()).entity(ex.getMessage())
+					.build();
 		} catch (Exception ex) {
 			return Response.status(600).entity(ex.getMessage()).build();
+		} finally {
+			if (oUpload != null) {
+				oUpload.release();
+			}
 		}
 		return Response.status(200).entity(oJsonObject).build();
 	}
 
+	/**
+	 * Progress of the background reclamation of deleted books and replaced
+	 * documents.
+	 */
+	@GET
+	@Path("reclamation")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> reclamationStatus() {
+		return ReclamationService.getInstance().getStatus();
+	}
+
 	@POST
 	@Path("delete")
 	@Produces("application/json")
@@ -130,10 +348,59 @@ public class BinderService {
 	@POST
 	@Path("getBookTreeDetail")
 	@Produces("application/json")
-	public JSONObject BookTreeDetail(String bookName) throws Exception {
+	public Response BookTreeDetail(String bookName, @Context HttpHeaders oHttpHeaders) throws Exception {
+		return bookTree(bookName, oHttpHeaders);
+	}
+
+	/**
+	 * Same as the POST, in a form browsers and proxies revalidate on their own.
+	 */
+	@GET
+	@Path("getBookTreeDetail")
+	@Produces("application/json")
+	public Response getBookTreeDetail(@QueryParam("bookName") String bookName, @Context HttpHeaders oHttpHeaders)
+			throws Exception {
+		return bookTree(bookName, oHttpHeaders);
+	}
+
+	// the tree only depends on the binder XML, so its generation is the entity tag
+	private Response bookTree(String bookName, HttpHeaders oHttpHeaders) throws Exception {
 		BookTreeProcessor bookTreeProcessor = new BookTreeProcessor();
-		JSONObject document = bookTreeProcessor.processBookXmltoDoc(bookName);
-		return document;
+		CatalogEntry oCatalogEntry = bookTreeProcessor.lookup(bookName);
+		StorageObject oMetadata = CloudStorageConfig.getInstance().getMetadata("1dvaultdata",
+				oCatalogEntry.getPath());
+		final BookTree document;
+		if (oMetadata == null || oMetadata.getGeneration() == null) {
+			// fails the way it always has when the XML is missing
+			document = bookTreeProcessor.readBookTree(oCatalogEntry);
+			return Response.ok(treeOutput(document, false)).build();
+		}
+		HttpCaching oHttpCaching = HttpCaching.getInstance();
+		EntityTag tag = HttpCaching.tag(oMetadata.getGeneration());
+		long lastModified = oMetadata.getUpdated() == null ? 0 : oMetadata.getUpdated().getValue();
+		if (oHttpCaching.isNotModified(oHttpHeaders, tag, lastModified)) {
+			return oHttpCaching.notModified(tag, lastModified).build();
+		}
+		document = bookTreeProcessor.readBookTree(oCatalogEntry, oMetadata.getGeneration());
+		// the JSON is about the size of the XML it comes from
+		boolean gzip = oHttpCaching.shouldGzip(oHttpHeaders,
+				oMetadata.getSize() == null ? Long.MAX_VALUE : oMetadata.getSize().longValue());
+		return oHttpCaching.ok(treeOutput(document, gzip), tag, lastModified, gzip).build();
+	}
+
+	private static StreamingOutput treeOutput(final BookTree document, final boolean gzip) {
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				if (gzip) {
+					GZIPOutputStream out = new GZIPOutputStream(output, 8192);
+					JsonCodec.writeBookTree(document, out);
+					out.finish();
+				} else {
+					JsonCodec.writeBookTree(document, output);
+				}
+			}
+		};
 	}
 
 	@POST
@@ -147,15 +414,103 @@ public class BinderService {
 		return response.build();
 	}
 
+	/**
+	 * The whole binder as one download, streamed while it is read from
+	 * storage: format=zip (the default) for its documents as uploaded,
+	 * format=pdf for all its pages in one PDF.
+	 */
+	@GET
+	@Path("export")
+	public Response export(@QueryParam("bookName") String bookName, @QueryParam("format") String format)
+			throws Exception {
+		final ExportProcessor.Export oExport;
+		try {
+			oExport = ExportProcessor.getInstance().prepare(bookName, format);
+		} catch (AdmissionRejectedException ex) {
+			return Response.status(429).header("Retry-After", ex.getRetryAfterSeconds()).entity(ex.getMessage())
+					.build();
+		}
+		StreamingOutput output = new StreamingOutput() {
+			@Override
+			public void write(OutputStream out) throws IOException, WebApplicationException {
+				oExport.write(out);
+			}
+		};
+		return Response.ok(output, oExport.getContentType())
+				.header("Content-Disposition", "attachment; filename=\"" + oExport.getFileName() + "\"").build();
+	}
+
 	@POST
 	@Path("searchBook")
 	public SearchBookResponse searchBook(SearchBookRequest searchBookRequest) throws Exception {
 		SearchBookResponse bookResponse = new SearchBookResponse();
 		String bookName = searchBookRequest.getBookName();
-		JSONObject jsonObject = null;
-		LookupBookProcessor lookupBookProcessor = new LookupBookProcessor();
-		jsonObject = lookupBookProcessor.lookupBookbyName(bookName);
+		Map<String, CatalogEntry> jsonObject = null;
+		jsonObject = LookupBookProcessor.lookupBookbyName(bookName);
 		bookResponse.setJsonObject(jsonObject);
 		return bookResponse;
 	}
+
+	/**
+	 * Binders whose name, classification or topics match every word of the
+	 * query, by whole word, prefix or close spelling, optionally narrowed to a
+	 * classification and a topic type.
+	 */
+	@POST
+	@Path("searchBinders")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes(MediaType.APPLICATION_JSON)
+	public BinderSearchResponse searchBinders(BinderSearchRequest binderSearchRequest) throws FileItException {
+		int limit = binderSearchRequest.getLimit() > 0 ? Math.min(binderSearchRequest.getLimit(), 200) : 20;
+		return MetadataIndex.getInstance().search(binderSearchRequest.getQuery(),
+				binderSearchRequest.getClassification(), binderSearchRequest.getType(), limit);
+	}
+
+	/**
+	 * Pages of any book holding every word of the query, best first, with the
+	 * books they belong to.
+	 */
+	@POST
+	@Path("searchText")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes(MediaType.APPLICATION_JSON)
+	public SearchTextResponse searchText(SearchTextRequest searchTextRequest) throws FileItException {
+		int limit = searchTextRequest.getLimit() > 0 ? Math.min(searchTextRequest.getLimit(), 200) : 20;
+		List<PageHit> hits = PageTextIndex.getInstance().search(searchTextRequest.getQuery(), limit);
+		Map<String, Integer> books = new LinkedHashMap<>();
+		for (PageHit oPageHit : hits) {
+			Integer count = books.get(oPageHit.getBook());
+			books.put(oPageHit.getBook(), count == null ? 1 : count + 1);
+		}
+		SearchTextResponse searchTextResponse = new SearchTextResponse();
+		searchTextResponse.setHits(hits);
+		searchTextResponse.setBooks(books);
+		return searchTextResponse;
+	}
+
+	@GET
+	@Path("searchIndex")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> searchIndexStatus() throws FileItException {
+		return PageTextIndex.getInstance().getStatus();
+	}
+
+	/**
+	 * Page keys of a book in reading order, from its manifest; books uploaded
+	 * before manifests existed keep their pages under &lt;book&gt;/Images/.
+	 */
+	private static List<String> pageKeys(String bookName) throws FileItException {
+		BookManifest oBookManifest = ManifestStore.readBook(bookName);
+		if (oBookManifest != null) {
+			return oBookManifest.pageKeys();
+		}
+		List<String> oPages = new ArrayList<>();
+		List<String> oList = CloudStorageConfig.getInstance().listBucket("1dvaultdata");
+		for (int i = 0; i < oList.size(); i++) {
+			if (oList.get(i).contains(bookName + "/Images/")) {
+				oPages.add(bookName + "/Images/" + (oPages.size() + 1) + ".jpeg");
+			}
+		}
+		return oPages;
+	}
 }
@@ -0,0 +1,54 @@
+package com.kirat.solutions.service;
+
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.json.simple.JSONObject;
+
+import com.kirat.solutions.util.AdmissionController;
+import com.kirat.solutions.util.StartupWarmup;
+
+/**
+ * Probes for load balancers and orchestrators. "live" only says the
+ * application is deployed; "ready" answers 503 until the startup warm-up has
+ * finished so traffic is held back from a node that is still cold.
+ * "admission" shows how busy the rendering lane is.
+ */
+public class HealthService {
+
+	private StartupWarmup startupWarmup;
+
+	public void setStartupWarmup(StartupWarmup startupWarmup) {
+		this.startupWarmup = startupWarmup;
+	}
+
+	@SuppressWarnings("unchecked")
+	@GET
+	@Path("live")
+	@Produces(MediaType.APPLICATION_JSON)
+	public JSONObject live() {
+		JSONObject oJsonObject = new JSONObject();
+		oJsonObject.put("status", "UP");
+		return oJsonObject;
+	}
+
+	@GET
+	@Path("ready")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response ready() {
+		Response.Status status = startupWarmup.isReady() ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE;
+		return Response.status(status).entity(startupWarmup.getStatus()).header("Cache-Control", "no-store").build();
+	}
+
+	@GET
+	@Path("admission")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> admission() {
+		return AdmissionController.getInstance().getStatus();
+	}
+}
@@ -0,0 +1,220 @@
+package com.kirat.solutions.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for rendering work. At most render.max.concurrent uploads
+ * run at once (by default one per core, minus render.reserved.cores left to
+ * the read endpoints); up to render.max.queued more wait in line for
+ * render.queue.timeout.millis, anything beyond is rejected straight away with
+ * a Retry-After estimated from recent render times. Once its size is known a
+ * job also reserves the memory it will hold from render.max.inflight.bytes
+ * (default: a quarter of the heap). While the system load average is above
+ * render.max.load.per.core per core only one render runs.
+ * <p>
+ * Reads never pass through here: a render holds a request thread from the
+ * moment it queues, so with render.max.concurrent + render.max.queued kept
+ * below the container's thread pool, the rest of the pool and the reserved
+ * cores stay free for /getBookTreeDetail, /searchBook and the other reads.
+ */
+public final class AdmissionController {
+
+	private static final long KB = 1024;
+	private static final long LOAD_POLL_MILLIS = 50;
+	private static final long LOAD_SAMPLE_MILLIS = 1000;
+	private static AdmissionController INSTANCE;
+
+	private final int maxConcurrent;
+	private final int maxQueued;
+	private final long queueTimeoutMillis;
+	private final long maxInflightBytes;
+	private final double maxLoadPerCore;
+	private final int cores;
+	private final Semaphore slots;
+	private final Semaphore budget;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicLong inflightBytes = new AtomicLong();
+	private final AtomicLong admitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+	private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+	private volatile long averageMillis = 2000;
+	private volatile double load;
+	private volatile long loadSampledAt;
+
+	public static synchronized AdmissionController getInstance() {
+		if (null == INSTANCE) {
+			FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+			int cores = Runtime.getRuntime().availableProcessors();
+			int maxConcurrent = oReader.getInt("render.max.concurrent", 0);
+			if (maxConcurrent <= 0) {
+				maxConcurrent = Math.max(1, cores - oReader.getInt("render.reserved.cores", 1));
+			}
+			int maxQueued = oReader.getInt("render.max.queued", -1);
+			long maxInflightBytes = oReader.getLong("render.max.inflight.bytes", 0);
+			String loadPerCore = oReader.getString("render.max.load.per.core");
+			INSTANCE = new AdmissionController(maxConcurrent, maxQueued < 0 ? 2 * maxConcurrent : maxQueued,
+					oReader.getInt("render.queue.timeout.millis", 10000),
+					maxInflightBytes > 0 ? maxInflightBytes : Runtime.getRuntime().maxMemory() / 4,
+					loadPerCore == null || loadPerCore.trim().isEmpty() ? 2.0 : Double.parseDouble(loadPerCore.trim()),
+					cores);
+		}
+		return INSTANCE;
+	}
+
+	AdmissionController(int maxConcurrent, int maxQueued, long queueTimeoutMillis, long maxInflightBytes,
+			double maxLoadPerCore, int cores) {
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+		this.queueTimeoutMillis = queueTimeoutMillis;
+		this.maxInflightBytes = maxInflightBytes;
+		this.maxLoadPerCore = maxLoadPerCore;
+		this.cores = cores;
+		this.slots = new Semaphore(maxConcurrent, true);
+		this.budget = new Semaphore((int) Math.max(1, maxInflightBytes / KB), true);
+	}
+
+	/**
+	 * Waits for a render slot. The permit must be released once the job is
+	 * done, whatever its outcome.
+	 *
+	 * @throws AdmissionRejectedException
+	 *             when the queue is full or no slot freed up in time
+	 */
+	public Permit admit() throws AdmissionRejectedException {
+		long deadline = System.currentTimeMillis() + queueTimeoutMillis;
+		try {
+			// timed even when it is zero, so a free slot is not taken ahead of the queue
+			if (!slots.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+				if (queued.incrementAndGet() > maxQueued) {
+					queued.decrementAndGet();
+					throw reject("Rendering queue is full");
+				}
+				try {
+					if (!slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+						throw reject("No rendering slot freed up in time");
+					}
+				} finally {
+					queued.decrementAndGet();
+				}
+			}
+			try {
+				boolean waited = false;
+				while (running.get() > 0 && overloaded()) {
+					waited = true;
+					if (System.currentTimeMillis() >= deadline) {
+						throw reject("Node is overloaded");
+					}
+					Thread.sleep(LOAD_POLL_MILLIS);
+				}
+				if (waited) {
+					throttled.incrementAndGet();
+				}
+			} catch (AdmissionRejectedException | InterruptedException | RuntimeException e) {
+				slots.release();
+				throw e;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw reject("Interrupted while waiting for a rendering slot");
+		}
+		running.incrementAndGet();
+		admitted.incrementAndGet();
+		return new Permit(deadline);
+	}
+
+	public Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("maxConcurrent", maxConcurrent);
+		status.put("maxQueued", maxQueued);
+		status.put("maxInflightBytes", maxInflightBytes);
+		status.put("running", running.get());
+		status.put("queued", queued.get());
+		status.put("inflightBytes", inflightBytes.get());
+		status.put("admitted", admitted.get());
+		status.put("rejected", rejected.get());
+		status.put("throttled", throttled.get());
+		status.put("averageRenderMillis", averageMillis);
+		status.put("loadAverage", load);
+		return status;
+	}
+
+	private AdmissionRejectedException reject(String reason) {
+		rejected.incrementAndGet();
+		// time for the jobs ahead to drain through the slots
+		long waitMillis = averageMillis * (running.get() + queued.get() + 1) / maxConcurrent;
+		int retryAfter = (int) Math.max(1, Math.min(60, TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999)));
+		return new AdmissionRejectedException(reason + ", retry in " + retryAfter + " s", retryAfter);
+	}
+
+	private boolean overloaded() {
+		if (maxLoadPerCore <= 0) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		if (now - loadSampledAt >= LOAD_SAMPLE_MILLIS) {
+			// negative where the platform has no load average
+			load = os.getSystemLoadAverage();
+			loadSampledAt = now;
+		}
+		return load > maxLoadPerCore * cores;
+	}
+
+	/**
+	 * A running render job.
+	 */
+	public final class Permit {
+
+		private final long deadline;
+		private final long started = System.currentTimeMillis();
+		private int reservedKb;
+		private boolean released;
+
+		private Permit(long deadline) {
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Reserves the memory the job is about to hold, waiting for other jobs
+		 * to give theirs back until the admission deadline. A job larger than
+		 * the whole budget is let through once it can have all of it.
+		 */
+		public synchronized void reserve(long bytes) throws AdmissionRejectedException {
+			int kb = (int) Math.max(1, Math.min(bytes, maxInflightBytes) / KB);
+			try {
+				long wait = Math.max(0, deadline - System.currentTimeMillis());
+				if (!budget.tryAcquire(kb, wait, TimeUnit.MILLISECONDS)) {
+					throw reject("Rendering memory budget exhausted");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw reject("Interrupted while waiting for rendering memory");
+			}
+			reservedKb += kb;
+			inflightBytes.addAndGet(kb * KB);
+		}
+
+		public synchronized void release() {
+			if (released) {
+				return;
+			}
+			released = true;
+			if (reservedKb > 0) {
+				budget.release(reservedKb);
+				inflightBytes.addAndGet(-reservedKb * KB);
+			}
+			long elapsed = System.currentTimeMillis() - started;
+			averageMillis = (averageMillis * 7 + elapsed) / 8;
+			running.decrementAndGet();
+			slots.release();
+		}
+	}
+}
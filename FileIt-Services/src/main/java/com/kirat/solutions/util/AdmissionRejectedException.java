@@ -0,0 +1,21 @@
+package com.kirat.solutions.util;
+
+/**
+ * Thrown when rendering work is turned away because the node is saturated.
+ * Answered with 429 and a Retry-After of {@link #getRetryAfterSeconds()}.
+ */
+public class AdmissionRejectedException extends FileItException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int retryAfterSeconds;
+
+	public AdmissionRejectedException(String errorMessage, int retryAfterSeconds) {
+		super(errorMessage);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -0,0 +1,229 @@
+package com.kirat.solutions.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.kirat.solutions.domain.CatalogEntry;
+
+/**
+ * One page of the catalog, read lazily from a {@link CatalogSnapshot}. Entries
+ * are sorted by name (UTF-8 byte order) or by classification, ignoring case,
+ * then name. They can be filtered on a classification, ignoring case, and on
+ * a name prefix, which is case sensitive. The cursor names the last entry of
+ * the previous page rather than a position, so pages stay consistent while
+ * books are added and deleted. In name order a prefix is a range of the name
+ * index; in classification order a classification is.
+ */
+public final class CatalogQuery implements Iterator<CatalogEntry> {
+
+	public static final String SORT_NAME = "name";
+	public static final String SORT_CLASSIFICATION = "classification";
+	private static final char SEPARATOR = '\u0000';
+
+	private final CatalogSnapshot snapshot;
+	private final int[] order;
+	private final String classificationKey;
+	private final byte[] prefix;
+	private final int limit;
+	// classification keys by string table offset; catalogs have few distinct ones
+	private final Map<Integer, String> keys = new HashMap<Integer, String>();
+	private int rank;
+	private int returned;
+	private int pending = -1;
+	private int last = -1;
+	private boolean exhausted;
+	private String nextCursor;
+
+	private CatalogQuery(CatalogSnapshot snapshot, int[] order, String classificationKey, byte[] prefix, int limit) {
+		this.snapshot = snapshot;
+		this.order = order;
+		this.classificationKey = classificationKey;
+		this.prefix = prefix;
+		this.limit = limit;
+	}
+
+	/**
+	 * @param sort
+	 *            {@link #SORT_NAME} (the default) or {@link #SORT_CLASSIFICATION}
+	 * @param cursor
+	 *            nextCursor of the previous page, null for the first page
+	 * @throws FileItException
+	 *             for an unknown sort or a cursor of another sort
+	 */
+	public static CatalogQuery open(CatalogSnapshot oSnapshot, String sort, String classification, String prefix,
+			String cursor, int limit) throws FileItException {
+		boolean byClassification;
+		if (sort == null || sort.trim().isEmpty() || sort.trim().equalsIgnoreCase(SORT_NAME)) {
+			byClassification = false;
+		} else if (sort.trim().equalsIgnoreCase(SORT_CLASSIFICATION)) {
+			byClassification = true;
+		} else {
+			throw new FileItException("Unknown sort " + sort + ", expected name or classification");
+		}
+		String classificationKey = classification == null || classification.trim().isEmpty() ? null
+				: CatalogSnapshot.classificationKey(classification);
+		byte[] prefixBytes = prefix == null || prefix.isEmpty() ? null : prefix.getBytes(StandardCharsets.UTF_8);
+		CatalogQuery oCatalogQuery = new CatalogQuery(oSnapshot,
+				byClassification ? oSnapshot.classificationOrder() : null, classificationKey, prefixBytes, limit);
+		String[] after = cursor == null || cursor.isEmpty() ? null : decodeCursor(cursor, byClassification);
+		oCatalogQuery.rank = byClassification ? oCatalogQuery.startByClassification(after)
+				: oCatalogQuery.startByName(after);
+		return oCatalogQuery;
+	}
+
+	private int startByName(String[] after) {
+		int start = prefix == null ? 0 : snapshot.nameLowerBound(prefix);
+		if (after != null) {
+			byte[] name = after[0].getBytes(StandardCharsets.UTF_8);
+			int next = snapshot.nameLowerBound(name);
+			if (next < snapshot.size() && snapshot.compareName(snapshot.nameRecord(next), name) == 0) {
+				next++;
+			}
+			start = Math.max(start, next);
+		}
+		return start;
+	}
+
+	private int startByClassification(String[] after) {
+		if (after == null) {
+			return classificationKey == null ? 0 : lowerBound(classificationKey, null);
+		}
+		byte[] name = after[1].getBytes(StandardCharsets.UTF_8);
+		int next = lowerBound(after[0], name);
+		if (next < order.length && key(order[next]).equals(after[0])
+				&& snapshot.compareName(order[next], name) == 0) {
+			next++;
+		}
+		return next;
+	}
+
+	// first rank of the classification order not below (key, name); a null name sorts first
+	private int lowerBound(String key, byte[] name) {
+		int low = 0;
+		int high = order.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = key(order[mid]).compareTo(key);
+			if (cmp == 0 && name != null) {
+				cmp = snapshot.compareName(order[mid], name);
+			} else if (cmp == 0) {
+				cmp = 1;
+			}
+			if (cmp < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private String key(int record) {
+		int offset = snapshot.classificationOf(record);
+		String key = keys.get(offset);
+		if (key == null) {
+			key = CatalogSnapshot.classificationKey(snapshot.readString(offset));
+			keys.put(offset, key);
+		}
+		return key;
+	}
+
+	// next matching record, or -1 once the ordered range the filters allow is passed
+	private int advance() {
+		while (rank < snapshot.size()) {
+			int record = order == null ? snapshot.nameRecord(rank) : order[rank];
+			rank++;
+			if (prefix != null && !snapshot.nameStartsWith(record, prefix)) {
+				if (order == null) {
+					return -1;
+				}
+				continue;
+			}
+			if (classificationKey != null) {
+				int cmp = key(record).compareTo(classificationKey);
+				if (cmp != 0) {
+					if (order != null && cmp > 0) {
+						return -1;
+					}
+					continue;
+				}
+			}
+			return record;
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (pending >= 0) {
+			return true;
+		}
+		if (exhausted) {
+			return false;
+		}
+		int record = advance();
+		if (record < 0) {
+			exhausted = true;
+			return false;
+		}
+		if (returned == limit) {
+			// one more match exists, so the page ends with a cursor
+			exhausted = true;
+			nextCursor = encodeCursor(last);
+			return false;
+		}
+		pending = record;
+		return true;
+	}
+
+	@Override
+	public CatalogEntry next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		last = pending;
+		pending = -1;
+		returned++;
+		return snapshot.readRecord(last);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return the cursor of the next page once this one is read, null when it
+	 *         was the last
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	private String encodeCursor(int record) {
+		String name = snapshot.readRecord(record).getName();
+		String cursor = order == null ? "n" + SEPARATOR + name : "c" + SEPARATOR + key(record) + SEPARATOR + name;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String[] decodeCursor(String cursor, boolean byClassification) throws FileItException {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new FileItException("Invalid cursor");
+		}
+		String[] parts = decoded.split(String.valueOf(SEPARATOR), -1);
+		if (byClassification && parts.length == 3 && parts[0].equals("c")) {
+			return new String[] { parts[1], parts[2] };
+		}
+		if (!byClassification && parts.length == 2 && parts[0].equals("n")) {
+			return new String[] { parts[1] };
+		}
+		throw new FileItException("Cursor does not belong to this sort");
+	}
+}
@@ -0,0 +1,358 @@
+package com.kirat.solutions.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.CatalogEntry;
+
+/**
+ * Binary form of the master catalog, kept on local disk and memory-mapped so a
+ * lookup by name is a binary search over the mapped bytes with no parsing.
+ *
+ * <pre>
+ * header   int magic "FCAT", short version, short reserved, long generation,
+ *          int count, int indexOffset, int stringsOffset, int stringsLength
+ * records  count x (int length, int name, int classification, int path),
+ *          in catalog order; fields are string table offsets, -1 for null
+ * index    count x int record offset, sorted by the UTF-8 bytes of the name
+ * strings  (int length, UTF-8 bytes) per distinct string
+ * </pre>
+ *
+ * Records are length prefixed so later versions can append fields without
+ * breaking older readers.
+ */
+public final class CatalogSnapshot {
+
+	static final int MAGIC = 0x46434154;
+	static final short VERSION = 1;
+	private static final int HEADER_LENGTH = 32;
+	private static final int RECORD_FIELDS = 3;
+
+	private static final Comparator<byte[]> UTF8_ORDER = new Comparator<byte[]>() {
+		@Override
+		public int compare(byte[] a, byte[] b) {
+			int length = Math.min(a.length, b.length);
+			for (int i = 0; i < length; i++) {
+				int diff = (a[i] & 0xff) - (b[i] & 0xff);
+				if (diff != 0) {
+					return diff;
+				}
+			}
+			return a.length - b.length;
+		}
+	};
+
+	private final ByteBuffer buffer;
+	private final long generation;
+	private final int count;
+	private final int indexOffset;
+	private final int stringsOffset;
+	// record offsets by classification, ignoring case, then name; built on first use
+	private volatile int[] classificationOrder;
+
+	private CatalogSnapshot(ByteBuffer buffer) throws IOException {
+		if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+			throw new IOException("Not a catalog snapshot");
+		}
+		this.buffer = buffer;
+		this.generation = buffer.getLong(8);
+		this.count = buffer.getInt(16);
+		this.indexOffset = buffer.getInt(20);
+		this.stringsOffset = buffer.getInt(24);
+		int stringsLength = buffer.getInt(28);
+		if (count < 0 || indexOffset < HEADER_LENGTH || (long) indexOffset + 4L * count > stringsOffset
+				|| (long) stringsOffset + stringsLength > buffer.capacity()) {
+			throw new IOException("Truncated catalog snapshot");
+		}
+	}
+
+	/**
+	 * Maps a snapshot file read-only. The mapping stays valid after the file is
+	 * replaced or deleted.
+	 */
+	public static CatalogSnapshot map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return new CatalogSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	public static CatalogSnapshot wrap(byte[] snapshot) throws IOException {
+		return new CatalogSnapshot(ByteBuffer.wrap(snapshot));
+	}
+
+	/**
+	 * Encodes the catalog, recording the storage generation it was read at.
+	 */
+	public static byte[] encode(BookCatalog oBookCatalog, long generation) {
+		List<CatalogEntry> books = oBookCatalog.getBooks();
+		int count = books.size();
+		Map<String, Integer> stringOffsets = new HashMap<String, Integer>();
+		List<byte[]> strings = new ArrayList<byte[]>();
+		int[] stringsLength = new int[1];
+		int[][] fields = new int[count][];
+		for (int i = 0; i < count; i++) {
+			CatalogEntry oCatalogEntry = books.get(i);
+			fields[i] = new int[] { intern(oCatalogEntry.getName(), stringOffsets, strings, stringsLength),
+					intern(oCatalogEntry.getClassification(), stringOffsets, strings, stringsLength),
+					intern(oCatalogEntry.getPath(), stringOffsets, strings, stringsLength) };
+		}
+		final byte[][] names = new byte[count][];
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = books.get(i).getName().getBytes(StandardCharsets.UTF_8);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return UTF8_ORDER.compare(names[a], names[b]);
+			}
+		});
+
+		int recordLength = 4 + 4 * RECORD_FIELDS;
+		int indexOffset = HEADER_LENGTH + count * recordLength;
+		int stringsOffset = indexOffset + 4 * count;
+		ByteBuffer out = ByteBuffer.allocate(stringsOffset + stringsLength[0]);
+		out.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(generation).putInt(count).putInt(indexOffset)
+				.putInt(stringsOffset).putInt(stringsLength[0]);
+		for (int i = 0; i < count; i++) {
+			out.putInt(4 * RECORD_FIELDS);
+			for (int field : fields[i]) {
+				out.putInt(field);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			out.putInt(HEADER_LENGTH + order[i] * recordLength);
+		}
+		for (byte[] string : strings) {
+			out.putInt(string.length).put(string);
+		}
+		return out.array();
+	}
+
+	private static int intern(String value, Map<String, Integer> stringOffsets, List<byte[]> strings,
+			int[] stringsLength) {
+		if (value == null) {
+			return -1;
+		}
+		Integer offset = stringOffsets.get(value);
+		if (offset == null) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			offset = stringsLength[0];
+			stringOffsets.put(value, offset);
+			strings.add(bytes);
+			stringsLength[0] += 4 + bytes.length;
+		}
+		return offset;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Binary search of the name index.
+	 *
+	 * @return the entry, or null when the catalog does not hold the book
+	 */
+	public CatalogEntry find(String bookName) {
+		byte[] key = bookName.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int record = buffer.getInt(indexOffset + 4 * mid);
+			int cmp = compareString(buffer.getInt(record + 4), key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return readRecord(record);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes every entry, in catalog order.
+	 */
+	public BookCatalog toCatalog() {
+		BookCatalog oBookCatalog = new BookCatalog();
+		for (Iterator<CatalogEntry> entries = entries(); entries.hasNext();) {
+			oBookCatalog.getBooks().add(entries.next());
+		}
+		return oBookCatalog;
+	}
+
+	/**
+	 * Every entry in catalog order, each decoded only when it is reached.
+	 */
+	public Iterator<CatalogEntry> entries() {
+		return new Iterator<CatalogEntry>() {
+			private int index;
+			private int record = HEADER_LENGTH;
+
+			@Override
+			public boolean hasNext() {
+				return index < count;
+			}
+
+			@Override
+			public CatalogEntry next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				CatalogEntry oCatalogEntry = readRecord(record);
+				record += 4 + buffer.getInt(record);
+				index++;
+				return oCatalogEntry;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Offset of the record at a rank of the name index.
+	 */
+	int nameRecord(int rank) {
+		return buffer.getInt(indexOffset + 4 * rank);
+	}
+
+	/**
+	 * Rank in the name index of the first name not below the key.
+	 */
+	int nameLowerBound(byte[] key) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareName(nameRecord(mid), key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	int compareName(int record, byte[] key) {
+		return compareString(buffer.getInt(record + 4), key);
+	}
+
+	boolean nameStartsWith(int record, byte[] prefix) {
+		int position = stringsOffset + buffer.getInt(record + 4);
+		if (buffer.getInt(position) < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(position + 4 + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * String table offset of the record's classification, -1 for none. Equal
+	 * classifications share one offset.
+	 */
+	int classificationOf(int record) {
+		return buffer.getInt(record + 8);
+	}
+
+	static String classificationKey(String classification) {
+		return classification == null ? "" : classification.trim().toLowerCase(Locale.ROOT);
+	}
+
+	int[] classificationOrder() {
+		int[] order = classificationOrder;
+		if (order == null) {
+			final Map<Integer, String> keys = new HashMap<Integer, String>();
+			final int[] records = new int[count];
+			final String[] recordKeys = new String[count];
+			Integer[] ranks = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				records[i] = nameRecord(i);
+				int offset = classificationOf(records[i]);
+				String key = keys.get(offset);
+				if (key == null) {
+					key = classificationKey(readString(offset));
+					keys.put(offset, key);
+				}
+				recordKeys[i] = key;
+				ranks[i] = i;
+			}
+			// stable, so entries of one classification stay in name order
+			Arrays.sort(ranks, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return recordKeys[a].compareTo(recordKeys[b]);
+				}
+			});
+			order = new int[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = records[ranks[i]];
+			}
+			classificationOrder = order;
+		}
+		return order;
+	}
+
+	CatalogEntry readRecord(int record) {
+		return new CatalogEntry(readString(buffer.getInt(record + 4)), readString(buffer.getInt(record + 8)),
+				readString(buffer.getInt(record + 12)));
+	}
+
+	String readString(int offset) {
+		if (offset < 0) {
+			return null;
+		}
+		int position = stringsOffset + offset;
+		byte[] bytes = new byte[buffer.getInt(position)];
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + 4);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Unsigned byte comparison against the stored UTF-8 string, without decoding it
+	private int compareString(int offset, byte[] key) {
+		int position = stringsOffset + offset;
+		int length = buffer.getInt(position);
+		int min = Math.min(length, key.length);
+		for (int i = 0; i < min; i++) {
+			int diff = (buffer.get(position + 4 + i) & 0xff) - (key[i] & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return length - key.length;
+	}
+}
@@ -0,0 +1,300 @@
+package com.kirat.solutions.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+
+/**
+ * Keeps this node's binary snapshot of the master catalog. test.JSON in the
+ * bucket stays the authoritative copy; the snapshot is rebuilt from it whenever
+ * its storage generation moves on, and rewritten directly after this node
+ * changes the catalog. Snapshots are written to the directory named by
+ * catalog.snapshot.dir (default: a folder in java.io.tmpdir) as
+ * test.&lt;generation&gt;.snapshot, so a restarted node maps the newest one
+ * and only has to confirm its generation instead of parsing the catalog.
+ */
+public final class CatalogSnapshotManager {
+
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(CatalogSnapshotManager.class);
+	private static final String PREFIX = "test.";
+	private static final String SUFFIX = ".snapshot";
+	private static final int MAX_CATALOG_ATTEMPTS = 10;
+	// nodes that lost a race for the catalog wait up to this long, doubling per attempt, before reading it again
+	private static final long RETRY_BASE_MILLIS = 20;
+	private static CatalogSnapshotManager INSTANCE;
+
+	/**
+	 * A change to the master catalog. It may be applied more than once, each
+	 * time to a newer catalog.
+	 */
+	public interface Change {
+
+		/**
+		 * @return false to leave the catalog as it is
+		 */
+		boolean apply(BookCatalog oBookCatalog) throws FileItException;
+	}
+
+	private final File directory;
+	private final long revalidateMillis;
+	private volatile CatalogSnapshot snapshot;
+	private volatile long validatedAt;
+	// generation and write time of the catalog, as last seen in its metadata
+	private volatile long[] modified = { -1, 0 };
+
+	public static synchronized CatalogSnapshotManager getInstance() {
+		if (null == INSTANCE) {
+			FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+			String dir = oReader.getString("catalog.snapshot.dir");
+			String revalidate = oReader.getString("catalog.snapshot.revalidate.millis");
+			INSTANCE = new CatalogSnapshotManager(
+					dir == null || dir.trim().isEmpty()
+							? new File(System.getProperty("java.io.tmpdir"), "fileit-catalog")
+							: new File(dir.trim()),
+					revalidate == null ? 5000L : Long.parseLong(revalidate.trim()));
+		}
+		return INSTANCE;
+	}
+
+	CatalogSnapshotManager(File directory, long revalidateMillis) {
+		this.directory = directory;
+		this.revalidateMillis = revalidateMillis;
+	}
+
+	/**
+	 * @return the catalog entry, or null when the catalog does not hold the book
+	 */
+	public CatalogEntry lookup(String bookName) throws FileItException {
+		return current().find(bookName);
+	}
+
+	/**
+	 * Snapshot no older than catalog.snapshot.revalidate.millis. Past that age
+	 * the generation of test.JSON is checked and the catalog is only downloaded
+	 * and parsed again when it changed.
+	 */
+	public CatalogSnapshot current() throws FileItException {
+		CatalogSnapshot oSnapshot = snapshot;
+		if (oSnapshot != null && System.currentTimeMillis() - validatedAt < revalidateMillis) {
+			return oSnapshot;
+		}
+		return revalidate(false);
+	}
+
+	/**
+	 * Snapshot checked against the generation of test.JSON now, whatever its
+	 * age, for callers about to act on a book being absent.
+	 */
+	public CatalogSnapshot latest() throws FileItException {
+		return revalidate(true);
+	}
+
+	private synchronized CatalogSnapshot revalidate(boolean force) throws FileItException {
+		long now = System.currentTimeMillis();
+		if (!force && snapshot != null && now - validatedAt < revalidateMillis) {
+			return snapshot;
+		}
+		if (snapshot == null) {
+			snapshot = loadLocal();
+		}
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+		// read the generation before the content so a concurrent write can only make the snapshot look older
+		StorageObject oMetadata = oCloudStorageConfig.getMetadata("1dvaultdata", "test.JSON");
+		if (oMetadata == null) {
+			// not created yet; nothing worth caching, check again on the next lookup
+			return empty();
+		}
+		Long generation = oMetadata.getGeneration();
+		if (oMetadata.getUpdated() != null) {
+			modified = new long[] { generation.longValue(), oMetadata.getUpdated().getValue() };
+		}
+		if (snapshot == null || snapshot.getGeneration() != generation.longValue()) {
+			BookCatalog oBookCatalog;
+			try {
+				oBookCatalog = JsonCodec.readCatalog(oCloudStorageConfig.getFile("1dvaultdata", "test.JSON", generation));
+			} catch (FileItException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new FileItException(e.getMessage());
+			}
+			snapshot = store(oBookCatalog, generation);
+		}
+		validatedAt = now;
+		return snapshot;
+	}
+
+	/**
+	 * Applies a change to test.JSON as stored. The catalog is read at the
+	 * generation in its metadata and written back only if still at it;
+	 * otherwise the change is applied again, after a random wait, to the newer
+	 * catalog. The snapshot is replaced with the catalog written.
+	 *
+	 * @return whether the catalog was written
+	 */
+	public boolean modify(Change oChange) throws FileItException {
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+		for (int attempt = 1;; attempt++) {
+			Long generation = oCloudStorageConfig.getGeneration("1dvaultdata", "test.JSON");
+			try {
+				BookCatalog oBookCatalog = generation == null ? new BookCatalog()
+						: JsonCodec.readCatalog(oCloudStorageConfig.getFile("1dvaultdata", "test.JSON", generation));
+				if (!oChange.apply(oBookCatalog)) {
+					return false;
+				}
+				Long written = oCloudStorageConfig.uploadFile("1dvaultdata", "test.JSON",
+						new ByteArrayInputStream(JsonCodec.catalogBytes(oBookCatalog)), "application/json",
+						generation == null ? Long.valueOf(0) : generation);
+				if (written != null) {
+					update(oBookCatalog, written);
+					return true;
+				}
+			} catch (FileItException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new FileItException(e.getMessage());
+			}
+			if (attempt == MAX_CATALOG_ATTEMPTS) {
+				throw new FileItException("The catalog kept changing, try again");
+			}
+			try {
+				Thread.sleep(ThreadLocalRandom.current().nextLong((RETRY_BASE_MILLIS << attempt) + 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new FileItException("Interrupted while changing the catalog");
+			}
+		}
+	}
+
+	/**
+	 * Replaces the snapshot after this node uploaded a new catalog.
+	 *
+	 * @param generation
+	 *            generation returned by the upload; null forces a revalidation
+	 */
+	public synchronized void update(BookCatalog oBookCatalog, Long generation) {
+		if (generation == null) {
+			validatedAt = 0;
+			return;
+		}
+		if (snapshot != null && snapshot.getGeneration() >= generation.longValue()) {
+			// a newer catalog has been seen already
+			return;
+		}
+		snapshot = store(oBookCatalog, generation);
+		validatedAt = System.currentTimeMillis();
+		modified = new long[] { generation.longValue(), validatedAt };
+	}
+
+	/**
+	 * Time the catalog was written at the generation of a snapshot, in
+	 * milliseconds.
+	 *
+	 * @return the time, or 0 when it is not known
+	 */
+	public long getLastModified(CatalogSnapshot oSnapshot) {
+		long[] oModified = modified;
+		return oModified[0] == oSnapshot.getGeneration() ? oModified[1] : 0;
+	}
+
+	private CatalogSnapshot store(BookCatalog oBookCatalog, long generation) {
+		byte[] bytes = CatalogSnapshot.encode(oBookCatalog, generation);
+		File target = new File(directory, PREFIX + generation + SUFFIX);
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create " + directory);
+			}
+			File temp = File.createTempFile(PREFIX, ".tmp", directory);
+			try {
+				FileOutputStream out = new FileOutputStream(temp);
+				try {
+					out.write(bytes);
+					out.getFD().sync();
+				} finally {
+					out.close();
+				}
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				temp.delete();
+			}
+			CatalogSnapshot oSnapshot = CatalogSnapshot.map(target);
+			deleteOlderThan(generation);
+			return oSnapshot;
+		} catch (IOException e) {
+			logger.warn("Catalog snapshot kept in memory only: " + e.getMessage());
+			try {
+				return CatalogSnapshot.wrap(bytes);
+			} catch (IOException impossible) {
+				throw new IllegalStateException(impossible);
+			}
+		}
+	}
+
+	private CatalogSnapshot loadLocal() {
+		File newest = null;
+		long newestGeneration = -1;
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				long generation = generationOf(file);
+				if (generation > newestGeneration) {
+					newest = file;
+					newestGeneration = generation;
+				}
+			}
+		}
+		if (newest == null) {
+			return null;
+		}
+		try {
+			return CatalogSnapshot.map(newest);
+		} catch (IOException e) {
+			logger.warn("Discarding unreadable catalog snapshot " + newest + ": " + e.getMessage());
+			newest.delete();
+			return null;
+		}
+	}
+
+	private void deleteOlderThan(long generation) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				long fileGeneration = generationOf(file);
+				if (fileGeneration >= 0 && fileGeneration < generation) {
+					// still mapped readers keep their pages until unmapped
+					file.delete();
+				}
+			}
+		}
+	}
+
+	private static long generationOf(File file) {
+		String name = file.getName();
+		if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static CatalogSnapshot empty() throws FileItException {
+		try {
+			return CatalogSnapshot.wrap(CatalogSnapshot.encode(new BookCatalog(), -1));
+		} catch (IOException e) {
+			throw new FileItException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.kirat.solutions.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The settings of one properties file as they were loaded. A snapshot never
+ * changes; a reload makes a new one, so a reader holding it sees one
+ * consistent version of every key without locking.
+ */
+public final class ConfigSnapshot {
+
+	private final String name;
+	private final Map<String, String> values;
+	private final long loadedAt;
+
+	ConfigSnapshot(String name, Properties properties) {
+		Map<String, String> oValues = new HashMap<String, String>();
+		for (String key : properties.stringPropertyNames()) {
+			oValues.put(key, properties.getProperty(key));
+		}
+		this.name = name;
+		this.values = Collections.unmodifiableMap(oValues);
+		this.loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the file the settings come from, e.g. FileInfo.properties
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	public Set<String> keys() {
+		return values.keySet();
+	}
+
+	public String getString(String key) {
+		return values.get(key);
+	}
+
+	/**
+	 * @return the default when the key is missing or empty
+	 */
+	public int getInt(String key, int defaultValue) {
+		String value = values.get(key);
+		return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	public long getLong(String key, long defaultValue) {
+		String value = values.get(key);
+		return value == null || value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	public boolean getBoolean(String key, boolean defaultValue) {
+		String value = values.get(key);
+		return value == null || value.trim().isEmpty() ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * Keys added, removed or given another value since the previous snapshot.
+	 */
+	public Set<String> changedFrom(ConfigSnapshot previous) {
+		Set<String> changed = new HashSet<String>();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			if (!entry.getValue().equals(previous.values.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+		for (String key : previous.values.keySet()) {
+			if (!values.containsKey(key)) {
+				changed.add(key);
+			}
+		}
+		return changed;
+	}
+}
@@ -0,0 +1,255 @@
+package com.kirat.solutions.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+
+/**
+ * Holds the settings of FileInfo.properties, ErrorMessage.properties and
+ * cloud.properties as {@link ConfigSnapshot}s. Every file is loaded once;
+ * readers take the current snapshot without locking. Once started, a file
+ * that lives on disk (the classpath of an exploded deployment, the folder
+ * named by the fileit.config.dir system property, or the file named by
+ * {@link CloudStorageConfig#PROPERTIES_LOCATION}) is watched, and an edit
+ * swaps in a new snapshot and tells the listeners of that file which keys
+ * changed. Files inside a jar are loaded once and never reloaded.
+ */
+public final class ConfigStore {
+
+	public static final String FILE_INFO = "FileInfo.properties";
+	public static final String ERROR_MESSAGE = "ErrorMessage.properties";
+	public static final String CLOUD = "cloud.properties";
+	// System property naming a folder whose properties files replace the classpath ones
+	public static final String CONFIG_DIR = "fileit.config.dir";
+	// editors write a file in several steps; reload once it has been quiet this long
+	private static final long QUIET_MILLIS = 200;
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(ConfigStore.class);
+	private static final ConfigStore INSTANCE = new ConfigStore();
+
+	/**
+	 * Told about a reload that changed at least one key, on the watching
+	 * thread.
+	 */
+	public interface Listener {
+
+		void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys);
+	}
+
+	private final Map<String, ConfigSnapshot> snapshots = new ConcurrentHashMap<String, ConfigSnapshot>();
+	private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<String, List<Listener>>();
+	// the files on disk, by path, and the name each is loaded as
+	private final Map<Path, String> files = new ConcurrentHashMap<Path, String>();
+	private WatchService watcher;
+	private Thread thread;
+
+	public static ConfigStore getInstance() {
+		return INSTANCE;
+	}
+
+	private ConfigStore() {
+		for (String name : new String[] { FILE_INFO, ERROR_MESSAGE, CLOUD }) {
+			listeners.put(name, new CopyOnWriteArrayList<Listener>());
+			ConfigSnapshot oSnapshot;
+			try {
+				oSnapshot = load(name);
+			} catch (IOException e) {
+				logger.error("Could not load " + name + ": " + e.getMessage());
+				oSnapshot = new ConfigSnapshot(name, new Properties());
+			}
+			snapshots.put(name, oSnapshot);
+		}
+	}
+
+	/**
+	 * @return the settings of the file as last loaded; empty when it is missing
+	 */
+	public ConfigSnapshot get(String name) {
+		return snapshots.get(name);
+	}
+
+	public void addListener(String name, Listener oListener) {
+		listeners.get(name).add(oListener);
+	}
+
+	public void removeListener(String name, Listener oListener) {
+		listeners.get(name).remove(oListener);
+	}
+
+	/**
+	 * Watches the folders of the files found on disk, unless config.watch in
+	 * FileInfo.properties is false.
+	 */
+	public synchronized void start() {
+		if (thread != null || !get(FILE_INFO).getBoolean("config.watch", true) || files.isEmpty()) {
+			return;
+		}
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			Set<Path> folders = new LinkedHashSet<Path>();
+			for (Path file : files.keySet()) {
+				if (folders.add(file.getParent())) {
+					file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY);
+				}
+			}
+			logger.info("Watching " + files.keySet() + " for configuration changes");
+		} catch (IOException e) {
+			logger.warn("Configuration is not reloaded: " + e.getMessage());
+			return;
+		}
+		final WatchService oWatcher = watcher;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(oWatcher);
+			}
+		}, "fileit-config-watch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		if (thread != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				logger.warn("Closing the configuration watcher: " + e.getMessage());
+			}
+			thread.interrupt();
+			thread = null;
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Loads a file again and, when any key changed, makes the new snapshot
+	 * current and tells the listeners. A file that cannot be read keeps the
+	 * snapshot it has.
+	 *
+	 * @return the keys that changed, empty when none did
+	 */
+	public synchronized Set<String> reload(String name) {
+		ConfigSnapshot previous = snapshots.get(name);
+		ConfigSnapshot current;
+		try {
+			current = load(name);
+		} catch (IOException e) {
+			logger.warn("Keeping the loaded " + name + ": " + e.getMessage());
+			return new LinkedHashSet<String>();
+		}
+		Set<String> changed = current.changedFrom(previous);
+		if (changed.isEmpty()) {
+			return changed;
+		}
+		snapshots.put(name, current);
+		logger.info("Reloaded " + name + ", changed " + changed);
+		for (Listener oListener : listeners.get(name)) {
+			try {
+				oListener.configChanged(previous, current, changed);
+			} catch (RuntimeException e) {
+				logger.error("Configuration listener failed on " + name + ": " + e.getMessage());
+			}
+		}
+		return changed;
+	}
+
+	private void watch(WatchService oWatcher) {
+		try {
+			while (true) {
+				Set<String> touched = new LinkedHashSet<String>();
+				WatchKey key = oWatcher.take();
+				do {
+					collect(key, touched);
+				} while ((key = oWatcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null);
+				for (String name : touched) {
+					reload(name);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	private void collect(WatchKey key, Set<String> touched) {
+		Path folder = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				for (Map.Entry<Path, String> file : files.entrySet()) {
+					if (file.getKey().getParent().equals(folder)) {
+						touched.add(file.getValue());
+					}
+				}
+			} else {
+				String name = files.get(folder.resolve((Path) event.context()));
+				if (name != null) {
+					touched.add(name);
+				}
+			}
+		}
+		key.reset();
+	}
+
+	private ConfigSnapshot load(String name) throws IOException {
+		Properties properties = new Properties();
+		File file = locate(name);
+		InputStream stream;
+		if (file != null) {
+			files.put(file.toPath().toAbsolutePath(), name);
+			stream = new FileInputStream(file);
+		} else {
+			stream = ConfigStore.class.getClassLoader().getResourceAsStream(name);
+		}
+		if (stream != null) {
+			try {
+				properties.load(stream);
+			} finally {
+				stream.close();
+			}
+		}
+		return new ConfigSnapshot(name, properties);
+	}
+
+	// the file on disk the settings are read from, null for none or one in a jar
+	private static File locate(String name) {
+		String location = CLOUD.equals(name) ? System.getProperty(CloudStorageConfig.PROPERTIES_LOCATION) : null;
+		if (location != null) {
+			return new File(location);
+		}
+		String dir = System.getProperty(CONFIG_DIR);
+		if (dir != null && new File(dir, name).isFile()) {
+			return new File(dir, name);
+		}
+		URL url = ConfigStore.class.getClassLoader().getResource(name);
+		if (url != null && "file".equals(url.getProtocol())) {
+			try {
+				return new File(url.toURI());
+			} catch (URISyntaxException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+}
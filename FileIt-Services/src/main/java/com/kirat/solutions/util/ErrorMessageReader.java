@@ -1,54 +1,24 @@
 package com.kirat.solutions.util;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.Properties;
-
+/**
+ * Settings of ErrorMessage.properties, read from the current {@link ConfigStore}
+ * snapshot, so a reload is seen by the next call.
+ */
 public class ErrorMessageReader {
-	private static Map<String, String> propertiesMap = new Hashtable<String, String>();
-	private static ErrorMessageReader fpr;
+
+	private static final ErrorMessageReader fpr = new ErrorMessageReader();
 
 	/**
 	 * Create a static method to get instance.
 	 */
 	public static ErrorMessageReader getInstance() {
-		if (fpr == null) {
-			fpr = new ErrorMessageReader();
-		}
 		return fpr;
 	}
 
 	private ErrorMessageReader() {
-		Properties properties = new Properties();
-		InputStream inputStream = null;
-
-		try {
-			inputStream = getClass().getClassLoader().getResourceAsStream("ErrorMessage.properties");
-			if (null != inputStream) {
-				properties.load(inputStream);
-				for (String keyName : properties.stringPropertyNames()) {
-					String keyValue = properties.getProperty(keyName);
-					propertiesMap.put(keyName, keyValue);
-				}
-			}
-		} catch (IOException ioException) {
-			System.out.println(ioException.getMessage());
-		} finally {
-			try {
-				if (null != inputStream) {
-					inputStream.close();
-				}
-			} catch (IOException e) {
-				System.out.println(e.getMessage());
-			}
-		}
-
 	}
 
 	public String getString(String keyName) {
-		// return String.valueOf(properties.get(keyName));
-		return propertiesMap.get(keyName);
+		return ConfigStore.getInstance().get(ConfigStore.ERROR_MESSAGE).getString(keyName);
 	}
-}
\ No newline at end of file
+}
@@ -1,56 +1,36 @@
 package com.kirat.solutions.util;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.Properties;
-
+/**
+ * Settings of FileInfo.properties, read from the current {@link ConfigStore}
+ * snapshot, so a reload is seen by the next call.
+ */
 public class FileInfoPropertyReader {
 
-	private static Map<String, String> propertiesMap = new Hashtable<String, String>();
-	private static FileInfoPropertyReader fpr;
+	private static final FileInfoPropertyReader fpr = new FileInfoPropertyReader();
 
 	/**
 	 * Create a static method to get instance.
 	 */
 	public static FileInfoPropertyReader getInstance() {
-		if (fpr == null) {
-			fpr = new FileInfoPropertyReader();
-		}
 		return fpr;
 	}
 
 	private FileInfoPropertyReader() {
-		Properties properties = new Properties();
-		InputStream inputStream = null;
-
-		try {
-			inputStream = getClass().getClassLoader().getResourceAsStream("FileInfo.properties");
-			if (null != inputStream) {
-				properties.load(inputStream);
-				for (String keyName : properties.stringPropertyNames()) {
-					String keyValue = properties.getProperty(keyName);
-					propertiesMap.put(keyName, keyValue);
-				}
-			}
-		} catch (IOException ioException) {
-			System.out.println(ioException.getMessage());
-		} finally {
-			try {
-				if (null != inputStream) {
-					inputStream.close();
-				}
-			} catch (IOException e) {
-				System.out.println(e.getMessage());
-			}
-		}
-
 	}
 
 	public String getString(String keyName) {
-		// return String.valueOf(properties.get(keyName));
-		return propertiesMap.get(keyName);
+		return ConfigStore.getInstance().get(ConfigStore.FILE_INFO).getString(keyName);
+	}
+
+	/**
+	 * @return the default when the key is missing or empty
+	 */
+	public int getInt(String keyName, int defaultValue) {
+		return ConfigStore.getInstance().get(ConfigStore.FILE_INFO).getInt(keyName, defaultValue);
+	}
+
+	public long getLong(String keyName, long defaultValue) {
+		return ConfigStore.getInstance().get(ConfigStore.FILE_INFO).getLong(keyName, defaultValue);
 	}
 
 }
@@ -0,0 +1,29 @@
+package com.kirat.solutions.util;
+
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+
+import com.kirat.solutions.domain.FileItContext;
+
+/**
+ * Clears the request-scoped {@link FileItContext} of the CXF worker thread.
+ * Registered on the bus for the start of every request and for the end of
+ * its response (or fault), so no value outlives the request that set it even
+ * when the servlet container reuses the thread.
+ */
+public class FileItContextInterceptor extends AbstractPhaseInterceptor<Message> {
+
+	public FileItContextInterceptor(String phase) {
+		super(phase);
+	}
+
+	@Override
+	public void handleMessage(Message message) {
+		FileItContext.clear();
+	}
+
+	@Override
+	public void handleFault(Message message) {
+		FileItContext.clear();
+	}
+}
@@ -3,10 +3,8 @@ package com.kirat.solutions.util;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-
 import com.kirat.solutions.Constants.BinderConstants;
+import com.kirat.solutions.domain.BookCatalog;
 
 public class FileUtil {
 
@@ -25,15 +23,16 @@ public class FileUtil {
 	}
 	
 	public static void checkTestJson() throws Exception {
-		CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig();
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
 		try {
-			oCloudStorageConfig.getFile("1dvaultdata", "test.JSON");
+			oCloudStorageConfig.getFile("1dvaultdata", "test.JSON").close();
 		} catch (Exception e) {
-			JSONArray jsonArray = new JSONArray();
-			JSONObject parentObj = new JSONObject();
-			parentObj.put("BookList", jsonArray);
-			InputStream is = new ByteArrayInputStream(parentObj.toJSONString().getBytes());
-			oCloudStorageConfig.uploadFile("1dvaultdata", "test.JSON", is, "application/json");
+			BookCatalog oBookCatalog = new BookCatalog();
+			InputStream is = new ByteArrayInputStream(JsonCodec.catalogBytes(oBookCatalog));
+			// only if still missing; a catalog written meanwhile, or one that failed to read, is kept
+			Long generation = oCloudStorageConfig.uploadFile("1dvaultdata", "test.JSON", is, "application/json",
+					Long.valueOf(0));
+			CatalogSnapshotManager.getInstance().update(oBookCatalog, generation);
 		}
 		
 	}
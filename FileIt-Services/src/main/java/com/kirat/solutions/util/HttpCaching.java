@@ -0,0 +1,158 @@
+package com.kirat.solutions.util;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+/**
+ * Conditional GET and gzip for read endpoints whose body only depends on the
+ * generation of a stored object. The entity tag is the generation, weak
+ * because the gzip and identity bodies share it, and Last-Modified is the time
+ * the object was written. Responses ask clients to revalidate every time
+ * (Cache-Control: no-cache), so a poll costs a 304 without a body while the
+ * generation stands. Bodies of at least http.gzip.min.bytes (default 1024)
+ * are gzipped for clients that accept it.
+ */
+public final class HttpCaching {
+
+	private static HttpCaching INSTANCE;
+
+	private final int gzipMinBytes;
+
+	public static synchronized HttpCaching getInstance() {
+		if (null == INSTANCE) {
+			INSTANCE = new HttpCaching(FileInfoPropertyReader.getInstance().getInt("http.gzip.min.bytes", 1024));
+		}
+		return INSTANCE;
+	}
+
+	HttpCaching(int gzipMinBytes) {
+		this.gzipMinBytes = gzipMinBytes;
+	}
+
+	public static EntityTag tag(long generation) {
+		return new EntityTag(Long.toString(generation), true);
+	}
+
+	/**
+	 * If-None-Match decides when present (weak comparison, as RFC 7232 asks
+	 * for it), otherwise If-Modified-Since is compared to the second.
+	 *
+	 * @param lastModified
+	 *            write time in milliseconds, 0 when unknown
+	 */
+	public boolean isNotModified(HttpHeaders oHttpHeaders, EntityTag tag, long lastModified) {
+		String ifNoneMatch = header(oHttpHeaders, HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				if (candidate.startsWith("W/")) {
+					candidate = candidate.substring(2);
+				}
+				if (candidate.equals("*") || candidate.equals('"' + tag.getValue() + '"')) {
+					return true;
+				}
+			}
+			return false;
+		}
+		String ifModifiedSince = header(oHttpHeaders, HttpHeaders.IF_MODIFIED_SINCE);
+		if (ifModifiedSince == null || lastModified <= 0) {
+			return false;
+		}
+		try {
+			long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+					.toEpochMilli();
+			return lastModified / 1000 <= since / 1000;
+		} catch (DateTimeParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param length
+	 *            size of the body, or an estimate of it
+	 */
+	public boolean shouldGzip(HttpHeaders oHttpHeaders, long length) {
+		return length >= gzipMinBytes && acceptsGzip(header(oHttpHeaders, HttpHeaders.ACCEPT_ENCODING));
+	}
+
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		boolean accepted = false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim().toLowerCase();
+			boolean gzip = name.equals("gzip") || name.equals("x-gzip");
+			if (!gzip && !name.equals("*")) {
+				continue;
+			}
+			boolean refused = false;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						refused = Double.parseDouble(parameter.substring(2)) <= 0;
+					} catch (NumberFormatException e) {
+						refused = true;
+					}
+				}
+			}
+			if (gzip) {
+				// an explicit gzip entry overrides the wildcard
+				return !refused;
+			}
+			accepted = !refused;
+		}
+		return accepted;
+	}
+
+	public ResponseBuilder notModified(EntityTag tag, long lastModified) {
+		return validators(Response.notModified(), tag, lastModified);
+	}
+
+	/**
+	 * 200 carrying the validators; the entity must already be gzipped when
+	 * gzip is set.
+	 */
+	public ResponseBuilder ok(Object entity, EntityTag tag, long lastModified, boolean gzip) {
+		ResponseBuilder builder = validators(Response.ok(entity), tag, lastModified);
+		if (gzip) {
+			builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		return builder;
+	}
+
+	private static ResponseBuilder validators(ResponseBuilder builder, EntityTag tag, long lastModified) {
+		builder.tag(tag).header(HttpHeaders.CACHE_CONTROL, "no-cache").header(HttpHeaders.VARY,
+				HttpHeaders.ACCEPT_ENCODING);
+		if (lastModified > 0) {
+			builder.lastModified(new Date(lastModified));
+		}
+		return builder;
+	}
+
+	// repeated headers joined as one list
+	private static String header(HttpHeaders oHttpHeaders, String name) {
+		List<String> values = oHttpHeaders.getRequestHeader(name);
+		if (values == null || values.isEmpty()) {
+			return null;
+		}
+		StringBuilder joined = new StringBuilder();
+		for (String value : values) {
+			if (joined.length() > 0) {
+				joined.append(',');
+			}
+			joined.append(value);
+		}
+		return joined.toString();
+	}
+}
@@ -0,0 +1,374 @@
+package com.kirat.solutions.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.kirat.solutions.Constants.BinderConstants;
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.domain.Children;
+
+/**
+ * Streaming reader and writer for the master catalog (test.JSON) and the book
+ * tree. Both are parsed straight from the storage stream and written as UTF-8
+ * straight to the target stream, without building generic JSON trees.
+ */
+public final class JsonCodec {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final XMLInputFactory XML_FACTORY = XMLInputFactory.newInstance();
+
+	static {
+		XML_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XML_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private static final String BOOK_LIST = "BookList";
+	private static final String NAME = "Name";
+	private static final String CLASSIFICATION = "Classification";
+	private static final String PATH = "Path";
+
+	private JsonCodec() {
+	}
+
+	/**
+	 * Reads the whole catalog and closes the stream.
+	 */
+	public static BookCatalog readCatalog(InputStream oInputStream) throws FileItException {
+		BookCatalog oBookCatalog = new BookCatalog();
+		try {
+			JsonParser parser = openCatalog(oInputStream);
+			try {
+				CatalogEntry oCatalogEntry;
+				while ((oCatalogEntry = nextEntry(parser)) != null) {
+					oBookCatalog.getBooks().add(oCatalogEntry);
+				}
+			} finally {
+				parser.close();
+			}
+		} catch (IOException e) {
+			throw new FileItException(e.getMessage());
+		}
+		return oBookCatalog;
+	}
+
+	/**
+	 * Scans the catalog for one book and stops reading as soon as it is found.
+	 * Closes the stream.
+	 *
+	 * @return the entry, or null when the catalog does not hold the book
+	 */
+	public static CatalogEntry findCatalogEntry(InputStream oInputStream, String bookName) throws FileItException {
+		try {
+			JsonParser parser = openCatalog(oInputStream);
+			try {
+				CatalogEntry oCatalogEntry;
+				while ((oCatalogEntry = nextEntry(parser)) != null) {
+					if (oCatalogEntry.getName().equals(bookName)) {
+						return oCatalogEntry;
+					}
+				}
+			} finally {
+				parser.close();
+			}
+		} catch (IOException e) {
+			throw new FileItException(e.getMessage());
+		}
+		return null;
+	}
+
+	public static void writeCatalog(BookCatalog oBookCatalog, OutputStream oOutputStream) throws IOException {
+		writeCatalog(oBookCatalog.getBooks().iterator(), oOutputStream);
+	}
+
+	/**
+	 * Writes the catalog entry by entry as the iterator reads them, e.g. from
+	 * {@link CatalogSnapshot#entries()}.
+	 */
+	public static void writeCatalog(Iterator<CatalogEntry> entries, OutputStream oOutputStream) throws IOException {
+		JsonGenerator generator = JSON_FACTORY.createJsonGenerator(oOutputStream, JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeArrayFieldStart(BOOK_LIST);
+		while (entries.hasNext()) {
+			writeCatalogEntry(generator, entries.next());
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.flush();
+	}
+
+	/**
+	 * Writes one page of the catalog in the shape of
+	 * {@link #writeCatalog(BookCatalog, OutputStream)}, entry by entry as the
+	 * query reads them, followed by nextCursor when more entries match.
+	 */
+	public static void writeCatalogPage(CatalogQuery oCatalogQuery, OutputStream oOutputStream) throws IOException {
+		JsonGenerator generator = JSON_FACTORY.createJsonGenerator(oOutputStream, JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeArrayFieldStart(BOOK_LIST);
+		while (oCatalogQuery.hasNext()) {
+			writeCatalogEntry(generator, oCatalogQuery.next());
+		}
+		generator.writeEndArray();
+		if (oCatalogQuery.getNextCursor() != null) {
+			generator.writeStringField("nextCursor", oCatalogQuery.getNextCursor());
+		}
+		generator.writeEndObject();
+		generator.flush();
+	}
+
+	private static void writeCatalogEntry(JsonGenerator generator, CatalogEntry oCatalogEntry) throws IOException {
+		generator.writeStartObject();
+		generator.writeObjectFieldStart(oCatalogEntry.getName());
+		generator.writeStringField(NAME, oCatalogEntry.getName());
+		generator.writeStringField(CLASSIFICATION, oCatalogEntry.getClassification());
+		generator.writeStringField(PATH, oCatalogEntry.getPath());
+		generator.writeEndObject();
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Catalog as UTF-8 bytes, ready to be uploaded.
+	 */
+	public static byte[] catalogBytes(BookCatalog oBookCatalog) throws FileItException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(64 + oBookCatalog.getBooks().size() * 96);
+		try {
+			writeCatalog(oBookCatalog, baos);
+		} catch (IOException e) {
+			throw new FileItException(e.getMessage());
+		}
+		return baos.toByteArray();
+	}
+
+	private static JsonParser openCatalog(InputStream oInputStream) throws IOException {
+		JsonParser parser = JSON_FACTORY.createJsonParser(oInputStream);
+		parser.enable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Catalog is not a JSON object");
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (BOOK_LIST.equals(field) && token == JsonToken.START_ARRAY) {
+				return parser;
+			}
+			parser.skipChildren();
+		}
+		// no BookList: behave as an empty catalog
+		return parser;
+	}
+
+	/**
+	 * Next {"name":{...}} element of the BookList array, or null at its end.
+	 */
+	private static CatalogEntry nextEntry(JsonParser parser) throws IOException {
+		if (parser.getParsingContext().inArray()) {
+			JsonToken token;
+			while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+				if (parser.nextToken() == JsonToken.FIELD_NAME) {
+					CatalogEntry oCatalogEntry = new CatalogEntry();
+					oCatalogEntry.setName(parser.getCurrentName());
+					parser.nextToken();
+					readEntryFields(parser, oCatalogEntry);
+					// the legacy writer only ever put one book in each element
+					while (parser.nextToken() != JsonToken.END_OBJECT) {
+						parser.nextToken();
+						parser.skipChildren();
+					}
+					return oCatalogEntry;
+				}
+			}
+			if (token != JsonToken.END_ARRAY) {
+				throw new IOException("Unexpected BookList element " + token);
+			}
+		}
+		return null;
+	}
+
+	private static void readEntryFields(JsonParser parser, CatalogEntry oCatalogEntry) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.VALUE_STRING) {
+				if (NAME.equals(field)) {
+					oCatalogEntry.setName(parser.getText());
+				} else if (CLASSIFICATION.equals(field)) {
+					oCatalogEntry.setClassification(parser.getText());
+				} else if (PATH.equals(field)) {
+					oCatalogEntry.setPath(parser.getText());
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Reads a binder XML as written by TransformationProcessor and closes the
+	 * stream.
+	 */
+	public static BookTree readBookTree(InputStream oInputStream) throws FileItException {
+		BookTree oBookTree = new BookTree();
+		try {
+			XMLStreamReader reader = XML_FACTORY.createXMLStreamReader(oInputStream);
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+						continue;
+					}
+					String element = reader.getLocalName();
+					if ("map".equals(element)) {
+						oBookTree.setId(reader.getAttributeValue(null, BinderConstants.ID));
+					} else if ("title".equals(element)) {
+						oBookTree.setTitle(reader.getElementText());
+					} else if ("topicref".equals(element)) {
+						oBookTree.setTopicrefId(reader.getAttributeValue(null, BinderConstants.ID));
+						oBookTree.setNavtitle(reader.getAttributeValue(null, "navtitle"));
+						oBookTree.setClassification(reader.getAttributeValue(null, "classification"));
+						oBookTree.setType(reader.getAttributeValue(null, BinderConstants.TYPE));
+					} else if ("topic".equals(element)) {
+						Children oChildren = new Children();
+						oChildren.setId(reader.getAttributeValue(null, BinderConstants.ID));
+						oChildren.setName(reader.getAttributeValue(null, BinderConstants.NAME));
+						oChildren.setPath(reader.getAttributeValue(null, BinderConstants.PATH));
+						oChildren.setType(reader.getAttributeValue(null, BinderConstants.TYPE));
+						oChildren.setVersion(reader.getAttributeValue(null, BinderConstants.VERSION));
+						oChildren.setNote(reader.getAttributeValue(null, BinderConstants.NOTE));
+						oBookTree.getTopics().add(oChildren);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new FileItException(e.getMessage());
+		} finally {
+			try {
+				oInputStream.close();
+			} catch (IOException e) {
+				// nothing left to read
+			}
+		}
+		return oBookTree;
+	}
+
+	/**
+	 * Writes the book tree in the shape /getBookTreeDetail has always returned,
+	 * i.e. the XML-to-JSON mapping of org.json: attributes become fields, numeric
+	 * attribute values become numbers and a single topic is an object rather
+	 * than a one element array.
+	 */
+	public static void writeBookTree(BookTree oBookTree, OutputStream oOutputStream) throws IOException {
+		JsonGenerator generator = JSON_FACTORY.createJsonGenerator(oOutputStream, JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeObjectFieldStart("map");
+		writeXmlValue(generator, BinderConstants.ID, oBookTree.getId());
+		writeXmlValue(generator, "title", oBookTree.getTitle() == null ? "" : oBookTree.getTitle());
+		generator.writeObjectFieldStart("body");
+		generator.writeObjectFieldStart("topicref");
+		writeXmlValue(generator, BinderConstants.ID, oBookTree.getTopicrefId());
+		writeXmlValue(generator, "navtitle", oBookTree.getNavtitle());
+		writeXmlValue(generator, "classification", oBookTree.getClassification());
+		writeXmlValue(generator, BinderConstants.TYPE, oBookTree.getType());
+		int topics = oBookTree.getTopics().size();
+		if (topics == 1) {
+			generator.writeFieldName("topic");
+			writeTopic(generator, oBookTree.getTopics().get(0));
+		} else if (topics > 1) {
+			generator.writeArrayFieldStart("topic");
+			for (Children oChildren : oBookTree.getTopics()) {
+				writeTopic(generator, oChildren);
+			}
+			generator.writeEndArray();
+		}
+		generator.writeEndObject();
+		generator.writeEndObject();
+		generator.writeEndObject();
+		generator.writeEndObject();
+		generator.flush();
+	}
+
+	private static void writeTopic(JsonGenerator generator, Children oChildren) throws IOException {
+		generator.writeStartObject();
+		writeXmlValue(generator, BinderConstants.ID, oChildren.getId());
+		writeXmlValue(generator, BinderConstants.NAME, oChildren.getName());
+		writeXmlValue(generator, BinderConstants.PATH, oChildren.getPath());
+		writeXmlValue(generator, BinderConstants.TYPE, oChildren.getType());
+		writeXmlValue(generator, BinderConstants.VERSION, oChildren.getVersion());
+		writeXmlValue(generator, BinderConstants.NOTE, oChildren.getNote());
+		generator.writeEndObject();
+	}
+
+	// Same coercion as org.json's XML.stringToValue; absent attributes are omitted
+	private static void writeXmlValue(JsonGenerator generator, String field, String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		generator.writeFieldName(field);
+		if ("true".equalsIgnoreCase(value)) {
+			generator.writeBoolean(true);
+		} else if ("false".equalsIgnoreCase(value)) {
+			generator.writeBoolean(false);
+		} else if ("null".equalsIgnoreCase(value)) {
+			generator.writeNull();
+		} else if (!writeNumber(generator, value)) {
+			generator.writeString(value);
+		}
+	}
+
+	private static boolean writeNumber(JsonGenerator generator, String value) throws IOException {
+		if (value.isEmpty()) {
+			return false;
+		}
+		char initial = value.charAt(0);
+		if ((initial < '0' || initial > '9') && initial != '-') {
+			return false;
+		}
+		try {
+			if (value.indexOf('.') > -1 || value.indexOf('e') > -1 || value.indexOf('E') > -1 || "-0".equals(value)) {
+				double d = Double.parseDouble(value);
+				if (Double.isInfinite(d) || Double.isNaN(d)) {
+					return false;
+				}
+				String number = Double.toString(d);
+				if (number.indexOf('.') > 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+					while (number.endsWith("0")) {
+						number = number.substring(0, number.length() - 1);
+					}
+					if (number.endsWith(".")) {
+						number = number.substring(0, number.length() - 1);
+					}
+				}
+				generator.writeNumber(number);
+				return true;
+			}
+			long l = Long.parseLong(value);
+			if (!value.equals(Long.toString(l))) {
+				return false;
+			}
+			generator.writeNumber(l);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+}
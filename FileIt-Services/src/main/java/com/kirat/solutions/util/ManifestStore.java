@@ -0,0 +1,244 @@
+package com.kirat.solutions.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.kirat.solutions.Constants.BinderConstants;
+import com.kirat.solutions.domain.BookManifest;
+import com.kirat.solutions.domain.ContentManifest;
+
+/**
+ * Reads and writes the manifests behind content-addressed page storage.
+ *
+ * <pre>
+ * content/&lt;sha256&gt;/manifest.json     pages rendered from one document
+ * content/&lt;sha256&gt;/&lt;render&gt;/&lt;n&gt;.jpeg page images of one rendering
+ * content/&lt;sha256&gt;/&lt;render&gt;/thumbnails-&lt;n&gt;.jpeg sprite sheets of its thumbnails
+ * content/&lt;sha256&gt;/refs/&lt;book&gt;/&lt;path&gt; empty marker per book document using the content
+ * &lt;book&gt;/manifest.json               documents of a book and their pages
+ * </pre>
+ *
+ * A content manifest is only written once all its pages are stored, so its
+ * presence means the document never has to be converted again. Every
+ * rendering writes its pages under a fresh render id, so one rendering never
+ * touches the pages of another, even of the same document.
+ */
+public final class ManifestStore {
+
+	private static final String BUCKET = "1dvaultdata";
+	private static final String CONTENT = "content/";
+	private static final String MANIFEST = "manifest.json";
+	private static final String SOURCE = "source";
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private ManifestStore() {
+	}
+
+	public static String contentPrefix(String hash) {
+		return CONTENT + hash + "/";
+	}
+
+	public static String newRenderId() {
+		return UUID.randomUUID().toString();
+	}
+
+	public static String pageKey(String hash, String renderId, int page) {
+		return contentPrefix(hash) + renderId + "/" + page + BinderConstants.IMG_EXTENSION;
+	}
+
+	/**
+	 * Sprite sheet n (from 1) of the thumbnails of a rendering.
+	 */
+	public static String thumbnailKey(String hash, String renderId, int sheet) {
+		return contentPrefix(hash) + renderId + "/thumbnails-" + sheet + BinderConstants.IMG_EXTENSION;
+	}
+
+	/**
+	 * The uploaded document the content was rendered from.
+	 */
+	public static String sourceKey(String hash) {
+		return contentPrefix(hash) + SOURCE;
+	}
+
+	public static String manifestKey(String hash) {
+		return contentPrefix(hash) + MANIFEST;
+	}
+
+	public static String bookManifestKey(String bookName) {
+		return bookName + "/" + MANIFEST;
+	}
+
+	public static String refKey(String hash, String bookName, String path) {
+		try {
+			return contentPrefix(hash) + "refs/" + bookName + "/" + URLEncoder.encode(path, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the manifest for display; a cached copy may be up to
+	 * storage.cache.revalidate.millis old.
+	 * 
+	 * @return the manifest, or null when the content has not been stored
+	 */
+	public static ContentManifest readContent(String hash) throws FileItException {
+		return read(manifestKey(hash), ContentManifest.class, null);
+	}
+
+	/**
+	 * Reads the manifest at the generation just read with
+	 * {@link #contentGeneration(String)}, for a caller that acts on its pages.
+	 * 
+	 * @return the manifest, or null when the generation is null
+	 */
+	public static ContentManifest readContent(String hash, Long generation) throws FileItException {
+		return generation == null ? null : read(manifestKey(hash), ContentManifest.class, generation);
+	}
+
+	public static Long writeContent(ContentManifest oContentManifest) throws FileItException {
+		return write(manifestKey(oContentManifest.getHash()), oContentManifest);
+	}
+
+	/**
+	 * @return the generation of the content manifest, or null when the content
+	 *         is not stored (or no longer)
+	 */
+	public static Long contentGeneration(String hash) throws FileItException {
+		return CloudStorageConfig.getInstance().getGeneration(BUCKET, manifestKey(hash));
+	}
+
+	/**
+	 * Reads the manifest for display; a cached copy may be up to
+	 * storage.cache.revalidate.millis old.
+	 * 
+	 * @return the manifest, or null for a book uploaded before manifests existed
+	 */
+	public static BookManifest readBook(String bookName) throws FileItException {
+		return read(bookManifestKey(bookName), BookManifest.class, null);
+	}
+
+	/**
+	 * Reads the manifest at the generation just read with
+	 * {@link #bookGeneration(String)}, for a read-modify-write with
+	 * {@link #writeBook(BookManifest, Long)}.
+	 * 
+	 * @return the manifest, or null when the generation is null
+	 */
+	public static BookManifest readBook(String bookName, Long generation) throws FileItException {
+		return generation == null ? null : read(bookManifestKey(bookName), BookManifest.class, generation);
+	}
+
+	/**
+	 * @return the generation of the book manifest, or null when there is none
+	 */
+	public static Long bookGeneration(String bookName) throws FileItException {
+		return CloudStorageConfig.getInstance().getGeneration(BUCKET, bookManifestKey(bookName));
+	}
+
+	/**
+	 * Replaces the book manifest only if it is still at the generation it was
+	 * read at.
+	 * 
+	 * @param generation
+	 *            generation the manifest was read at with
+	 *            {@link #readBook(String, Long)}, null when there was none
+	 * @return false when the manifest changed in between and has to be read again
+	 */
+	public static boolean writeBook(BookManifest oBookManifest, Long generation) throws FileItException {
+		return write(bookManifestKey(oBookManifest.getBook()), oBookManifest,
+				generation == null ? Long.valueOf(0) : generation) != null;
+	}
+
+	public static void addRef(String hash, String bookName, String path) throws FileItException {
+		try {
+			CloudStorageConfig.getInstance().uploadFile(BUCKET, refKey(hash, bookName, path),
+					new ByteArrayInputStream(new byte[0]), "application/octet-stream");
+		} catch (FileItException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FileItException(e.getMessage());
+		}
+	}
+
+	public static void removeRef(String hash, String bookName, String path) throws FileItException {
+		CloudStorageConfig.getInstance().deleteIfExists(BUCKET, refKey(hash, bookName, path));
+	}
+
+	/**
+	 * Takes stored content out of use once no book refers to it. The manifest is
+	 * deleted so the content stops being reused; a reference added meanwhile
+	 * puts it back. A book taking a reference checks the manifest is still there
+	 * after adding its marker, so one of the two sides always sees the other,
+	 * and a book that finds it gone renders the document again under a new
+	 * render id.
+	 * 
+	 * @return the page keys left to delete, empty when the content is still
+	 *         referenced or already gone
+	 */
+	public static List<String> detachContent(String hash) throws FileItException {
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+		String refs = contentPrefix(hash) + "refs/";
+		if (!oCloudStorageConfig.listBucket(BUCKET, refs).isEmpty()) {
+			return Collections.emptyList();
+		}
+		// the pages of this generation are deleted, not those of a cached copy
+		Long generation = contentGeneration(hash);
+		ContentManifest oContentManifest = readContent(hash, generation);
+		if (oContentManifest == null) {
+			return Collections.emptyList();
+		}
+		if (!oCloudStorageConfig.deleteIfExists(BUCKET, manifestKey(hash), generation)) {
+			// written again or detached by another job since it was read
+			return Collections.emptyList();
+		}
+		if (!oCloudStorageConfig.listBucket(BUCKET, refs).isEmpty()) {
+			// unless a new rendering has been stored meanwhile
+			write(manifestKey(hash), oContentManifest, Long.valueOf(0));
+			return Collections.emptyList();
+		}
+		return oContentManifest.getPages();
+	}
+
+	/**
+	 * @param generation
+	 *            current generation from the metadata, null to accept a cached
+	 *            copy within the revalidate window
+	 */
+	private static <T> T read(String key, Class<T> type, Long generation) throws FileItException {
+		try {
+			InputStream is = CloudStorageConfig.getInstance().getFile(BUCKET, key, generation);
+			try {
+				return MAPPER.readValue(is, type);
+			} finally {
+				is.close();
+			}
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			throw new FileItException(e.getMessage());
+		}
+	}
+
+	private static Long write(String key, Object manifest) throws FileItException {
+		return write(key, manifest, null);
+	}
+
+	private static Long write(String key, Object manifest, Long ifGenerationMatch) throws FileItException {
+		try {
+			return CloudStorageConfig.getInstance().uploadFile(BUCKET, key,
+					new ByteArrayInputStream(MAPPER.writeValueAsBytes(manifest)), "application/json",
+					ifGenerationMatch);
+		} catch (Exception e) {
+			throw new FileItException(e.getMessage());
+		}
+	}
+}
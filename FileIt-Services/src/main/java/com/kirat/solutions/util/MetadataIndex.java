@@ -0,0 +1,767 @@
+package com.kirat.solutions.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.kirat.solutions.domain.BinderHit;
+import com.kirat.solutions.domain.BinderList;
+import com.kirat.solutions.domain.BinderSearchResponse;
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.domain.Children;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+
+/**
+ * In-memory search over binder metadata: names and classifications from the
+ * catalog, and the name, type, version and note of every topic from the binder
+ * XMLs. Binders are indexed as the catalog snapshot shows them; their topics
+ * are read from the binder XMLs in the background, so a freshly started node
+ * finds binders by name straight away and by topic shortly after. Binders
+ * created or deleted on this node are indexed as it happens, those changed
+ * elsewhere once the catalog snapshot moves to a new generation.
+ * <p>
+ * Every word of a query has to match, as a whole term, as the prefix of one
+ * or, when no term equals it, as a close misspelling found through shared
+ * trigrams. Matches on the name count most. Results can be narrowed to a
+ * classification and a topic type, and come with the number of matches per
+ * classification and type.
+ */
+public final class MetadataIndex {
+
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(MetadataIndex.class);
+	private static final String BUCKET = "1dvaultdata";
+	private static final int NAME = 0;
+	private static final int CLASSIFICATION = 1;
+	private static final int TOPIC_NAME = 2;
+	private static final int TOPIC_DETAIL = 3;
+	private static final float[] FIELD_WEIGHTS = { 4f, 1f, 2f, 1f };
+	private static final float EXACT = 1f;
+	private static final float PREFIX = 0.6f;
+	private static final float FUZZY = 0.4f;
+	private static final int MAX_QUERY_TERMS = 8;
+	private static final int MIN_FUZZY_LENGTH = 4;
+	private static final int MAX_EXPANSIONS = 1024;
+	private static final int ANY = -2;
+	private static final int NONE = -1;
+	private static MetadataIndex INSTANCE;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TreeMap<String, Term> terms = new TreeMap<String, Term>();
+	private final List<Term> termList = new ArrayList<Term>();
+	private final Map<String, IntList> trigrams = new HashMap<String, IntList>();
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	// classifications and topic types, counted by id while a query runs
+	private final Map<String, Integer> facetIds = new HashMap<String, Integer>();
+	private final List<String> facetNames = new ArrayList<String>();
+	private final ExecutorService loader;
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+	private Book[] books = new Book[1024];
+	private int bookCount;
+	private int deadPostings;
+	private int postingCount;
+	private long generation = Long.MIN_VALUE;
+
+	public static synchronized MetadataIndex getInstance() {
+		if (null == INSTANCE) {
+			INSTANCE = new MetadataIndex(FileInfoPropertyReader.getInstance().getInt("metadata.load.threads", 4));
+		}
+		return INSTANCE;
+	}
+
+	MetadataIndex(int loadThreads) {
+		final AtomicInteger count = new AtomicInteger();
+		this.loader = Executors.newFixedThreadPool(Math.max(1, loadThreads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "fileit-metadata-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Indexes a binder just created on this node, topics included.
+	 */
+	public void add(BinderList oBinderList, String path) {
+		lock.writeLock().lock();
+		try {
+			remove(oBinderList.getName());
+			int id = addBook(new CatalogEntry(oBinderList.getName(), oBinderList.getClassification(), path));
+			addTopics(id, oBinderList.getChildren());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String bookName) {
+		lock.writeLock().lock();
+		try {
+			Integer id = ids.remove(bookName);
+			if (id == null) {
+				return;
+			}
+			deadPostings += books[id].postings;
+			books[id] = null;
+			if (deadPostings > 1024 && deadPostings > postingCount / 2) {
+				compact();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Binders matching every word of the query, best first. An empty query
+	 * matches every binder, which with a classification or type lists them.
+	 */
+	public BinderSearchResponse search(String query, String classification, String type, int limit)
+			throws FileItException {
+		sync();
+		List<String> words = new ArrayList<String>(new LinkedHashSet<String>(PageTextIndex.tokenize(query)));
+		if (words.size() > MAX_QUERY_TERMS) {
+			words = words.subList(0, MAX_QUERY_TERMS);
+		}
+		lock.readLock().lock();
+		try {
+			int wantedClassification = wantedFacet(classification);
+			int wantedType = wantedFacet(type);
+			Scratch oScratch = scratch.get();
+			oScratch.begin(bookCount, termList.size(), facetNames.size());
+			if (words.isEmpty()) {
+				for (int id = 0; id < bookCount; id++) {
+					if (books[id] != null) {
+						oScratch.touched.add(id);
+						oScratch.total[id] = 0;
+					}
+				}
+			} else {
+				for (int round = 0; round < words.size(); round++) {
+					match(words.get(round), round, oScratch);
+					if (oScratch.touched.size == 0) {
+						break;
+					}
+				}
+			}
+			int[] classifications = oScratch.classificationCounts;
+			int[] types = oScratch.typeCounts;
+			oScratch.top.clear(limit);
+			int total = 0;
+			for (int i = 0; i < oScratch.touched.size; i++) {
+				int id = oScratch.touched.values[i];
+				Book oBook = books[id];
+				if (oBook == null) {
+					continue;
+				}
+				boolean classificationOk = wantedClassification == ANY
+						|| wantedClassification == oBook.classificationId;
+				boolean typeOk = wantedType == ANY || contains(oBook.typeIds, wantedType);
+				if (typeOk && oBook.classificationId >= 0) {
+					classifications[oBook.classificationId]++;
+				}
+				if (classificationOk) {
+					for (int typeId : oBook.typeIds) {
+						types[typeId]++;
+					}
+				}
+				if (!classificationOk || !typeOk) {
+					continue;
+				}
+				total++;
+				oScratch.top.offer(oScratch.total[id], id);
+			}
+			List<BinderHit> hits = new ArrayList<BinderHit>();
+			for (long key : oScratch.top.drainBestFirst()) {
+				Book oBook = books[TopK.id(key)];
+				BinderHit oBinderHit = new BinderHit();
+				oBinderHit.setName(oBook.entry.getName());
+				oBinderHit.setClassification(oBook.classification);
+				oBinderHit.setPath(oBook.entry.getPath());
+				oBinderHit.setScore(TopK.score(key));
+				hits.add(oBinderHit);
+			}
+			BinderSearchResponse oResponse = new BinderSearchResponse();
+			oResponse.setHits(hits);
+			oResponse.setTotal(total);
+			oResponse.setClassifications(byCount(classifications, facetNames));
+			oResponse.setTypes(byCount(types, facetNames));
+			return oResponse;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Map<String, Object> getStatus() {
+		lock.readLock().lock();
+		try {
+			Map<String, Object> status = new LinkedHashMap<String, Object>();
+			status.put("generation", generation);
+			status.put("binders", ids.size());
+			status.put("terms", terms.size());
+			status.put("postings", postingCount - deadPostings);
+			return status;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Scores the binders still in the running against one word of the query:
+	 * the best field any of its terms hit, times how the term matched.
+	 */
+	private void match(String word, int round, Scratch oScratch) {
+		Term exact = terms.get(word);
+		if (exact != null) {
+			collect(exact, EXACT, round, oScratch);
+		}
+		int expansions = 0;
+		for (Term oTerm : terms.tailMap(word, false).values()) {
+			if (!oTerm.text.startsWith(word) || ++expansions > MAX_EXPANSIONS) {
+				break;
+			}
+			collect(oTerm, PREFIX, round, oScratch);
+		}
+		if (exact == null && word.length() >= MIN_FUZZY_LENGTH) {
+			for (Term oTerm : similar(word, oScratch)) {
+				collect(oTerm, FUZZY, round, oScratch);
+			}
+		}
+		oScratch.endRound(round);
+	}
+
+	private void collect(Term oTerm, float weight, int round, Scratch oScratch) {
+		float[] fieldScores = new float[FIELD_WEIGHTS.length];
+		for (int field = 0; field < fieldScores.length; field++) {
+			fieldScores[field] = weight * FIELD_WEIGHTS[field];
+		}
+		int[] postings = oTerm.postings.values;
+		int[] marks = oScratch.mark;
+		float[] current = oScratch.current;
+		// matched the words before this one, and this one
+		int before = oScratch.base + round;
+		int matched = before + 1;
+		for (int i = 0, size = oTerm.postings.size; i < size; i++) {
+			int id = postings[i] >>> 2;
+			float score = fieldScores[postings[i] & 3];
+			int mark = marks[id];
+			if (mark == matched) {
+				if (score > current[id]) {
+					current[id] = score;
+				}
+			} else if (round == 0 ? mark < before : mark == before) {
+				marks[id] = matched;
+				current[id] = score;
+				if (round == 0) {
+					oScratch.touched.add(id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Terms sharing at least half their trigrams with the word and at most
+	 * one edit away from it, two for longer words.
+	 */
+	private List<Term> similar(String word, Scratch oScratch) {
+		Set<String> grams = trigrams(word);
+		IntList candidates = oScratch.candidates;
+		candidates.size = 0;
+		int stamp = oScratch.nextGramStamp();
+		for (String gram : grams) {
+			IntList termIds = trigrams.get(gram);
+			if (termIds == null) {
+				continue;
+			}
+			for (int i = 0; i < termIds.size; i++) {
+				int termId = termIds.values[i];
+				if (oScratch.gramMark[termId] != stamp) {
+					oScratch.gramMark[termId] = stamp;
+					oScratch.gramCount[termId] = 0;
+					candidates.add(termId);
+				}
+				oScratch.gramCount[termId]++;
+			}
+		}
+		int maxEdits = word.length() <= 5 ? 1 : 2;
+		List<Term> similar = new ArrayList<Term>();
+		for (int i = 0; i < candidates.size; i++) {
+			Term oTerm = termList.get(candidates.values[i]);
+			int shared = oScratch.gramCount[candidates.values[i]];
+			if (2 * shared < (grams.size() + oTerm.text.length()) / 2
+					|| Math.abs(oTerm.text.length() - word.length()) > maxEdits
+					|| editDistance(word, oTerm.text, maxEdits) > maxEdits) {
+				continue;
+			}
+			similar.add(oTerm);
+		}
+		return similar;
+	}
+
+	/**
+	 * Brings the index up to the catalog snapshot when its generation moved:
+	 * binders gone from the catalog are dropped, new ones added and their
+	 * topics queued for loading.
+	 */
+	private void sync() throws FileItException {
+		CatalogSnapshot oSnapshot = CatalogSnapshotManager.getInstance().current();
+		lock.readLock().lock();
+		try {
+			if (oSnapshot.getGeneration() == generation) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		List<CatalogEntry> added = new ArrayList<CatalogEntry>();
+		lock.writeLock().lock();
+		try {
+			if (oSnapshot.getGeneration() == generation) {
+				return;
+			}
+			BookCatalog oBookCatalog = oSnapshot.toCatalog();
+			Set<String> names = new HashSet<String>();
+			for (CatalogEntry oCatalogEntry : oBookCatalog.getBooks()) {
+				names.add(oCatalogEntry.getName());
+				Integer id = ids.get(oCatalogEntry.getName());
+				if (id == null || !same(books[id].entry, oCatalogEntry)) {
+					remove(oCatalogEntry.getName());
+					addBook(oCatalogEntry);
+					added.add(oCatalogEntry);
+				}
+			}
+			for (String name : new ArrayList<String>(ids.keySet())) {
+				if (!names.contains(name)) {
+					remove(name);
+				}
+			}
+			generation = oSnapshot.getGeneration();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		for (CatalogEntry oCatalogEntry : added) {
+			loadTopics(oCatalogEntry);
+		}
+	}
+
+	private void loadTopics(final CatalogEntry oCatalogEntry) {
+		if (oCatalogEntry.getPath() == null) {
+			return;
+		}
+		loader.execute(new Runnable() {
+			@Override
+			public void run() {
+				BookTree oBookTree;
+				try {
+					oBookTree = JsonCodec.readBookTree(CloudStorageConfig.getInstance().getFile(BUCKET,
+							oCatalogEntry.getPath()));
+				} catch (Exception e) {
+					logger.warn("Topics of " + oCatalogEntry.getName() + " not indexed: " + e.getMessage());
+					return;
+				}
+				lock.writeLock().lock();
+				try {
+					Integer id = ids.get(oCatalogEntry.getName());
+					// still the binder that was read, and not indexed with its topics meanwhile
+					if (id != null && same(books[id].entry, oCatalogEntry) && !books[id].hasTopics) {
+						addTopics(id, oBookTree.getTopics());
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return ANY when not asked for, NONE when no binder has it
+	 */
+	private int wantedFacet(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return ANY;
+		}
+		Integer id = facetIds.get(value.trim().toLowerCase(Locale.ROOT));
+		return id == null ? NONE : id;
+	}
+
+	private int facetId(String value) {
+		String key = value.trim().toLowerCase(Locale.ROOT);
+		Integer id = facetIds.get(key);
+		if (id == null) {
+			id = facetNames.size();
+			facetIds.put(key, id);
+			facetNames.add(value.trim());
+		}
+		return id;
+	}
+
+	private int addBook(CatalogEntry oCatalogEntry) {
+		if (bookCount == books.length) {
+			books = Arrays.copyOf(books, bookCount * 2);
+		}
+		int id = bookCount++;
+		Book oBook = new Book(oCatalogEntry);
+		String classification = oCatalogEntry.getClassification();
+		oBook.classificationId = classification == null || classification.trim().isEmpty() ? NONE
+				: facetId(classification);
+		books[id] = oBook;
+		ids.put(oCatalogEntry.getName(), id);
+		Map<String, Integer> fields = new HashMap<String, Integer>();
+		collectTerms(fields, oCatalogEntry.getName(), NAME);
+		collectTerms(fields, oCatalogEntry.getClassification(), CLASSIFICATION);
+		addPostings(id, fields);
+		return id;
+	}
+
+	private void addTopics(int id, List<Children> topics) {
+		Book oBook = books[id];
+		oBook.hasTopics = true;
+		if (topics == null) {
+			return;
+		}
+		Map<String, Integer> fields = new HashMap<String, Integer>();
+		for (Children oChildren : topics) {
+			collectTerms(fields, oChildren.getName(), TOPIC_NAME);
+			collectTerms(fields, oChildren.getType(), TOPIC_DETAIL);
+			collectTerms(fields, oChildren.getNote(), TOPIC_DETAIL);
+			collectTerms(fields, oChildren.getVersion(), TOPIC_DETAIL);
+			if (oChildren.getType() != null && !oChildren.getType().trim().isEmpty()) {
+				int typeId = facetId(oChildren.getType());
+				if (!contains(oBook.typeIds, typeId)) {
+					oBook.typeIds = Arrays.copyOf(oBook.typeIds, oBook.typeIds.length + 1);
+					oBook.typeIds[oBook.typeIds.length - 1] = typeId;
+				}
+			}
+		}
+		addPostings(id, fields);
+	}
+
+	private static void collectTerms(Map<String, Integer> fields, String text, int field) {
+		for (String token : PageTextIndex.tokenize(text)) {
+			putField(fields, token, field);
+		}
+	}
+
+	// a term found in several fields of a binder counts for the weightiest
+	private static void putField(Map<String, Integer> fields, String term, int field) {
+		Integer current = fields.get(term);
+		if (current == null || FIELD_WEIGHTS[field] > FIELD_WEIGHTS[current]) {
+			fields.put(term, field);
+		}
+	}
+
+	private void addPostings(int id, Map<String, Integer> fields) {
+		for (Map.Entry<String, Integer> entry : fields.entrySet()) {
+			Term oTerm = terms.get(entry.getKey());
+			if (oTerm == null) {
+				oTerm = new Term(entry.getKey(), termList.size());
+				terms.put(oTerm.text, oTerm);
+				termList.add(oTerm);
+				for (String gram : trigrams(oTerm.text)) {
+					IntList termIds = trigrams.get(gram);
+					if (termIds == null) {
+						termIds = new IntList();
+						trigrams.put(gram, termIds);
+					}
+					termIds.add(oTerm.id);
+				}
+			}
+			oTerm.postings.add(id << 2 | entry.getValue());
+		}
+		books[id].postings += fields.size();
+		postingCount += fields.size();
+	}
+
+	/**
+	 * Drops the postings of deleted binders once they are half of all.
+	 */
+	private void compact() {
+		for (Term oTerm : termList) {
+			IntList postings = oTerm.postings;
+			int kept = 0;
+			for (int i = 0; i < postings.size; i++) {
+				if (books[postings.values[i] >>> 2] != null) {
+					postings.values[kept++] = postings.values[i];
+				}
+			}
+			postings.size = kept;
+		}
+		postingCount -= deadPostings;
+		deadPostings = 0;
+	}
+
+	private static boolean same(CatalogEntry a, CatalogEntry b) {
+		return equal(a.getClassification(), b.getClassification()) && equal(a.getPath(), b.getPath());
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static Set<String> trigrams(String term) {
+		String padded = "^" + term + "$";
+		Set<String> grams = new LinkedHashSet<String>();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			grams.add(padded.substring(i, i + 3));
+		}
+		return grams;
+	}
+
+	/**
+	 * Levenshtein distance, given up on past the limit.
+	 */
+	static int editDistance(String a, String b, int limit) {
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int best = current[0];
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				best = Math.min(best, current[j]);
+			}
+			if (best > limit) {
+				return best;
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[b.length()];
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int candidate : values) {
+			if (candidate == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Map<String, Integer> byCount(int[] counts, List<String> names) {
+		List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>();
+		for (int id = 0; id < names.size(); id++) {
+			if (counts[id] > 0) {
+				entries.add(new AbstractMap.SimpleEntry<String, Integer>(names.get(id), counts[id]));
+			}
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+			@Override
+			public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+				int byCount = Integer.compare(b.getValue(), a.getValue());
+				return byCount != 0 ? byCount : a.getKey().compareTo(b.getKey());
+			}
+		});
+		Map<String, Integer> sorted = new LinkedHashMap<String, Integer>();
+		for (Map.Entry<String, Integer> entry : entries) {
+			sorted.put(entry.getKey(), entry.getValue());
+		}
+		return sorted;
+	}
+
+	private static final class Book {
+		final CatalogEntry entry;
+		final String classification;
+		int classificationId;
+		int[] typeIds = new int[0];
+		boolean hasTopics;
+		int postings;
+
+		Book(CatalogEntry entry) {
+			this.entry = entry;
+			this.classification = entry.getClassification() == null ? null : entry.getClassification().trim();
+		}
+	}
+
+	/**
+	 * A term and the binders holding it, each as its id shifted left by two
+	 * with the field in the low bits.
+	 */
+	private static final class Term {
+		final String text;
+		final int id;
+		final IntList postings = new IntList();
+
+		Term(String text, int id) {
+			this.text = text;
+			this.id = id;
+		}
+	}
+
+	private static final class IntList {
+		int[] values = new int[4];
+		int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+
+	/**
+	 * Best binders of a query in a min-heap of longs: the score's bits (scores
+	 * are never negative, so they order like the floats) above the inverted
+	 * id, so equal scores keep catalog order.
+	 */
+	private static final class TopK {
+		private long[] heap = new long[16];
+		private int size;
+		private int limit;
+
+		static int id(long key) {
+			return Integer.MAX_VALUE - (int) key;
+		}
+
+		static float score(long key) {
+			return Float.intBitsToFloat((int) (key >>> 32));
+		}
+
+		void clear(int limit) {
+			this.limit = Math.max(0, limit);
+			if (heap.length < this.limit) {
+				heap = new long[this.limit];
+			}
+			size = 0;
+		}
+
+		void offer(float score, int id) {
+			long key = (long) Float.floatToIntBits(score) << 32 | (Integer.MAX_VALUE - id);
+			if (size < limit) {
+				int i = size++;
+				while (i > 0 && heap[(i - 1) / 2] > key) {
+					heap[i] = heap[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				heap[i] = key;
+			} else if (limit > 0 && key > heap[0]) {
+				int i = 0;
+				while (true) {
+					int child = 2 * i + 1;
+					if (child >= size) {
+						break;
+					}
+					if (child + 1 < size && heap[child + 1] < heap[child]) {
+						child++;
+					}
+					if (heap[child] >= key) {
+						break;
+					}
+					heap[i] = heap[child];
+					i = child;
+				}
+				heap[i] = key;
+			}
+		}
+
+		long[] drainBestFirst() {
+			long[] best = Arrays.copyOf(heap, size);
+			Arrays.sort(best);
+			for (int i = 0; i < best.length / 2; i++) {
+				long swap = best[i];
+				best[i] = best[best.length - 1 - i];
+				best[best.length - 1 - i] = swap;
+			}
+			size = 0;
+			return best;
+		}
+	}
+
+	/**
+	 * Per thread query state. Marks are stamped with a base that moves on by
+	 * a round per query word, so nothing has to be cleared between queries:
+	 * a binder marked base + n has matched the first n words.
+	 */
+	private static final class Scratch {
+		int[] mark = new int[0];
+		float[] current = new float[0];
+		float[] total = new float[0];
+		int[] gramMark = new int[0];
+		int[] gramCount = new int[0];
+		int[] classificationCounts = new int[0];
+		int[] typeCounts = new int[0];
+		final IntList touched = new IntList();
+		final IntList candidates = new IntList();
+		final TopK top = new TopK();
+		int base;
+		int gramStamp;
+
+		void begin(int books, int termCount, int facets) {
+			if (classificationCounts.length < facets) {
+				classificationCounts = new int[Math.max(facets, classificationCounts.length * 2)];
+				typeCounts = new int[classificationCounts.length];
+			}
+			Arrays.fill(classificationCounts, 0, facets, 0);
+			Arrays.fill(typeCounts, 0, facets, 0);
+			if (mark.length < books) {
+				int size = Math.max(books, mark.length * 2);
+				mark = Arrays.copyOf(mark, size);
+				current = new float[size];
+				total = new float[size];
+			}
+			if (gramMark.length < termCount) {
+				int size = Math.max(termCount, gramMark.length * 2);
+				gramMark = Arrays.copyOf(gramMark, size);
+				gramCount = new int[size];
+			}
+			if (base > Integer.MAX_VALUE - 2 * (MAX_QUERY_TERMS + 1)) {
+				Arrays.fill(mark, 0);
+				base = 0;
+			}
+			base += MAX_QUERY_TERMS + 1;
+			touched.size = 0;
+		}
+
+		int nextGramStamp() {
+			if (gramStamp == Integer.MAX_VALUE) {
+				Arrays.fill(gramMark, 0);
+				gramStamp = 0;
+			}
+			return ++gramStamp;
+		}
+
+		/**
+		 * Keeps the binders that matched this round, adding up their score.
+		 */
+		void endRound(int round) {
+			int kept = 0;
+			for (int i = 0; i < touched.size; i++) {
+				int id = touched.values[i];
+				if (mark[id] == base + round + 1) {
+					total[id] = (round == 0 ? 0 : total[id]) + current[id];
+					touched.values[kept++] = id;
+				}
+			}
+			touched.size = kept;
+		}
+	}
+}
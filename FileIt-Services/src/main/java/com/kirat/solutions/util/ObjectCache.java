@@ -0,0 +1,389 @@
+package com.kirat.solutions.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+
+/**
+ * Local disk copies of small storage objects, read through by
+ * {@link CloudStorageConfig#getFile(String, String)}. Each copy is one file in
+ * storage.cache.dir (default: a folder in java.io.tmpdir), mapped once and read
+ * from memory after that. The index lives on the heap in least recently used
+ * order and the oldest copies are deleted once they hold more than
+ * storage.cache.max.bytes. Every copy records the generation and ETag it was
+ * downloaded at; it is trusted for storage.cache.revalidate.millis and then
+ * confirmed with a conditional GET, unless the caller already knows the
+ * current generation. Writes made through this node drop the copy at once.
+ * File names carry the object, generation and ETag, so a restarted node picks
+ * its copies up again.
+ */
+public final class ObjectCache {
+
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(ObjectCache.class);
+	private static final String SUFFIX = ".obj";
+	private static final char SEPARATOR = '@';
+	private static final int MAX_NAME = 255;
+	private static ObjectCache INSTANCE;
+
+	static final class Entry {
+
+		final String key;
+		final long generation;
+		final String etag;
+		final File file;
+		final MappedByteBuffer buffer;
+		volatile long validatedAt;
+
+		Entry(String key, long generation, String etag, File file, MappedByteBuffer buffer, long validatedAt) {
+			this.key = key;
+			this.generation = generation;
+			this.etag = etag;
+			this.file = file;
+			this.buffer = buffer;
+			this.validatedAt = validatedAt;
+		}
+
+		long size() {
+			return buffer.capacity();
+		}
+	}
+
+	private final File directory;
+	// replaced by a configuration reload
+	private volatile long maxBytes;
+	private volatile long maxObjectBytes;
+	private volatile long revalidateMillis;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private long bytes;
+	// bumped by every invalidation; a download that saw another value at its start is not kept
+	private long invalidations;
+
+	public static synchronized ObjectCache getInstance() {
+		if (null == INSTANCE) {
+			FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+			String dir = oReader.getString("storage.cache.dir");
+			INSTANCE = new ObjectCache(
+					dir == null || dir.trim().isEmpty()
+							? new File(System.getProperty("java.io.tmpdir"), "fileit-objects")
+							: new File(dir.trim()),
+					oReader.getLong("storage.cache.max.bytes", 256L << 20),
+					oReader.getLong("storage.cache.max.object.bytes", 4L << 20),
+					oReader.getLong("storage.cache.revalidate.millis", 5000L));
+			final ObjectCache oCache = INSTANCE;
+			ConfigStore.getInstance().addListener(ConfigStore.FILE_INFO, new ConfigStore.Listener() {
+				@Override
+				public void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+					if (changedKeys.contains("storage.cache.max.bytes")
+							|| changedKeys.contains("storage.cache.max.object.bytes")
+							|| changedKeys.contains("storage.cache.revalidate.millis")) {
+						oCache.resize(current.getLong("storage.cache.max.bytes", 256L << 20),
+								current.getLong("storage.cache.max.object.bytes", 4L << 20),
+								current.getLong("storage.cache.revalidate.millis", 5000L));
+					}
+				}
+			});
+		}
+		return INSTANCE;
+	}
+
+	ObjectCache(File directory, long maxBytes, long maxObjectBytes, long revalidateMillis) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.maxObjectBytes = Math.min(maxObjectBytes, maxBytes);
+		this.revalidateMillis = revalidateMillis;
+		if (isEnabled()) {
+			loadLocal();
+		}
+	}
+
+	/**
+	 * @return false when storage.cache.max.bytes is 0
+	 */
+	public boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/**
+	 * @return whether an object of this many bytes is kept; -1 for an unknown
+	 *         size is not
+	 */
+	public boolean accepts(String bucketName, String filePath, long size) {
+		if (!isEnabled() || size < 0 || size > maxObjectBytes) {
+			return false;
+		}
+		try {
+			// generation, ETag and the unique part take up to about 90 more characters
+			return fileName(key(bucketName, filePath), 0, null).length() <= MAX_NAME - 90;
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the copy of the object, most recently used from now on, or null
+	 */
+	synchronized Entry lookup(String bucketName, String filePath) {
+		return entries.get(key(bucketName, filePath));
+	}
+
+	/**
+	 * @return whether the copy can be served without asking storage
+	 */
+	boolean isFresh(Entry oEntry) {
+		return System.currentTimeMillis() - oEntry.validatedAt < revalidateMillis;
+	}
+
+	/**
+	 * Storage confirmed the copy is still current.
+	 */
+	void validated(Entry oEntry) {
+		oEntry.validatedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the value to hand to {@link #store} for a download starting now
+	 */
+	synchronized long mark() {
+		return invalidations;
+	}
+
+	/**
+	 * Copies a downloaded object to disk and maps it. The copy is indexed
+	 * unless the object was invalidated while it downloaded, which means it
+	 * may predate a write of this node; it is served to this caller only.
+	 *
+	 * @param mark
+	 *            {@link #mark()} taken before the download started
+	 * @return the copy, to be read with {@link #open(Entry)}
+	 */
+	Entry store(String bucketName, String filePath, long generation, String etag, InputStream content, long mark)
+			throws IOException {
+		String key = key(bucketName, filePath);
+		File file;
+		MappedByteBuffer buffer;
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create " + directory);
+			}
+			File temp = File.createTempFile("object", ".tmp", directory);
+			try {
+				FileOutputStream out = new FileOutputStream(temp);
+				try {
+					byte[] chunk = new byte[8192];
+					long total = 0;
+					int read;
+					while ((read = content.read(chunk)) != -1) {
+						total += read;
+						if (total > maxObjectBytes) {
+							throw new IOException(key + " is larger than announced");
+						}
+						out.write(chunk, 0, read);
+					}
+				} finally {
+					out.close();
+				}
+				// the temporary name keeps two downloads of one generation apart
+				String unique = temp.getName().substring(0, temp.getName().length() - ".tmp".length());
+				file = new File(directory, fileName(key, generation, etag) + SEPARATOR + unique + SUFFIX);
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				temp.delete();
+			}
+		} finally {
+			content.close();
+		}
+		buffer = map(file);
+		Entry oEntry = new Entry(key, generation, etag, file, buffer, System.currentTimeMillis());
+		synchronized (this) {
+			if (mark != invalidations) {
+				file.delete();
+				return oEntry;
+			}
+			Entry previous = entries.put(key, oEntry);
+			if (previous != null) {
+				remove(previous);
+			}
+			bytes += oEntry.size();
+			evict();
+		}
+		return oEntry;
+	}
+
+	/**
+	 * Drops the copy of an object this node has just written or deleted.
+	 */
+	public synchronized void invalidate(String bucketName, String filePath) {
+		invalidations++;
+		Entry oEntry = entries.remove(key(bucketName, filePath));
+		if (oEntry != null) {
+			remove(oEntry);
+		}
+	}
+
+	/**
+	 * @return a stream over the mapped copy, for one reader
+	 */
+	InputStream open(Entry oEntry) {
+		return new BufferInputStream(oEntry.buffer.duplicate());
+	}
+
+	/**
+	 * Applies new limits, dropping the copies they no longer allow at once. A
+	 * cache that was off when it was created stays off until a restart.
+	 */
+	synchronized void resize(long maxBytes, long maxObjectBytes, long revalidateMillis) {
+		if (!isEnabled()) {
+			logger.warn("storage.cache.max.bytes takes effect on restart while the cache is off");
+			return;
+		}
+		this.maxBytes = Math.max(0, maxBytes);
+		this.maxObjectBytes = Math.min(maxObjectBytes, this.maxBytes);
+		this.revalidateMillis = revalidateMillis;
+		Iterator<Entry> all = entries.values().iterator();
+		while (all.hasNext()) {
+			Entry oEntry = all.next();
+			if (oEntry.size() > this.maxObjectBytes) {
+				all.remove();
+				remove(oEntry);
+			}
+		}
+		evict();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	private void evict() {
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			Entry oEntry = eldest.next();
+			eldest.remove();
+			remove(oEntry);
+		}
+	}
+
+	// callers hold the lock; readers still holding the buffer keep their pages until it is unmapped
+	private void remove(Entry oEntry) {
+		bytes -= oEntry.size();
+		oEntry.file.delete();
+	}
+
+	private void loadLocal() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		// oldest first, so the most recently written copies end up most recently used
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			String[] parts = name.endsWith(SUFFIX) ? name.substring(0, name.length() - SUFFIX.length())
+					.split(String.valueOf(SEPARATOR), -1) : null;
+			if (parts == null || parts.length != 4 || file.length() > maxObjectBytes) {
+				file.delete();
+				continue;
+			}
+			try {
+				String key = URLDecoder.decode(parts[0], "UTF-8");
+				String etag = parts[2].isEmpty() ? null : URLDecoder.decode(parts[2], "UTF-8");
+				// never validated by this process: the first read asks storage
+				Entry oEntry = new Entry(key, Long.parseLong(parts[1]), etag, file, map(file), 0);
+				Entry previous = entries.put(key, oEntry);
+				if (previous != null) {
+					remove(previous);
+				}
+				bytes += oEntry.size();
+			} catch (Exception e) {
+				logger.warn("Discarding unreadable cached object " + file + ": " + e.getMessage());
+				file.delete();
+			}
+		}
+		evict();
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String key(String bucketName, String filePath) {
+		return bucketName + '/' + filePath;
+	}
+
+	private static String fileName(String key, long generation, String etag) throws UnsupportedEncodingException {
+		return URLEncoder.encode(key, "UTF-8") + SEPARATOR + generation + SEPARATOR
+				+ (etag == null ? "" : URLEncoder.encode(etag, "UTF-8"));
+	}
+
+	private static final class BufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
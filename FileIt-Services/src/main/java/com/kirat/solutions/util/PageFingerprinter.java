@@ -0,0 +1,150 @@
+package com.kirat.solutions.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+/**
+ * Fingerprints pages by what they render from: the page boxes and rotation,
+ * the content streams, the resources they draw with (fonts, images, forms) and
+ * the annotations. Two pages with the same fingerprint rasterize to the same
+ * image, so a new version of a document only needs its changed pages rendered.
+ * Stream bytes are hashed as stored, without decoding; a stream shared by many
+ * pages, typically a font, is hashed once per document.
+ */
+public final class PageFingerprinter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Map<COSBase, byte[]> streamDigests = new IdentityHashMap<COSBase, byte[]>();
+	private final Map<COSBase, Boolean> visiting = new IdentityHashMap<COSBase, Boolean>();
+
+	public String fingerprint(PDPage page) throws IOException {
+		MessageDigest digest = sha256();
+		update(digest, "box" + page.findMediaBox() + page.findCropBox() + page.findRotation());
+		COSDictionary pageDictionary = page.getCOSDictionary();
+		update(digest, "contents");
+		walk(pageDictionary.getDictionaryObject(COSName.CONTENTS), digest);
+		update(digest, "resources");
+		PDResources resources = page.findResources();
+		walk(resources == null ? null : resources.getCOSDictionary(), digest);
+		update(digest, "annots");
+		walk(pageDictionary.getDictionaryObject(COSName.ANNOTS), digest);
+		return toHex(digest.digest());
+	}
+
+	private void walk(COSBase base, MessageDigest digest) throws IOException {
+		if (base instanceof COSObject) {
+			base = ((COSObject) base).getObject();
+		}
+		if (base == null) {
+			update(digest, "null");
+			return;
+		}
+		if (visiting.containsKey(base)) {
+			update(digest, "cycle");
+			return;
+		}
+		if (base instanceof COSStream) {
+			digest.update(streamDigest((COSStream) base));
+		} else if (base instanceof COSDictionary) {
+			visiting.put(base, Boolean.TRUE);
+			walkDictionary((COSDictionary) base, digest);
+			visiting.remove(base);
+		} else if (base instanceof COSArray) {
+			visiting.put(base, Boolean.TRUE);
+			COSArray array = (COSArray) base;
+			update(digest, "[" + array.size());
+			for (int i = 0; i < array.size(); i++) {
+				walk(array.get(i), digest);
+			}
+			visiting.remove(base);
+		} else if (base instanceof COSName) {
+			update(digest, "/" + ((COSName) base).getName());
+		} else if (base instanceof COSString) {
+			byte[] bytes = ((COSString) base).getBytes();
+			update(digest, "(" + bytes.length);
+			digest.update(bytes);
+		} else {
+			// numbers, booleans and null print their value
+			update(digest, base.toString());
+		}
+	}
+
+	private void walkDictionary(COSDictionary dictionary, MessageDigest digest) throws IOException {
+		List<COSName> keys = new ArrayList<COSName>(dictionary.keySet());
+		Collections.sort(keys);
+		update(digest, "<<" + keys.size());
+		for (COSName key : keys) {
+			// back references to the page or the page tree say nothing about the rendering
+			if (COSName.P.equals(key) || COSName.PARENT.equals(key)) {
+				continue;
+			}
+			update(digest, "/" + key.getName());
+			walk(dictionary.getItem(key), digest);
+		}
+	}
+
+	private byte[] streamDigest(COSStream stream) throws IOException {
+		byte[] cached = streamDigests.get(stream);
+		if (cached != null) {
+			return cached;
+		}
+		MessageDigest digest = sha256();
+		visiting.put(stream, Boolean.TRUE);
+		walkDictionary(stream, digest);
+		visiting.remove(stream);
+		InputStream in = stream.getFilteredStream();
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		byte[] result = digest.digest();
+		streamDigests.put(stream, result);
+		return result;
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
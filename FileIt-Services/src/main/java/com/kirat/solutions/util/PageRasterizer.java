@@ -0,0 +1,669 @@
+package com.kirat.solutions.util;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferUShort;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdfviewer.PageDrawer;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+/**
+ * Renders PDF pages to GIF images the way {@link PDPage#convertToImage()} and
+ * ImageIO do (144 dpi, 16-bit colour reduced to a palette of the page's own
+ * colours), without ever holding a raster of the whole page. A page is drawn
+ * in horizontal bands of at most render.band.bytes into a buffer taken from a
+ * pool shared by all jobs. A first pass counts the colours of the page; a page
+ * with up to 256 gets exactly those, others a median-cut palette. Every band
+ * is then mapped to the palette and LZW-encoded into the GIF. A page that fits
+ * in one band is drawn once, a taller one twice per band.
+ * <p>
+ * One instance renders the pages of one document. Before a page is drawn its
+ * band, the largest image it decodes and the encoded output are checked
+ * against render.job.max.bytes; a page that does not fit fails the job with a
+ * {@link FileItException} instead of running the node out of heap.
+ */
+public final class PageRasterizer {
+
+	static final int RESOLUTION = 144;
+	// PDF user space unit
+	static final float POINTS_PER_INCH = 72f;
+	private static final Color TRANSPARENT_WHITE = new Color(255, 255, 255, 0);
+	private static final int BAND_BYTES_PER_PIXEL = 2;
+	private static final int COLORS = 1 << 16;
+	private static final int PALETTE_SIZE = 256;
+	private static final int MAX_GIF_SIZE = 0xffff;
+	private static final int IMAGE_BYTES_PER_PIXEL = 4;
+	// colour histogram and palette lookup of a page
+	private static final long PALETTE_BYTES = 4L * COLORS + COLORS;
+
+	private static final Map<Long, Queue<BufferedImage>> POOL = new ConcurrentHashMap<Long, Queue<BufferedImage>>();
+	private static final AtomicLong POOLED_BYTES = new AtomicLong();
+	private static long maxPooledBytes = -1;
+
+	private final long maxJobBytes;
+	private final int bandBytes;
+	private int[] histogram;
+	private byte[] lookup;
+
+	/**
+	 * Rasterizer with the limits of FileInfo.properties.
+	 */
+	public static PageRasterizer newJob() {
+		FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+		synchronized (POOL) {
+			if (maxPooledBytes < 0) {
+				maxPooledBytes = oReader.getLong("render.raster.pool.bytes", 64L << 20);
+			}
+		}
+		return new PageRasterizer(oReader.getLong("render.job.max.bytes", 256L << 20),
+				(int) oReader.getLong("render.band.bytes", 8L << 20));
+	}
+
+	PageRasterizer(long maxJobBytes, int bandBytes) {
+		this.maxJobBytes = maxJobBytes;
+		this.bandBytes = bandBytes;
+	}
+
+	public long getMaxJobBytes() {
+		return maxJobBytes;
+	}
+
+	/**
+	 * Writes the page as a GIF image.
+	 *
+	 * @param pageNumber
+	 *            1-based, for the error message
+	 * @throws FileItException
+	 *             when the page cannot be rendered within the per-job cap
+	 */
+	public void render(PDPage page, int pageNumber, OutputStream out) throws IOException, FileItException {
+		render(page, pageNumber, out, null);
+	}
+
+	/**
+	 * Writes the page as a GIF image and adds its thumbnail, averaged from the
+	 * rows as they are encoded.
+	 *
+	 * @param oThumbnails
+	 *            null for no thumbnail
+	 */
+	public void render(PDPage page, int pageNumber, OutputStream out, PageThumbnails oThumbnails)
+			throws IOException, FileItException {
+		PDRectangle cropBox = page.findCropBox();
+		float widthPt = cropBox.getWidth();
+		float heightPt = cropBox.getHeight();
+		float scaling = RESOLUTION / POINTS_PER_INCH;
+		int widthPx = Math.round(widthPt * scaling);
+		int heightPx = Math.round(heightPt * scaling);
+		Dimension pageDimension = new Dimension((int) widthPt, (int) heightPt);
+		int rotation = page.findRotation();
+		while (rotation < 0) {
+			rotation += 360;
+		}
+		rotation %= 360;
+		boolean sideways = rotation == 90 || rotation == 270;
+		int width = sideways ? heightPx : widthPx;
+		int height = sideways ? widthPx : heightPx;
+		if (width <= 0 || height <= 0 || width > MAX_GIF_SIZE || height > MAX_GIF_SIZE) {
+			throw new FileItException("Page " + pageNumber + " is " + width + " x " + height
+					+ " pixels, a page image must be 1 to " + MAX_GIF_SIZE + " pixels wide and high");
+		}
+		Banding oBanding = banding(page, pageNumber, width, height, width + PALETTE_BYTES, "render");
+		int bandHeight = oBanding.height;
+		long used = oBanding.used;
+		if (histogram == null) {
+			histogram = new int[COLORS];
+			lookup = new byte[COLORS];
+		}
+
+		BufferedImage oBand = acquire(width, bandHeight);
+		try {
+			short[] pixels = ((DataBufferUShort) oBand.getRaster().getDataBuffer()).getData();
+			Arrays.fill(histogram, 0);
+			for (int top = 0; top < height; top += bandHeight) {
+				draw(oBand, top, page, pageDimension, scaling, rotation, width, height);
+				int end = Math.min(bandHeight, height - top) * width;
+				for (int i = 0; i < end; i++) {
+					histogram[pixels[i] & 0xffff]++;
+				}
+			}
+			int[] palette = palette(histogram, lookup, oBand.getColorModel());
+			GifEncoder encoder = new GifEncoder(new CappedOutputStream(out, maxJobBytes - used, pageNumber), width,
+					height, palette);
+			byte[] row = new byte[width];
+			if (oThumbnails != null) {
+				oThumbnails.begin(width, height);
+			}
+			for (int top = 0; top < height; top += bandHeight) {
+				if (bandHeight < height) {
+					draw(oBand, top, page, pageDimension, scaling, rotation, width, height);
+				}
+				int rows = Math.min(bandHeight, height - top);
+				for (int y = 0; y < rows; y++) {
+					int offset = y * width;
+					for (int x = 0; x < width; x++) {
+						row[x] = lookup[pixels[offset + x] & 0xffff];
+					}
+					encoder.writeRows(row, 1);
+					if (oThumbnails != null) {
+						oThumbnails.addRow(pixels, offset, top + y);
+					}
+				}
+			}
+			encoder.finish();
+			if (oThumbnails != null) {
+				oThumbnails.end();
+			}
+		} finally {
+			release(oBand);
+		}
+	}
+
+	/**
+	 * Adds the thumbnail of a page without rendering the page image, drawn
+	 * straight at thumbnail size.
+	 */
+	public void thumbnail(PDPage page, PageThumbnails oThumbnails) throws IOException, FileItException {
+		PDRectangle cropBox = page.findCropBox();
+		float widthPt = cropBox.getWidth();
+		float heightPt = cropBox.getHeight();
+		int rotation = page.findRotation();
+		while (rotation < 0) {
+			rotation += 360;
+		}
+		rotation %= 360;
+		boolean sideways = rotation == 90 || rotation == 270;
+		float scaling = Math.min(PageThumbnails.CELL_WIDTH / (sideways ? heightPt : widthPt),
+				PageThumbnails.CELL_HEIGHT / (sideways ? widthPt : heightPt));
+		int widthPx = Math.max(1, Math.round(widthPt * scaling));
+		int heightPx = Math.max(1, Math.round(heightPt * scaling));
+		int width = sideways ? heightPx : widthPx;
+		int height = sideways ? widthPx : heightPx;
+		BufferedImage oImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		draw(oImage, 0, page, new Dimension((int) widthPt, (int) heightPt), scaling, rotation, width, height);
+		oThumbnails.add(oImage, null);
+	}
+
+	/**
+	 * Cuts the page into its tile pyramid, drawn band by band at
+	 * {@link PageTiles#getResolution()}.
+	 *
+	 * @throws FileItException
+	 *             when the page cannot be tiled within the per-job cap
+	 */
+	public void tiles(PDPage page, int pageNumber, PageTiles oTiles) throws IOException, FileItException {
+		PDRectangle cropBox = page.findCropBox();
+		float widthPt = cropBox.getWidth();
+		float heightPt = cropBox.getHeight();
+		float scaling = PageTiles.getResolution() / POINTS_PER_INCH;
+		int widthPx = Math.round(widthPt * scaling);
+		int heightPx = Math.round(heightPt * scaling);
+		int rotation = page.findRotation();
+		while (rotation < 0) {
+			rotation += 360;
+		}
+		rotation %= 360;
+		boolean sideways = rotation == 90 || rotation == 270;
+		int width = sideways ? heightPx : widthPx;
+		int height = sideways ? widthPx : heightPx;
+		if (width <= 0 || height <= 0) {
+			throw new FileItException("Page " + pageNumber + " has no area to tile");
+		}
+		int bandHeight = banding(page, pageNumber, width, height, PageTiles.bytes(width), "tile").height;
+		BufferedImage oBand = acquire(width, bandHeight);
+		try {
+			short[] pixels = ((DataBufferUShort) oBand.getRaster().getDataBuffer()).getData();
+			Dimension pageDimension = new Dimension((int) widthPt, (int) heightPt);
+			oTiles.begin(width, height);
+			for (int top = 0; top < height; top += bandHeight) {
+				draw(oBand, top, page, pageDimension, scaling, rotation, width, height);
+				int rows = Math.min(bandHeight, height - top);
+				for (int y = 0; y < rows; y++) {
+					oTiles.addRow(pixels, y * width);
+				}
+			}
+			oTiles.end();
+		} finally {
+			release(oBand);
+		}
+	}
+
+	/**
+	 * Rows of the page drawn at once, as many as render.band.bytes holds, and
+	 * what the page costs with them: the band, the caller's own buffers and
+	 * the largest image the page decodes.
+	 *
+	 * @param extraBytes
+	 *            buffers the caller keeps besides the band
+	 * @param purpose
+	 *            what the page is drawn for, for the error message
+	 * @throws FileItException
+	 *             when the cost is over the per-job cap
+	 */
+	private Banding banding(PDPage page, int pageNumber, int width, int height, long extraBytes, String purpose)
+			throws IOException, FileItException {
+		int bandHeight = Math.min(height, Math.max(1, bandBytes / (BAND_BYTES_PER_PIXEL * width)));
+		long used = (long) BAND_BYTES_PER_PIXEL * width * bandHeight + extraBytes
+				+ largestImage(page.findResources(), new HashSet<COSBase>());
+		if (used > maxJobBytes) {
+			throw new FileItException("Page " + pageNumber + " needs " + mb(used) + " MB to " + purpose + ", "
+					+ mb(maxJobBytes) + " MB are allowed per document");
+		}
+		return new Banding(bandHeight, used);
+	}
+
+	/**
+	 * Draws the rows of the page starting at top into the band, as
+	 * convertToImage() places them on a page-sized image.
+	 */
+	private static void draw(BufferedImage oBand, int top, PDPage page, Dimension pageDimension, float scaling,
+			int rotation, int width, int height) throws IOException {
+		Graphics2D graphics = oBand.createGraphics();
+		try {
+			graphics.setBackground(TRANSPARENT_WHITE);
+			graphics.clearRect(0, 0, oBand.getWidth(), oBand.getHeight());
+			graphics.translate(0, -top);
+			if (rotation != 0) {
+				int translateX = rotation == 90 || rotation == 180 ? width : 0;
+				int translateY = rotation == 180 || rotation == 270 ? height : 0;
+				graphics.translate(translateX, translateY);
+				graphics.rotate((float) Math.toRadians(rotation));
+			}
+			graphics.scale(scaling, scaling);
+			new PageDrawer().drawPage(graphics, page, pageDimension);
+		} finally {
+			graphics.dispose();
+		}
+	}
+
+	/**
+	 * Palette for the colours counted in the histogram. Fills lookup with the
+	 * palette index of every colour that occurs.
+	 *
+	 * @return the palette, as RGB values
+	 */
+	static int[] palette(int[] histogram, byte[] lookup, ColorModel colorModel) {
+		int distinct = 0;
+		for (int count : histogram) {
+			if (count > 0) {
+				distinct++;
+			}
+		}
+		int[] colors = new int[distinct];
+		int n = 0;
+		for (int color = 0; color < COLORS; color++) {
+			if (histogram[color] > 0) {
+				colors[n++] = color;
+			}
+		}
+		if (distinct <= PALETTE_SIZE) {
+			int[] palette = new int[Math.max(1, distinct)];
+			for (int i = 0; i < distinct; i++) {
+				palette[i] = colorModel.getRGB(colors[i]);
+				lookup[colors[i]] = (byte) i;
+			}
+			return palette;
+		}
+		// median cut: split the box with the most pixels along its widest channel until there are enough
+		int[] starts = new int[PALETTE_SIZE];
+		int[] ends = new int[PALETTE_SIZE];
+		int boxes = 1;
+		ends[0] = distinct;
+		while (boxes < PALETTE_SIZE) {
+			int widest = -1;
+			long widestPixels = 0;
+			for (int b = 0; b < boxes; b++) {
+				long pixels = 0;
+				for (int i = starts[b]; i < ends[b]; i++) {
+					pixels += histogram[colors[i]];
+				}
+				if (ends[b] - starts[b] > 1 && pixels > widestPixels) {
+					widest = b;
+					widestPixels = pixels;
+				}
+			}
+			if (widest < 0) {
+				break;
+			}
+			int start = starts[widest];
+			int end = ends[widest];
+			sortByWidestChannel(colors, start, end, colorModel);
+			long half = 0;
+			// at the weighted median, leaving at least one colour on either side
+			int split = start + 1;
+			for (int i = start; i < end - 1; i++) {
+				half += histogram[colors[i]];
+				split = i + 1;
+				if (2 * half >= widestPixels) {
+					break;
+				}
+			}
+			starts[boxes] = split;
+			ends[boxes] = end;
+			ends[widest] = split;
+			boxes++;
+		}
+		int[] palette = new int[boxes];
+		for (int b = 0; b < boxes; b++) {
+			long red = 0;
+			long green = 0;
+			long blue = 0;
+			long pixels = 0;
+			for (int i = starts[b]; i < ends[b]; i++) {
+				int rgb = colorModel.getRGB(colors[i]);
+				long count = histogram[colors[i]];
+				red += count * ((rgb >> 16) & 0xff);
+				green += count * ((rgb >> 8) & 0xff);
+				blue += count * (rgb & 0xff);
+				pixels += count;
+				lookup[colors[i]] = (byte) b;
+			}
+			palette[b] = (int) (red / pixels) << 16 | (int) (green / pixels) << 8 | (int) (blue / pixels);
+		}
+		return palette;
+	}
+
+	private static void sortByWidestChannel(int[] colors, int start, int end, ColorModel colorModel) {
+		int[] min = { 255, 255, 255 };
+		int[] max = { 0, 0, 0 };
+		for (int i = start; i < end; i++) {
+			int rgb = colorModel.getRGB(colors[i]);
+			for (int c = 0; c < 3; c++) {
+				int value = (rgb >> (16 - 8 * c)) & 0xff;
+				min[c] = Math.min(min[c], value);
+				max[c] = Math.max(max[c], value);
+			}
+		}
+		int channel = 0;
+		for (int c = 1; c < 3; c++) {
+			if (max[c] - min[c] > max[channel] - min[channel]) {
+				channel = c;
+			}
+		}
+		// sort keys: the channel value above the colour, so colours stay distinct
+		long[] keys = new long[end - start];
+		for (int i = start; i < end; i++) {
+			long value = (colorModel.getRGB(colors[i]) >> (16 - 8 * channel)) & 0xff;
+			keys[i - start] = value << 16 | colors[i];
+		}
+		Arrays.sort(keys);
+		for (int i = start; i < end; i++) {
+			colors[i] = (int) (keys[i - start] & 0xffff);
+		}
+	}
+
+	/**
+	 * Decoded size of the largest image the page draws, forms included.
+	 */
+	private static long largestImage(PDResources resources, Set<COSBase> seen) {
+		long largest = 0;
+		if (resources == null) {
+			return largest;
+		}
+		for (PDXObject oXObject : resources.getXObjects().values()) {
+			if (!seen.add(oXObject.getCOSObject())) {
+				continue;
+			}
+			if (oXObject instanceof PDXObjectImage) {
+				PDXObjectImage oImage = (PDXObjectImage) oXObject;
+				largest = Math.max(largest, (long) oImage.getWidth() * oImage.getHeight() * IMAGE_BYTES_PER_PIXEL);
+			} else if (oXObject instanceof PDXObjectForm) {
+				largest = Math.max(largest, largestImage(((PDXObjectForm) oXObject).getResources(), seen));
+			}
+		}
+		return largest;
+	}
+
+	private static BufferedImage acquire(int width, int height) {
+		Queue<BufferedImage> queue = POOL.get(key(width, height));
+		BufferedImage oBand = queue == null ? null : queue.poll();
+		if (oBand != null) {
+			POOLED_BYTES.addAndGet(-(long) BAND_BYTES_PER_PIXEL * width * height);
+			return oBand;
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_USHORT_565_RGB);
+	}
+
+	private static void release(BufferedImage oBand) {
+		long size = (long) BAND_BYTES_PER_PIXEL * oBand.getWidth() * oBand.getHeight();
+		if (POOLED_BYTES.addAndGet(size) > maxPooledBytes) {
+			POOLED_BYTES.addAndGet(-size);
+			return;
+		}
+		Long key = key(oBand.getWidth(), oBand.getHeight());
+		Queue<BufferedImage> queue = POOL.get(key);
+		if (queue == null) {
+			POOL.putIfAbsent(key, new ConcurrentLinkedQueue<BufferedImage>());
+			queue = POOL.get(key);
+		}
+		queue.offer(oBand);
+	}
+
+	private static Long key(int width, int height) {
+		return ((long) width << 32) | height;
+	}
+
+	private static long mb(long bytes) {
+		return (bytes + (1 << 20) - 1) >> 20;
+	}
+
+	private static final class Banding {
+
+		final int height;
+		final long used;
+
+		Banding(int height, long used) {
+			this.height = height;
+			this.used = used;
+		}
+	}
+
+	/**
+	 * Fails the page once its encoded image outgrows what is left of the cap.
+	 */
+	private static final class CappedOutputStream extends OutputStream {
+
+		private final OutputStream out;
+		private final long limit;
+		private final int pageNumber;
+		private long written;
+
+		CappedOutputStream(OutputStream out, long limit, int pageNumber) {
+			this.out = out;
+			this.limit = limit;
+			this.pageNumber = pageNumber;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			count(1);
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			count(len);
+			out.write(b, off, len);
+		}
+
+		private void count(int len) throws IOException {
+			written += len;
+			if (written > limit) {
+				throw new IOException("Image of page " + pageNumber + " is larger than the memory allowed per document");
+			}
+		}
+	}
+
+	/**
+	 * Single-image GIF89a written row by row: header and colour table first,
+	 * then the LZW code stream as the rows come in.
+	 */
+	static final class GifEncoder {
+
+		private static final int MAX_BITS = 12;
+		// four times the codes, so probe chains stay short
+		private static final int TABLE_BITS = 14;
+		private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+
+		private final OutputStream out;
+		private final int width;
+		private final int clearCode;
+		private final int endCode;
+		private final int rootBits;
+		private final int[] keys = new int[1 << TABLE_BITS];
+		private final int[] codes = new int[1 << TABLE_BITS];
+		private final byte[] block = new byte[255];
+		private int blockLength;
+		private int bitBuffer;
+		private int bitCount;
+		private int codeSize;
+		private int nextCode;
+		private int prefix = -1;
+
+		/**
+		 * @param palette
+		 *            RGB values, at most 256
+		 */
+		GifEncoder(OutputStream out, int width, int height, int[] palette) throws IOException {
+			this.out = out;
+			this.width = width;
+			int tableBits = 1;
+			while ((1 << tableBits) < palette.length) {
+				tableBits++;
+			}
+			rootBits = Math.max(2, tableBits);
+			clearCode = 1 << rootBits;
+			endCode = clearCode + 1;
+
+			out.write(new byte[] { 'G', 'I', 'F', '8', '9', 'a' });
+			writeShort(width);
+			writeShort(height);
+			// global colour table of 2^tableBits entries
+			out.write(0x80 | ((tableBits - 1) << 4) | (tableBits - 1));
+			out.write(0);
+			out.write(0);
+			byte[] table = new byte[3 << tableBits];
+			for (int i = 0; i < palette.length; i++) {
+				table[3 * i] = (byte) (palette[i] >> 16);
+				table[3 * i + 1] = (byte) (palette[i] >> 8);
+				table[3 * i + 2] = (byte) palette[i];
+			}
+			out.write(table);
+			out.write(0x2c);
+			writeShort(0);
+			writeShort(0);
+			writeShort(width);
+			writeShort(height);
+			out.write(0);
+			out.write(rootBits);
+			resetTable();
+			writeCode(clearCode);
+		}
+
+		/**
+		 * @param pixels
+		 *            rows of colour indexes, width bytes apart
+		 */
+		void writeRows(byte[] pixels, int rows) throws IOException {
+			int end = rows * width;
+			for (int i = 0; i < end; i++) {
+				int pixel = pixels[i] & 0xff;
+				if (prefix < 0) {
+					prefix = pixel;
+					continue;
+				}
+				int key = (pixel << MAX_BITS) | prefix;
+				int slot = (key * 0x9e3779b1) >>> (32 - TABLE_BITS);
+				while (keys[slot] != 0 && keys[slot] != key + 1) {
+					slot = (slot + 1) & TABLE_MASK;
+				}
+				if (keys[slot] != 0) {
+					prefix = codes[slot];
+					continue;
+				}
+				writeCode(prefix);
+				if (nextCode < 1 << MAX_BITS) {
+					keys[slot] = key + 1;
+					codes[slot] = nextCode++;
+				} else {
+					writeCode(clearCode);
+					resetTable();
+				}
+				prefix = pixel;
+			}
+		}
+
+		void finish() throws IOException {
+			if (prefix >= 0) {
+				writeCode(prefix);
+			}
+			writeCode(endCode);
+			if (bitCount > 0) {
+				writeByte(bitBuffer & 0xff);
+			}
+			flushBlock();
+			out.write(0);
+			out.write(0x3b);
+			out.flush();
+		}
+
+		private void resetTable() {
+			Arrays.fill(keys, 0);
+			codeSize = rootBits + 1;
+			nextCode = clearCode + 2;
+		}
+
+		private void writeCode(int code) throws IOException {
+			bitBuffer |= code << bitCount;
+			bitCount += codeSize;
+			while (bitCount >= 8) {
+				writeByte(bitBuffer & 0xff);
+				bitBuffer >>>= 8;
+				bitCount -= 8;
+			}
+			// the decoder widens its codes once its table reaches the next power of two
+			if (code != clearCode && nextCode >= 1 << codeSize && codeSize < MAX_BITS) {
+				codeSize++;
+			}
+		}
+
+		private void writeByte(int b) throws IOException {
+			block[blockLength++] = (byte) b;
+			if (blockLength == block.length) {
+				flushBlock();
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			if (blockLength > 0) {
+				out.write(blockLength);
+				out.write(block, 0, blockLength);
+				blockLength = 0;
+			}
+		}
+
+		private void writeShort(int value) throws IOException {
+			out.write(value & 0xff);
+			out.write((value >> 8) & 0xff);
+		}
+	}
+}
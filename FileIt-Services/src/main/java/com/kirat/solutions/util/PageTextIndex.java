@@ -0,0 +1,1025 @@
+package com.kirat.solutions.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.kirat.solutions.domain.PageHit;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+
+/**
+ * Full-text index of page text, kept on local disk in search.index.dir. Text
+ * is indexed per uploaded document (its content hash) and page, so a document
+ * shared by several books or uploaded again unchanged is indexed once; which
+ * book shows which document at which path is kept in a reference log next to
+ * it.
+ * <p>
+ * Every indexed document becomes a segment: its pages, their text for
+ * snippets, a sorted term dictionary and for every term the pages it occurs
+ * on. Segments never change once written and are memory mapped, and the list
+ * of live segments is swapped as a whole, so searches take no lock. Once there
+ * are more than search.index.max.segments, the search.index.merge.factor
+ * smallest are merged into one in the background, dropping the pages no book
+ * shows any more, or that no book took up after they were indexed once the
+ * node restarted. A query matches the pages holding every one of its terms,
+ * ranked by BM25.
+ */
+public final class PageTextIndex {
+
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(PageTextIndex.class);
+	private static final String SEGMENTS = "segments";
+	private static final String REFS = "refs.log";
+	private static final String DOCS = ".doc";
+	private static final String TEXT = ".txt";
+	private static final String TERMS = ".dic";
+	private static final String POSTINGS = ".pst";
+	private static final int MAX_TERM_LENGTH = 40;
+	private static final int MAX_QUERY_TERMS = 16;
+	private static final int SNIPPET_BEFORE = 60;
+	private static final int SNIPPET_AFTER = 120;
+	private static final float K1 = 1.2f;
+	private static final float B = 0.75f;
+	private static PageTextIndex INSTANCE;
+
+	private final File directory;
+	private final int maxSegments;
+	private final int mergeFactor;
+	private final ConcurrentHashMap<String, List<Ref>> refs = new ConcurrentHashMap<String, List<Ref>>();
+	// indexed but not referenced yet, kept by merges meanwhile
+	private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ExecutorService merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "fileit-index-merge");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private volatile List<Segment> segments = Collections.emptyList();
+	private Writer refLog;
+	private long nextSegment;
+	private boolean merging;
+
+	public static synchronized PageTextIndex getInstance() throws FileItException {
+		if (null == INSTANCE) {
+			FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+			String dir = oReader.getString("search.index.dir");
+			PageTextIndex oIndex = new PageTextIndex(
+					dir == null || dir.trim().isEmpty()
+							? new File(System.getProperty("java.io.tmpdir"), "fileit-index")
+							: new File(dir.trim()),
+					oReader.getInt("search.index.max.segments", 20),
+					oReader.getInt("search.index.merge.factor", 10));
+			try {
+				oIndex.open();
+			} catch (IOException e) {
+				throw new FileItException("Page text index in " + oIndex.directory + " cannot be opened: "
+						+ e.getMessage());
+			}
+			INSTANCE = oIndex;
+		}
+		return INSTANCE;
+	}
+
+	PageTextIndex(File directory, int maxSegments, int mergeFactor) {
+		this.directory = directory;
+		this.maxSegments = Math.max(2, maxSegments);
+		this.mergeFactor = Math.max(2, mergeFactor);
+	}
+
+	/**
+	 * Loads the segments of the last commit and replays the reference log.
+	 */
+	synchronized void open() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		List<Segment> loaded = new ArrayList<Segment>();
+		Set<String> names = new HashSet<String>();
+		File commit = new File(directory, SEGMENTS);
+		if (commit.isFile()) {
+			for (String name : Files.readAllLines(commit.toPath(), StandardCharsets.UTF_8)) {
+				if (name.trim().isEmpty()) {
+					continue;
+				}
+				try {
+					loaded.add(Segment.open(directory, name.trim()));
+					names.add(name.trim());
+				} catch (IOException e) {
+					logger.warn("Dropping unreadable index segment " + name + ": " + e.getMessage());
+				}
+				nextSegment = Math.max(nextSegment, Long.parseLong(name.trim().substring(1), 36) + 1);
+			}
+		}
+		File[] files = directory.listFiles();
+		for (File file : files == null ? new File[0] : files) {
+			String name = file.getName();
+			int dot = name.indexOf('.');
+			// segments of a merge or an upload that never committed
+			if (name.startsWith("s") && dot > 0 && !names.contains(name.substring(0, dot))) {
+				file.delete();
+			}
+		}
+		segments = Collections.unmodifiableList(loaded);
+		replayRefs();
+	}
+
+	/**
+	 * Indexes the text of every page of a document, in page order. Searchable
+	 * once a book references the document through {@link #addRef}.
+	 */
+	public void index(String hash, List<String> pageTexts) throws FileItException {
+		List<String> hashes = Collections.nCopies(pageTexts.size(), hash);
+		List<Integer> pages = new ArrayList<Integer>(pageTexts.size());
+		for (int i = 1; i <= pageTexts.size(); i++) {
+			pages.add(i);
+		}
+		pending.add(hash);
+		try {
+			String name = newSegmentName();
+			Segment oSegment = Segment.write(directory, name, hashes, pages, pageTexts);
+			synchronized (this) {
+				List<Segment> updated = new ArrayList<Segment>(segments);
+				updated.add(oSegment);
+				commit(updated);
+			}
+		} catch (IOException e) {
+			throw new FileItException("Page text of " + hash + " not indexed: " + e.getMessage());
+		}
+		maybeMerge();
+	}
+
+	/**
+	 * Whether the pages of the document are in the index, whether or not a
+	 * book shows them.
+	 */
+	public boolean contains(String hash) {
+		for (Segment oSegment : segments) {
+			if (oSegment.contains(hash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized void addRef(String hash, String book, String path) throws FileItException {
+		Ref oRef = new Ref(book, path);
+		List<Ref> current = refs.get(hash);
+		if (current != null && current.contains(oRef)) {
+			return;
+		}
+		List<Ref> updated = current == null ? new ArrayList<Ref>() : new ArrayList<Ref>(current);
+		updated.add(oRef);
+		refs.put(hash, Collections.unmodifiableList(updated));
+		pending.remove(hash);
+		log("+", hash, book, path);
+	}
+
+	public synchronized void removeRef(String hash, String book, String path) throws FileItException {
+		List<Ref> current = refs.get(hash);
+		if (current == null || !current.contains(new Ref(book, path))) {
+			return;
+		}
+		List<Ref> updated = new ArrayList<Ref>(current);
+		updated.remove(new Ref(book, path));
+		if (updated.isEmpty()) {
+			refs.remove(hash);
+		} else {
+			refs.put(hash, Collections.unmodifiableList(updated));
+		}
+		log("-", hash, book, path);
+	}
+
+	/**
+	 * Takes a deleted book out of the search results.
+	 */
+	public synchronized void removeBook(String book) throws FileItException {
+		for (Map.Entry<String, List<Ref>> entry : refs.entrySet()) {
+			for (Ref oRef : entry.getValue()) {
+				if (oRef.book.equals(book)) {
+					removeRef(entry.getKey(), oRef.book, oRef.path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pages holding every term of the query, best first, each with a snippet
+	 * of text around the first term found. A page of a document several books
+	 * show is returned once for each of them.
+	 */
+	public List<PageHit> search(String query, int limit) {
+		List<String> terms = new ArrayList<String>(new LinkedHashSet<String>(tokenize(query)));
+		if (terms.size() > MAX_QUERY_TERMS) {
+			terms = terms.subList(0, MAX_QUERY_TERMS);
+		}
+		List<PageHit> hits = new ArrayList<PageHit>();
+		if (terms.isEmpty() || limit <= 0) {
+			return hits;
+		}
+		List<Segment> searched = segments;
+		long docCount = 0;
+		long totalLength = 0;
+		int[] df = new int[terms.size()];
+		for (Segment oSegment : searched) {
+			docCount += oSegment.docCount();
+			totalLength += oSegment.totalLength;
+			for (int t = 0; t < terms.size(); t++) {
+				df[t] += oSegment.docFrequency(terms.get(t));
+			}
+		}
+		float averageLength = docCount == 0 ? 1 : Math.max(1, (float) totalLength / docCount);
+		float[] idf = new float[terms.size()];
+		for (int t = 0; t < terms.size(); t++) {
+			if (df[t] == 0) {
+				return hits;
+			}
+			idf[t] = (float) Math.log(1 + (docCount - df[t] + 0.5) / (df[t] + 0.5));
+		}
+		PriorityQueue<Candidate> top = new PriorityQueue<Candidate>();
+		for (Segment oSegment : searched) {
+			oSegment.collect(terms, idf, averageLength, refs, top, limit);
+		}
+		List<Candidate> ranked = new ArrayList<Candidate>(top);
+		Collections.sort(ranked, Collections.reverseOrder());
+		for (Candidate oCandidate : ranked) {
+			List<Ref> shownIn = refs.get(oCandidate.segment.hashes[oCandidate.doc]);
+			if (shownIn == null) {
+				continue;
+			}
+			String snippet = snippet(oCandidate.segment.text(oCandidate.doc), terms);
+			for (Ref oRef : shownIn) {
+				if (hits.size() == limit) {
+					return hits;
+				}
+				PageHit oPageHit = new PageHit();
+				oPageHit.setBook(oRef.book);
+				oPageHit.setPath(oRef.path);
+				oPageHit.setPage(oCandidate.segment.pages[oCandidate.doc]);
+				oPageHit.setScore(oCandidate.score);
+				oPageHit.setSnippet(snippet);
+				hits.add(oPageHit);
+			}
+		}
+		return hits;
+	}
+
+	public Map<String, Object> getStatus() {
+		List<Segment> current = segments;
+		long pages = 0;
+		long terms = 0;
+		for (Segment oSegment : current) {
+			pages += oSegment.docCount();
+			terms += oSegment.terms.length;
+		}
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("segments", current.size());
+		status.put("pages", pages);
+		status.put("terms", terms);
+		status.put("documents", refs.size());
+		return status;
+	}
+
+	/**
+	 * Lower-cased runs of letters and digits; longer runs than a word can be
+	 * are skipped.
+	 */
+	static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<String>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				if (i - start <= MAX_TERM_LENGTH) {
+					tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				}
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Text around the first query term, cut at whitespace, on one line.
+	 */
+	static String snippet(String text, List<String> terms) {
+		int found = -1;
+		int foundEnd = -1;
+		int start = -1;
+		for (int i = 0; i <= text.length() && found < 0; i++) {
+			boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				if (terms.contains(text.substring(start, i).toLowerCase(Locale.ROOT))) {
+					found = start;
+					foundEnd = i;
+				}
+				start = -1;
+			}
+		}
+		if (found < 0) {
+			found = 0;
+			foundEnd = 0;
+		}
+		int from = Math.max(0, found - SNIPPET_BEFORE);
+		int to = Math.min(text.length(), foundEnd + SNIPPET_AFTER);
+		while (from > 0 && from < found && !Character.isWhitespace(text.charAt(from - 1))) {
+			from++;
+		}
+		while (to < text.length() && to > foundEnd && !Character.isWhitespace(text.charAt(to))) {
+			to--;
+		}
+		String snippet = text.substring(from, to).replaceAll("\\s+", " ").trim();
+		return (from > 0 ? "..." : "") + snippet + (to < text.length() ? "..." : "");
+	}
+
+	private synchronized String newSegmentName() {
+		return "s" + Long.toString(nextSegment++, 36);
+	}
+
+	/**
+	 * Makes the segments the live ones: the list is written aside and moved
+	 * over the previous one, then the files of dropped segments are deleted.
+	 */
+	private void commit(List<Segment> updated) throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (Segment oSegment : updated) {
+			content.append(oSegment.name).append('\n');
+		}
+		File temp = File.createTempFile(SEGMENTS, ".tmp", directory);
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), new File(directory, SEGMENTS).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+		List<Segment> dropped = new ArrayList<Segment>(segments);
+		dropped.removeAll(updated);
+		segments = Collections.unmodifiableList(updated);
+		for (Segment oSegment : dropped) {
+			// a search still reading it keeps its mapping; the space is freed once that is gone
+			oSegment.delete(directory);
+		}
+	}
+
+	private synchronized void maybeMerge() {
+		if (merging || segments.size() <= maxSegments) {
+			return;
+		}
+		merging = true;
+		merger.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					merge();
+				} catch (IOException e) {
+					logger.warn("Index segments not merged: " + e.getMessage());
+				} finally {
+					synchronized (PageTextIndex.this) {
+						merging = false;
+					}
+				}
+				maybeMerge();
+			}
+		});
+	}
+
+	/**
+	 * Waits until no merge is queued or running. A merge that leaves too many
+	 * segments queues the next one before it ends, which is waited for too.
+	 */
+	void awaitMerges() throws InterruptedException, ExecutionException {
+		while (true) {
+			// runs after every merge queued before it
+			merger.submit(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}).get();
+			synchronized (this) {
+				if (!merging) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the smallest segments as one, leaving out pages no book shows.
+	 * Segments added meanwhile are kept as they are. The merge is dropped, to
+	 * be tried again, when a document it leaves out gains a book meanwhile.
+	 */
+	private void merge() throws IOException {
+		List<Segment> smallest = new ArrayList<Segment>(segments);
+		Collections.sort(smallest, new Comparator<Segment>() {
+			@Override
+			public int compare(Segment a, Segment b) {
+				return Integer.compare(a.docCount(), b.docCount());
+			}
+		});
+		smallest = smallest.subList(0, Math.min(mergeFactor, smallest.size()));
+		Set<String> live = new HashSet<String>(pending);
+		live.addAll(refs.keySet());
+		Segment merged = Segment.merge(directory, newSegmentName(), smallest, live);
+		synchronized (this) {
+			// a document referenced again meanwhile is not indexed again, as contains() was true; keep its pages
+			for (Segment oSegment : smallest) {
+				for (String hash : oSegment.documents) {
+					if (!live.contains(hash) && (refs.containsKey(hash) || pending.contains(hash))) {
+						merged.delete(directory);
+						return;
+					}
+				}
+			}
+			List<Segment> updated = new ArrayList<Segment>();
+			boolean added = false;
+			for (Segment oSegment : segments) {
+				if (!smallest.contains(oSegment)) {
+					updated.add(oSegment);
+				} else if (!added) {
+					updated.add(merged);
+					added = true;
+				}
+			}
+			commit(updated);
+		}
+	}
+
+	private void log(String op, String hash, String book, String path) throws FileItException {
+		try {
+			if (refLog == null) {
+				refLog = new OutputStreamWriter(new FileOutputStream(new File(directory, REFS), true),
+						StandardCharsets.UTF_8);
+			}
+			refLog.write(op + "\t" + hash + "\t" + encode(book) + "\t" + encode(path) + "\n");
+			refLog.flush();
+		} catch (IOException e) {
+			throw new FileItException("Index reference of " + book + " not logged: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Rebuilds the references from the log, then rewrites the log with only
+	 * the live ones.
+	 */
+	private void replayRefs() throws IOException {
+		File log = new File(directory, REFS);
+		if (log.isFile()) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(log),
+					StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t");
+					if (fields.length != 4) {
+						// torn last line of a crash
+						continue;
+					}
+					Ref oRef = new Ref(decode(fields[2]), decode(fields[3]));
+					List<Ref> current = refs.get(fields[1]);
+					List<Ref> updated = current == null ? new ArrayList<Ref>() : new ArrayList<Ref>(current);
+					updated.remove(oRef);
+					if ("+".equals(fields[0])) {
+						updated.add(oRef);
+					}
+					if (updated.isEmpty()) {
+						refs.remove(fields[1]);
+					} else {
+						refs.put(fields[1], Collections.unmodifiableList(updated));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		File temp = File.createTempFile(REFS, ".tmp", directory);
+		try {
+			Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8);
+			try {
+				for (Map.Entry<String, List<Ref>> entry : refs.entrySet()) {
+					for (Ref oRef : entry.getValue()) {
+						out.write("+\t" + entry.getKey() + "\t" + encode(oRef.book) + "\t" + encode(oRef.path) + "\n");
+					}
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private static String encode(String value) throws UnsupportedEncodingException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+
+	private static String decode(String value) throws UnsupportedEncodingException {
+		return URLDecoder.decode(value, "UTF-8");
+	}
+
+	/**
+	 * A book showing a document at a path.
+	 */
+	private static final class Ref {
+		final String book;
+		final String path;
+
+		Ref(String book, String path) {
+			this.book = book;
+			this.path = path;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Ref && ((Ref) other).book.equals(book) && ((Ref) other).path.equals(path);
+		}
+
+		@Override
+		public int hashCode() {
+			return book.hashCode() * 31 + path.hashCode();
+		}
+	}
+
+	private static final class Candidate implements Comparable<Candidate> {
+		final Segment segment;
+		final int doc;
+		final float score;
+
+		Candidate(Segment segment, int doc, float score) {
+			this.segment = segment;
+			this.doc = doc;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			return Float.compare(score, other.score);
+		}
+	}
+
+	/**
+	 * One immutable piece of the index. Pages (docs) and the term dictionary
+	 * are held on the heap; page text and postings are memory mapped. The
+	 * postings of a term are its docs in ascending order, each as the varint
+	 * gap to the previous doc followed by the varint count of the term on the
+	 * page.
+	 */
+	static final class Segment {
+		final String name;
+		final String[] hashes;
+		final int[] pages;
+		final int[] lengths;
+		final long[] textStarts;
+		final String[] terms;
+		final int[] docFrequencies;
+		final long[] postingStarts;
+		final long totalLength;
+		final Set<String> documents;
+		final ByteBuffer text;
+		final ByteBuffer postings;
+
+		private Segment(String name, String[] hashes, int[] pages, int[] lengths, long[] textStarts, String[] terms,
+				int[] docFrequencies, long[] postingStarts, ByteBuffer text, ByteBuffer postings) {
+			this.name = name;
+			this.hashes = hashes;
+			this.pages = pages;
+			this.lengths = lengths;
+			this.textStarts = textStarts;
+			this.terms = terms;
+			this.docFrequencies = docFrequencies;
+			this.postingStarts = postingStarts;
+			this.text = text;
+			this.postings = postings;
+			long total = 0;
+			for (int length : lengths) {
+				total += length;
+			}
+			this.totalLength = total;
+			this.documents = new HashSet<String>(Arrays.asList(hashes));
+		}
+
+		int docCount() {
+			return hashes.length;
+		}
+
+		boolean contains(String hash) {
+			return documents.contains(hash);
+		}
+
+		int docFrequency(String term) {
+			int index = Arrays.binarySearch(terms, term);
+			return index < 0 ? 0 : docFrequencies[index];
+		}
+
+		String text(int doc) {
+			int start = (int) textStarts[doc];
+			byte[] bytes = new byte[(int) (textStarts[doc + 1] - start)];
+			ByteBuffer view = text.duplicate();
+			view.position(start);
+			view.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Scores the docs holding every term and keeps the best in the queue,
+		 * rarest term first so later terms only touch docs still in the
+		 * running.
+		 */
+		void collect(List<String> queryTerms, float[] idf, float averageLength, Map<String, List<Ref>> live,
+				PriorityQueue<Candidate> top, int limit) {
+			final int[] index = new int[queryTerms.size()];
+			Integer[] order = new Integer[queryTerms.size()];
+			for (int t = 0; t < queryTerms.size(); t++) {
+				index[t] = Arrays.binarySearch(terms, queryTerms.get(t));
+				if (index[t] < 0) {
+					return;
+				}
+				order[t] = t;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Integer.compare(docFrequencies[index[a]], docFrequencies[index[b]]);
+				}
+			});
+			float[] scores = new float[hashes.length];
+			byte[] matched = new byte[hashes.length];
+			for (int round = 0; round < order.length; round++) {
+				int t = order[round];
+				int position = (int) postingStarts[index[t]];
+				int doc = 0;
+				for (int n = docFrequencies[index[t]]; n > 0; n--) {
+					int value = 0;
+					int shift = 0;
+					byte b;
+					do {
+						b = postings.get(position++);
+						value |= (b & 0x7f) << shift;
+						shift += 7;
+					} while (b < 0);
+					doc += value;
+					int frequency = 0;
+					shift = 0;
+					do {
+						b = postings.get(position++);
+						frequency |= (b & 0x7f) << shift;
+						shift += 7;
+					} while (b < 0);
+					if (matched[doc] != round) {
+						continue;
+					}
+					matched[doc]++;
+					float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+					scores[doc] += idf[t] * frequency * (K1 + 1) / (frequency + norm);
+				}
+			}
+			for (int doc = 0; doc < hashes.length; doc++) {
+				if (matched[doc] != order.length || top.size() == limit && scores[doc] <= top.peek().score
+						|| !live.containsKey(hashes[doc])) {
+					continue;
+				}
+				if (top.size() == limit) {
+					top.poll();
+				}
+				top.add(new Candidate(this, doc, scores[doc]));
+			}
+		}
+
+		void delete(File directory) {
+			for (String suffix : new String[] { DOCS, TEXT, TERMS, POSTINGS }) {
+				new File(directory, name + suffix).delete();
+			}
+		}
+
+		/**
+		 * Writes the pages given as a new segment.
+		 */
+		static Segment write(File directory, String name, List<String> hashes, List<Integer> pages,
+				List<String> texts) throws IOException {
+			TreeMap<String, PostingList> inverted = new TreeMap<String, PostingList>();
+			int[] lengths = new int[texts.size()];
+			DataOutputStream docs = output(directory, name + DOCS);
+			OutputStream textOut = new BufferedOutputStream(new FileOutputStream(new File(directory, name + TEXT)));
+			try {
+				docs.writeInt(texts.size());
+				long textStart = 0;
+				for (int doc = 0; doc < texts.size(); doc++) {
+					Map<String, Integer> frequencies = new HashMap<String, Integer>();
+					List<String> tokens = tokenize(texts.get(doc));
+					for (String token : tokens) {
+						Integer count = frequencies.get(token);
+						frequencies.put(token, count == null ? 1 : count + 1);
+					}
+					for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+						PostingList list = inverted.get(entry.getKey());
+						if (list == null) {
+							list = new PostingList();
+							inverted.put(entry.getKey(), list);
+						}
+						list.add(doc, entry.getValue());
+					}
+					lengths[doc] = tokens.size();
+					byte[] bytes = texts.get(doc).getBytes(StandardCharsets.UTF_8);
+					textOut.write(bytes);
+					docs.writeUTF(hashes.get(doc));
+					docs.writeInt(pages.get(doc));
+					docs.writeInt(lengths[doc]);
+					docs.writeLong(textStart);
+					textStart += bytes.length;
+				}
+				docs.writeLong(textStart);
+			} finally {
+				docs.close();
+				textOut.close();
+			}
+			DataOutputStream dictionary = output(directory, name + TERMS);
+			OutputStream postingOut = new BufferedOutputStream(new FileOutputStream(new File(directory, name
+					+ POSTINGS)));
+			try {
+				long position = 0;
+				for (Map.Entry<String, PostingList> entry : inverted.entrySet()) {
+					position = entry.getValue().writeTo(entry.getKey(), dictionary, postingOut, position);
+				}
+			} finally {
+				dictionary.close();
+				postingOut.close();
+			}
+			return open(directory, name);
+		}
+
+		/**
+		 * Writes the live pages of the segments as one. Docs are renumbered in
+		 * segment order, so the postings of a term stay ascending when the
+		 * segments' lists are appended one after the other.
+		 */
+		static Segment merge(File directory, String name, List<Segment> merged, Set<String> live)
+				throws IOException {
+			int[][] docMaps = new int[merged.size()][];
+			DataOutputStream docs = output(directory, name + DOCS);
+			OutputStream textOut = new BufferedOutputStream(new FileOutputStream(new File(directory, name + TEXT)));
+			try {
+				int count = 0;
+				for (int s = 0; s < merged.size(); s++) {
+					Segment oSegment = merged.get(s);
+					docMaps[s] = new int[oSegment.docCount()];
+					for (int doc = 0; doc < oSegment.docCount(); doc++) {
+						docMaps[s][doc] = live.contains(oSegment.hashes[doc]) ? count++ : -1;
+					}
+				}
+				docs.writeInt(count);
+				long textStart = 0;
+				for (int s = 0; s < merged.size(); s++) {
+					Segment oSegment = merged.get(s);
+					for (int doc = 0; doc < oSegment.docCount(); doc++) {
+						if (docMaps[s][doc] < 0) {
+							continue;
+						}
+						byte[] bytes = oSegment.text(doc).getBytes(StandardCharsets.UTF_8);
+						textOut.write(bytes);
+						docs.writeUTF(oSegment.hashes[doc]);
+						docs.writeInt(oSegment.pages[doc]);
+						docs.writeInt(oSegment.lengths[doc]);
+						docs.writeLong(textStart);
+						textStart += bytes.length;
+					}
+				}
+				docs.writeLong(textStart);
+			} finally {
+				docs.close();
+				textOut.close();
+			}
+			DataOutputStream dictionary = output(directory, name + TERMS);
+			OutputStream postingOut = new BufferedOutputStream(new FileOutputStream(new File(directory, name
+					+ POSTINGS)));
+			try {
+				// terms of all segments in order, k-way
+				int[] cursors = new int[merged.size()];
+				long position = 0;
+				while (true) {
+					String term = null;
+					for (int s = 0; s < merged.size(); s++) {
+						String[] terms = merged.get(s).terms;
+						if (cursors[s] < terms.length && (term == null || terms[cursors[s]].compareTo(term) < 0)) {
+							term = terms[cursors[s]];
+						}
+					}
+					if (term == null) {
+						break;
+					}
+					PostingList list = new PostingList();
+					for (int s = 0; s < merged.size(); s++) {
+						Segment oSegment = merged.get(s);
+						if (cursors[s] < oSegment.terms.length && oSegment.terms[cursors[s]].equals(term)) {
+							oSegment.copyPostings(cursors[s]++, docMaps[s], list);
+						}
+					}
+					if (list.size > 0) {
+						position = list.writeTo(term, dictionary, postingOut, position);
+					}
+				}
+			} finally {
+				dictionary.close();
+				postingOut.close();
+			}
+			return open(directory, name);
+		}
+
+		private void copyPostings(int term, int[] docMap, PostingList target) {
+			int position = (int) postingStarts[term];
+			int doc = 0;
+			int[] read = new int[2];
+			for (int n = docFrequencies[term]; n > 0; n--) {
+				position = readVarint(postings, position, read, 0);
+				position = readVarint(postings, position, read, 1);
+				doc += read[0];
+				if (docMap[doc] >= 0) {
+					target.add(docMap[doc], read[1]);
+				}
+			}
+		}
+
+		static Segment open(File directory, String name) throws IOException {
+			DataInputStream docs = input(directory, name + DOCS);
+			String[] hashes;
+			int[] pages;
+			int[] lengths;
+			long[] textStarts;
+			try {
+				int count = docs.readInt();
+				hashes = new String[count];
+				pages = new int[count];
+				lengths = new int[count];
+				textStarts = new long[count + 1];
+				Map<String, String> interned = new HashMap<String, String>();
+				for (int doc = 0; doc < count; doc++) {
+					String hash = docs.readUTF();
+					String known = interned.get(hash);
+					if (known == null) {
+						interned.put(hash, hash);
+						known = hash;
+					}
+					hashes[doc] = known;
+					pages[doc] = docs.readInt();
+					lengths[doc] = docs.readInt();
+					textStarts[doc] = docs.readLong();
+				}
+				textStarts[count] = docs.readLong();
+			} finally {
+				docs.close();
+			}
+			File dictionaryFile = new File(directory, name + TERMS);
+			DataInputStream dictionary = input(directory, name + TERMS);
+			List<String> terms = new ArrayList<String>();
+			int[] docFrequencies = new int[16];
+			long[] postingStarts = new long[16];
+			try {
+				long remaining = dictionaryFile.length();
+				while (remaining > 0) {
+					String term = dictionary.readUTF();
+					int t = terms.size();
+					if (t == docFrequencies.length) {
+						docFrequencies = Arrays.copyOf(docFrequencies, t * 2);
+						postingStarts = Arrays.copyOf(postingStarts, t * 2);
+					}
+					terms.add(term);
+					docFrequencies[t] = dictionary.readInt();
+					postingStarts[t] = dictionary.readLong();
+					remaining -= 2 + term.getBytes(StandardCharsets.UTF_8).length + 4 + 8;
+				}
+			} finally {
+				dictionary.close();
+			}
+			return new Segment(name, hashes, pages, lengths, textStarts, terms.toArray(new String[terms.size()]),
+					Arrays.copyOf(docFrequencies, terms.size()), Arrays.copyOf(postingStarts, terms.size()),
+					map(new File(directory, name + TEXT)), map(new File(directory, name + POSTINGS)));
+		}
+
+		private static MappedByteBuffer map(File file) throws IOException {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel channel = in.getChannel();
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				// the mapping outlives the channel
+				in.close();
+			}
+		}
+
+		private static DataOutputStream output(File directory, String name) throws IOException {
+			return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, name))));
+		}
+
+		private static DataInputStream input(File directory, String name) throws IOException {
+			return new DataInputStream(new BufferedInputStream(new FileInputStream(new File(directory,
+					name))));
+		}
+	}
+
+	private static int readVarint(ByteBuffer buffer, int position, int[] into, int slot) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(position++);
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		into[slot] = value;
+		return position;
+	}
+
+	/**
+	 * Postings of one term being built, already encoded.
+	 */
+	private static final class PostingList {
+		private byte[] bytes = new byte[16];
+		private int length;
+		private int lastDoc;
+		int size;
+
+		void add(int doc, int frequency) {
+			writeVarint(doc - lastDoc);
+			writeVarint(frequency);
+			lastDoc = doc;
+			size++;
+		}
+
+		/**
+		 * Appends the postings and their dictionary entry.
+		 *
+		 * @return the position after the postings
+		 */
+		long writeTo(String term, DataOutputStream dictionary, OutputStream out, long position) throws IOException {
+			dictionary.writeUTF(term);
+			dictionary.writeInt(size);
+			dictionary.writeLong(position);
+			out.write(bytes, 0, length);
+			return position + length;
+		}
+
+		private void writeVarint(int value) {
+			if (length + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			while ((value & ~0x7f) != 0) {
+				bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.kirat.solutions.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.kirat.solutions.domain.Thumbnails;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+
+/**
+ * Builds the {@link Thumbnails} of one document while its pages render. The
+ * thumbnail of a page is averaged from the rows {@link PageRasterizer} encodes,
+ * so it costs no second drawing of the page; a page copied from a previous
+ * version takes its cell of the previous sprite sheet. Thumbnails are fitted
+ * into {@link #CELL_WIDTH} x {@link #CELL_HEIGHT} cells and
+ * {@link #PAGES_PER_SHEET} of them are stored as one JPEG, written as soon as
+ * it is full, so a 500 page book is five images. Each page also gets an
+ * {@link #PLACEHOLDER_WIDTH} pixel wide PNG placeholder, which a browser
+ * blurs when it scales it up.
+ */
+public final class PageThumbnails {
+
+	static final int CELL_WIDTH = 96;
+	static final int CELL_HEIGHT = 124;
+	static final int COLUMNS = 10;
+	static final int PAGES_PER_SHEET = 100;
+	static final int PLACEHOLDER_WIDTH = 8;
+	private static final float SHEET_QUALITY = 0.75f;
+	private static final int ROWS = (PAGES_PER_SHEET + COLUMNS - 1) / COLUMNS;
+	/** Memory of the sheet being filled. */
+	public static final long SHEET_BYTES = 4L * CELL_WIDTH * COLUMNS * CELL_HEIGHT * ROWS;
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(PageThumbnails.class);
+
+	private final String hash;
+	private final String renderId;
+	private final Thumbnails oThumbnails = new Thumbnails();
+	private BufferedImage sheet;
+	private int pages;
+	// the page being averaged: sums of the 565 channels and pixel counts per thumbnail pixel
+	private int[] columns;
+	private long[] sums;
+	private int[] counts;
+	private int sourceHeight;
+	private int width;
+	private int height;
+	// the previous sprite sheet last read, for copied pages
+	private String previousKey;
+	private BufferedImage previousSheet;
+
+	public PageThumbnails(String hash, String renderId) {
+		this.hash = hash;
+		this.renderId = renderId;
+		oThumbnails.setCellWidth(CELL_WIDTH);
+		oThumbnails.setCellHeight(CELL_HEIGHT);
+		oThumbnails.setColumns(COLUMNS);
+		oThumbnails.setPagesPerSheet(PAGES_PER_SHEET);
+	}
+
+	/**
+	 * Starts averaging a page image of the given size.
+	 */
+	void begin(int sourceWidth, int sourceHeight) {
+		double scale = Math.min((double) CELL_WIDTH / sourceWidth, (double) CELL_HEIGHT / sourceHeight);
+		width = Math.max(1, Math.min(CELL_WIDTH, (int) Math.round(sourceWidth * scale)));
+		height = Math.max(1, Math.min(CELL_HEIGHT, (int) Math.round(sourceHeight * scale)));
+		this.sourceHeight = sourceHeight;
+		if (columns == null || columns.length != sourceWidth) {
+			columns = new int[sourceWidth];
+		}
+		for (int x = 0; x < sourceWidth; x++) {
+			columns[x] = (int) ((long) x * width / sourceWidth);
+		}
+		if (sums == null || counts.length != width * height) {
+			sums = new long[3 * width * height];
+			counts = new int[width * height];
+		} else {
+			Arrays.fill(sums, 0);
+			Arrays.fill(counts, 0);
+		}
+	}
+
+	/**
+	 * Adds row y of the page, TYPE_USHORT_565_RGB pixels from offset on.
+	 */
+	void addRow(short[] pixels, int offset, int y) {
+		int base = (int) ((long) y * height / sourceHeight) * width;
+		for (int x = 0; x < columns.length; x++) {
+			int pixel = pixels[offset + x] & 0xffff;
+			int cell = base + columns[x];
+			sums[3 * cell] += pixel >> 11;
+			sums[3 * cell + 1] += (pixel >> 5) & 0x3f;
+			sums[3 * cell + 2] += pixel & 0x1f;
+			counts[cell]++;
+		}
+	}
+
+	/**
+	 * Ends the page begun last and places its thumbnail.
+	 */
+	void end() throws IOException, FileItException {
+		BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int cell = 0; cell < counts.length; cell++) {
+			long count = Math.max(1, counts[cell]);
+			int red = (int) (sums[3 * cell] * 255 / (31 * count));
+			int green = (int) (sums[3 * cell + 1] * 255 / (63 * count));
+			int blue = (int) (sums[3 * cell + 2] * 255 / (31 * count));
+			thumbnail.setRGB(cell % width, cell / width, red << 16 | green << 8 | blue);
+		}
+		add(thumbnail, null);
+	}
+
+	/**
+	 * Takes the thumbnail of an unchanged page from the previous version.
+	 *
+	 * @return false when the previous version has none to copy; draw it with
+	 *         {@link PageRasterizer#thumbnail} then
+	 */
+	public boolean copy(Thumbnails previous, int index) throws IOException, FileItException {
+		if (previous == null || previous.getCellWidth() != CELL_WIDTH || previous.getCellHeight() != CELL_HEIGHT
+				|| index >= previous.getPlaceholders().size()) {
+			return false;
+		}
+		String key = previous.getSheets().get(index / previous.getPagesPerSheet());
+		if (!key.equals(previousKey)) {
+			previousSheet = null;
+			previousKey = key;
+			try {
+				InputStream in = CloudStorageConfig.getInstance().getFile("1dvaultdata", key);
+				try {
+					previousSheet = ImageIO.read(in);
+				} finally {
+					in.close();
+				}
+			} catch (Exception e) {
+				// being reclaimed
+				logger.warn("Sprite sheet " + key + " not copied: " + e.getMessage());
+			}
+		}
+		if (previousSheet == null) {
+			return false;
+		}
+		int cell = index % previous.getPagesPerSheet();
+		int x = cell % previous.getColumns() * CELL_WIDTH;
+		int y = cell / previous.getColumns() * CELL_HEIGHT;
+		if (x + CELL_WIDTH > previousSheet.getWidth() || y + CELL_HEIGHT > previousSheet.getHeight()) {
+			return false;
+		}
+		add(previousSheet.getSubimage(x, y, CELL_WIDTH, CELL_HEIGHT), previous.getPlaceholders().get(index));
+		return true;
+	}
+
+	/**
+	 * Stores the last, partly filled sheet.
+	 *
+	 * @return the thumbnails of every page added
+	 */
+	public Thumbnails finish() throws IOException, FileItException {
+		if (pages % PAGES_PER_SHEET != 0) {
+			int used = (pages - 1) % PAGES_PER_SHEET + 1;
+			int rows = (used + COLUMNS - 1) / COLUMNS;
+			store(sheet.getSubimage(0, 0, sheet.getWidth(), rows * CELL_HEIGHT));
+		}
+		return oThumbnails;
+	}
+
+	/**
+	 * Places a thumbnail in the next cell, centred, and stores the sheet once
+	 * it is full.
+	 * 
+	 * @param placeholder
+	 *            null to make one from the thumbnail
+	 */
+	void add(BufferedImage thumbnail, String placeholder) throws IOException, FileItException {
+		if (sheet == null) {
+			sheet = new BufferedImage(CELL_WIDTH * COLUMNS, CELL_HEIGHT * ROWS, BufferedImage.TYPE_INT_RGB);
+		}
+		int cell = pages % PAGES_PER_SHEET;
+		if (cell == 0) {
+			Graphics2D graphics = sheet.createGraphics();
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+			graphics.dispose();
+		}
+		int x = cell % COLUMNS * CELL_WIDTH + (CELL_WIDTH - thumbnail.getWidth()) / 2;
+		int y = cell / COLUMNS * CELL_HEIGHT + (CELL_HEIGHT - thumbnail.getHeight()) / 2;
+		Graphics2D graphics = sheet.createGraphics();
+		try {
+			graphics.drawImage(thumbnail, x, y, null);
+		} finally {
+			graphics.dispose();
+		}
+		oThumbnails.getPlaceholders().add(placeholder != null ? placeholder : placeholder(thumbnail));
+		pages++;
+		if (pages % PAGES_PER_SHEET == 0) {
+			store(sheet);
+		}
+	}
+
+	private void store(BufferedImage image) throws IOException, FileItException {
+		String key = ManifestStore.thumbnailKey(hash, renderId, oThumbnails.getSheets().size() + 1);
+		try {
+			CloudStorageConfig.getInstance().uploadFile("1dvaultdata", key, new ByteArrayInputStream(jpeg(image, SHEET_QUALITY)),
+					"image/jpeg");
+		} catch (FileItException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FileItException(e.getMessage());
+		}
+		oThumbnails.getSheets().add(key);
+	}
+
+	static byte[] jpeg(BufferedImage image, float quality) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		ImageWriter writer = writers.next();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageOutputStream out = ImageIO.createImageOutputStream(bytes);
+		try {
+			writer.setOutput(out);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(quality);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Box average of the thumbnail down to {@link #PLACEHOLDER_WIDTH} pixels
+	 * wide, as a PNG data URI.
+	 */
+	static String placeholder(BufferedImage thumbnail) throws IOException {
+		int width = Math.min(PLACEHOLDER_WIDTH, thumbnail.getWidth());
+		int height = Math.max(1, Math.round((float) thumbnail.getHeight() * width / thumbnail.getWidth()));
+		BufferedImage small = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int py = 0; py < height; py++) {
+			int top = py * thumbnail.getHeight() / height;
+			int bottom = Math.max(top + 1, (py + 1) * thumbnail.getHeight() / height);
+			for (int px = 0; px < width; px++) {
+				int left = px * thumbnail.getWidth() / width;
+				int right = Math.max(left + 1, (px + 1) * thumbnail.getWidth() / width);
+				long red = 0;
+				long green = 0;
+				long blue = 0;
+				for (int y = top; y < bottom; y++) {
+					for (int x = left; x < right; x++) {
+						int rgb = thumbnail.getRGB(x, y);
+						red += (rgb >> 16) & 0xff;
+						green += (rgb >> 8) & 0xff;
+						blue += rgb & 0xff;
+					}
+				}
+				long count = (long) (bottom - top) * (right - left);
+				small.setRGB(px, py, (int) (red / count) << 16 | (int) (green / count) << 8 | (int) (blue / count));
+			}
+		}
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(small, "png", png);
+		return "data:image/png;base64," + Base64.getEncoder().encodeToString(png.toByteArray());
+	}
+}
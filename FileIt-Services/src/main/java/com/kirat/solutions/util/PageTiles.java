@@ -0,0 +1,351 @@
+package com.kirat.solutions.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cuts a page into a Deep Zoom (DZI) pyramid of {@link #TILE_SIZE} pixel
+ * tiles overlapping by {@link #OVERLAP}, for pages too detailed to read at the
+ * resolution of their page image. The page is drawn at render.tiles.dpi by
+ * {@link PageRasterizer} in bands and arrives here row by row: every level of
+ * the pyramid keeps only the rows of the tile row it is filling, and passes
+ * each pair of rows on to the level below at half the size. A tile row is
+ * encoded and uploaded as soon as it is complete, so a 300 dpi drawing never
+ * exists as one image. The descriptor is stored last; once it is there the
+ * whole pyramid is.
+ * <p>
+ * Tiles are kept under the content hash, next to the source of the page, as
+ * content/&lt;hash&gt;/tiles/&lt;page&gt;.dzi and the &lt;page&gt;_files/
+ * folder viewers expect beside it.
+ */
+public final class PageTiles {
+
+	public static final int TILE_SIZE = 254;
+	public static final int OVERLAP = 1;
+	public static final String FORMAT = "jpeg";
+	private static final float QUALITY = 0.85f;
+	private static final int ROW_BYTES_PER_PIXEL = 4;
+
+	private static ExecutorService uploads;
+	private static Semaphore uploading;
+	private static int resolution;
+	private static boolean atIngest;
+	private static boolean onDemand;
+
+	private final String hash;
+	private final int page;
+	private final List<Future<?>> stored = new ArrayList<Future<?>>();
+	private Level[] levels;
+	private int width;
+	private int height;
+
+	public PageTiles(String hash, int page) {
+		this.hash = hash;
+		this.page = page;
+		settings();
+	}
+
+	private static synchronized void settings() {
+		if (uploads != null) {
+			return;
+		}
+		FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+		resolution = oReader.getInt("render.tiles.dpi", 300);
+		atIngest = Boolean.parseBoolean(oReader.getString("render.tiles.at.ingest"));
+		String demand = oReader.getString("render.tiles.on.demand");
+		onDemand = demand == null || demand.trim().isEmpty() || Boolean.parseBoolean(demand.trim());
+		int threads = Math.max(1, oReader.getInt("render.tiles.upload.threads", 8));
+		// a few encoded tiles per thread wait for it, no more
+		uploading = new Semaphore(2 * threads);
+		uploads = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "tile-upload-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Resolution the top level of the pyramid is drawn at.
+	 */
+	public static int getResolution() {
+		settings();
+		return resolution;
+	}
+
+	/**
+	 * Whether uploads tile every page while rendering it.
+	 */
+	public static boolean isAtIngest() {
+		settings();
+		return atIngest;
+	}
+
+	/**
+	 * Whether a page without tiles is tiled when they are first asked for.
+	 */
+	public static boolean isOnDemand() {
+		settings();
+		return onDemand;
+	}
+
+	public static String descriptorKey(String hash, int page) {
+		return ManifestStore.contentPrefix(hash) + "tiles/" + page + ".dzi";
+	}
+
+	public static String tileKey(String hash, int page, int level, int column, int row) {
+		return ManifestStore.contentPrefix(hash) + "tiles/" + page + "_files/" + level + "/" + column + "_" + row
+				+ "." + FORMAT;
+	}
+
+	/**
+	 * @return the descriptor of the page, or null when it has not been tiled
+	 */
+	public static String readDescriptor(String hash, int page) throws FileItException {
+		try {
+			InputStream in = CloudStorageConfig.getInstance().getFile("1dvaultdata", descriptorKey(hash, page));
+			try {
+				return new String(readAll(in), StandardCharsets.UTF_8);
+			} finally {
+				in.close();
+			}
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (FileItException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FileItException(e.getMessage());
+		}
+	}
+
+	static String descriptor(int width, int height) {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" TileSize=\"" + TILE_SIZE
+				+ "\" Overlap=\"" + OVERLAP + "\" Format=\"" + FORMAT + "\"><Size Width=\"" + width + "\" Height=\""
+				+ height + "\"/></Image>\n";
+	}
+
+	/**
+	 * Memory the levels of a page this wide hold while it is cut.
+	 */
+	public static long bytes(int width) {
+		long bytes = 0;
+		for (long levelWidth = width; levelWidth > 1; levelWidth = (levelWidth + 1) / 2) {
+			bytes += (TILE_SIZE + 2L * OVERLAP) * levelWidth * ROW_BYTES_PER_PIXEL;
+		}
+		// the tile being encoded
+		return bytes + ROW_BYTES_PER_PIXEL * (TILE_SIZE + 2L * OVERLAP) * (TILE_SIZE + 2L * OVERLAP);
+	}
+
+	/**
+	 * Starts a page drawn at {@link #getResolution()} to the given size.
+	 */
+	void begin(int width, int height) {
+		this.width = width;
+		this.height = height;
+		int top = 0;
+		while ((1L << top) < Math.max(width, height)) {
+			top++;
+		}
+		levels = new Level[top + 1];
+		for (int level = 0; level <= top; level++) {
+			int shift = top - level;
+			levels[level] = new Level(level, (int) ((width + (1L << shift) - 1) >> shift),
+					(int) ((height + (1L << shift) - 1) >> shift), level == 0 ? null : levels[level - 1]);
+		}
+	}
+
+	/**
+	 * Adds the next row of the page, TYPE_USHORT_565_RGB pixels from offset
+	 * on.
+	 */
+	void addRow(short[] pixels, int offset) throws IOException, FileItException {
+		Level oTop = levels[levels.length - 1];
+		int[] row = oTop.next();
+		for (int x = 0; x < width; x++) {
+			int pixel = pixels[offset + x] & 0xffff;
+			int red = pixel >> 11;
+			int green = (pixel >> 5) & 0x3f;
+			int blue = pixel & 0x1f;
+			row[x] = (red << 3 | red >> 2) << 16 | (green << 2 | green >> 4) << 8 | (blue << 3 | blue >> 2);
+		}
+		oTop.added();
+	}
+
+	/**
+	 * Ends the page, waits for its tiles to be stored and stores the
+	 * descriptor.
+	 */
+	void end() throws IOException, FileItException {
+		for (int level = levels.length - 1; level > 0; level--) {
+			levels[level].finish();
+		}
+		for (Future<?> oFuture : stored) {
+			try {
+				oFuture.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while storing the tiles of page " + page);
+			} catch (ExecutionException e) {
+				throw new FileItException("Tiles of page " + page + " not stored: " + e.getCause().getMessage());
+			}
+		}
+		stored.clear();
+		upload(descriptorKey(hash, page), descriptor(width, height).getBytes(StandardCharsets.UTF_8),
+				"application/xml");
+	}
+
+	private void store(final String key, BufferedImage tile) throws IOException {
+		final byte[] jpeg = PageThumbnails.jpeg(tile, QUALITY);
+		try {
+			uploading.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while storing the tiles of page " + page);
+		}
+		try {
+			stored.add(uploads.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws FileItException {
+					try {
+						upload(key, jpeg, "image/jpeg");
+						return null;
+					} finally {
+						uploading.release();
+					}
+				}
+			}));
+		} catch (RuntimeException e) {
+			uploading.release();
+			throw e;
+		}
+	}
+
+	private static void upload(String key, byte[] bytes, String contentType) throws FileItException {
+		try {
+			CloudStorageConfig.getInstance().uploadFile("1dvaultdata", key, new ByteArrayInputStream(bytes),
+					contentType);
+		} catch (FileItException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FileItException(e.getMessage());
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * One level of the pyramid: the rows from the top of the tile row being
+	 * filled, overlap included, in a ring.
+	 */
+	private final class Level {
+
+		private final int level;
+		private final int width;
+		private final int height;
+		private final int[][] rows;
+		private final int columns;
+		private final Level below;
+		private int received;
+		private int tileRow;
+
+		Level(int level, int width, int height, Level below) {
+			this.level = level;
+			this.width = width;
+			this.height = height;
+			this.below = below;
+			this.rows = new int[Math.min(height, TILE_SIZE + 2 * OVERLAP)][width];
+			this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		}
+
+		/**
+		 * The array to fill with the next row, then call {@link #added()}.
+		 */
+		int[] next() {
+			return rows[received % rows.length];
+		}
+
+		void added() throws IOException, FileItException {
+			int y = received++;
+			if (below != null && y % 2 == 1) {
+				halve(rows[(y - 1) % rows.length], rows[y % rows.length]);
+			}
+			int bottom = Math.min(height, (tileRow + 1) * TILE_SIZE + OVERLAP);
+			if (received == bottom) {
+				emit();
+				tileRow++;
+			}
+		}
+
+		/**
+		 * Passes an odd last row on by itself.
+		 */
+		void finish() throws IOException, FileItException {
+			if (below != null && received % 2 == 1) {
+				int[] last = rows[(received - 1) % rows.length];
+				halve(last, last);
+			}
+		}
+
+		private void halve(int[] upper, int[] lower) throws IOException, FileItException {
+			int[] row = below.next();
+			for (int x = 0; x < below.width; x++) {
+				int left = 2 * x;
+				int right = Math.min(width - 1, left + 1);
+				row[x] = average(upper[left], upper[right], lower[left], lower[right]);
+			}
+			below.added();
+		}
+
+		private void emit() throws IOException {
+			int top = Math.max(0, tileRow * TILE_SIZE - OVERLAP);
+			int bottom = Math.min(height, (tileRow + 1) * TILE_SIZE + OVERLAP);
+			for (int column = 0; column < columns; column++) {
+				int left = Math.max(0, column * TILE_SIZE - OVERLAP);
+				int right = Math.min(width, (column + 1) * TILE_SIZE + OVERLAP);
+				BufferedImage tile = new BufferedImage(right - left, bottom - top, BufferedImage.TYPE_INT_RGB);
+				int[] data = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+				for (int y = top; y < bottom; y++) {
+					System.arraycopy(rows[y % rows.length], left, data, (y - top) * (right - left), right - left);
+				}
+				store(tileKey(hash, page, level, column, tileRow), tile);
+			}
+		}
+	}
+
+	private static int average(int a, int b, int c, int d) {
+		int red = ((a >> 16 & 0xff) + (b >> 16 & 0xff) + (c >> 16 & 0xff) + (d >> 16 & 0xff) + 2) >> 2;
+		int green = ((a >> 8 & 0xff) + (b >> 8 & 0xff) + (c >> 8 & 0xff) + (d >> 8 & 0xff) + 2) >> 2;
+		int blue = ((a & 0xff) + (b & 0xff) + (c & 0xff) + (d & 0xff) + 2) >> 2;
+		return red << 16 | green << 8 | blue;
+	}
+}
@@ -0,0 +1,179 @@
+package com.kirat.solutions.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PDF of page images to a stream, one page at a time. Each page is
+ * flate-compressed into the output as it is added, palette images with their
+ * palette, and nothing is held back but the offsets of the objects for the
+ * cross-reference table, so a book of any length takes the memory of one
+ * image row. Pages are sized as {@link PageRasterizer} renders them.
+ */
+public final class PdfPageWriter {
+
+	// catalog and page tree, written first and last
+	private static final int CATALOG = 1;
+	private static final int PAGES = 2;
+
+	private final CountingOutputStream out;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private long[] offsets = new long[64];
+	private int objects = PAGES;
+	private final List<Integer> kids = new ArrayList<Integer>();
+
+	public PdfPageWriter(OutputStream out) throws IOException {
+		this.out = new CountingOutputStream(out);
+		// the binary comment tells transfer tools the file is not text
+		write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+		begin(CATALOG);
+		write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+	}
+
+	public void addPage(BufferedImage image) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int imageObject = ++objects;
+		int lengthObject = ++objects;
+		int contentObject = ++objects;
+		int pageObject = ++objects;
+
+		begin(imageObject);
+		IndexColorModel palette = image.getColorModel() instanceof IndexColorModel
+				&& image.getRaster().getNumBands() == 1 ? (IndexColorModel) image.getColorModel() : null;
+		write("<< /Type /XObject /Subtype /Image /Width " + width + " /Height " + height + " /ColorSpace "
+				+ (palette == null ? "/DeviceRGB" : indexed(palette)) + " /BitsPerComponent 8 /Filter /FlateDecode"
+				+ " /Length " + lengthObject + " 0 R >>\nstream\n");
+		long start = out.count;
+		deflater.reset();
+		DeflaterOutputStream data = new DeflaterOutputStream(out, deflater, 8192);
+		if (palette == null) {
+			int[] rgb = new int[width];
+			byte[] row = new byte[3 * width];
+			for (int y = 0; y < height; y++) {
+				image.getRGB(0, y, width, 1, rgb, 0, width);
+				for (int x = 0; x < width; x++) {
+					row[3 * x] = (byte) (rgb[x] >> 16);
+					row[3 * x + 1] = (byte) (rgb[x] >> 8);
+					row[3 * x + 2] = (byte) rgb[x];
+				}
+				data.write(row);
+			}
+		} else {
+			Raster raster = image.getRaster();
+			int[] samples = new int[width];
+			byte[] row = new byte[width];
+			for (int y = 0; y < height; y++) {
+				raster.getSamples(0, y, width, 1, 0, samples);
+				for (int x = 0; x < width; x++) {
+					row[x] = (byte) samples[x];
+				}
+				data.write(row);
+			}
+		}
+		data.finish();
+		long length = out.count - start;
+		write("\nendstream\nendobj\n");
+		begin(lengthObject);
+		write(length + "\nendobj\n");
+
+		float pageWidth = width * PageRasterizer.POINTS_PER_INCH / PageRasterizer.RESOLUTION;
+		float pageHeight = height * PageRasterizer.POINTS_PER_INCH / PageRasterizer.RESOLUTION;
+		byte[] content = ("q " + number(pageWidth) + " 0 0 " + number(pageHeight) + " 0 0 cm /Im0 Do Q\n")
+				.getBytes(StandardCharsets.US_ASCII);
+		begin(contentObject);
+		write("<< /Length " + content.length + " >>\nstream\n");
+		out.write(content);
+		write("endstream\nendobj\n");
+
+		begin(pageObject);
+		write("<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox [0 0 " + number(pageWidth) + " "
+				+ number(pageHeight) + "] /Resources << /XObject << /Im0 " + imageObject + " 0 R >> >> /Contents "
+				+ contentObject + " 0 R >>\nendobj\n");
+		kids.add(Integer.valueOf(pageObject));
+	}
+
+	/**
+	 * Writes the page tree and the cross-reference table. The stream is
+	 * flushed, not closed.
+	 */
+	public void finish() throws IOException {
+		begin(PAGES);
+		StringBuilder tree = new StringBuilder("<< /Type /Pages /Count ").append(kids.size()).append(" /Kids [");
+		for (Integer kid : kids) {
+			tree.append(' ').append(kid).append(" 0 R");
+		}
+		write(tree.append(" ] >>\nendobj\n").toString());
+		long xref = out.count;
+		StringBuilder table = new StringBuilder("xref\n0 ").append(objects + 1).append("\n0000000000 65535 f \n");
+		for (int i = 1; i <= objects; i++) {
+			table.append(String.format(Locale.ROOT, "%010d 00000 n \n", offsets[i]));
+			if (table.length() >= 8192) {
+				write(table.toString());
+				table.setLength(0);
+			}
+		}
+		write(table.toString());
+		write("trailer\n<< /Size " + (objects + 1) + " /Root " + CATALOG + " 0 R >>\nstartxref\n" + xref
+				+ "\n%%EOF\n");
+		out.flush();
+		deflater.end();
+	}
+
+	private void begin(int object) throws IOException {
+		if (object >= offsets.length) {
+			offsets = Arrays.copyOf(offsets, Math.max(object + 1, offsets.length * 2));
+		}
+		offsets[object] = out.count;
+		write(object + " 0 obj\n");
+	}
+
+	private void write(String text) throws IOException {
+		out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static String indexed(IndexColorModel palette) {
+		int size = Math.min(256, palette.getMapSize());
+		StringBuilder colours = new StringBuilder("[/Indexed /DeviceRGB ").append(size - 1).append(" <");
+		for (int i = 0; i < size; i++) {
+			colours.append(String.format(Locale.ROOT, "%06x", palette.getRGB(i) & 0xffffff));
+		}
+		return colours.append(">]").toString();
+	}
+
+	private static String number(float value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+
+	private static final class CountingOutputStream extends FilterOutputStream {
+
+		long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,539 @@
+package com.kirat.solutions.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.kirat.solutions.domain.BookDocument;
+import com.kirat.solutions.domain.BookManifest;
+import com.kirat.solutions.domain.ContentManifest;
+import com.kirat.solutions.domain.ReclamationJob;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+
+/**
+ * Gives storage back in the background once a book is deleted or a document
+ * is replaced by a new version. A job first lists what it owns (the book's
+ * binder XML, manifest and legacy page images, or the pages of a released
+ * document) and then deletes it in batches, each object deleted on its own
+ * thread of a pool, throttled to reclaim.deletes.per.second and retried. Every
+ * job is checkpointed in the journal directory (reclaim.journal.dir) after
+ * listing and after each batch, so a restarted node carries on where it
+ * stopped. Objects are deleted only while still at the generation they were
+ * listed at, so whatever a recreated book or a new upload wrote since stays.
+ * Failed jobs are retried with backoff up to reclaim.max.attempts times, then
+ * left in the journal for the next start.
+ */
+public final class ReclamationService {
+
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(ReclamationService.class);
+	private static final String BUCKET = "1dvaultdata";
+	private static final String SUFFIX = ".job";
+	private static final int DELETE_ATTEMPTS = 3;
+	private static ReclamationService INSTANCE;
+
+	private final File directory;
+	private final int threads;
+	private final int batchSize;
+	private final int maxAttempts;
+	private final Throttle throttle;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Map<String, ReclamationJob> jobs = new ConcurrentHashMap<String, ReclamationJob>();
+	private final AtomicInteger sequence = new AtomicInteger();
+	private final AtomicLong reclaimedBytes = new AtomicLong();
+	private final AtomicLong deletedObjects = new AtomicLong();
+	private final AtomicLong failedDeletes = new AtomicLong();
+	private final AtomicLong completedJobs = new AtomicLong();
+	private ScheduledExecutorService dispatcher;
+	private ExecutorService deleters;
+
+	public static synchronized ReclamationService getInstance() {
+		if (null == INSTANCE) {
+			FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+			String dir = oReader.getString("reclaim.journal.dir");
+			INSTANCE = new ReclamationService(
+					dir == null || dir.trim().isEmpty()
+							? new File(System.getProperty("java.io.tmpdir"), "fileit-reclaim")
+							: new File(dir.trim()),
+					oReader.getInt("reclaim.threads", 8), oReader.getInt("reclaim.batch.size", 100),
+					oReader.getInt("reclaim.deletes.per.second", 200),
+					oReader.getInt("reclaim.max.attempts", 5));
+		}
+		return INSTANCE;
+	}
+
+	ReclamationService(File directory, int threads, int batchSize, int deletesPerSecond, int maxAttempts) {
+		this.directory = directory;
+		this.threads = threads;
+		this.batchSize = batchSize;
+		this.maxAttempts = maxAttempts;
+		this.throttle = new Throttle(deletesPerSecond);
+	}
+
+	/**
+	 * Starts the workers and resumes the jobs found in the journal.
+	 */
+	public synchronized void start() {
+		if (dispatcher != null) {
+			return;
+		}
+		dispatcher = Executors.newSingleThreadScheduledExecutor(daemon("fileit-reclaim"));
+		deleters = Executors.newFixedThreadPool(threads, daemon("fileit-reclaim-delete"));
+		List<ReclamationJob> resumed = loadJournal();
+		for (ReclamationJob oJob : resumed) {
+			jobs.put(oJob.getId(), oJob);
+			schedule(oJob, 0);
+		}
+		if (!resumed.isEmpty()) {
+			logger.info("Resuming " + resumed.size() + " reclamation jobs from " + directory);
+		}
+	}
+
+	/**
+	 * Stops the workers; unfinished jobs stay in the journal.
+	 */
+	public synchronized void stop() {
+		if (dispatcher != null) {
+			dispatcher.shutdownNow();
+			deleters.shutdownNow();
+			dispatcher = null;
+			deleters = null;
+		}
+	}
+
+	/**
+	 * Queues the storage of a book deleted from the catalog.
+	 *
+	 * @param binderPath
+	 *            binder XML of the book, as recorded in the catalog
+	 */
+	public void enqueueBook(String bookName, String binderPath) {
+		ReclamationJob oJob = newJob(ReclamationJob.BOOK);
+		oJob.setBook(bookName);
+		oJob.setBinderPath(binderPath);
+		submit(oJob);
+	}
+
+	/**
+	 * Queues the pages of a document a book no longer shows; they are only
+	 * deleted if no other book refers to them.
+	 */
+	public void enqueueContent(String hash) {
+		for (ReclamationJob oJob : jobs.values()) {
+			if (hash.equals(oJob.getHash()) && !oJob.isListed()) {
+				// the queued job will see every reference removed so far
+				return;
+			}
+		}
+		ReclamationJob oJob = newJob(ReclamationJob.CONTENT);
+		oJob.setHash(hash);
+		submit(oJob);
+	}
+
+	/**
+	 * Totals since this node started and the jobs still pending.
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("pendingJobs", jobs.size());
+		status.put("completedJobs", completedJobs.get());
+		status.put("deletedObjects", deletedObjects.get());
+		status.put("reclaimedBytes", reclaimedBytes.get());
+		status.put("failedDeletes", failedDeletes.get());
+		List<Map<String, Object>> pending = new ArrayList<Map<String, Object>>();
+		for (ReclamationJob oJob : jobs.values()) {
+			synchronized (oJob) {
+				Map<String, Object> job = new LinkedHashMap<String, Object>();
+				job.put("id", oJob.getId());
+				job.put("kind", oJob.getKind());
+				job.put("target", ReclamationJob.BOOK.equals(oJob.getKind()) ? oJob.getBook() : oJob.getHash());
+				job.put("listed", oJob.isListed());
+				job.put("remainingObjects", oJob.getRemaining().size());
+				job.put("deletedObjects", oJob.getDeletedObjects());
+				job.put("reclaimedBytes", oJob.getReclaimedBytes());
+				job.put("attempts", oJob.getAttempts());
+				if (oJob.getLastError() != null) {
+					job.put("lastError", oJob.getLastError());
+				}
+				pending.add(job);
+			}
+		}
+		status.put("jobs", pending);
+		return status;
+	}
+
+	private ReclamationJob newJob(String kind) {
+		ReclamationJob oJob = new ReclamationJob();
+		oJob.setKind(kind);
+		oJob.setCreated(System.currentTimeMillis());
+		oJob.setId(kind.toLowerCase() + "-" + oJob.getCreated() + "-" + sequence.incrementAndGet());
+		return oJob;
+	}
+
+	private void submit(ReclamationJob oJob) {
+		start();
+		jobs.put(oJob.getId(), oJob);
+		checkpoint(oJob);
+		schedule(oJob, 0);
+	}
+
+	private synchronized void schedule(final ReclamationJob oJob, long delayMillis) {
+		if (dispatcher == null) {
+			return;
+		}
+		dispatcher.schedule(new Runnable() {
+			@Override
+			public void run() {
+				process(oJob);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void process(ReclamationJob oJob) {
+		try {
+			if (!oJob.isListed()) {
+				if (ReclamationJob.BOOK.equals(oJob.getKind())) {
+					listBook(oJob);
+				} else {
+					listContent(oJob);
+				}
+			}
+			delete(oJob);
+		} catch (InterruptedException e) {
+			// stopping; the journal keeps the job
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception e) {
+			synchronized (oJob) {
+				oJob.setLastError(e.getMessage());
+			}
+		}
+		if (oJob.isListed() && oJob.getRemaining().isEmpty()) {
+			jobs.remove(oJob.getId());
+			new File(directory, oJob.getId() + SUFFIX).delete();
+			completedJobs.incrementAndGet();
+			logger.info("Reclaimed " + oJob.getReclaimedBytes() + " bytes in " + oJob.getDeletedObjects()
+					+ " objects for " + oJob.getId());
+			return;
+		}
+		int attempts;
+		synchronized (oJob) {
+			attempts = oJob.getAttempts() + 1;
+			oJob.setAttempts(attempts);
+		}
+		checkpoint(oJob);
+		if (attempts < maxAttempts) {
+			schedule(oJob, Math.min(1000L << Math.min(attempts, 8), 300000L));
+		} else {
+			logger.warn("Reclamation job " + oJob.getId() + " gave up after " + attempts + " attempts, "
+					+ oJob.getRemaining().size() + " objects left until the next start: " + oJob.getLastError());
+		}
+	}
+
+	/**
+	 * Everything stored for the book: its binder XML and all objects under
+	 * &lt;book&gt;/. Its documents' references are dropped and their content
+	 * queued, to be deleted unless another book uses it.
+	 */
+	private void listBook(ReclamationJob oJob) throws FileItException {
+		String bookName = oJob.getBook();
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+		Map<String, StorageObject> objects = new LinkedHashMap<String, StorageObject>(
+				oCloudStorageConfig.listObjects(BUCKET, bookName + "/"));
+		if (oJob.getBinderPath() != null) {
+			StorageObject oBinder = oCloudStorageConfig.listObjects(BUCKET, oJob.getBinderPath())
+					.get(oJob.getBinderPath());
+			if (oBinder != null) {
+				objects.put(oJob.getBinderPath(), oBinder);
+			}
+		}
+		// checked after listing: a book created again before then is in the catalog by now
+		if (CatalogSnapshotManager.getInstance().latest().find(bookName) != null) {
+			// what is stored now belongs to the new book
+			markListed(oJob, new LinkedHashMap<String, StorageObject>());
+			return;
+		}
+		Set<String> hashes = new LinkedHashSet<String>();
+		StorageObject oManifest = objects.get(ManifestStore.bookManifestKey(bookName));
+		BookManifest oBookManifest = ManifestStore.readBook(bookName,
+				oManifest == null ? null : oManifest.getGeneration());
+		if (oBookManifest != null) {
+			for (BookDocument oBookDocument : oBookManifest.getDocuments()) {
+				ManifestStore.removeRef(oBookDocument.getHash(), bookName, oBookDocument.getPath());
+				hashes.add(oBookDocument.getHash());
+			}
+		}
+		markListed(oJob, objects);
+		for (String hash : hashes) {
+			enqueueContent(hash);
+		}
+	}
+
+	/**
+	 * The pages, sprite sheets and tiles of the content, once it is no longer
+	 * referenced. They are
+	 * recorded before the content is detached so a restart in between still
+	 * knows what to delete.
+	 */
+	private void listContent(ReclamationJob oJob) throws FileItException {
+		String hash = oJob.getHash();
+		CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+		Map<String, StorageObject> listed = oCloudStorageConfig.listObjects(BUCKET,
+				ManifestStore.contentPrefix(hash));
+		StorageObject oManifest = listed.get(ManifestStore.manifestKey(hash));
+		ContentManifest oContentManifest = ManifestStore.readContent(hash,
+				oManifest == null ? null : oManifest.getGeneration());
+		if (oContentManifest != null) {
+			List<String> keys = new ArrayList<String>(oContentManifest.getPages());
+			if (oContentManifest.getThumbnails() != null) {
+				keys.addAll(oContentManifest.getThumbnails().getSheets());
+			}
+			Map<String, StorageObject> pages = new LinkedHashMap<String, StorageObject>();
+			for (String key : keys) {
+				// a page missing from the listing is recorded without a size or generation
+				pages.put(key, listed.containsKey(key) ? listed.get(key) : new StorageObject().setName(key));
+			}
+			String source = ManifestStore.sourceKey(hash);
+			if (listed.containsKey(source)) {
+				pages.put(source, listed.get(source));
+			}
+			// tiled on demand, so only the listing knows them
+			String tiles = ManifestStore.contentPrefix(hash) + "tiles/";
+			for (Map.Entry<String, StorageObject> oEntry : listed.entrySet()) {
+				if (oEntry.getKey().startsWith(tiles)) {
+					pages.put(oEntry.getKey(), oEntry.getValue());
+				}
+			}
+			record(oJob, pages);
+			checkpoint(oJob);
+		}
+		List<String> detached = ManifestStore.detachContent(hash);
+		if (detached.isEmpty()) {
+			boolean referenced = oContentManifest != null || !oCloudStorageConfig
+					.listBucket(BUCKET, ManifestStore.contentPrefix(hash) + "refs/").isEmpty();
+			if (referenced) {
+				markListed(oJob, new LinkedHashMap<String, StorageObject>());
+				return;
+			}
+			// detached before a restart: delete what was recorded then
+		} else {
+			count(oJob, 1, oManifest == null || oManifest.getSize() == null ? 0L : oManifest.getSize().longValue());
+		}
+		synchronized (oJob) {
+			oJob.setListed(true);
+		}
+		checkpoint(oJob);
+	}
+
+	private void markListed(ReclamationJob oJob, Map<String, StorageObject> objects) {
+		record(oJob, objects);
+		synchronized (oJob) {
+			oJob.setListed(true);
+		}
+		checkpoint(oJob);
+	}
+
+	/**
+	 * Sets the objects left to delete with the size and generation they were
+	 * listed with.
+	 */
+	private void record(ReclamationJob oJob, Map<String, StorageObject> objects) {
+		Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+		Map<String, Long> generations = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, StorageObject> oEntry : objects.entrySet()) {
+			StorageObject o = oEntry.getValue();
+			sizes.put(oEntry.getKey(), o.getSize() == null ? 0L : o.getSize().longValue());
+			if (o.getGeneration() != null) {
+				generations.put(oEntry.getKey(), o.getGeneration());
+			}
+		}
+		synchronized (oJob) {
+			oJob.setRemaining(sizes);
+			oJob.setGenerations(generations);
+		}
+	}
+
+	private void delete(ReclamationJob oJob) throws InterruptedException {
+		List<String> keys;
+		Map<String, Long> generations;
+		synchronized (oJob) {
+			keys = new ArrayList<String>(oJob.getRemaining().keySet());
+			generations = new LinkedHashMap<String, Long>(oJob.getGenerations());
+		}
+		for (int from = 0; from < keys.size(); from += batchSize) {
+			List<String> batch = keys.subList(from, Math.min(from + batchSize, keys.size()));
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(batch.size());
+			for (String key : batch) {
+				futures.add(deleters.submit(deleteTask(key, generations.get(key))));
+			}
+			for (int i = 0; i < batch.size(); i++) {
+				try {
+					boolean existed = futures.get(i).get();
+					synchronized (oJob) {
+						Long size = oJob.getRemaining().remove(batch.get(i));
+						oJob.getGenerations().remove(batch.get(i));
+						if (existed) {
+							count(oJob, 1, size == null ? 0L : size);
+						}
+					}
+				} catch (ExecutionException e) {
+					failedDeletes.incrementAndGet();
+					synchronized (oJob) {
+						oJob.setLastError(e.getCause().getMessage());
+					}
+				}
+			}
+			checkpoint(oJob);
+		}
+	}
+
+	private void count(ReclamationJob oJob, long objects, long bytes) {
+		synchronized (oJob) {
+			oJob.setDeletedObjects(oJob.getDeletedObjects() + objects);
+			oJob.setReclaimedBytes(oJob.getReclaimedBytes() + bytes);
+		}
+		deletedObjects.addAndGet(objects);
+		reclaimedBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * @param generation
+	 *            generation the object was listed at, null to delete whatever
+	 *            is there
+	 */
+	private Callable<Boolean> deleteTask(final String key, final Long generation) {
+		return new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				for (int attempt = 1;; attempt++) {
+					throttle.acquire();
+					try {
+						return CloudStorageConfig.getInstance().deleteIfExists(BUCKET, key, generation);
+					} catch (FileItException e) {
+						if (attempt == DELETE_ATTEMPTS) {
+							throw e;
+						}
+						Thread.sleep(100L << attempt);
+					}
+				}
+			}
+		};
+	}
+
+	private void checkpoint(ReclamationJob oJob) {
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create " + directory);
+			}
+			byte[] bytes;
+			synchronized (oJob) {
+				bytes = mapper.writeValueAsBytes(oJob);
+			}
+			File temp = File.createTempFile(oJob.getId(), ".tmp", directory);
+			try {
+				FileOutputStream out = new FileOutputStream(temp);
+				try {
+					out.write(bytes);
+					out.getFD().sync();
+				} finally {
+					out.close();
+				}
+				Files.move(temp.toPath(), new File(directory, oJob.getId() + SUFFIX).toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			logger.warn("Reclamation job " + oJob.getId() + " not checkpointed: " + e.getMessage());
+		}
+	}
+
+	private List<ReclamationJob> loadJournal() {
+		List<ReclamationJob> loaded = new ArrayList<ReclamationJob>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return loaded;
+		}
+		for (File file : files) {
+			if (!file.getName().endsWith(SUFFIX)) {
+				continue;
+			}
+			try {
+				ReclamationJob oJob = mapper.readValue(file, ReclamationJob.class);
+				oJob.setAttempts(0);
+				loaded.add(oJob);
+			} catch (IOException e) {
+				logger.warn("Discarding unreadable reclamation job " + file + ": " + e.getMessage());
+				file.delete();
+			}
+		}
+		Collections.sort(loaded, new Comparator<ReclamationJob>() {
+			@Override
+			public int compare(ReclamationJob a, ReclamationJob b) {
+				return Long.compare(a.getCreated(), b.getCreated());
+			}
+		});
+		return loaded;
+	}
+
+	private static ThreadFactory daemon(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Spaces calls evenly at the configured rate across all threads.
+	 */
+	private static final class Throttle {
+		private final long intervalNanos;
+		private long next;
+
+		Throttle(int perSecond) {
+			this.intervalNanos = perSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / perSecond;
+			this.next = System.nanoTime();
+		}
+
+		void acquire() throws InterruptedException {
+			long wait;
+			synchronized (this) {
+				long now = System.nanoTime();
+				next = Math.max(next, now) + intervalNanos;
+				wait = next - intervalNanos - now;
+			}
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+}
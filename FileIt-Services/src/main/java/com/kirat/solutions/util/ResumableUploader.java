@@ -0,0 +1,301 @@
+package com.kirat.solutions.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.google.api.client.auth.oauth2.Credential;
+
+/**
+ * Uploads a region of a file as one object through a resumable upload session
+ * of the JSON API. The region is sent in chunks straight from the file
+ * channel. When a chunk fails, the session is asked how much it has committed
+ * and the upload carries on from there, so a broken connection costs at most
+ * one chunk. A session the bucket no longer knows is started over once.
+ */
+public final class ResumableUploader {
+
+	/** Chunks other than the last must be a multiple of this. */
+	public static final int CHUNK_GRANULARITY = 256 * 1024;
+	private static final long RETRY_BASE_MILLIS = 200;
+	private static final long RETRY_MAX_MILLIS = 10000;
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final Credential credential;
+	private final String rootUrl;
+	private final int chunkBytes;
+	private final int maxAttempts;
+	private final int connectTimeout;
+	private final int readTimeout;
+
+	/**
+	 * @param credential
+	 *            authorizes the requests, null to send none
+	 * @param rootUrl
+	 *            root of the JSON API, ending with a slash
+	 * @param chunkBytes
+	 *            rounded up to a multiple of {@link #CHUNK_GRANULARITY}
+	 * @param maxAttempts
+	 *            failed requests in a row before the upload gives up
+	 */
+	public ResumableUploader(Credential credential, String rootUrl, int chunkBytes, int maxAttempts,
+			int connectTimeout, int readTimeout) {
+		this.credential = credential;
+		this.rootUrl = rootUrl;
+		this.chunkBytes = Math.max(1, (chunkBytes + CHUNK_GRANULARITY - 1) / CHUNK_GRANULARITY) * CHUNK_GRANULARITY;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	public int getChunkBytes() {
+		return chunkBytes;
+	}
+
+	/**
+	 * @param ifGenerationMatch
+	 *            generation the object must have, 0 when it must not exist yet,
+	 *            null to write unconditionally
+	 * @return generation of the object written, or null when the precondition
+	 *         failed
+	 */
+	public Long upload(String bucketName, String objectName, FileChannel channel, long offset, long length,
+			String contentType, Long ifGenerationMatch) throws IOException {
+		String session = start(bucketName, objectName, contentType, length, ifGenerationMatch);
+		if (session == null) {
+			return null;
+		}
+		boolean restarted = false;
+		long committed = 0;
+		int failures = 0;
+		while (true) {
+			Chunk oChunk;
+			try {
+				oChunk = put(session, channel, offset, committed, Math.min(chunkBytes, length - committed), length);
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				if (++failures >= maxAttempts) {
+					throw e;
+				}
+				backoff(failures);
+				try {
+					oChunk = put(session, channel, offset, committed, -1, length);
+				} catch (InterruptedIOException query) {
+					throw query;
+				} catch (IOException query) {
+					// not even the status is known; try the same chunk again
+					continue;
+				}
+			}
+			if (oChunk.done) {
+				return oChunk.generation;
+			}
+			if (oChunk.gone) {
+				if (restarted) {
+					throw new IOException("Upload session of " + objectName + " lost twice");
+				}
+				restarted = true;
+				session = start(bucketName, objectName, contentType, length, ifGenerationMatch);
+				if (session == null) {
+					return null;
+				}
+				committed = 0;
+				continue;
+			}
+			if (oChunk.committed > committed) {
+				failures = 0;
+			}
+			committed = oChunk.committed;
+		}
+	}
+
+	/**
+	 * @return the session URI, or null when the precondition failed
+	 */
+	private String start(String bucketName, String objectName, String contentType, long length,
+			Long ifGenerationMatch) throws IOException {
+		String url = rootUrl + "upload/storage/v1/b/" + URLEncoder.encode(bucketName, "UTF-8")
+				+ "/o?uploadType=resumable&name=" + URLEncoder.encode(objectName, "UTF-8")
+				+ (ifGenerationMatch == null ? "" : "&ifGenerationMatch=" + ifGenerationMatch);
+		Map<String, String> metadata = new LinkedHashMap<String, String>();
+		metadata.put("name", objectName);
+		metadata.put("contentType", contentType);
+		byte[] body = MAPPER.writeValueAsBytes(metadata);
+		for (int attempt = 1;; attempt++) {
+			try {
+				HttpURLConnection con = open(url, "POST");
+				con.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+				con.setRequestProperty("X-Upload-Content-Type", contentType);
+				con.setRequestProperty("X-Upload-Content-Length", String.valueOf(length));
+				con.setDoOutput(true);
+				con.setFixedLengthStreamingMode(body.length);
+				OutputStream out = con.getOutputStream();
+				try {
+					out.write(body);
+				} finally {
+					out.close();
+				}
+				int status = con.getResponseCode();
+				if (status == 412) {
+					drain(con);
+					return null;
+				}
+				if (status != 200 && status != 201) {
+					throw failed(con, status, "Starting the upload of " + objectName);
+				}
+				drain(con);
+				String session = con.getHeaderField("Location");
+				if (session == null) {
+					throw new IOException("No upload session for " + objectName);
+				}
+				return session;
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				if (attempt >= maxAttempts) {
+					throw e;
+				}
+				backoff(attempt);
+			}
+		}
+	}
+
+	/**
+	 * Sends the bytes from committed on, or with a negative count only asks
+	 * how much the session has committed.
+	 */
+	private Chunk put(String session, FileChannel channel, long offset, long committed, long count, long length)
+			throws IOException {
+		HttpURLConnection con = open(session, "PUT");
+		if (count < 0 || length == 0) {
+			con.setRequestProperty("Content-Range", "bytes */" + length);
+			con.setFixedLengthStreamingMode(0);
+			con.setDoOutput(true);
+			con.getOutputStream().close();
+		} else {
+			con.setRequestProperty("Content-Range",
+					"bytes " + committed + "-" + (committed + count - 1) + "/" + length);
+			con.setDoOutput(true);
+			con.setFixedLengthStreamingMode(count);
+			OutputStream out = con.getOutputStream();
+			try {
+				WritableByteChannel target = Channels.newChannel(out);
+				long sent = 0;
+				while (sent < count) {
+					long n = channel.transferTo(offset + committed + sent, count - sent, target);
+					if (n <= 0) {
+						throw new IOException("File ended before the upload did");
+					}
+					sent += n;
+				}
+			} finally {
+				out.close();
+			}
+		}
+		int status = con.getResponseCode();
+		Chunk oChunk = new Chunk();
+		if (status == 200 || status == 201) {
+			oChunk.done = true;
+			oChunk.generation = generation(con);
+		} else if (status == 412) {
+			drain(con);
+			oChunk.done = true;
+		} else if (status == 308) {
+			drain(con);
+			// "bytes=0-N" once anything is committed
+			String range = con.getHeaderField("Range");
+			oChunk.committed = range == null ? 0 : Long.parseLong(range.substring(range.lastIndexOf('-') + 1)) + 1;
+		} else if (status == 404 || status == 410) {
+			drain(con);
+			oChunk.gone = true;
+		} else {
+			throw failed(con, status, "Upload");
+		}
+		return oChunk;
+	}
+
+	private HttpURLConnection open(String url, String method) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+		con.setConnectTimeout(connectTimeout);
+		con.setReadTimeout(readTimeout);
+		con.setRequestMethod(method);
+		// 308 here means "resume incomplete", not a redirect
+		con.setInstanceFollowRedirects(false);
+		if (credential != null) {
+			con.setRequestProperty("Authorization", "Bearer " + accessToken());
+		}
+		return con;
+	}
+
+	private String accessToken() throws IOException {
+		Long expiresIn = credential.getExpiresInSeconds();
+		if (credential.getAccessToken() == null || expiresIn != null && expiresIn.longValue() < 60) {
+			credential.refreshToken();
+		}
+		return credential.getAccessToken();
+	}
+
+	private static Long generation(HttpURLConnection con) throws IOException {
+		InputStream in = con.getInputStream();
+		try {
+			JsonNode generation = MAPPER.readTree(in).get("generation");
+			return generation == null ? null : Long.valueOf(generation.asText());
+		} finally {
+			in.close();
+		}
+	}
+
+	private static IOException failed(HttpURLConnection con, int status, String what) {
+		InputStream error = con.getErrorStream();
+		if (error != null) {
+			try {
+				error.close();
+			} catch (IOException ignored) {
+				// nothing more to learn from it
+			}
+		}
+		return new IOException(what + " failed with HTTP " + status);
+	}
+
+	private static void drain(HttpURLConnection con) throws IOException {
+		InputStream in = con.getResponseCode() >= 400 ? con.getErrorStream() : con.getInputStream();
+		if (in != null) {
+			byte[] buffer = new byte[1024];
+			while (in.read(buffer) != -1) {
+				// read to the end so the connection can be reused
+			}
+			in.close();
+		}
+	}
+
+	private static void backoff(int failures) throws InterruptedIOException {
+		long ceiling = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(failures - 1, 20));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to resume an upload");
+		}
+	}
+
+	private static final class Chunk {
+		boolean done;
+		boolean gone;
+		long committed;
+		Long generation;
+	}
+}
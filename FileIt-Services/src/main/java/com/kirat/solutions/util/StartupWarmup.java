@@ -0,0 +1,267 @@
+package com.kirat.solutions.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xwpf.converter.pdf.PdfConverter;
+import org.apache.poi.xwpf.converter.pdf.PdfOptions;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPageMar;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSectPr;
+import org.w3c.dom.Document;
+
+import com.kirat.solutions.Encryption.AesUtil;
+import com.kirat.solutions.auth.GetOrValidateUser;
+import com.kirat.solutions.domain.BinderList;
+import com.kirat.solutions.domain.BookCatalog;
+import com.kirat.solutions.domain.BookTree;
+import com.kirat.solutions.domain.CatalogEntry;
+import com.kirat.solutions.domain.SearchBookResponse;
+import com.kirat.solutions.logger.FILEITLogger;
+import com.kirat.solutions.logger.FILEITLoggerFactory;
+import com.kirat.solutions.processor.TransformationProcessor;
+
+/**
+ * Pays the first-request costs once, right after the Spring context starts:
+ * the storage client and its OAuth token, the catalog snapshot and the
+ * metadata index built from it, the JSON and XML code paths, the PDF and DOCX
+ * renderers, the JAXB user context and the PBKDF2 key derivation. It runs on
+ * its own thread; /health/ready answers 503 until every step has run. A
+ * failing step is logged and reported but does not keep the node out of
+ * rotation, the request that needs it will retry.
+ */
+public class StartupWarmup {
+
+	private static final FILEITLogger logger = FILEITLoggerFactory.getLogger(StartupWarmup.class);
+
+	private static final String BINDER_JSON = "{\"id\": 1,\"name\": \"warmup\",\"classification\": \"Warmup\",\"children\": "
+			+ "[{\"id\": 2,\"name\": \"child\",\"path\": \"warmup.pdf\",\"type\": \"application/pdf\",\"version\": \"1.0\"}]}";
+	private static final String BINDER_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><map id=\"warmup\"><title/><body>"
+			+ "<topicref classification=\"Warmup\" id=\"topicref\" navtitle=\"warmup\" type=\"Binder\">"
+			+ "<topic id=\"2\" name=\"child\" path=\"Images/warmup/child\" type=\"application/pdf\" version=\"1.0\"/>"
+			+ "</topicref></body></map>";
+	private static final String USERS_XML = "<Users><User><userName>warmup</userName><password>warmup</password></User></Users>";
+
+	private volatile boolean ready;
+	private volatile String currentStep = "pending";
+	private final Map<String, String> results = new LinkedHashMap<String, String>();
+	private Thread thread;
+
+	public synchronized void start() {
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				warmUp();
+			}
+		}, "fileit-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Step being run, then the outcome and duration of every step, in order.
+	 */
+	public synchronized Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("status", ready ? "READY" : "WARMING_UP");
+		if (!ready) {
+			status.put("step", currentStep);
+		}
+		status.put("steps", new LinkedHashMap<String, String>(results));
+		return status;
+	}
+
+	void warmUp() {
+		long start = System.currentTimeMillis();
+		step("storage", new Step() {
+			@Override
+			public void run() throws Exception {
+				CloudStorageConfig oCloudStorageConfig = CloudStorageConfig.getInstance();
+				oCloudStorageConfig.getGeneration("1dvaultdata", "test.JSON");
+				oCloudStorageConfig.getSignedString("1dvaultdata", "test.JSON");
+			}
+		});
+		step("catalog", new Step() {
+			@Override
+			public void run() throws Exception {
+				CatalogSnapshotManager.getInstance().current();
+			}
+		});
+		step("metadata", new Step() {
+			@Override
+			public void run() throws Exception {
+				MetadataIndex.getInstance().search("", null, null, 0);
+			}
+		});
+		step("json", new Step() {
+			@Override
+			public void run() throws Exception {
+				BinderList oBinderList = new TransformationProcessor().createBinderList(BINDER_JSON);
+				BookCatalog oBookCatalog = new BookCatalog();
+				oBookCatalog.getBooks().add(new CatalogEntry(oBinderList.getName(), oBinderList.getClassification(),
+						FileUtil.createDynamicFilePath(oBinderList.getName())));
+				JsonCodec.readCatalog(new ByteArrayInputStream(JsonCodec.catalogBytes(oBookCatalog)));
+				SearchBookResponse oSearchBookResponse = new SearchBookResponse();
+				oSearchBookResponse.setJsonObject(
+						Collections.singletonMap(oBinderList.getName(), oBookCatalog.getBooks().get(0)));
+				new ObjectMapper().writeValue(new DiscardingOutputStream(), oSearchBookResponse);
+			}
+		});
+		step("xml", new Step() {
+			@Override
+			public void run() throws Exception {
+				BookTree oBookTree = JsonCodec
+						.readBookTree(new ByteArrayInputStream(BINDER_XML.getBytes(StandardCharsets.UTF_8)));
+				JsonCodec.writeBookTree(oBookTree, new DiscardingOutputStream());
+				Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+				doc.appendChild(doc.createElement("map"));
+				TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc),
+						new StreamResult(new DiscardingOutputStream()));
+			}
+		});
+		step("pdf", new Step() {
+			@Override
+			public void run() throws Exception {
+				render(samplePdf());
+			}
+		});
+		step("docx", new Step() {
+			@Override
+			public void run() throws Exception {
+				XWPFDocument docx = new XWPFDocument(OPCPackage.open(new ByteArrayInputStream(sampleDocx())));
+				ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+				PdfConverter.getInstance().convert(docx, pdf, PdfOptions.create());
+				render(pdf.toByteArray());
+			}
+		});
+		step("jaxb", new Step() {
+			@Override
+			public void run() throws Exception {
+				GetOrValidateUser.getUsersContext().createUnmarshaller().unmarshal(new StringReader(USERS_XML));
+			}
+		});
+		step("pbkdf2", new Step() {
+			@Override
+			public void run() throws Exception {
+				AesUtil.Decrypt(AesUtil.Encrypt("warmup"));
+			}
+		});
+		synchronized (this) {
+			ready = true;
+			currentStep = null;
+		}
+		logger.info("Warm-up finished in " + (System.currentTimeMillis() - start) + " ms: " + results);
+	}
+
+	private void step(String name, Step oStep) {
+		if (Thread.currentThread().isInterrupted()) {
+			return;
+		}
+		currentStep = name;
+		long start = System.currentTimeMillis();
+		String outcome;
+		try {
+			oStep.run();
+			outcome = "ok";
+		} catch (Throwable e) {
+			logger.warn("Warm-up step " + name + " failed: " + e);
+			outcome = "failed: " + e.getMessage();
+		}
+		synchronized (this) {
+			results.put(name, outcome + " (" + (System.currentTimeMillis() - start) + " ms)");
+		}
+	}
+
+	private static void render(byte[] pdf) throws IOException, FileItException {
+		PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf));
+		try {
+			@SuppressWarnings("unchecked")
+			List<PDPage> pages = document.getDocumentCatalog().getAllPages();
+			PageRasterizer.newJob().render(pages.get(0), 1, new DiscardingOutputStream());
+		} finally {
+			document.close();
+		}
+	}
+
+	private static byte[] samplePdf() throws Exception {
+		PDDocument document = new PDDocument();
+		try {
+			PDPage page = new PDPage();
+			document.addPage(page);
+			PDPageContentStream contentStream = new PDPageContentStream(document, page);
+			contentStream.beginText();
+			contentStream.setFont(PDType1Font.HELVETICA, 12);
+			contentStream.moveTextPositionByAmount(72, 700);
+			contentStream.drawString("warmup");
+			contentStream.endText();
+			contentStream.close();
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			document.save(baos);
+			return baos.toByteArray();
+		} finally {
+			document.close();
+		}
+	}
+
+	private static byte[] sampleDocx() throws IOException {
+		XWPFDocument docx = new XWPFDocument();
+		// the PDF converter needs the styles part and page setup a blank document lacks
+		docx.createStyles();
+		CTSectPr sectPr = docx.getDocument().getBody().addNewSectPr();
+		sectPr.addNewPgSz().setW(BigInteger.valueOf(12240));
+		sectPr.getPgSz().setH(BigInteger.valueOf(15840));
+		CTPageMar pageMar = sectPr.addNewPgMar();
+		pageMar.setTop(BigInteger.valueOf(1440));
+		pageMar.setBottom(BigInteger.valueOf(1440));
+		pageMar.setLeft(BigInteger.valueOf(1440));
+		pageMar.setRight(BigInteger.valueOf(1440));
+		docx.createParagraph().createRun().setText("warmup");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		docx.write(baos);
+		return baos.toByteArray();
+	}
+
+	private interface Step {
+		void run() throws Exception;
+	}
+
+	private static final class DiscardingOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
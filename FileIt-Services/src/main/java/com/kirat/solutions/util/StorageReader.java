@@ -0,0 +1,332 @@
+package com.kirat.solutions.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * GETs on signed URLs that cannot hold a request thread for long. The read
+ * timeout of an operation follows the latency observed for it: four times its
+ * p99, between {@link #MIN_READ_TIMEOUT} and the configured ceiling. When the
+ * first request has not answered within the p95, a second one is sent and the
+ * first answer wins; at most one request in ten is hedged so a slow bucket
+ * does not get twice the load. Throttling (429), server errors and I/O
+ * failures are retried with exponential backoff and full jitter. Each bucket
+ * has a circuit breaker: after a run of failed attempts it fails reads at once
+ * for a while, then lets a single probe through.
+ */
+public final class StorageReader {
+
+	static final int MIN_READ_TIMEOUT = 2000;
+	static final long MIN_HEDGE_DELAY = 20;
+	static final int MIN_SAMPLES = 20;
+	private static final long RETRY_BASE_MILLIS = 100;
+	private static final long RETRY_MAX_MILLIS = 2000;
+	private static final int HEDGE_PERCENT = 10;
+
+	private final int connectTimeout;
+	private final int maxReadTimeout;
+	private final int maxAttempts;
+	private final boolean hedge;
+	private final int breakerFailures;
+	private final long breakerOpenMillis;
+	private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "storage-read-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * @param maxReadTimeout
+	 *            read timeout until enough latencies are known, and the
+	 *            ceiling of the adaptive one
+	 * @param maxAttempts
+	 *            attempts per read, the first included
+	 * @param breakerFailures
+	 *            failed attempts in a row that open the circuit of a bucket, 0
+	 *            for no circuit breaker
+	 */
+	public StorageReader(int connectTimeout, int maxReadTimeout, int maxAttempts, boolean hedge, int breakerFailures,
+			long breakerOpenMillis) {
+		this.connectTimeout = connectTimeout;
+		this.maxReadTimeout = maxReadTimeout;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.hedge = hedge;
+		this.breakerFailures = breakerFailures;
+		this.breakerOpenMillis = breakerOpenMillis;
+	}
+
+	/**
+	 * Sends the GET and waits for the status line. The caller reads the body
+	 * from the connection as usual; for a 404 getInputStream throws
+	 * FileNotFoundException.
+	 *
+	 * @param operation
+	 *            what the read is for; latencies are kept per operation
+	 * @param ifNoneMatch
+	 *            ETag of a cached copy, or null
+	 * @return the connection, answered with a status that is not retried
+	 * @throws IOException
+	 *             once every attempt failed, or at once while the circuit of
+	 *             the bucket is open
+	 */
+	public HttpURLConnection get(String operation, String bucketName, String url, String ifNoneMatch)
+			throws IOException {
+		LatencyWindow window = window(operation);
+		CircuitBreaker breaker = breaker(bucketName);
+		IOException failure = null;
+		for (int attempt = 0; attempt < maxAttempts; attempt++) {
+			if (attempt > 0) {
+				backoff(attempt);
+			}
+			if (!breaker.allow()) {
+				throw failure != null ? failure : new IOException("Reads from " + bucketName + " are suspended");
+			}
+			try {
+				HttpURLConnection con = hedged(window, url, ifNoneMatch);
+				int status = con.getResponseCode();
+				if (status == 429 || status >= 500) {
+					con.disconnect();
+					breaker.failure();
+					failure = new IOException("Storage answered " + status + " for " + operation);
+					continue;
+				}
+				breaker.success();
+				return con;
+			} catch (InterruptedIOException e) {
+				breaker.abandon();
+				throw e;
+			} catch (IOException e) {
+				breaker.failure();
+				failure = e;
+			}
+		}
+		throw failure;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * @return {p95, p99, read timeout} of an operation in milliseconds, for
+	 *         monitoring
+	 */
+	public long[] getLatencies(String operation) {
+		LatencyWindow window = window(operation);
+		long[] percentiles = window.percentiles();
+		return percentiles == null ? new long[] { -1, -1, maxReadTimeout }
+				: new long[] { percentiles[0], percentiles[1], readTimeout(percentiles) };
+	}
+
+	private HttpURLConnection hedged(final LatencyWindow window, final String url, final String ifNoneMatch)
+			throws IOException {
+		long[] percentiles = window.percentiles();
+		final int readTimeout = readTimeout(percentiles);
+		final AtomicReferenceArray<HttpURLConnection> connections = new AtomicReferenceArray<HttpURLConnection>(2);
+		final AtomicInteger winner = new AtomicInteger(-1);
+		CompletionService<Integer> attempts = new ExecutorCompletionService<Integer>(pool);
+		attempts.submit(attempt(0, window, url, ifNoneMatch, readTimeout, connections, winner));
+		int running = 1;
+		long count = requests.incrementAndGet();
+		try {
+			Future<Integer> done = null;
+			if (hedge && percentiles != null && hedges.get() * 100 < count * HEDGE_PERCENT) {
+				done = attempts.poll(Math.max(MIN_HEDGE_DELAY, percentiles[0]), TimeUnit.MILLISECONDS);
+				if (done == null) {
+					hedges.incrementAndGet();
+					attempts.submit(attempt(1, window, url, ifNoneMatch, readTimeout, connections, winner));
+					running++;
+				}
+			}
+			while (true) {
+				if (done == null) {
+					done = attempts.take();
+				}
+				try {
+					int index = done.get().intValue();
+					winner.set(index);
+					disconnectOthers(connections, index);
+					return connections.get(index);
+				} catch (ExecutionException e) {
+					if (--running == 0) {
+						throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+								: new IOException(e.getCause());
+					}
+					done = null;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			winner.set(2);
+			disconnectOthers(connections, 2);
+			throw new InterruptedIOException("Interrupted while reading from storage");
+		}
+	}
+
+	private Callable<Integer> attempt(final int index, final LatencyWindow window, final String url,
+			final String ifNoneMatch, final int readTimeout, final AtomicReferenceArray<HttpURLConnection> connections,
+			final AtomicInteger winner) {
+		return new Callable<Integer>() {
+			@Override
+			public Integer call() throws IOException {
+				long start = System.nanoTime();
+				HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+				con.setConnectTimeout(connectTimeout);
+				con.setReadTimeout(readTimeout);
+				con.setRequestMethod("GET");
+				con.setRequestProperty("User-Agent", "Mozilla/5.0");
+				if (ifNoneMatch != null) {
+					con.setRequestProperty("If-None-Match", ifNoneMatch);
+				}
+				connections.set(index, con);
+				int status = con.getResponseCode();
+				if (status != 429 && status < 500) {
+					window.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				}
+				int won = winner.get();
+				if (won >= 0 && won != index) {
+					// answered after the other request won
+					con.disconnect();
+				}
+				return Integer.valueOf(index);
+			}
+		};
+	}
+
+	private static void disconnectOthers(AtomicReferenceArray<HttpURLConnection> connections, int winner) {
+		for (int i = 0; i < connections.length(); i++) {
+			HttpURLConnection con = connections.get(i);
+			if (i != winner && con != null) {
+				con.disconnect();
+			}
+		}
+	}
+
+	private int readTimeout(long[] percentiles) {
+		if (percentiles == null) {
+			return maxReadTimeout;
+		}
+		return (int) Math.min(maxReadTimeout, Math.max(MIN_READ_TIMEOUT, percentiles[1] * 4));
+	}
+
+	private static void backoff(int attempt) throws InterruptedIOException {
+		long ceiling = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << (attempt - 1));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry a storage read");
+		}
+	}
+
+	private LatencyWindow window(String operation) {
+		LatencyWindow window = latencies.get(operation);
+		if (window == null) {
+			latencies.putIfAbsent(operation, new LatencyWindow());
+			window = latencies.get(operation);
+		}
+		return window;
+	}
+
+	private CircuitBreaker breaker(String bucketName) {
+		CircuitBreaker breaker = breakers.get(bucketName);
+		if (breaker == null) {
+			breakers.putIfAbsent(bucketName, new CircuitBreaker());
+			breaker = breakers.get(bucketName);
+		}
+		return breaker;
+	}
+
+	/**
+	 * Latencies of the last {@link #SIZE} successful requests.
+	 */
+	static final class LatencyWindow {
+
+		static final int SIZE = 256;
+		private final long[] samples = new long[SIZE];
+		private long count;
+
+		synchronized void add(long millis) {
+			samples[(int) (count++ % SIZE)] = millis;
+		}
+
+		/**
+		 * @return {p95, p99}, or null until {@link #MIN_SAMPLES} are known
+		 */
+		long[] percentiles() {
+			long[] sorted;
+			synchronized (this) {
+				if (count < MIN_SAMPLES) {
+					return null;
+				}
+				sorted = Arrays.copyOf(samples, (int) Math.min(count, SIZE));
+			}
+			Arrays.sort(sorted);
+			return new long[] { sorted[(sorted.length * 95 - 1) / 100], sorted[(sorted.length * 99 - 1) / 100] };
+		}
+	}
+
+	final class CircuitBreaker {
+
+		private int failures;
+		private long openUntil;
+		private boolean probing;
+
+		synchronized boolean allow() {
+			if (breakerFailures <= 0 || failures < breakerFailures) {
+				return true;
+			}
+			if (probing || System.currentTimeMillis() < openUntil) {
+				return false;
+			}
+			// half open: one request finds out whether the bucket is back
+			probing = true;
+			return true;
+		}
+
+		synchronized void success() {
+			failures = 0;
+			probing = false;
+		}
+
+		// the probe gave up without an answer; the next request probes instead
+		synchronized void abandon() {
+			probing = false;
+		}
+
+		synchronized void failure() {
+			failures++;
+			if (breakerFailures > 0 && failures >= breakerFailures) {
+				openUntil = System.currentTimeMillis() + breakerOpenMillis;
+				probing = false;
+			}
+		}
+	}
+}
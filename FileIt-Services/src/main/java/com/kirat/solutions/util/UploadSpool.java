@@ -0,0 +1,468 @@
+package com.kirat.solutions.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives uploads onto disk. A multipart/form-data body is parsed as it
+ * arrives through one {@link #BUFFER_BYTES} buffer: the small form fields are
+ * kept, the file part is written to a file in render.scratch.dir and hashed
+ * on the way, so an upload holds the same few kilobytes of heap whatever its
+ * size. A file above render.upload.max.bytes is refused with
+ * {@link UploadTooLargeException}, from its Content-Length before anything is
+ * read when the client sends one. All uploads being received share
+ * render.spool.max.bytes of disk; one that does not fit is turned away with
+ * {@link AdmissionRejectedException}.
+ */
+public final class UploadSpool {
+
+	static final int BUFFER_BYTES = 64 * 1024;
+	// form fields and part headers are a few hundred bytes
+	static final int MAX_FIELD_BYTES = 16 * 1024;
+	private static final int RETRY_AFTER_SECONDS = 5;
+	private static final byte[] CRLF = { '\r', '\n' };
+	private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+	private static UploadSpool INSTANCE;
+
+	private final File directory;
+	private final long maxUploadBytes;
+	private final long maxSpoolBytes;
+	private final AtomicLong spooled = new AtomicLong();
+
+	/**
+	 * A received upload. Its file stays on disk and counts against the spool
+	 * until {@link #release()}.
+	 */
+	public final class Upload {
+
+		private final Map<String, String> fields = new HashMap<String, String>();
+		private File file;
+		private long size;
+		private String hash;
+		private long reserved;
+
+		public String getField(String name) {
+			return fields.get(name);
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return hex SHA-256 of the file
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		public void release() {
+			if (file != null) {
+				file.delete();
+				file = null;
+			}
+			unreserve(reserved);
+			reserved = 0;
+		}
+
+		private void reserve(long bytes) throws AdmissionRejectedException {
+			if (bytes > reserved) {
+				UploadSpool.this.reserve(bytes - reserved);
+				reserved = bytes;
+			}
+		}
+	}
+
+	public static synchronized UploadSpool getInstance() {
+		if (null == INSTANCE) {
+			FileInfoPropertyReader oReader = FileInfoPropertyReader.getInstance();
+			String dir = oReader.getString("render.scratch.dir");
+			INSTANCE = new UploadSpool(
+					dir == null || dir.trim().isEmpty() ? new File(System.getProperty("java.io.tmpdir"), "fileit-render")
+							: new File(dir.trim()),
+					oReader.getLong("render.upload.max.bytes", 256L << 20),
+					oReader.getLong("render.spool.max.bytes", 1L << 30));
+		}
+		return INSTANCE;
+	}
+
+	UploadSpool(File directory, long maxUploadBytes, long maxSpoolBytes) {
+		this.directory = directory;
+		this.maxUploadBytes = maxUploadBytes;
+		this.maxSpoolBytes = maxSpoolBytes;
+	}
+
+	/**
+	 * Reads a multipart/form-data body to its end. The part named "file" is
+	 * spooled, every other part is kept as a form field.
+	 *
+	 * @param contentLength
+	 *            announced length of the body, -1 when unknown
+	 */
+	public Upload receive(InputStream body, String contentType, long contentLength) throws FileItException {
+		String boundary = boundary(contentType);
+		if (boundary == null) {
+			throw new FileItException("Expected multipart/form-data with a boundary, got " + contentType);
+		}
+		if (contentLength > maxUploadBytes + MAX_FIELD_BYTES) {
+			throw tooLarge(contentLength);
+		}
+		Upload oUpload = new Upload();
+		boolean received = false;
+		try {
+			oUpload.reserve(Math.max(0, contentLength));
+			PartReader oReader = new PartReader(Channels.newChannel(body), boundary);
+			while (oReader.next()) {
+				String name = oReader.name;
+				if ("file".equals(name) && oUpload.file == null) {
+					spoolPart(oReader, oUpload);
+				} else if (name != null) {
+					ByteArrayOutputStream value = new ByteArrayOutputStream();
+					oReader.read(null, value);
+					oUpload.fields.put(name, new String(value.toByteArray(), StandardCharsets.UTF_8));
+				} else {
+					oReader.read(null, null);
+				}
+			}
+			if (oUpload.file == null) {
+				throw new FileItException("The upload has no file part");
+			}
+			received = true;
+			return oUpload;
+		} catch (IOException e) {
+			throw new FileItException(e.getMessage());
+		} finally {
+			if (!received) {
+				oUpload.release();
+			}
+		}
+	}
+
+	/**
+	 * Spools a bare document.
+	 */
+	public Upload spool(InputStream in) throws FileItException {
+		Upload oUpload = new Upload();
+		boolean received = false;
+		try {
+			ReadableByteChannel channel = Channels.newChannel(in);
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+			FileSink oSink = new FileSink(oUpload);
+			try {
+				while (channel.read(buffer) != -1) {
+					buffer.flip();
+					oSink.write(buffer.array(), buffer.position(), buffer.remaining());
+					buffer.clear();
+				}
+			} finally {
+				oSink.close();
+				in.close();
+			}
+			received = true;
+			return oUpload;
+		} catch (IOException e) {
+			throw new FileItException(e.getMessage());
+		} finally {
+			if (!received) {
+				oUpload.release();
+			}
+		}
+	}
+
+	/**
+	 * @return bytes of uploads on disk right now
+	 */
+	public long getSpooledBytes() {
+		return spooled.get();
+	}
+
+	private void spoolPart(PartReader oReader, Upload oUpload) throws IOException, FileItException {
+		FileSink oSink = new FileSink(oUpload);
+		try {
+			oReader.read(oSink, null);
+		} finally {
+			oSink.close();
+		}
+	}
+
+	private void reserve(long bytes) throws AdmissionRejectedException {
+		while (true) {
+			long current = spooled.get();
+			// an upload alone is let through whatever its size, up to render.upload.max.bytes
+			if (current > 0 && current + bytes > maxSpoolBytes) {
+				throw new AdmissionRejectedException("Too many uploads being received, try again later",
+						RETRY_AFTER_SECONDS);
+			}
+			if (spooled.compareAndSet(current, current + bytes)) {
+				return;
+			}
+		}
+	}
+
+	private void unreserve(long bytes) {
+		spooled.addAndGet(-bytes);
+	}
+
+	private UploadTooLargeException tooLarge(long bytes) {
+		return new UploadTooLargeException(
+				"Upload of " + bytes + " bytes is larger than the " + maxUploadBytes + " bytes allowed");
+	}
+
+	static String boundary(String contentType) {
+		if (contentType == null || !contentType.trim().toLowerCase().startsWith("multipart/")) {
+			return null;
+		}
+		for (String parameter : contentType.split(";")) {
+			String trimmed = parameter.trim();
+			if (trimmed.toLowerCase().startsWith("boundary=")) {
+				String value = trimmed.substring("boundary=".length()).trim();
+				if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+					value = value.substring(1, value.length() - 1);
+				}
+				return value.isEmpty() ? null : value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Hashes, counts and writes the file part, growing the upload's share of
+	 * the spool as it goes past what was reserved.
+	 */
+	private final class FileSink {
+
+		private final Upload oUpload;
+		private final MessageDigest digest;
+		private final RandomAccessFile raf;
+		private final FileChannel channel;
+
+		FileSink(Upload oUpload) throws IOException {
+			this.oUpload = oUpload;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e.getMessage());
+			}
+			if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+				throw new IOException("Cannot create " + directory);
+			}
+			oUpload.file = File.createTempFile("upload", ".tmp", directory);
+			raf = new RandomAccessFile(oUpload.file, "rw");
+			channel = raf.getChannel();
+		}
+
+		void write(byte[] bytes, int offset, int length) throws IOException, FileItException {
+			if (length == 0) {
+				return;
+			}
+			long size = oUpload.size + length;
+			if (size > maxUploadBytes) {
+				throw tooLarge(size);
+			}
+			oUpload.reserve(size);
+			digest.update(bytes, offset, length);
+			ByteBuffer source = ByteBuffer.wrap(bytes, offset, length);
+			while (source.hasRemaining()) {
+				channel.write(source);
+			}
+			oUpload.size = size;
+		}
+
+		void close() throws IOException {
+			oUpload.hash = PageFingerprinter.toHex(digest.digest());
+			raf.close();
+		}
+	}
+
+	/**
+	 * Walks the parts of a multipart body. Part data is handed on as soon as it
+	 * cannot be the start of the closing delimiter, so the buffer never holds
+	 * more than {@link #BUFFER_BYTES}.
+	 */
+	private static final class PartReader {
+
+		private final ReadableByteChannel channel;
+		private final byte[] delimiter;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+		private boolean started;
+		private boolean finished;
+		String name;
+
+		PartReader(ReadableByteChannel channel, String boundary) {
+			this.channel = channel;
+			this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+			buffer.flip();
+		}
+
+		/**
+		 * Moves to the next part and reads its headers.
+		 *
+		 * @return false after the last part
+		 */
+		boolean next() throws IOException {
+			if (!started) {
+				started = true;
+				// the first delimiter may open the body, without the CRLF before it
+				int at = find(delimiter, 2);
+				while (at < 0) {
+					buffer.position(Math.max(buffer.position(), buffer.limit() - delimiter.length));
+					if (!fill()) {
+						throw new IOException("Not a multipart body: no boundary");
+					}
+					at = find(delimiter, 2);
+				}
+				buffer.position(at + delimiter.length - 2);
+			}
+			if (finished) {
+				return false;
+			}
+			require(2);
+			if (buffer.get(buffer.position()) == '-' && buffer.get(buffer.position() + 1) == '-') {
+				finished = true;
+				return false;
+			}
+			// transport padding, then the CRLF that ends the delimiter line
+			int lineEnd = find(CRLF, 0);
+			while (lineEnd < 0) {
+				if (!fill()) {
+					throw new IOException("Multipart body ended in a delimiter");
+				}
+				lineEnd = find(CRLF, 0);
+			}
+			buffer.position(lineEnd + CRLF.length);
+			name = null;
+			require(2);
+			if (buffer.get(buffer.position()) == '\r' && buffer.get(buffer.position() + 1) == '\n') {
+				// no headers
+				buffer.position(buffer.position() + 2);
+				return true;
+			}
+			int headerEnd = find(HEADER_END, 0);
+			while (headerEnd < 0) {
+				if (buffer.remaining() > MAX_FIELD_BYTES || !fill()) {
+					throw new IOException("Multipart part headers too long or cut off");
+				}
+				headerEnd = find(HEADER_END, 0);
+			}
+			String headers = new String(buffer.array(), buffer.position(), headerEnd - buffer.position(),
+					StandardCharsets.UTF_8);
+			buffer.position(headerEnd + HEADER_END.length);
+			for (String header : headers.split("\r\n")) {
+				if (header.toLowerCase().startsWith("content-disposition:")) {
+					name = parameter(header, "name");
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Hands the body of the current part to the sink, or to the field when
+		 * the sink is null; with neither the body is skipped.
+		 */
+		void read(FileSink oSink, ByteArrayOutputStream field) throws IOException, FileItException {
+			long total = 0;
+			while (true) {
+				int at = find(delimiter, 0);
+				int end = at >= 0 ? at : Math.max(buffer.position(), buffer.limit() - delimiter.length + 1);
+				int length = end - buffer.position();
+				if (oSink != null) {
+					oSink.write(buffer.array(), buffer.position(), length);
+				} else if (field != null) {
+					total += length;
+					if (total > MAX_FIELD_BYTES) {
+						throw new IOException("Form field " + name + " is too long");
+					}
+					field.write(buffer.array(), buffer.position(), length);
+				}
+				if (at >= 0) {
+					buffer.position(at + delimiter.length);
+					return;
+				}
+				buffer.position(end);
+				if (!fill()) {
+					throw new IOException("Multipart body ended inside part " + name);
+				}
+			}
+		}
+
+		private void require(int count) throws IOException {
+			while (buffer.remaining() < count) {
+				if (!fill()) {
+					throw new IOException("Multipart body cut off");
+				}
+			}
+		}
+
+		/**
+		 * Keeps the unread bytes and reads more behind them.
+		 *
+		 * @return false at the end of the body
+		 */
+		private boolean fill() throws IOException {
+			buffer.compact();
+			try {
+				if (!buffer.hasRemaining()) {
+					throw new IOException("Multipart line longer than " + BUFFER_BYTES + " bytes");
+				}
+				int read;
+				do {
+					read = channel.read(buffer);
+				} while (read == 0);
+				return read > 0;
+			} finally {
+				buffer.flip();
+			}
+		}
+
+		/**
+		 * @return array index of the pattern among the unread bytes, or -1;
+		 *         skip leaves out that many of its leading bytes
+		 */
+		private int find(byte[] pattern, int skip) {
+			byte[] array = buffer.array();
+			int length = pattern.length - skip;
+			int last = buffer.limit() - length;
+			outer: for (int i = buffer.position(); i <= last; i++) {
+				for (int j = 0; j < length; j++) {
+					if (array[i + j] != pattern[skip + j]) {
+						continue outer;
+					}
+				}
+				return i;
+			}
+			return -1;
+		}
+
+		private static String parameter(String header, String key) {
+			for (String parameter : header.split(";")) {
+				String trimmed = parameter.trim();
+				int equals = trimmed.indexOf('=');
+				if (equals > 0 && trimmed.substring(0, equals).trim().equalsIgnoreCase(key)) {
+					String value = trimmed.substring(equals + 1).trim();
+					if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+						value = value.substring(1, value.length() - 1);
+					}
+					return value;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package com.kirat.solutions.util;
+
+/**
+ * Thrown when an upload is larger than render.upload.max.bytes. Answered with
+ * 413.
+ */
+public class UploadTooLargeException extends FileItException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UploadTooLargeException(String errorMessage) {
+		super(errorMessage);
+	}
+}
@@ -0,0 +1,178 @@
+package com.kirat.solutions.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signs V2 signed URLs for GET on the bucket. The private key is parsed once
+ * and every thread keeps its own initialised SHA256withRSA {@link Signature},
+ * which is ready for the next input as soon as it has signed one. The parts
+ * of the URL and of the string to sign that do not depend on the object are
+ * built up front. Batches of at least {@link #MIN_CHUNK} paths per thread are
+ * split across a pool of signing threads, the caller signing one share
+ * itself.
+ */
+public final class UrlSigner {
+
+	static final int MIN_CHUNK = 16;
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final PrivateKey privateKey;
+	private final String urlPrefix;
+	private final String expiresParameter;
+	private final String resourcePrefix;
+	private final int threads;
+	private final ExecutorService pool;
+	private final ThreadLocal<Signature> signatures = new ThreadLocal<Signature>();
+
+	/**
+	 * @param threads
+	 *            threads signing a batch, including the caller; 1 signs
+	 *            batches on the caller alone
+	 */
+	public UrlSigner(PrivateKey privateKey, String apiUrl, String bucketName, String accountId, int threads) {
+		this.privateKey = privateKey;
+		this.urlPrefix = apiUrl + '/' + bucketName + '/';
+		this.expiresParameter = "?GoogleAccessId=" + accountId + "&Expires=";
+		this.resourcePrefix = "\n/" + bucketName + '/';
+		this.threads = Math.max(1, threads);
+		this.pool = this.threads == 1 ? null : Executors.newFixedThreadPool(this.threads - 1, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "url-signer-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param expires
+	 *            expiry in seconds since the epoch
+	 */
+	public String sign(String objectPath, long expires) throws FileItException {
+		String expiry = Long.toString(expires);
+		return sign(objectPath, expiry, signature());
+	}
+
+	/**
+	 * Signs every path with one expiry, in parallel for large batches.
+	 *
+	 * @return the signed URLs, in the order of the paths
+	 */
+	public List<String> signAll(final List<String> objectPaths, long expires) throws FileItException {
+		final String expiry = Long.toString(expires);
+		final String[] urls = new String[objectPaths.size()];
+		int chunks = Math.min(threads, urls.length / MIN_CHUNK);
+		if (chunks <= 1) {
+			signRange(objectPaths, expiry, urls, 0, urls.length);
+			return Arrays.asList(urls);
+		}
+		int chunkSize = (urls.length + chunks - 1) / chunks;
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(chunks - 1);
+		for (int start = chunkSize; start < urls.length; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(urls.length, start + chunkSize);
+			try {
+				futures.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws FileItException {
+						signRange(objectPaths, expiry, urls, from, to);
+						return null;
+					}
+				}));
+			} catch (RejectedExecutionException e) {
+				// shut down by a configuration reload while this batch was being signed
+				signRange(objectPaths, expiry, urls, from, to);
+			}
+		}
+		signRange(objectPaths, expiry, urls, 0, chunkSize);
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new FileItException("Interrupted while signing URLs");
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof FileItException ? (FileItException) e.getCause()
+						: new FileItException(e.getCause().getMessage());
+			}
+		}
+		return Arrays.asList(urls);
+	}
+
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	private void signRange(List<String> objectPaths, String expiry, String[] urls, int from, int to)
+			throws FileItException {
+		Signature signature = signature();
+		for (int i = from; i < to; i++) {
+			urls[i] = sign(objectPaths.get(i), expiry, signature);
+		}
+	}
+
+	private String sign(String objectPath, String expiry, Signature signature) throws FileItException {
+		String stringToSign = "GET\n\n\n" + expiry + resourcePrefix + objectPath;
+		byte[] signed;
+		try {
+			signature.update(stringToSign.getBytes(StandardCharsets.UTF_8));
+			signed = signature.sign();
+		} catch (GeneralSecurityException e) {
+			// a failed sign leaves the Signature in an unknown state
+			signatures.remove();
+			throw new FileItException(e.getMessage());
+		}
+		String encoded = Base64.getEncoder().encodeToString(signed);
+		StringBuilder url = new StringBuilder(urlPrefix.length() + objectPath.length() + expiresParameter.length()
+				+ expiry.length() + 11 + encoded.length() + 32);
+		url.append(urlPrefix).append(objectPath).append(expiresParameter).append(expiry).append("&Signature=");
+		appendEncoded(url, encoded);
+		return url.toString();
+	}
+
+	private Signature signature() throws FileItException {
+		Signature signature = signatures.get();
+		if (signature == null) {
+			try {
+				signature = Signature.getInstance("SHA256withRSA");
+				signature.initSign(privateKey);
+			} catch (GeneralSecurityException e) {
+				throw new FileItException(e.getMessage());
+			}
+			signatures.set(signature);
+		}
+		return signature;
+	}
+
+	// URLEncoder.encode for the Base64 alphabet, which only needs +, / and = escaped
+	private static void appendEncoded(StringBuilder url, String base64) {
+		for (int i = 0; i < base64.length(); i++) {
+			char c = base64.charAt(i);
+			if (c == '+' || c == '/' || c == '=') {
+				url.append('%').append(HEX[c >> 4]).append(HEX[c & 0xf]);
+			} else {
+				url.append(c);
+			}
+		}
+	}
+}
@@ -1,41 +1,130 @@
 package com.kirat.solutions.webservice;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
-import com.kirat.solutions.util.CloudStorageConfig;
+import com.kirat.solutions.util.CatalogQuery;
+import com.kirat.solutions.util.CatalogSnapshot;
+import com.kirat.solutions.util.CatalogSnapshotManager;
+import com.kirat.solutions.util.FileItException;
+import com.kirat.solutions.util.HttpCaching;
+import com.kirat.solutions.util.JsonCodec;
 
 public class helloWorldService {
 
-	@SuppressWarnings("unchecked")
+	private static final int DEFAULT_PAGE = 100;
+	private static final int MAX_PAGE = 1000;
+	// rough size of one book in the JSON, to decide whether a response is worth gzipping
+	private static final int ENTRY_BYTES = 100;
+
+	/**
+	 * Served from the catalog snapshot, with the generation of test.JSON as
+	 * entity tag so a poll that finds nothing new is answered with a 304.
+	 * Without parameters the whole catalog comes back in catalog order; with
+	 * any of them a page of at most limit books (default 100, at most 1000),
+	 * ending with a nextCursor when more books match. Either is streamed from
+	 * the snapshot as it is read.
+	 */
 	@GET
 	@Path("getMasterJson")
 	@Produces("application/json")
-	public String getMasterJson() throws FileNotFoundException, IOException, ParseException {
+	public Response getMasterJson(@Context HttpHeaders oHttpHeaders, @QueryParam("cursor") String cursor,
+			@QueryParam("limit") Integer limit, @QueryParam("sort") String sort,
+			@QueryParam("classification") String classification, @QueryParam("prefix") String prefix) {
+		CatalogSnapshotManager oCatalogSnapshotManager = CatalogSnapshotManager.getInstance();
+		CatalogSnapshot oSnapshot;
 		try {
-			CloudStorageConfig oCloudStorageConfig = new CloudStorageConfig();
-			InputStream oInputStream = oCloudStorageConfig.getFile("1dvaultdata", "test.JSON");
-			JSONParser parser = new JSONParser();
-			Object object = parser.parse(new InputStreamReader(oInputStream));
-			oInputStream.close();
-			JSONObject jsonObject = (JSONObject) object;
-			return jsonObject.toJSONString();
-		} catch (Exception e) {
-			JSONObject oJsonObject = new JSONObject();
-			oJsonObject.put("Error", "No Book Present");
-			return oJsonObject.toJSONString();
+			oSnapshot = oCatalogSnapshotManager.current();
+		} catch (FileItException e) {
+			oSnapshot = null;
+		}
+		if (oSnapshot == null || oSnapshot.getGeneration() < 0) {
+			return error(Response.Status.OK, "No Book Present");
+		}
+		HttpCaching oHttpCaching = HttpCaching.getInstance();
+		EntityTag tag = HttpCaching.tag(oSnapshot.getGeneration());
+		long lastModified = oCatalogSnapshotManager.getLastModified(oSnapshot);
+		if (cursor != null || limit != null || sort != null || classification != null || prefix != null) {
+			if (limit != null && limit.intValue() <= 0) {
+				return error(Response.Status.BAD_REQUEST, "limit must be positive");
+			}
+			int pageSize = limit == null ? DEFAULT_PAGE : Math.min(limit.intValue(), MAX_PAGE);
+			final CatalogQuery oCatalogQuery;
+			try {
+				oCatalogQuery = CatalogQuery.open(oSnapshot, sort, classification, prefix, cursor, pageSize);
+			} catch (FileItException e) {
+				return error(Response.Status.BAD_REQUEST, e.getMessage());
+			}
+			if (oHttpCaching.isNotModified(oHttpHeaders, tag, lastModified)) {
+				return oHttpCaching.notModified(tag, lastModified).build();
+			}
+			boolean gzip = oHttpCaching.shouldGzip(oHttpHeaders, (long) ENTRY_BYTES * pageSize);
+			return oHttpCaching.ok(new CatalogOutput(gzip) {
+				@Override
+				void writeJson(OutputStream out) throws IOException {
+					JsonCodec.writeCatalogPage(oCatalogQuery, out);
+				}
+			}, tag, lastModified, gzip).build();
 		}
+		if (oHttpCaching.isNotModified(oHttpHeaders, tag, lastModified)) {
+			return oHttpCaching.notModified(tag, lastModified).build();
+		}
+		final CatalogSnapshot oCatalogSnapshot = oSnapshot;
+		boolean gzip = oHttpCaching.shouldGzip(oHttpHeaders, (long) ENTRY_BYTES * oSnapshot.size());
+		return oHttpCaching.ok(new CatalogOutput(gzip) {
+			@Override
+			void writeJson(OutputStream out) throws IOException {
+				JsonCodec.writeCatalog(oCatalogSnapshot.entries(), out);
+			}
+		}, tag, lastModified, gzip).build();
+	}
 
+	@SuppressWarnings("unchecked")
+	private static Response error(Response.Status status, String message) {
+		JSONObject oJsonObject = new JSONObject();
+		oJsonObject.put("Error", message);
+		return Response.status(status).entity(oJsonObject.toJSONString().getBytes(StandardCharsets.UTF_8))
+				.header(HttpHeaders.CACHE_CONTROL, "no-cache").build();
+	}
+
+	/**
+	 * Catalog JSON written straight to the response, gzipped when asked.
+	 */
+	private abstract static class CatalogOutput implements StreamingOutput {
+
+		private final boolean gzip;
+
+		CatalogOutput(boolean gzip) {
+			this.gzip = gzip;
+		}
+
+		abstract void writeJson(OutputStream out) throws IOException;
+
+		@Override
+		public void write(OutputStream output) throws IOException, WebApplicationException {
+			if (gzip) {
+				GZIPOutputStream out = new GZIPOutputStream(output, 8192);
+				writeJson(out);
+				out.finish();
+			} else {
+				writeJson(output);
+			}
+		}
 	}
 
 }
@@ -0,0 +1,125 @@
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.kirat.solutions.Constants.BinderConstants;
+import com.kirat.solutions.domain.BinderList;
+import com.kirat.solutions.domain.Children;
+import com.kirat.solutions.domain.FileItContext;
+import com.kirat.solutions.processor.TransformationProcessor;
+import com.kirat.solutions.util.CloudStorageConfig;
+import com.kirat.solutions.util.FileItContextInterceptor;
+
+/**
+ * Runs hundreds of binder creates at the same time and checks that every
+ * request only ever sees its own CONTXT_PATH_NAMES, on its own thread and on
+ * the executors it hands work to, and that nothing survives the end of the
+ * request. Storage uploads are discarded. Exits with 1 on any failure.
+ */
+public class FileItContextTester {
+
+	private static final int REQUESTS = 500;
+	private static final int CHILDREN = 5;
+
+	public static void main(String[] args) throws Exception {
+		CloudStorageConfig.setInstance(new CloudStorageConfig() {
+			@Override
+			public Long uploadFile(String bucketName, String filePath, InputStream oInputStream, String contentType)
+					throws Exception {
+				oInputStream.close();
+				return 1L;
+			}
+		});
+		final ExecutorService requests = Executors.newFixedThreadPool(REQUESTS);
+		final ExecutorService parallel = Executors.newFixedThreadPool(8);
+		final ExecutorService propagating = FileItContext.propagating(parallel);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch created = new CountDownLatch(REQUESTS);
+		final AtomicInteger isolationFailures = new AtomicInteger();
+		final AtomicInteger propagationFailures = new AtomicInteger();
+		final AtomicInteger leakFailures = new AtomicInteger();
+		final FileItContextInterceptor endOfRequest = new FileItContextInterceptor("send-ending");
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int r = 0; r < REQUESTS; r++) {
+			final int request = r;
+			futures.add(requests.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					final List<String> expected = new ArrayList<String>();
+					BinderList binder = binder(request, expected);
+					new TransformationProcessor().prepareBinderXML(binder);
+					// hold every request open until all of them have written the context
+					created.countDown();
+					created.await();
+					if (!expected.equals(FileItContext.get(BinderConstants.CONTXT_PATH_NAMES))) {
+						isolationFailures.incrementAndGet();
+					}
+					Object seen = propagating.submit(new Callable<Object>() {
+						@Override
+						public Object call() {
+							return FileItContext.get(BinderConstants.CONTXT_PATH_NAMES);
+						}
+					}).get();
+					if (!expected.equals(seen)) {
+						propagationFailures.incrementAndGet();
+					}
+					Object unwrapped = parallel.submit(new Callable<Object>() {
+						@Override
+						public Object call() {
+							return FileItContext.get(BinderConstants.CONTXT_PATH_NAMES);
+						}
+					}).get();
+					if (unwrapped != null) {
+						leakFailures.incrementAndGet();
+					}
+					endOfRequest.handleMessage(null);
+					if (FileItContext.get(BinderConstants.CONTXT_PATH_NAMES) != null) {
+						leakFailures.incrementAndGet();
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		requests.shutdown();
+		parallel.shutdown();
+
+		System.out.println("Concurrent creates:   " + REQUESTS);
+		System.out.println("Isolation failures:   " + isolationFailures.get());
+		System.out.println("Propagation failures: " + propagationFailures.get());
+		System.out.println("Leaked contexts:      " + leakFailures.get());
+		boolean passed = isolationFailures.get() == 0 && propagationFailures.get() == 0 && leakFailures.get() == 0;
+		System.out.println(passed ? "PASSED" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static BinderList binder(int request, List<String> expectedPaths) {
+		BinderList binder = new BinderList();
+		binder.setName("contextBook" + request);
+		binder.setClassification("Engineering");
+		List<Children> children = new ArrayList<Children>();
+		for (int c = 0; c < CHILDREN; c++) {
+			Children child = new Children();
+			child.setId(String.valueOf(c + 2));
+			child.setName("child" + c);
+			child.setPath("E:/docs/" + request + "/child" + c + ".pdf");
+			child.setType("application/pdf");
+			child.setVersion("1.0");
+			children.add(child);
+			expectedPaths.add(child.getPath());
+		}
+		binder.setChildrenList(children);
+		return binder;
+	}
+}
@@ -0,0 +1,134 @@
+package com.kirat.solutions.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.io.RandomAccessFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
+
+/**
+ * Renders a sample document with convertToImage() + ImageIO, as pages were
+ * rendered before PageRasterizer, and with PageRasterizer at several band
+ * heights, and compares the decoded pixels. The pages are letter, rotated 90
+ * and 270, A4 and a long strip; the band heights include ones that do not
+ * divide the page height. Also checks that a page over render.job.max.bytes
+ * fails with a FileItException. Exits with 1 on any failure.
+ */
+public class PageRasterizerTester {
+
+	private static final float[][] SIZES = { { 612, 792 }, { 612, 792 }, { 595, 842 }, { 612, 792 },
+			{ 300, 14400 } };
+	private static final int[] ROTATIONS = { 0, 90, 270, -90, 0 };
+	// the whole page in one band, 26 rows and 7 rows of a letter page
+	private static final int[] BAND_BYTES = { 64 << 20, 64 << 10, 7 * 2 * 1224 };
+
+	public static void main(String[] args) throws Exception {
+		File pdf = File.createTempFile("rasterizer", ".pdf");
+		File scratch = File.createTempFile("rasterizer", ".tmp");
+		pdf.deleteOnExit();
+		scratch.deleteOnExit();
+		writeSample(pdf);
+		PDDocument document = PDDocument.load(pdf, new RandomAccessFile(scratch, "rw"));
+		int failures = 0;
+		try {
+			@SuppressWarnings("unchecked")
+			List<PDPage> pages = document.getDocumentCatalog().getAllPages();
+			BufferedImage[] expected = new BufferedImage[pages.size()];
+			for (int i = 0; i < pages.size(); i++) {
+				ByteArrayOutputStream gif = new ByteArrayOutputStream();
+				ImageIO.write(pages.get(i).convertToImage(), "gif", gif);
+				expected[i] = ImageIO.read(new ByteArrayInputStream(gif.toByteArray()));
+			}
+			for (int bandBytes : BAND_BYTES) {
+				PageRasterizer oRasterizer = new PageRasterizer(256L << 20, bandBytes);
+				for (int i = 0; i < pages.size(); i++) {
+					ByteArrayOutputStream gif = new ByteArrayOutputStream();
+					oRasterizer.render(pages.get(i), i + 1, gif);
+					BufferedImage actual = ImageIO.read(new ByteArrayInputStream(gif.toByteArray()));
+					long differing = differing(expected[i], actual);
+					System.out.println("Band " + bandBytes + " bytes, page " + (i + 1) + " (" + actual.getWidth()
+							+ " x " + actual.getHeight() + ", rotated " + ROTATIONS[i] + "): " + differing
+							+ " pixels differ");
+					if (differing != 0) {
+						failures++;
+					}
+				}
+			}
+
+			try {
+				new PageRasterizer(1L << 20, 1 << 20).render(pages.get(0), 1, new ByteArrayOutputStream());
+				System.out.println("Job cap: page rendered over the cap");
+				failures++;
+			} catch (FileItException e) {
+				System.out.println("Job cap: " + e.getMessage());
+			} catch (OutOfMemoryError e) {
+				System.out.println("Job cap: OutOfMemoryError");
+				failures++;
+			}
+		} finally {
+			document.close();
+		}
+		System.out.println(failures == 0 ? "PASSED" : "FAILED");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	private static long differing(BufferedImage expected, BufferedImage actual) {
+		if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+			return (long) expected.getWidth() * expected.getHeight();
+		}
+		long differing = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+					differing++;
+				}
+			}
+		}
+		return differing;
+	}
+
+	// a gradient photo, a filled rectangle and a line of text on every page
+	private static void writeSample(File pdf) throws Exception {
+		PDDocument document = new PDDocument();
+		try {
+			BufferedImage photo = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = photo.createGraphics();
+			for (int i = 0; i < 300; i++) {
+				graphics.setColor(new Color(i % 256, (i * 3) % 256, 255 - i % 256));
+				graphics.drawLine(i, 0, 300 - i, 200);
+			}
+			graphics.dispose();
+			PDPixelMap image = new PDPixelMap(document, photo);
+			for (int p = 0; p < SIZES.length; p++) {
+				PDPage page = new PDPage(new PDRectangle(SIZES[p][0], SIZES[p][1]));
+				page.setRotation(ROTATIONS[p]);
+				document.addPage(page);
+				PDPageContentStream content = new PDPageContentStream(document, page);
+				content.drawXObject(image, 50, 300, 300, 200);
+				content.setNonStrokingColor(200, 30, 90);
+				content.fillRect(20, 20, 100, 50);
+				content.beginText();
+				content.setFont(PDType1Font.HELVETICA_BOLD, 18);
+				content.moveTextPositionByAmount(72, 700);
+				content.drawString("Page " + (p + 1) + " banded rendering check");
+				content.endText();
+				content.close();
+			}
+			document.save(pdf.getAbsolutePath());
+		} finally {
+			document.close();
+		}
+	}
+}
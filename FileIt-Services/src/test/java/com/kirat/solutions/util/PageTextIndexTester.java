@@ -0,0 +1,91 @@
+package com.kirat.solutions.util;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.kirat.solutions.domain.PageHit;
+
+/**
+ * Indexes a few documents, one at a time, into a scratch directory with at
+ * most two segments, waiting for the merges after each, so every third segment
+ * merges the three into one. Then checks that the hits survive the merges, that a deleted book's hits disappear while
+ * the other books sharing its document keep theirs, and that a reopened
+ * index reloads its segments and references. Exits with 1 on any failure.
+ */
+public class PageTextIndexTester {
+
+	private static final int DOCUMENTS = 6;
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		File directory = Files.createTempDirectory("fileit-index-test").toFile();
+		PageTextIndex oIndex = new PageTextIndex(directory, 2, 10);
+		oIndex.open();
+		for (int d = 0; d < DOCUMENTS; d++) {
+			String hash = "hash" + d;
+			oIndex.index(hash, Arrays.asList("Introduction to volume " + d + " of the engineering binder",
+					"Pressure vessel inspection, revision " + d + ", with valve schedule",
+					"Appendix: turbine" + d + " maintenance log"));
+			oIndex.addRef(hash, "book" + d, "Images/book" + d + "/child");
+			oIndex.awaitMerges();
+		}
+		// one document shown by two books
+		oIndex.addRef("hash0", "shared", "Images/shared/child");
+
+		check("segments after merging", oIndex.getStatus().get("segments"), 2);
+		check("pages after merging", oIndex.getStatus().get("pages"), 3L * DOCUMENTS);
+		check("hits for 'pressure vessel'", oIndex.search("pressure vessel", 100).size(), DOCUMENTS + 1);
+		List<PageHit> turbine = oIndex.search("turbine3", 10);
+		check("hits for 'turbine3'", turbine.size(), 1);
+		if (turbine.size() == 1) {
+			check("book of 'turbine3'", turbine.get(0).getBook(), "book3");
+			check("page of 'turbine3'", turbine.get(0).getPage(), 3);
+		}
+
+		oIndex.removeBook("book3");
+		oIndex.removeBook("book0");
+		check("hits for 'turbine3' after removing book3", oIndex.search("turbine3", 10).size(), 0);
+		check("books for 'turbine0' after removing book0", books(oIndex.search("turbine0", 10)),
+				Arrays.asList("shared"));
+		check("hits for 'pressure' after removing two books", oIndex.search("pressure", 100).size(),
+				DOCUMENTS - 1);
+
+		// the pages of book3 are left out by the next merge
+		oIndex.index("hash" + DOCUMENTS, Arrays.asList("Late addition turbine" + DOCUMENTS));
+		oIndex.addRef("hash" + DOCUMENTS, "book" + DOCUMENTS, "Images/book" + DOCUMENTS + "/child");
+		oIndex.awaitMerges();
+		check("segments after merging out book3", oIndex.getStatus().get("segments"), 1);
+		check("pages after merging out book3", oIndex.getStatus().get("pages"), 3L * (DOCUMENTS - 1) + 1);
+		check("hits for 'turbine0' after merging", books(oIndex.search("turbine0", 10)), Arrays.asList("shared"));
+
+		PageTextIndex reopened = new PageTextIndex(directory, 2, 10);
+		reopened.open();
+		check("status after reopening", reopened.getStatus(), oIndex.getStatus());
+		check("hits for 'pressure' after reopening", reopened.search("pressure", 100).size(), DOCUMENTS - 1);
+		check("hits for 'turbine3' after reopening", reopened.search("turbine3", 10).size(), 0);
+		check("hits for 'turbine6' after reopening", books(reopened.search("turbine6", 10)),
+				Arrays.asList("book" + DOCUMENTS));
+
+		System.out.println(failures == 0 ? "PASSED" : "FAILED");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	private static List<String> books(List<PageHit> hits) {
+		List<String> books = new ArrayList<String>();
+		for (PageHit oPageHit : hits) {
+			books.add(oPageHit.getBook());
+		}
+		return books;
+	}
+
+	private static void check(String what, Object actual, Object expected) {
+		boolean passed = expected.equals(actual);
+		System.out.println(what + ": " + actual + (passed ? "" : ", expected " + expected));
+		if (!passed) {
+			failures++;
+		}
+	}
+}
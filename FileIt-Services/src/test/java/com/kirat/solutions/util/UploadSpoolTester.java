@@ -0,0 +1,236 @@
+package com.kirat.solutions.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Feeds crafted multipart/form-data bodies through
+ * {@link UploadSpool#receive}, read a few bytes at a time, and checks the form
+ * fields, the spooled bytes and their SHA-256. Covers a delimiter split across
+ * the edge of a read, file data holding near-delimiters, a preamble,
+ * a quoted boundary, transport padding, a truncated body, and too large and
+ * rejected uploads with and without a Content-Length. After every upload is
+ * released, or fails, no bytes may be left counted or on disk. Exits with 1 on
+ * any failure.
+ */
+public class UploadSpoolTester {
+
+	private static final String BOUNDARY = "----FileItBoundary7MA4YWxkTrZu0gW";
+	private static final String CONTENT_TYPE = "multipart/form-data; boundary=" + BOUNDARY;
+	private static final int MAX_UPLOAD = 1 << 20;
+	private static final Random RANDOM = new Random(46);
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		File directory = Files.createTempDirectory("fileit-spool-test").toFile();
+		UploadSpool oSpool = new UploadSpool(directory, MAX_UPLOAD, 3L * MAX_UPLOAD / 2);
+
+		byte[] data = random(100000);
+		for (int chunk : new int[] { 1, 7, 4096, UploadSpool.BUFFER_BYTES, 1 << 20 }) {
+			byte[] body = body(null, "", data);
+			expectUpload("chunks of " + chunk, oSpool, body, CONTENT_TYPE, body.length, chunk, data);
+		}
+
+		// reads come in 8 KiB; the delimiter after the file starts at every offset around the one at 64 KiB
+		int before = body(null, "", new byte[0]).length - closing("").length;
+		int delimiter = ("\r\n--" + BOUNDARY).length();
+		int edgeFailures = failures;
+		for (int size = UploadSpool.BUFFER_BYTES - before - delimiter - 4; size <= UploadSpool.BUFFER_BYTES - before
+				+ 4; size++) {
+			byte[] edge = random(size);
+			byte[] body = body(null, "", edge);
+			expectUpload(null, oSpool, body, CONTENT_TYPE, -1, 8192, edge);
+		}
+		report("delimiter across the read edge at 64 KiB", edgeFailures == failures);
+
+		// every prefix of the delimiter, and the delimiter without its CRLF, inside the data
+		ByteArrayOutputStream tricky = new ByteArrayOutputStream();
+		String full = "\r\n--" + BOUNDARY;
+		for (int i = 1; i < full.length(); i++) {
+			tricky.write(full.substring(0, i).getBytes(StandardCharsets.ISO_8859_1));
+			tricky.write('x');
+		}
+		tricky.write(("--" + BOUNDARY + "\n--" + BOUNDARY + "\r").getBytes(StandardCharsets.ISO_8859_1));
+		byte[] nearDelimiters = tricky.toByteArray();
+		for (int chunk : new int[] { 1, 3, 64 }) {
+			byte[] body = body(null, "", nearDelimiters);
+			expectUpload("near-delimiters in the data, chunks of " + chunk, oSpool, body, CONTENT_TYPE, body.length,
+					chunk, nearDelimiters);
+		}
+
+		byte[] body = body("This is the preamble, to be ignored.", "", data);
+		expectUpload("preamble", oSpool, body, CONTENT_TYPE, body.length, 5, data);
+		expectUpload("quoted boundary", oSpool, body,
+				"multipart/form-data; boundary=\"" + BOUNDARY + "\"; charset=UTF-8", body.length, 5, data);
+		body = body(null, " \t ", data);
+		expectUpload("transport padding", oSpool, body, CONTENT_TYPE, body.length, 5, data);
+		byte[] empty = new byte[0];
+		body = body(null, "", empty);
+		expectUpload("empty file", oSpool, body, CONTENT_TYPE, body.length, 5, empty);
+
+		body = body(null, "", data);
+		byte[] truncated = Arrays.copyOf(body, body.length - closing("").length - 10);
+		expectFailure("body truncated after the file", oSpool, truncated, -1, FileItException.class);
+		expectFailure("body truncated inside the file", oSpool, Arrays.copyOf(body, body.length / 2), -1,
+				FileItException.class);
+		byte[] unclosed = Arrays.copyOf(body, body.length - closing("").length);
+		expectFailure("body without its closing delimiter", oSpool, unclosed, -1, FileItException.class);
+
+		byte[] large = random(MAX_UPLOAD + 1);
+		body = body(null, "", large);
+		expectFailure("chunked body past the upload limit", oSpool, body, -1, UploadTooLargeException.class);
+		// refused before a byte is read
+		expectFailure("Content-Length past the upload limit", oSpool, new byte[0],
+				MAX_UPLOAD + UploadSpool.MAX_FIELD_BYTES + 1, UploadTooLargeException.class);
+
+		// one upload held takes most of the spool
+		byte[] held = random(MAX_UPLOAD);
+		body = body(null, "", held);
+		UploadSpool.Upload oHeld = oSpool.receive(new ChunkedInputStream(body, 8192), CONTENT_TYPE, body.length);
+		byte[] second = random(MAX_UPLOAD / 2 + 1);
+		body = body(null, "", second);
+		expectFailure("Content-Length over the spool", oSpool, body, body.length, AdmissionRejectedException.class);
+		expectFailure("chunked body growing over the spool", oSpool, body, -1, AdmissionRejectedException.class);
+		report("held upload still counted", oSpool.getSpooledBytes() >= MAX_UPLOAD);
+		oHeld.release();
+		report("spool empty after releasing the held upload", oSpool.getSpooledBytes() == 0);
+		expectUpload("the rejected upload once the spool is free", oSpool, body, CONTENT_TYPE, body.length, 8192,
+				second);
+
+		String[] left = directory.list();
+		report("no files left on disk", left != null && left.length == 0);
+		System.out.println(failures == 0 ? "PASSED" : "FAILED");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * @param what
+	 *            null to report only failures
+	 */
+	private static void expectUpload(String what, UploadSpool oSpool, byte[] body, String contentType,
+			long contentLength, int chunk, byte[] data) throws Exception {
+		String problem = null;
+		try {
+			UploadSpool.Upload oUpload = oSpool.receive(new ChunkedInputStream(body, chunk), contentType,
+					contentLength);
+			File file = oUpload.getFile();
+			if (!"book0".equals(oUpload.getField("bookName"))
+					|| !"Images/book0/child1".equals(oUpload.getField("path"))
+					|| !"application/pdf".equals(oUpload.getField("type"))) {
+				problem = "fields " + oUpload.getField("bookName") + ", " + oUpload.getField("path") + ", "
+						+ oUpload.getField("type");
+			} else if (oUpload.getSize() != data.length || !Arrays.equals(Files.readAllBytes(file.toPath()), data)) {
+				problem = "spooled " + oUpload.getSize() + " bytes that differ from the " + data.length + " sent";
+			} else if (!sha256(data).equals(oUpload.getHash())) {
+				problem = "hash " + oUpload.getHash();
+			}
+			oUpload.release();
+			if (problem == null && (file.exists() || oSpool.getSpooledBytes() != 0)) {
+				problem = "released upload left " + oSpool.getSpooledBytes() + " bytes counted";
+			}
+		} catch (FileItException e) {
+			problem = e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+		if (what != null || problem != null) {
+			report((what == null ? data.length + " byte file" : what) + (problem == null ? "" : " - " + problem),
+					problem == null);
+		}
+	}
+
+	private static void expectFailure(String what, UploadSpool oSpool, byte[] body, long contentLength,
+			Class<? extends FileItException> expected) throws Exception {
+		long before = oSpool.getSpooledBytes();
+		String outcome;
+		boolean passed;
+		try {
+			oSpool.receive(new ChunkedInputStream(body, 4096), CONTENT_TYPE, contentLength).release();
+			outcome = "received";
+			passed = false;
+		} catch (FileItException e) {
+			outcome = e.getClass().getSimpleName() + ": " + e.getMessage();
+			passed = e.getClass() == expected;
+		}
+		if (oSpool.getSpooledBytes() != before) {
+			outcome += ", left " + (oSpool.getSpooledBytes() - before) + " bytes counted";
+			passed = false;
+		}
+		report(what + " - " + outcome, passed);
+	}
+
+	private static byte[] body(String preamble, String padding, byte[] data) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if (preamble != null) {
+			body.write((preamble + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		}
+		body.write(("--" + BOUNDARY + padding + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		field(body, "bookName", "book0");
+		body.write(("\r\n--" + BOUNDARY + padding + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		body.write(("Content-Disposition: form-data; name=\"file\"; filename=\"child1.pdf\"\r\n"
+				+ "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		body.write(data);
+		body.write(("\r\n--" + BOUNDARY + padding + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		field(body, "path", "Images/book0/child1");
+		body.write(("\r\n--" + BOUNDARY + padding + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		field(body, "type", "application/pdf");
+		body.write(closing(padding));
+		return body.toByteArray();
+	}
+
+	private static byte[] closing(String padding) {
+		return ("\r\n--" + BOUNDARY + "--" + padding + "\r\nepilogue").getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static void field(ByteArrayOutputStream body, String name, String value) throws IOException {
+		body.write(("Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value)
+				.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static byte[] random(int size) {
+		byte[] bytes = new byte[size];
+		RANDOM.nextBytes(bytes);
+		return bytes;
+	}
+
+	private static String sha256(byte[] data) throws Exception {
+		return PageFingerprinter.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+	}
+
+	private static void report(String what, boolean passed) {
+		System.out.println((passed ? "ok     " : "FAILED ") + what);
+		if (!passed) {
+			failures++;
+		}
+	}
+
+	/**
+	 * Hands out at most chunk bytes per read, as a slow client does.
+	 */
+	private static final class ChunkedInputStream extends InputStream {
+
+		private final ByteArrayInputStream in;
+		private final int chunk;
+
+		ChunkedInputStream(byte[] bytes, int chunk) {
+			this.in = new ByteArrayInputStream(bytes);
+			this.chunk = chunk;
+		}
+
+		@Override
+		public int read() {
+			return in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			return in.read(b, off, Math.min(len, chunk));
+		}
+	}
+}